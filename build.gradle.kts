@@ -37,6 +37,7 @@ plugins {
     id("org.jetbrains.intellij.platform")
     alias(libs.plugins.changelog)
     alias(libs.plugins.protobuf)
+    alias(libs.plugins.jmh)
 }
 
 group = properties("pluginGroup").get()
@@ -212,6 +213,13 @@ tasks {
     }
 }
 
+jmh {
+    warmupIterations = 2
+    iterations = 5
+    fork = 1
+    profilers = listOf("gc")
+}
+
 protobuf {
     protoc {
         artifact = libs.protobuf.protoc.get().toString()
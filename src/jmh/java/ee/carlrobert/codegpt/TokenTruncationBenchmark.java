@@ -0,0 +1,82 @@
+package ee.carlrobert.codegpt;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares truncating a large file's prefix and suffix by encoding the whole text against the
+ * windowed truncation used for code completion requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TokenTruncationBenchmark {
+
+  private static final int MAX_TOKENS = 256;
+
+  @Param({"1000", "20000"})
+  private int lines;
+
+  private Encoding encoding;
+  private TokenTruncator truncator;
+  private String text;
+
+  @Setup
+  public void setUp() {
+    encoding = Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+    truncator = new TokenTruncator(encoding);
+    var builder = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      builder.append("    val value").append(i).append(" = compute(\"item-").append(i)
+          .append("\", index = ").append(i % 17).append(") // line ").append(i).append('\n');
+    }
+    text = builder.toString();
+  }
+
+  @Benchmark
+  public String fullEncodeTruncatePrefix() {
+    return legacyTruncate(text, MAX_TOKENS, false);
+  }
+
+  @Benchmark
+  public String windowedTruncatePrefix() {
+    return truncator.truncate(text, MAX_TOKENS, false);
+  }
+
+  @Benchmark
+  public String fullEncodeTruncateSuffix() {
+    return legacyTruncate(text, MAX_TOKENS, true);
+  }
+
+  @Benchmark
+  public String windowedTruncateSuffix() {
+    return truncator.truncate(text, MAX_TOKENS, true);
+  }
+
+  @Benchmark
+  public int fullCount() {
+    return encoding.countTokensOrdinary(text);
+  }
+
+  private String legacyTruncate(String text, int maxTokens, boolean fromStart) {
+    var tokens = encoding.encode(text.replace("<|", "").replace("|>", ""));
+    int tokensToRetrieve = Math.min(maxTokens, tokens.size());
+    int startIndex = fromStart ? 0 : tokens.size() - tokensToRetrieve;
+    List<Integer> truncatedList = tokens.boxed().subList(startIndex, startIndex + tokensToRetrieve);
+    var result = new IntArrayList(truncatedList.size());
+    truncatedList.forEach(result::add);
+    return encoding.decode(result);
+  }
+}
@@ -0,0 +1,71 @@
+package ee.carlrobert.codegpt.codecompletions;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.EncodingType;
+import ee.carlrobert.codegpt.TokenTruncator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the work done per completion trigger on a large document: capturing a
+ * {@link DocumentSnapshot}, capturing the cache context and building the {@link InfillRequest}, as
+ * {@code CodeCompletionEventListener} does, against the previous path, which copied the document
+ * text and split it into prefix and suffix strings first.
+ *
+ * <p>The difference is in allocations rather than time, so run it with the GC profiler
+ * ({@code -prof gc}) and compare {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompletionRequestBenchmark {
+
+  @Param({"1000", "20000"})
+  private int lines;
+
+  private TokenTruncator truncator;
+  private CodeCompletionCacheService cache;
+  private CharSequence document;
+  private int caretOffset;
+
+  @Setup
+  public void setUp() {
+    truncator = new TokenTruncator(
+        Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE));
+    cache = new CodeCompletionCacheService();
+    var builder = new StringBuilder();
+    for (int i = 0; i < lines; i++) {
+      builder.append("    val value").append(i).append(" = compute(\"item-").append(i)
+          .append("\", index = ").append(i % 17).append(") // line ").append(i).append('\n');
+    }
+    document = builder;
+    caretOffset = document.length() / 2;
+  }
+
+  @Benchmark
+  public void snapshotTrigger(Blackhole blackhole) {
+    var snapshot = DocumentSnapshot.Companion.of(document, caretOffset, null);
+    blackhole.consume(cache.captureContext(snapshot));
+    blackhole.consume(new InfillRequest.Builder(snapshot, truncator::truncate).build());
+  }
+
+  @Benchmark
+  public void copyingTrigger(Blackhole blackhole) {
+    var content = document.toString();
+    var prefix = content.substring(0, caretOffset);
+    var suffix = content.substring(caretOffset);
+    blackhole.consume(CompletionContext.Companion.capture(content, caretOffset, 8, 2_000));
+    blackhole.consume(new InfillRequest.Builder(
+        truncator.truncate(prefix, InfillRequestKt.MAX_PROMPT_TOKENS, false),
+        truncator.truncate(suffix, InfillRequestKt.MAX_PROMPT_TOKENS, true),
+        caretOffset).build());
+  }
+}
@@ -0,0 +1,127 @@
+package ee.carlrobert.codegpt.psistructure;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares a breadth-first traversal of a synthetic file dependency graph using the hash-indexed
+ * {@link DepthQueue} against the previous queue, which looked up visited files by name with a
+ * linear scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DependencyTraversalBenchmark {
+
+  @Param({"5000"})
+  private int files;
+
+  @Param({"8"})
+  private int dependenciesPerFile;
+
+  private int[][] graph;
+
+  @Setup
+  public void setUp() {
+    var random = new Random(42);
+    graph = new int[files][];
+    for (int i = 0; i < files; i++) {
+      graph[i] = new int[dependenciesPerFile];
+      for (int j = 0; j < dependenciesPerFile; j++) {
+        graph[i][j] = random.nextInt(files);
+      }
+    }
+  }
+
+  @Benchmark
+  public int hashIndexedTraversal() {
+    var queue = new DepthQueue<Integer>(List.of(0), -1, Integer.MAX_VALUE, file -> file);
+    int visited = 0;
+    Integer file;
+    while ((file = queue.pop()) != null) {
+      visited++;
+      for (int dependency : graph[file]) {
+        queue.put(dependency, file);
+      }
+    }
+    return visited;
+  }
+
+  @Benchmark
+  public int linearScanTraversal() {
+    var queue = new LinearScanQueue(0);
+    int visited = 0;
+    Integer file;
+    while ((file = queue.pop()) != null) {
+      visited++;
+      for (int dependency : graph[file]) {
+        queue.put(dependency, "File" + file + ".kt");
+      }
+    }
+    return visited;
+  }
+
+  @Benchmark
+  public int levelTraversal() {
+    var queue = new DepthQueue<Integer>(List.of(0), -1, Integer.MAX_VALUE, file -> file);
+    Set<Integer> visited = new HashSet<>();
+    List<Integer> level;
+    while (!(level = queue.popLevel()).isEmpty()) {
+      for (int file : level) {
+        visited.add(file);
+        for (int dependency : graph[file]) {
+          queue.put(dependency, file);
+        }
+      }
+    }
+    return visited.size();
+  }
+
+  private record DepthFile(int file, String name, int depth) {
+  }
+
+  private static class LinearScanQueue {
+
+    private final List<DepthFile> files = new ArrayList<>();
+    private final ArrayDeque<DepthFile> queue = new ArrayDeque<>();
+
+    LinearScanQueue(int initial) {
+      var item = new DepthFile(initial, "File" + initial + ".kt", 0);
+      files.add(item);
+      queue.add(item);
+    }
+
+    Integer pop() {
+      var item = queue.poll();
+      return item == null ? null : item.file();
+    }
+
+    void put(int file, String baseFileName) {
+      var name = "File" + file + ".kt";
+      if (files.stream().anyMatch(it -> it.name().equals(name))) {
+        return;
+      }
+      int baseDepth = files.stream()
+          .filter(it -> it.name().equals(baseFileName))
+          .findFirst()
+          .map(DepthFile::depth)
+          .orElse(0);
+      var item = new DepthFile(file, name, baseDepth + 1);
+      queue.add(item);
+      files.add(item);
+    }
+  }
+}
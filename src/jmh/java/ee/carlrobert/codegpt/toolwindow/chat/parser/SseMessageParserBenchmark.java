@@ -0,0 +1,65 @@
+package ee.carlrobert.codegpt.toolwindow.chat.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Streams chat responses into the parser token by token, the way the tool window receives them.
+ * The transcripts contain thinking, prose, a file rewrite of the given number of lines and a
+ * search/replace block, split into tokens of 1-8 characters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SseMessageParserBenchmark {
+
+  @Param({"200", "2000"})
+  private int codeLines;
+
+  private List<String> tokens;
+
+  @Setup
+  public void setUp() {
+    var builder = new StringBuilder()
+        .append("<think>\nThe user wants the service rewritten, so I will keep the API.\n</think>\n")
+        .append("Here is the updated file:\n\n```kotlin:src/main/kotlin/Service.kt\n");
+    for (int i = 0; i < codeLines; i++) {
+      builder.append("    fun method").append(i).append("(value: Int): Int = value * ")
+          .append(i % 31).append(" // ").append("`".repeat(i % 3)).append('\n');
+    }
+    builder.append("```\n\nAnd the matching change in the caller:\n\n")
+        .append("```kotlin:src/main/kotlin/Caller.kt\n<<<<<<< SEARCH\n")
+        .append("val result = service.method1(1)\n=======\n")
+        .append("val result = service.method1(2)\n>>>>>>> REPLACE\n```\n\nDone.");
+
+    var transcript = builder.toString();
+    var random = new Random(42);
+    tokens = new ArrayList<>();
+    int position = 0;
+    while (position < transcript.length()) {
+      int end = Math.min(transcript.length(), position + 1 + random.nextInt(8));
+      tokens.add(transcript.substring(position, end));
+      position = end;
+    }
+  }
+
+  @Benchmark
+  public int streamTranscript() {
+    var parser = new SseMessageParser();
+    int segments = 0;
+    for (var token : tokens) {
+      segments += parser.parse(token).size();
+    }
+    return segments;
+  }
+}
@@ -1,5 +1,8 @@
 package ee.carlrobert.codegpt;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
@@ -7,7 +10,6 @@ import com.knuddels.jtokkit.Encodings;
 import com.knuddels.jtokkit.api.Encoding;
 import com.knuddels.jtokkit.api.EncodingRegistry;
 import com.knuddels.jtokkit.api.EncodingType;
-import com.knuddels.jtokkit.api.IntArrayList;
 import ee.carlrobert.codegpt.conversations.Conversation;
 import ee.carlrobert.codegpt.conversations.message.Message;
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionDetailedMessage;
@@ -22,13 +24,22 @@ import java.util.stream.Stream;
 @Service
 public final class EncodingManager {
 
-  private static final String SPECIAL_START = "<|";
-  private static final String SPECIAL_END = "|>";
-
   private static final Logger LOG = Logger.getInstance(EncodingManager.class);
 
+  /**
+   * Texts shorter than this are counted directly, as hashing them costs about as much as
+   * encoding them.
+   */
+  private static final int MIN_CACHED_TEXT_LENGTH = 256;
+  private static final int MAX_CACHED_COUNTS = 2_000;
+
   private final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
   private final Encoding encoding = registry.getEncoding(EncodingType.CL100K_BASE);
+  private final TokenTruncator truncator = new TokenTruncator(encoding);
+  private final Cache<ContentKey, Integer> tokenCountCache = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_COUNTS)
+      .recordStats()
+      .build();
 
   private EncodingManager() {
   }
@@ -126,36 +137,60 @@ public final class EncodingManager {
       return 0;
     }
 
-    try {
-      // #444: Cl100kParser.split() throws AssertionError "Input is not UTF-8: "
-      return encoding.countTokens(text.replaceAll("<|", "").replaceAll("|>", ""));
-    } catch (Exception | Error ex) {
-      LOG.warn("Could not count tokens for: " + text, ex);
-      return 0;
+    if (text.length() < MIN_CACHED_TEXT_LENGTH) {
+      return encodeAndCount(text);
     }
+
+    var key = ContentKey.of(text);
+    var cached = tokenCountCache.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    var count = encodeAndCount(text);
+    tokenCountCache.put(key, count);
+    return count;
+  }
+
+  public CacheStats getTokenCountCacheStats() {
+    return tokenCountCache.stats();
   }
 
   /**
-   * Truncates the given text to the given number of tokens.
+   * Truncates the given text to the given number of tokens. Only a bounded window from the kept
+   * end of the text is encoded, so the cost does not grow with the length of the text.
    *
    * @param text      The text to truncate.
    * @param maxTokens The maximum number of tokens to keep.
    * @param fromStart Whether to truncate from the start or the end of the text.
    * @return The truncated text.
    */
-  public String truncateText(String text, int maxTokens, boolean fromStart) {
-    var textWithSpecialEncodingsRemoved = text.replace(SPECIAL_START, "").replace(SPECIAL_END, "");
-    var tokens = encoding.encode(textWithSpecialEncodingsRemoved);
-    int tokensToRetrieve = Math.min(maxTokens, tokens.size());
-    int startIndex = fromStart ? 0 : tokens.size() - tokensToRetrieve;
-    var truncatedList =
-        tokens.boxed().subList(startIndex, startIndex + tokensToRetrieve);
-    return encoding.decode(convertToIntArrayList(truncatedList));
+  public String truncateText(CharSequence text, int maxTokens, boolean fromStart) {
+    return truncator.truncate(text, maxTokens, fromStart);
+  }
+
+  private int encodeAndCount(String text) {
+    try {
+      // #444: Cl100kParser.split() throws AssertionError "Input is not UTF-8: "
+      return encoding.countTokensOrdinary(text);
+    } catch (Exception | Error ex) {
+      LOG.warn("Could not count tokens for: " + text, ex);
+      return 0;
+    }
   }
 
-  private IntArrayList convertToIntArrayList(List<Integer> tokens) {
-    var result = new IntArrayList(tokens.size());
-    tokens.forEach(result::add);
-    return result;
+  /**
+   * Identifies a text by its length and a 64-bit hash, so that cached counts don't retain the
+   * texts themselves.
+   */
+  private record ContentKey(int length, long hash) {
+
+    static ContentKey of(String text) {
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < text.length(); i++) {
+        hash ^= text.charAt(i);
+        hash *= 0x100000001b3L;
+      }
+      return new ContentKey(text.length(), hash);
+    }
   }
 }
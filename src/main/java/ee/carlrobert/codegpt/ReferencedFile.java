@@ -5,8 +5,6 @@ import ee.carlrobert.codegpt.util.EditorUtil;
 import ee.carlrobert.codegpt.util.file.FileUtil;
 import java.io.File;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public record ReferencedFile(String fileName, String filePath, String fileContent,
                              boolean directory) {
@@ -41,13 +39,7 @@ public record ReferencedFile(String fileName, String filePath, String fileConten
   }
 
   public String getFileExtension() {
-    Pattern pattern = Pattern.compile("[^.]+$");
-    Matcher matcher = pattern.matcher(fileName);
-
-    if (matcher.find()) {
-      return matcher.group();
-    }
-    return "";
+    return FileUtil.getFileExtension(fileName);
   }
 
   @Override
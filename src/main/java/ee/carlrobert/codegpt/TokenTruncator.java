@@ -0,0 +1,97 @@
+package ee.carlrobert.codegpt;
+
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.IntArrayList;
+
+/**
+ * Truncates text to a token budget by encoding only a bounded character window from the end that
+ * is kept, instead of the whole text.
+ *
+ * <p>The window edge is placed after a line break that is followed by a non-whitespace character.
+ * The tokenizer never merges characters across such a position, so the window's tokens are exactly
+ * the tokens the whole text has there and the result matches truncating the fully encoded text.
+ */
+public final class TokenTruncator {
+
+  /**
+   * Initial number of characters encoded per requested token. The window is doubled until it
+   * holds enough tokens or covers the whole text.
+   */
+  private static final int INITIAL_CHARS_PER_TOKEN = 6;
+
+  private final Encoding encoding;
+
+  public TokenTruncator(Encoding encoding) {
+    this.encoding = encoding;
+  }
+
+  /**
+   * Truncates the given text to the given number of tokens.
+   *
+   * @param text      The text to truncate.
+   * @param maxTokens The maximum number of tokens to keep.
+   * @param fromStart Whether to keep the start or the end of the text.
+   * @return The truncated text.
+   */
+  public String truncate(CharSequence text, int maxTokens, boolean fromStart) {
+    if (maxTokens <= 0 || text.length() == 0) {
+      return "";
+    }
+
+    int length = text.length();
+    long windowSize = (long) maxTokens * INITIAL_CHARS_PER_TOKEN;
+    while (true) {
+      int edge = fromStart
+          ? findBoundaryAtOrAfter(text, windowSize)
+          : findBoundaryAtOrBefore(text, length - windowSize);
+      boolean coversText = fromStart ? edge == length : edge == 0;
+      var window = fromStart ? text.subSequence(0, edge) : text.subSequence(edge, length);
+      var tokens = encoding.encodeOrdinary(window.toString());
+      if (tokens.size() <= maxTokens && coversText) {
+        return window.toString();
+      }
+      if (tokens.size() >= maxTokens) {
+        return encoding.decode(slice(tokens, maxTokens, fromStart));
+      }
+      windowSize *= 2;
+    }
+  }
+
+  /**
+   * Returns the first token boundary at or after the given offset, or the text length if there
+   * is none.
+   */
+  private static int findBoundaryAtOrAfter(CharSequence text, long offset) {
+    for (long i = Math.max(offset, 1); i < text.length(); i++) {
+      if (isBoundary(text, (int) i)) {
+        return (int) i;
+      }
+    }
+    return text.length();
+  }
+
+  /**
+   * Returns the last token boundary at or before the given offset, or 0 if there is none.
+   */
+  private static int findBoundaryAtOrBefore(CharSequence text, long offset) {
+    for (long i = Math.min(offset, text.length() - 1); i > 0; i--) {
+      if (isBoundary(text, (int) i)) {
+        return (int) i;
+      }
+    }
+    return 0;
+  }
+
+  private static boolean isBoundary(CharSequence text, int offset) {
+    return text.charAt(offset - 1) == '\n' && !Character.isWhitespace(text.charAt(offset));
+  }
+
+  private static IntArrayList slice(IntArrayList tokens, int count, boolean fromStart) {
+    int start = fromStart ? 0 : tokens.size() - count;
+    var result = new IntArrayList(count);
+    for (int i = start; i < start + count; i++) {
+      result.add(tokens.get(i));
+    }
+    return result;
+  }
+}
@@ -3,9 +3,7 @@ package ee.carlrobert.codegpt.completions;
 import static ee.carlrobert.codegpt.credentials.CredentialsStore.getCredential;
 
 import com.intellij.openapi.application.ApplicationManager;
-import com.intellij.util.net.ssl.CertificateManager;
 import ee.carlrobert.codegpt.credentials.CredentialsStore.CredentialKey;
-import ee.carlrobert.codegpt.settings.advanced.AdvancedSettings;
 import ee.carlrobert.codegpt.settings.service.anthropic.AnthropicSettings;
 import ee.carlrobert.codegpt.settings.service.llama.LlamaSettings;
 import ee.carlrobert.codegpt.settings.service.ollama.OllamaSettings;
@@ -19,45 +17,40 @@ import ee.carlrobert.llm.client.mistral.MistralClient;
 import ee.carlrobert.llm.client.ollama.OllamaClient;
 import ee.carlrobert.llm.client.openai.OpenAIClient;
 import ee.carlrobert.llm.client.openai.completion.ErrorDetails;
-import java.net.InetSocketAddress;
-import java.net.Proxy;
-import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
-import javax.net.ssl.X509TrustManager;
-import com.intellij.openapi.diagnostic.Logger;
-import okhttp3.Credentials;
 import okhttp3.OkHttpClient;
-import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings;
-import okhttp3.logging.HttpLoggingInterceptor;
 
 public class CompletionClientProvider {
 
   public static CodeGPTClient getCodeGPTClient() {
     return new CodeGPTClient(
         getCredential(CredentialKey.CodeGptApiKey.INSTANCE),
-        getDefaultClientBuilder());
+        getClientBuilder("codegpt"));
   }
 
   public static OpenAIClient getOpenAIClient() {
     return new OpenAIClient.Builder(getCredential(CredentialKey.OpenaiApiKey.INSTANCE))
         .setOrganization(OpenAISettings.getCurrentState().getOrganization())
-        .build(getDefaultClientBuilder());
+        .build(getClientBuilder("openai"));
   }
 
   public static ClaudeClient getClaudeClient() {
+    var settings = AnthropicSettings.getCurrentState();
     var builder = new ClaudeClient.Builder(getCredential(CredentialKey.AnthropicApiKey.INSTANCE),
-        AnthropicSettings.getCurrentState().getApiVersion());
-    if (AnthropicSettings.getCurrentState().hasCustomBaseHost()) {
-      builder.setHost(AnthropicSettings.getCurrentState().getBaseHost());
+        settings.getApiVersion());
+    String baseHost = null;
+    if (settings.hasCustomBaseHost()) {
+      baseHost = settings.getBaseHost();
+      builder.setHost(baseHost);
     }
-    return builder.build(getDefaultClientBuilder());
+    return builder.build(getClientBuilder("anthropic", baseHost));
   }
 
   public static LlamaClient getLlamaClient() {
     var llamaSettings = LlamaSettings.getCurrentState();
     return new LlamaClient.Builder()
         .setPort(llamaSettings.getServerPort())
-        .build(getDefaultClientBuilder());
+        .build(getClientBuilder("llama", "localhost:" + llamaSettings.getServerPort()));
   }
 
   public static OllamaClient getOllamaClient() {
@@ -72,58 +65,41 @@ public class CompletionClientProvider {
     if (apiKey != null && !apiKey.isBlank()) {
       builder.setApiKey(apiKey);
     }
-    return builder.build(getDefaultClientBuilder());
+    return builder.build(getClientBuilder("ollama", host));
   }
 
   public static GoogleClient getGoogleClient() {
     return new GoogleClient.Builder(getCredential(CredentialKey.GoogleApiKey.INSTANCE))
-        .build(getDefaultClientBuilder());
+        .build(getClientBuilder("google"));
   }
 
   public static MistralClient getMistralClient() {
     return new MistralClient(getCredential(CredentialKey.MistralApiKey.INSTANCE),
-        getDefaultClientBuilder());
+        getClientBuilder("mistral"));
   }
 
   public static InceptionClient getInceptionClient() {
     return new InceptionClient.Builder(getCredential(CredentialKey.InceptionApiKey.INSTANCE))
-        .build(getDefaultClientBuilder());
+        .build(getClientBuilder("inception"));
   }
 
+  /**
+   * Returns a builder derived from the shared default client. Clients built from it reuse the
+   * shared connection pool and dispatcher.
+   */
   public static OkHttpClient.Builder getDefaultClientBuilder() {
-    OkHttpClient.Builder builder = new OkHttpClient.Builder();
-    CertificateManager certificateManager = CertificateManager.getInstance();
-    X509TrustManager trustManager = certificateManager.getTrustManager();
-    builder.sslSocketFactory(certificateManager.getSslContext().getSocketFactory(), trustManager);
-    var advancedSettings = AdvancedSettings.getCurrentState();
-    var proxyHost = advancedSettings.getProxyHost();
-    var proxyPort = advancedSettings.getProxyPort();
-    if (!proxyHost.isEmpty() && proxyPort != 0) {
-      builder.proxy(
-          new Proxy(advancedSettings.getProxyType(), new InetSocketAddress(proxyHost, proxyPort)));
-      if (advancedSettings.isProxyAuthSelected()) {
-        builder.proxyAuthenticator((route, response) ->
-            response.request()
-                .newBuilder()
-                .header("Proxy-Authorization", Credentials.basic(
-                    advancedSettings.getProxyUsername(),
-                    advancedSettings.getProxyPassword()))
-                .build());
-      }
-    }
+    return getDefaultClient().newBuilder();
+  }
 
-    if (ConfigurationSettings.getState().getDebugModeEnabled()) {
-      var ideLogger = Logger.getInstance(CompletionClientProvider.class);
-      var httpLogger = new HttpLoggingInterceptor(message -> ideLogger.info("[HTTP] " + message));
-      httpLogger.setLevel(HttpLoggingInterceptor.Level.BODY);
-      httpLogger.redactHeader("Authorization");
-      httpLogger.redactHeader("X-API-Key");
-      httpLogger.redactHeader("Api-Key");
-      builder.addInterceptor(httpLogger);
-    }
+  public static OkHttpClient getDefaultClient() {
+    return HttpClientRegistry.getInstance().getClient(HttpClientRegistry.DEFAULT_PROVIDER);
+  }
+
+  private static OkHttpClient.Builder getClientBuilder(String provider) {
+    return getClientBuilder(provider, null);
+  }
 
-    return builder
-        .connectTimeout(advancedSettings.getConnectTimeout(), TimeUnit.SECONDS)
-        .readTimeout(advancedSettings.getReadTimeout(), TimeUnit.SECONDS);
+  private static OkHttpClient.Builder getClientBuilder(String provider, String baseHost) {
+    return HttpClientRegistry.getInstance().getClient(provider, baseHost).newBuilder();
   }
 }
@@ -44,7 +44,7 @@ public final class CompletionRequestService {
   public EventSource getCustomOpenAICompletionAsync(
       Request customRequest,
       CompletionEventListener<String> eventListener) {
-    var httpClient = CompletionClientProvider.getDefaultClientBuilder().build();
+    var httpClient = CompletionClientProvider.getDefaultClient();
     return EventSources.createFactory(httpClient).newEventSource(
         customRequest,
         new OpenAITextCompletionEventSourceListener(eventListener));
@@ -53,7 +53,7 @@ public final class CompletionRequestService {
   public EventSource getCustomOpenAIChatCompletionAsync(
       Request customRequest,
       CompletionEventListener<String> eventListener) {
-    var httpClient = CompletionClientProvider.getDefaultClientBuilder().build();
+    var httpClient = CompletionClientProvider.getDefaultClient();
     return EventSources.createFactory(httpClient).newEventSource(
         customRequest,
         new OpenAIChatCompletionEventSourceListener(eventListener));
@@ -179,7 +179,7 @@ public final class CompletionRequestService {
       return tryExtractContent(response).orElseThrow();
     }
     if (request instanceof CustomOpenAIRequest completionRequest) {
-      var httpClient = CompletionClientProvider.getDefaultClientBuilder().build();
+      var httpClient = CompletionClientProvider.getDefaultClient();
       try (var response = httpClient.newCall(completionRequest.getRequest()).execute()) {
         return DeserializationUtil.mapResponse(response, OpenAIChatCompletionResponse.class)
             .getChoices().get(0)
@@ -0,0 +1,243 @@
+package ee.carlrobert.codegpt.completions;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.net.ssl.CertificateManager;
+import ee.carlrobert.codegpt.settings.advanced.AdvancedSettings;
+import ee.carlrobert.codegpt.settings.advanced.AdvancedSettingsState;
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.logging.HttpLoggingInterceptor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps one long-lived {@link OkHttpClient} per provider so that consecutive requests share the
+ * same connection pool, dispatcher and TLS sessions. A client is rebuilt only when the settings it
+ * was created from (proxy, timeouts, debug logging, base host) change.
+ */
+@Service
+public final class HttpClientRegistry {
+
+  public static final String DEFAULT_PROVIDER = "default";
+
+  private static final Logger LOG = Logger.getInstance(HttpClientRegistry.class);
+
+  private static final int MAX_IDLE_CONNECTIONS = 10;
+  private static final int KEEP_ALIVE_MINUTES = 5;
+  private static final int MAX_REQUESTS_PER_HOST = 16;
+
+  private final Map<String, PooledClient> clients = new ConcurrentHashMap<>();
+
+  private HttpClientRegistry() {
+  }
+
+  public static HttpClientRegistry getInstance() {
+    return ApplicationManager.getApplication().getService(HttpClientRegistry.class);
+  }
+
+  /**
+   * Returns the shared client for the given provider, rebuilding it if the relevant settings have
+   * changed since it was created.
+   *
+   * @param provider The provider key, e.g. {@code "openai"}.
+   * @param baseHost The provider's base host or {@code null} when the provider's default is used.
+   * @return The shared client.
+   */
+  public OkHttpClient getClient(@NotNull String provider, @Nullable String baseHost) {
+    var fingerprint = ClientFingerprint.fromCurrentSettings(baseHost);
+    return clients.compute(provider, (key, existing) -> {
+      if (existing != null && existing.fingerprint().equals(fingerprint)) {
+        return existing;
+      }
+      if (existing != null) {
+        LOG.info("Settings changed, rebuilding HTTP client for provider: " + key);
+        existing.client().connectionPool().evictAll();
+      }
+      return createPooledClient(fingerprint);
+    }).client();
+  }
+
+  public OkHttpClient getClient(@NotNull String provider) {
+    return getClient(provider, null);
+  }
+
+  public Map<String, ClientStats> getStats() {
+    var result = new ConcurrentHashMap<String, ClientStats>();
+    clients.forEach((provider, pooledClient) -> result.put(provider, pooledClient.stats()));
+    return result;
+  }
+
+  /**
+   * Drops all cached clients. Idle connections are closed; in-flight calls are left to finish.
+   */
+  public void invalidateAll() {
+    clients.values().forEach(it -> it.client().connectionPool().evictAll());
+    clients.clear();
+  }
+
+  private static PooledClient createPooledClient(ClientFingerprint fingerprint) {
+    var counters = new ConnectionCounters();
+    var dispatcher = new Dispatcher();
+    dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
+
+    var builder = new OkHttpClient.Builder()
+        .connectionPool(
+            new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+        .dispatcher(dispatcher)
+        .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .eventListenerFactory(call -> counters)
+        .connectTimeout(fingerprint.connectTimeout(), TimeUnit.SECONDS)
+        .readTimeout(fingerprint.readTimeout(), TimeUnit.SECONDS);
+
+    var certificateManager = CertificateManager.getInstance();
+    builder.sslSocketFactory(
+        certificateManager.getSslContext().getSocketFactory(),
+        certificateManager.getTrustManager());
+
+    var advancedSettings = AdvancedSettings.getCurrentState();
+    if (fingerprint.hasProxy()) {
+      builder.proxy(new Proxy(
+          fingerprint.proxyType(),
+          new InetSocketAddress(fingerprint.proxyHost(), fingerprint.proxyPort())));
+      if (fingerprint.proxyAuthSelected()) {
+        var username = advancedSettings.getProxyUsername();
+        var password = advancedSettings.getProxyPassword();
+        builder.proxyAuthenticator((route, response) ->
+            response.request()
+                .newBuilder()
+                .header("Proxy-Authorization", Credentials.basic(username, password))
+                .build());
+      }
+    }
+
+    if (fingerprint.debugModeEnabled()) {
+      var ideLogger = Logger.getInstance(CompletionClientProvider.class);
+      var httpLogger = new HttpLoggingInterceptor(message -> ideLogger.info("[HTTP] " + message));
+      httpLogger.setLevel(HttpLoggingInterceptor.Level.BODY);
+      httpLogger.redactHeader("Authorization");
+      httpLogger.redactHeader("X-API-Key");
+      httpLogger.redactHeader("Api-Key");
+      builder.addInterceptor(httpLogger);
+    }
+
+    return new PooledClient(fingerprint, builder.build(), counters);
+  }
+
+  private record ClientFingerprint(
+      Proxy.Type proxyType,
+      String proxyHost,
+      int proxyPort,
+      boolean proxyAuthSelected,
+      int proxyCredentialsHash,
+      int connectTimeout,
+      int readTimeout,
+      boolean debugModeEnabled,
+      @Nullable String baseHost) {
+
+    static ClientFingerprint fromCurrentSettings(@Nullable String baseHost) {
+      AdvancedSettingsState advancedSettings = AdvancedSettings.getCurrentState();
+      return new ClientFingerprint(
+          advancedSettings.getProxyType(),
+          advancedSettings.getProxyHost(),
+          advancedSettings.getProxyPort(),
+          advancedSettings.isProxyAuthSelected(),
+          Objects.hash(advancedSettings.getProxyUsername(), advancedSettings.getProxyPassword()),
+          advancedSettings.getConnectTimeout(),
+          advancedSettings.getReadTimeout(),
+          ConfigurationSettings.getState().getDebugModeEnabled(),
+          baseHost);
+    }
+
+    boolean hasProxy() {
+      return proxyHost != null && !proxyHost.isEmpty() && proxyPort != 0;
+    }
+  }
+
+  private record PooledClient(
+      ClientFingerprint fingerprint,
+      OkHttpClient client,
+      ConnectionCounters counters) {
+
+    ClientStats stats() {
+      var pool = client.connectionPool();
+      var dispatcher = client.dispatcher();
+      return new ClientStats(
+          pool.connectionCount(),
+          pool.idleConnectionCount(),
+          dispatcher.runningCallsCount(),
+          dispatcher.queuedCallsCount(),
+          counters.connectionsOpened.get(),
+          counters.connectionsAcquired.get(),
+          counters.handshakes.get());
+    }
+  }
+
+  /**
+   * Snapshot of a provider client's connection usage.
+   *
+   * @param pooledConnections   Connections currently held by the pool.
+   * @param idleConnections     Pooled connections not serving any call.
+   * @param inFlightCalls       Calls currently executing.
+   * @param queuedCalls         Calls waiting for a dispatcher slot.
+   * @param connectionsOpened   New TCP connections opened since the client was created.
+   * @param connectionsAcquired Connections handed to calls, including reused ones.
+   * @param handshakes          TLS handshakes performed since the client was created.
+   */
+  public record ClientStats(
+      int pooledConnections,
+      int idleConnections,
+      int inFlightCalls,
+      int queuedCalls,
+      long connectionsOpened,
+      long connectionsAcquired,
+      long handshakes) {
+
+    public long reusedConnections() {
+      return Math.max(0, connectionsAcquired - connectionsOpened);
+    }
+  }
+
+  private static final class ConnectionCounters extends EventListener {
+
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong connectionsAcquired = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+
+    @Override
+    public void connectEnd(
+        @NotNull Call call,
+        @NotNull InetSocketAddress inetSocketAddress,
+        @NotNull Proxy proxy,
+        @Nullable Protocol protocol) {
+      connectionsOpened.incrementAndGet();
+    }
+
+    @Override
+    public void secureConnectEnd(@NotNull Call call, @Nullable Handshake handshake) {
+      handshakes.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(@NotNull Call call, @NotNull Connection connection) {
+      connectionsAcquired.incrementAndGet();
+    }
+  }
+}
@@ -1,11 +1,14 @@
 package ee.carlrobert.codegpt.conversations;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import ee.carlrobert.codegpt.conversations.message.Message;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Supplier;
+import org.jetbrains.annotations.Nullable;
 
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Conversation {
@@ -18,6 +21,15 @@ public class Conversation {
   private boolean discardTokenLimit;
   private String projectPath;
 
+  @JsonIgnore
+  private Supplier<List<Message>> messageLoader;
+  @JsonIgnore
+  private int unloadedMessageCount;
+  @JsonIgnore
+  private Message unloadedFirstMessage;
+  @JsonIgnore
+  private Message unloadedLastMessage;
+
   public Conversation() {
     this.messages = new ArrayList<>();
     this.id = UUID.randomUUID();
@@ -42,16 +54,80 @@ public class Conversation {
     this.title = title;
   }
 
-  public List<Message> getMessages() {
+  public synchronized List<Message> getMessages() {
+    if (messages == null) {
+      messages = new ArrayList<>(messageLoader.get());
+      messageLoader = null;
+      unloadedFirstMessage = null;
+      unloadedLastMessage = null;
+    }
     return messages;
   }
 
-  public void setMessages(List<Message> messages) {
+  public synchronized void setMessages(List<Message> messages) {
     this.messages = new ArrayList<>(messages);
+    this.messageLoader = null;
+    this.unloadedFirstMessage = null;
+    this.unloadedLastMessage = null;
+  }
+
+  /**
+   * Defers reading the messages until they are first accessed.
+   *
+   * @param messageCount Number of messages the loader returns.
+   * @param firstMessage Preview of the first message, returned by {@link #getFirstMessage()} until
+   *                     the messages are loaded.
+   * @param lastMessage  Preview of the last message, returned by {@link #getLastMessage()} until
+   *                     the messages are loaded.
+   */
+  public synchronized void setMessageLoader(
+      Supplier<List<Message>> messageLoader,
+      int messageCount,
+      @Nullable Message firstMessage,
+      @Nullable Message lastMessage) {
+    this.messages = null;
+    this.messageLoader = messageLoader;
+    this.unloadedMessageCount = messageCount;
+    this.unloadedFirstMessage = firstMessage;
+    this.unloadedLastMessage = lastMessage;
+  }
+
+  @JsonIgnore
+  public synchronized boolean isMessagesLoaded() {
+    return messages != null;
+  }
+
+  @JsonIgnore
+  public synchronized int getMessageCount() {
+    return messages != null ? messages.size() : unloadedMessageCount;
+  }
+
+  /**
+   * Returns the first message, or a preview of it with a truncated prompt and response if the
+   * messages haven't been loaded.
+   */
+  @JsonIgnore
+  public synchronized @Nullable Message getFirstMessage() {
+    if (messages == null) {
+      return unloadedFirstMessage;
+    }
+    return messages.isEmpty() ? null : messages.get(0);
+  }
+
+  /**
+   * Returns the last message, or a preview of it with a truncated prompt and response if the
+   * messages haven't been loaded.
+   */
+  @JsonIgnore
+  public synchronized @Nullable Message getLastMessage() {
+    if (messages == null) {
+      return unloadedLastMessage;
+    }
+    return messages.isEmpty() ? null : messages.get(messages.size() - 1);
   }
 
   public void addMessage(Message message) {
-    messages.add(message);
+    getMessages().add(message);
   }
 
   public LocalDateTime getCreatedOn() {
@@ -78,8 +154,8 @@ public class Conversation {
     return discardTokenLimit;
   }
 
-  public void removeMessage(UUID messageId) {
-    messages = new ArrayList<>(messages.stream()
+  public synchronized void removeMessage(UUID messageId) {
+    messages = new ArrayList<>(getMessages().stream()
         .filter(message -> !message.getId().equals(messageId))
         .toList());
   }
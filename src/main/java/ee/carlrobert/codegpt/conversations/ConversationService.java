@@ -5,15 +5,19 @@ import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import ee.carlrobert.codegpt.completions.ChatCompletionParameters;
+import ee.carlrobert.codegpt.conversations.ConversationSearchIndex.Field;
 import ee.carlrobert.codegpt.conversations.message.Message;
 import ee.carlrobert.llm.client.openai.completion.response.ToolCall;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 @Service
 public final class ConversationService {
@@ -21,21 +25,54 @@ public final class ConversationService {
   private static final Logger LOG = Logger.getInstance(ConversationService.class);
 
   private final ConversationsState conversationState = ConversationsState.getInstance();
+  private final ConversationStore store =
+      new ConversationStore(ConversationStore.getDefaultDirectory());
+  private final ConversationSearchIndex searchIndex = new ConversationSearchIndex();
+  private boolean searchIndexBuilt;
+  private List<Conversation> sortedConversations;
 
   private ConversationService() {
+    migrateLegacyConversations();
   }
 
   public static ConversationService getInstance() {
     return ApplicationManager.getApplication().getService(ConversationService.class);
   }
 
-  public List<Conversation> getSortedConversations() {
-    return conversationState.conversations
-        .stream()
-        .sorted(Comparator.comparing(Conversation::getUpdatedOn).reversed())
+  public synchronized List<Conversation> getSortedConversations() {
+    if (sortedConversations == null) {
+      sortedConversations = store.getConversations()
+          .stream()
+          .sorted(Comparator.comparing(Conversation::getUpdatedOn).reversed())
+          .toList();
+    }
+    return sortedConversations;
+  }
+
+  /**
+   * Returns the conversations matching every word of the query as a word prefix, best matches
+   * first and otherwise most recently updated first.
+   *
+   * @param titlesOnly Whether to match only the conversations' titles and first prompts.
+   */
+  public List<Conversation> searchConversations(String query, boolean titlesOnly) {
+    if (query.isBlank()) {
+      return getSortedConversations();
+    }
+
+    var fields = titlesOnly ? EnumSet.of(Field.TITLE) : EnumSet.allOf(Field.class);
+    buildSearchIndex();
+    var scores = searchIndex.search(query, fields);
+    return getSortedConversations().stream()
+        .filter(it -> scores.containsKey(it.getId()))
+        .sorted(Comparator.comparing((Conversation it) -> scores.get(it.getId())).reversed())
         .toList();
   }
 
+  public Optional<Conversation> findConversation(UUID conversationId) {
+    return Optional.ofNullable(store.findConversation(conversationId));
+  }
+
   public Conversation createConversation() {
     var conversation = new Conversation();
     conversation.setId(UUID.randomUUID());
@@ -45,7 +82,8 @@ public final class ConversationService {
   }
 
   public void addConversation(Conversation conversation) {
-    conversationState.conversations.add(conversation);
+    store.saveConversation(conversation, null);
+    onConversationChanged(conversation, null);
   }
 
   public void saveMessage(String response, ChatCompletionParameters callParameters) {
@@ -57,19 +95,19 @@ public final class ConversationService {
           .filter(item -> item.getId().equals(message.getId()))
           .findFirst().orElseThrow();
       messageToBeSaved.setResponse(response);
-      saveConversation(conversation);
+      saveConversation(conversation, messageToBeSaved);
       return;
     }
 
     message.setResponse(response);
     conversation.addMessage(message);
-    saveConversation(conversation);
+    saveConversation(conversation, message);
   }
 
   public void saveMessage(@NotNull Conversation conversation, @NotNull Message message) {
     conversation.setUpdatedOn(LocalDateTime.now());
     conversation.addMessage(message);
-    saveConversation(conversation);
+    saveConversation(conversation, message);
   }
 
   public void saveAssistantMessageWithToolCalls(@NotNull Conversation conversation, @NotNull Message message, List<ToolCall> toolCalls) {
@@ -79,7 +117,7 @@ public final class ConversationService {
       }
     }
     conversation.setUpdatedOn(LocalDateTime.now());
-    saveConversation(conversation);
+    saveConversation(conversation, message);
   }
 
   public void saveAssistantMessageWithToolCalls(ChatCompletionParameters callParameters, List<ToolCall> toolCalls) {
@@ -90,14 +128,20 @@ public final class ConversationService {
     if (toolExecutionResults != null && !toolExecutionResults.isEmpty()) {
       toolExecutionResults.forEach(message::addToolCallResult);
     }
-    saveConversation(conversation);
+    saveConversation(conversation, message);
   }
 
   public void saveConversation(Conversation conversation) {
+    saveConversation(conversation, null);
+  }
+
+  /**
+   * @param changedMessage A message of the conversation that changed since it was last saved.
+   */
+  private void saveConversation(Conversation conversation, @Nullable Message changedMessage) {
     conversation.setUpdatedOn(LocalDateTime.now());
-    var conversations = conversationState.conversations;
-    conversations.removeIf(c -> c.getId().equals(conversation.getId()));
-    conversations.add(conversation);
+    store.saveConversation(conversation, changedMessage);
+    onConversationChanged(conversation, changedMessage);
     conversationState.setCurrentConversation(conversation);
   }
 
@@ -114,12 +158,20 @@ public final class ConversationService {
   }
 
   public void clearAll() {
-    conversationState.conversations.clear();
+    store.clear();
+    synchronized (searchIndex) {
+      searchIndex.clear();
+    }
+    invalidateSortedConversations();
     conversationState.setCurrentConversation(null);
   }
 
   public void deleteConversation(Conversation conversation) {
-    conversationState.conversations.removeIf(it -> it.getId().equals(conversation.getId()));
+    store.deleteConversation(conversation.getId());
+    synchronized (searchIndex) {
+      searchIndex.remove(conversation.getId());
+    }
+    invalidateSortedConversations();
   }
 
   public void deleteSelectedConversation() {
@@ -150,6 +202,71 @@ public final class ConversationService {
     return tryGetNextOrPreviousConversation(false);
   }
 
+  /**
+   * Moves the conversations from the settings XML, where they were stored before, to the store.
+   */
+  private void migrateLegacyConversations() {
+    var legacyConversations = new ArrayList<>(conversationState.conversations);
+    var legacyCurrentConversation = conversationState.legacyCurrentConversation;
+    if (legacyCurrentConversation != null) {
+      legacyConversations.removeIf(it -> it.getId().equals(legacyCurrentConversation.getId()));
+      legacyConversations.add(legacyCurrentConversation);
+    }
+    if (legacyConversations.isEmpty()) {
+      return;
+    }
+
+    if (!store.importConversations(legacyConversations)) {
+      LOG.warn("Unable to migrate all conversations to " + ConversationStore.getDefaultDirectory()
+          + ", keeping them in the settings until the next start");
+      return;
+    }
+    if (legacyCurrentConversation != null && conversationState.currentConversationId == null) {
+      conversationState.currentConversationId = legacyCurrentConversation.getId().toString();
+    }
+    conversationState.conversations = new ArrayList<>();
+    conversationState.conversationsContainer = new ConversationsContainer();
+    conversationState.legacyCurrentConversation = null;
+    LOG.info("Migrated " + legacyConversations.size() + " conversations to " +
+        ConversationStore.getDefaultDirectory());
+  }
+
+  /**
+   * Indexes all conversations unless they already are, so that the first search doesn't have to.
+   * Messages that aren't loaded are read without keeping them in memory.
+   */
+  public void buildSearchIndex() {
+    synchronized (searchIndex) {
+      if (searchIndexBuilt) {
+        return;
+      }
+      var startTime = System.currentTimeMillis();
+      var conversations = store.getConversations();
+      conversations.forEach(it -> searchIndex.update(it, store.peekMessages(it), null));
+      searchIndexBuilt = true;
+      LOG.debug(String.format("Indexed %d conversations in %d ms",
+          conversations.size(), System.currentTimeMillis() - startTime));
+    }
+  }
+
+  private void onConversationChanged(
+      Conversation conversation,
+      @Nullable Message changedMessage) {
+    invalidateSortedConversations();
+    synchronized (searchIndex) {
+      if (searchIndexBuilt) {
+        searchIndex.update(
+            conversation,
+            store.peekMessages(conversation),
+            changedMessage == null ? null : changedMessage.getId());
+      }
+    }
+  }
+
+  private synchronized void invalidateSortedConversations() {
+    sortedConversations = null;
+  }
+
   private Optional<Conversation> tryGetNextOrPreviousConversation(boolean isPrevious) {
     var currentConversation = ConversationsState.getCurrentConversation();
     if (currentConversation != null) {
@@ -6,6 +6,7 @@ import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.util.xmlb.XmlSerializerUtil;
 import com.intellij.util.xmlb.annotations.OptionTag;
+import com.intellij.util.xmlb.annotations.Transient;
 import ee.carlrobert.codegpt.conversations.converter.ConversationConverter;
 import ee.carlrobert.codegpt.conversations.converter.ConversationListConverter;
 import ee.carlrobert.codegpt.conversations.converter.ConversationsConverter;
@@ -13,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
+import java.util.UUID;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -25,12 +27,25 @@ public class ConversationsState implements PersistentStateComponent<Conversation
   @OptionTag(converter = ConversationsConverter.class)
   public ConversationsContainer conversationsContainer = new ConversationsContainer();
 
-  @OptionTag(converter = ConversationConverter.class)
-  public Conversation currentConversation;
+  /**
+   * Read only to migrate the conversations to {@link ConversationStore}.
+   */
+  @Deprecated
+  @OptionTag(value = "currentConversation", converter = ConversationConverter.class)
+  public Conversation legacyCurrentConversation;
 
+  /**
+   * Read only to migrate the conversations to {@link ConversationStore}.
+   */
+  @Deprecated
   @OptionTag(converter = ConversationListConverter.class)
   public List<Conversation> conversations = new ArrayList<>();
 
+  public String currentConversationId;
+
+  @Transient
+  private Conversation currentConversation;
+
   public boolean discardAllTokenLimits;
 
   public static ConversationsState getInstance() {
@@ -63,9 +78,16 @@ public class ConversationsState implements PersistentStateComponent<Conversation
 
   public void setCurrentConversation(@Nullable Conversation conversation) {
     this.currentConversation = conversation;
+    this.currentConversationId = conversation == null ? null : conversation.getId().toString();
   }
 
   public static @Nullable Conversation getCurrentConversation() {
-    return getInstance().currentConversation;
+    var state = getInstance();
+    if (state.currentConversation == null && state.currentConversationId != null) {
+      state.currentConversation = ConversationService.getInstance()
+          .findConversation(UUID.fromString(state.currentConversationId))
+          .orElse(null);
+    }
+    return state.currentConversation;
   }
 }
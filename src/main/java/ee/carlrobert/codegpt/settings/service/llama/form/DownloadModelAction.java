@@ -1,5 +1,6 @@
 package ee.carlrobert.codegpt.settings.service.llama.form;
 
+import static ee.carlrobert.codegpt.settings.service.llama.LlamaSettings.getLlamaModelsPath;
 import static java.lang.String.format;
 
 import com.intellij.openapi.actionSystem.AnAction;
@@ -12,7 +13,7 @@ import com.intellij.openapi.project.Project;
 import ee.carlrobert.codegpt.CodeGPTBundle;
 import ee.carlrobert.codegpt.completions.HuggingFaceModel;
 import ee.carlrobert.codegpt.util.DownloadingUtil;
-import ee.carlrobert.codegpt.util.file.FileUtil;
+import ee.carlrobert.codegpt.util.file.SegmentedDownloader;
 import java.io.IOException;
 import java.net.URL;
 import java.util.concurrent.Executors;
@@ -70,25 +71,41 @@ public class DownloadModelAction extends AnAction {
       try {
         onDownload.accept(indicator);
 
-        indicator.setIndeterminate(false);
         indicator.setText(format(
             CodeGPTBundle.get(
                 "settingsConfigurable.service.llama.progress.downloadingModelIndicator.text"),
             model.getFileName()));
 
-        long fileSize = url.openConnection().getContentLengthLong();
-        long[] bytesRead = {0};
+        var downloader = new SegmentedDownloader();
+        var remoteFile = downloader.probe(url);
+        var progress = new SegmentedDownloader.Progress();
+        // The server may not report the size of the file, leaving no fraction to show.
+        var sizeKnown = remoteFile.getSize() > 0;
+        indicator.setIndeterminate(!sizeKnown);
         long startTime = System.currentTimeMillis();
 
-        progressUpdateScheduler = executorService.scheduleAtFixedRate(() ->
-                onUpdateProgress.accept(DownloadingUtil.getFormattedDownloadProgress(
-                    startTime,
-                    fileSize,
-                    bytesRead[0])),
+        progressUpdateScheduler = executorService.scheduleAtFixedRate(() -> {
+              long downloadedBytes = progress.getDownloadedBytes().get();
+              if (sizeKnown) {
+                indicator.setFraction((double) downloadedBytes / remoteFile.getSize());
+              }
+              onUpdateProgress.accept(DownloadingUtil.getFormattedDownloadProgress(
+                  startTime,
+                  remoteFile.getSize(),
+                  downloadedBytes,
+                  progress.getResumedBytes()));
+            },
             0, 1, TimeUnit.SECONDS);
-        FileUtil.copyFileWithProgress(model.getFileName(), url, bytesRead, fileSize, indicator);
+        var completed = downloader.download(
+            remoteFile,
+            getLlamaModelsPath().resolve(model.getFileName()),
+            progress,
+            indicator::isCanceled);
+        if (!completed) {
+          LOG.info("Model download canceled, it will be resumed on the next attempt");
+        }
       } catch (IOException ex) {
-        LOG.error("Unable to open connection", ex);
+        LOG.error("Unable to download model", ex);
         onFailed.accept(ex);
       } finally {
         if (progressUpdateScheduler != null) {
@@ -8,11 +8,15 @@ import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.SelectionModel;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.JBColor;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBUI;
+import ee.carlrobert.codegpt.CodeGPTBundle;
 import ee.carlrobert.codegpt.CodeGPTKeys;
 import ee.carlrobert.codegpt.EncodingManager;
 import ee.carlrobert.codegpt.ReferencedFile;
@@ -79,6 +83,9 @@ import org.jetbrains.annotations.Nullable;
 public class ChatToolWindowTabPanel implements Disposable {
 
   private static final Logger LOG = Logger.getInstance(ChatToolWindowTabPanel.class);
+  private static final int MESSAGE_HEADER_HEIGHT = 96;
+  private static final int LINE_HEIGHT = 18;
+  private static final int MAX_ESTIMATED_LINES = 80;
 
   private final ChatSession chatSession;
 
@@ -93,6 +100,7 @@ public class ChatToolWindowTabPanel implements Disposable {
   private final TagManager tagManager;
   private final JPanel mcpApprovalContainer;
   private @Nullable ToolwindowChatCompletionRequestHandler requestHandler;
+  private volatile @Nullable ProgressIndicator contextIndicator;
 
   public ChatToolWindowTabPanel(@NotNull Project project, @NotNull Conversation conversation) {
     this.project = project;
@@ -141,6 +149,8 @@ public class ChatToolWindowTabPanel implements Disposable {
 
   public void dispose() {
     LOG.info("Disposing BaseChatToolWindowTabPanel component");
+    ApplicationManager.getApplication().getService(McpSessionManager.class)
+        .detachSession(conversation.getId());
   }
 
   public JComponent getContent() {
@@ -506,45 +516,63 @@ public class ChatToolWindowTabPanel implements Disposable {
   private Unit handleSubmit(String text) {
     toolWindowScrollablePanel.scrollToBottom();
 
-    var application = ApplicationManager.getApplication();
-    application.executeOnPooledThread(() -> {
-      final Set<ClassStructure> psiStructure;
-      if (psiStructureRepository.getStructureState().getValue()
-          instanceof PsiStructureState.Content content) {
-        psiStructure = content.getElements();
-      } else {
-        psiStructure = new HashSet<>();
+    ProgressManager.getInstance().run(new Task.Backgroundable(
+        project,
+        CodeGPTBundle.get("toolwindow.chat.collectingContext"),
+        true) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        contextIndicator = indicator;
+        try {
+          submitMessage(text, indicator);
+        } finally {
+          contextIndicator = null;
+        }
       }
+    });
+    return Unit.INSTANCE;
+  }
 
-      final var appliedTags = tagManager.getTags().stream()
-          .filter(TagDetails::getSelected)
-          .collect(Collectors.toList());
+  private void submitMessage(String text, ProgressIndicator indicator) {
+    final Set<ClassStructure> psiStructure;
+    if (psiStructureRepository.getStructureState().getValue()
+        instanceof PsiStructureState.Content content) {
+      psiStructure = content.getElements();
+    } else {
+      psiStructure = new HashSet<>();
+    }
 
-      var messageBuilder = new MessageBuilder(project, text).withInlays(appliedTags);
+    final var appliedTags = tagManager.getTags().stream()
+        .filter(TagDetails::getSelected)
+        .collect(Collectors.toList());
 
-      List<ReferencedFile> referencedFiles = getReferencedFiles(appliedTags);
-      if (!referencedFiles.isEmpty()) {
-        messageBuilder.withReferencedFiles(referencedFiles);
-      }
+    var messageBuilder = new MessageBuilder(project, text).withInlays(appliedTags, indicator);
 
-      List<UUID> conversationHistoryIds = getConversationHistoryIds(appliedTags);
-      if (!conversationHistoryIds.isEmpty()) {
-        messageBuilder.withConversationHistoryIds(conversationHistoryIds);
-      }
+    List<ReferencedFile> referencedFiles = getReferencedFiles(appliedTags);
+    if (!referencedFiles.isEmpty()) {
+      messageBuilder.withReferencedFiles(referencedFiles);
+    }
 
-      String attachedImagePath = CodeGPTKeys.IMAGE_ATTACHMENT_FILE_PATH.get(project);
-      if (attachedImagePath != null) {
-        messageBuilder.withImage(attachedImagePath);
-      }
+    List<UUID> conversationHistoryIds = getConversationHistoryIds(appliedTags);
+    if (!conversationHistoryIds.isEmpty()) {
+      messageBuilder.withConversationHistoryIds(conversationHistoryIds);
+    }
+
+    String attachedImagePath = CodeGPTKeys.IMAGE_ATTACHMENT_FILE_PATH.get(project);
+    if (attachedImagePath != null) {
+      messageBuilder.withImage(attachedImagePath);
+    }
 
-      application.invokeLater(() -> {
-        sendMessage(messageBuilder.build(), ConversationType.DEFAULT, psiStructure);
-      });
+    ApplicationManager.getApplication().invokeLater(() -> {
+      sendMessage(messageBuilder.build(), ConversationType.DEFAULT, psiStructure);
     });
-    return Unit.INSTANCE;
   }
 
   private Unit handleCancel() {
+    var indicator = contextIndicator;
+    if (indicator != null) {
+      indicator.cancel();
+    }
     if (requestHandler != null) {
       requestHandler.cancel();
     }
@@ -618,15 +646,26 @@ public class ChatToolWindowTabPanel implements Disposable {
 
   private void displayConversation() {
     clearWindow();
-    conversation.getMessages().forEach(message -> {
-      var messagePanel = toolWindowScrollablePanel.addMessage(message.getId());
-      messagePanel.add(getUserMessagePanel(message));
-      messagePanel.add(getResponseMessagePanel(message));
-    });
+    conversation.getMessages().forEach(message -> toolWindowScrollablePanel.addLazyMessage(
+        message.getId(),
+        parentDisposable -> List.of(
+            getUserMessagePanel(message, parentDisposable),
+            getResponseMessagePanel(message, parentDisposable)),
+        estimateMessageHeight(message),
+        this));
+  }
+
+  private static int estimateMessageHeight(Message message) {
+    var lines = countLines(message.getPrompt()) + countLines(message.getResponse());
+    return JBUI.scale(MESSAGE_HEADER_HEIGHT + Math.min(lines, MAX_ESTIMATED_LINES) * LINE_HEIGHT);
   }
 
-  private UserMessagePanel getUserMessagePanel(Message message) {
-    var userMessagePanel = new UserMessagePanel(project, message, this);
+  private static int countLines(@Nullable String text) {
+    return text == null ? 0 : (int) text.lines().count();
+  }
+
+  private UserMessagePanel getUserMessagePanel(Message message, Disposable parentDisposable) {
+    var userMessagePanel = new UserMessagePanel(project, message, parentDisposable);
     userMessagePanel.addCopyAction(() -> CopyAction.copyToClipboard(message.getPrompt()));
     userMessagePanel.addReloadAction(() -> reloadMessage(
         ChatCompletionParameters.builder(conversation, message)
@@ -639,10 +678,12 @@ public class ChatToolWindowTabPanel implements Disposable {
     return userMessagePanel;
   }
 
-  private ResponseMessagePanel getResponseMessagePanel(Message message) {
+  private ResponseMessagePanel getResponseMessagePanel(
+      Message message,
+      Disposable parentDisposable) {
     var response = message.getResponse() == null ? "" : message.getResponse();
     var messageResponseBody =
-        new ChatMessageResponseBody(project, false, this).withResponse(response);
+        new ChatMessageResponseBody(project, false, parentDisposable).withResponse(response);
 
     var responseMessagePanel = new ResponseMessagePanel();
     responseMessagePanel.setResponseContent(messageResponseBody);
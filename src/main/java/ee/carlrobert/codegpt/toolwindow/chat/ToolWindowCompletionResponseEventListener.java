@@ -3,6 +3,7 @@ package ee.carlrobert.codegpt.toolwindow.chat;
 import static com.intellij.openapi.ui.Messages.OK;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import ee.carlrobert.codegpt.EncodingManager;
 import ee.carlrobert.codegpt.codecompletions.CompletionProgressNotifier;
@@ -14,19 +15,20 @@ import ee.carlrobert.codegpt.conversations.message.Message;
 import ee.carlrobert.codegpt.events.CodeGPTEvent;
 import ee.carlrobert.codegpt.telemetry.TelemetryAction;
 import ee.carlrobert.codegpt.toolwindow.chat.ui.ChatMessageResponseBody;
+import ee.carlrobert.codegpt.toolwindow.chat.ui.ResponseRenderScheduler;
 import ee.carlrobert.codegpt.toolwindow.chat.ui.textarea.TotalTokensPanel;
 import ee.carlrobert.codegpt.toolwindow.ui.ResponseMessagePanel;
 import ee.carlrobert.codegpt.toolwindow.ui.UserMessagePanel;
 import ee.carlrobert.codegpt.ui.OverlayUtil;
 import ee.carlrobert.codegpt.ui.textarea.UserInputPanel;
 import ee.carlrobert.llm.client.openai.completion.ErrorDetails;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import javax.swing.Timer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 abstract class ToolWindowCompletionResponseEventListener implements
     CompletionResponseEventListener {
 
-  private static final int UPDATE_INTERVAL_MS = 20;
+  private static final Logger LOG =
+      Logger.getInstance(ToolWindowCompletionResponseEventListener.class);
 
   private final Project project;
   private final StringBuilder messageBuilder = new StringBuilder();
@@ -37,9 +39,9 @@ abstract class ToolWindowCompletionResponseEventListener implements
   private final TotalTokensPanel totalTokensPanel;
   private final UserInputPanel textArea;
 
-  private final Timer updateTimer = new Timer(UPDATE_INTERVAL_MS, e -> processBufferedMessages());
-  private final ConcurrentLinkedQueue<String> messageBuffer = new ConcurrentLinkedQueue<>();
-  private boolean stopped = false;
+  private final ResponseRenderScheduler renderScheduler =
+      new ResponseRenderScheduler(this::renderMessage);
+  private final AtomicInteger pendingTokens = new AtomicInteger();
   private boolean streamResponseReceived = false;
 
   public ToolWindowCompletionResponseEventListener(
@@ -68,22 +70,14 @@ abstract class ToolWindowCompletionResponseEventListener implements
     return responseContainer;
   }
 
-  @Override
-  public void handleRequestOpen() {
-    updateTimer.start();
-  }
-
   @Override
   public void handleMessage(String partialMessage) {
     streamResponseReceived = true;
 
     try {
       messageBuilder.append(partialMessage);
-      var ongoingTokens = encodingManager.countTokens(partialMessage);
-      messageBuffer.offer(partialMessage);
-      ApplicationManager.getApplication().invokeLater(() ->
-          totalTokensPanel.update(totalTokensPanel.getTokenDetails().getTotal() + ongoingTokens)
-      );
+      pendingTokens.addAndGet(encodingManager.countTokens(partialMessage));
+      renderScheduler.offer(partialMessage);
     } catch (Exception e) {
       var container = getResponseContainer();
       if (container != null) {
@@ -162,28 +156,27 @@ abstract class ToolWindowCompletionResponseEventListener implements
     }
   }
 
-  private void processBufferedMessages() {
-    if (messageBuffer.isEmpty()) {
-      if (stopped) {
-        updateTimer.stop();
-      }
-      return;
-    }
-
-    StringBuilder accumulatedMessage = new StringBuilder();
-    String message;
-    while ((message = messageBuffer.poll()) != null) {
-      accumulatedMessage.append(message);
-    }
-
+  private void renderMessage(String message) {
     var container = getResponseContainer();
     if (container != null) {
-      container.updateMessage(accumulatedMessage.toString());
+      container.updateMessage(message);
+    }
+
+    var ongoingTokens = pendingTokens.getAndSet(0);
+    if (ongoingTokens > 0) {
+      totalTokensPanel.update(totalTokensPanel.getTokenDetails().getTotal() + ongoingTokens);
     }
   }
 
   private void stopStreaming(ChatMessageResponseBody responseContainer) {
-    stopped = true;
+    renderScheduler.flush();
+    renderScheduler.stop();
+    if (LOG.isDebugEnabled()) {
+      var stats = renderScheduler.getStats();
+      LOG.debug(String.format("Rendered %d deltas in %d flushes, %d ms on EDT",
+          stats.deltas(), stats.flushes(), stats.edtTimeMillis()));
+    }
+
     textArea.setSubmitEnabled(true);
     userMessagePanel.enableAllActions(true);
     responsePanel.enableAllActions(true);
@@ -90,6 +90,7 @@ public class ChatMessageResponseBody extends JPanel {
   private ResponseEditorPanel currentlyProcessedEditorPanel;
   private JEditorPane currentlyProcessedTextPane;
   private JPanel webpageListPanel;
+  private Segment lastStreamedSegment;
 
   private JPanel createLoadingPanel() {
     return new BorderLayoutPanel()
@@ -160,6 +161,7 @@ public class ChatMessageResponseBody extends JPanel {
   public void addToolStatusPanel(JPanel panel) {
     currentlyProcessedTextPane = null;
     currentlyProcessedEditorPanel = null;
+    lastStreamedSegment = null;
     streamOutputParser.clear();
     contentPanel.add(panel);
   }
@@ -170,9 +172,31 @@ public class ChatMessageResponseBody extends JPanel {
     }
 
     var parsedResponse = streamOutputParser.parse(partialMessage);
-    for (Segment item : parsedResponse) {
+    for (int i = 0; i < parsedResponse.size(); i++) {
+      var item = parsedResponse.get(i);
+      var next = i + 1 < parsedResponse.size() ? parsedResponse.get(i + 1) : null;
+      if (isSupersededBy(item, next) || item.equals(lastStreamedSegment)) {
+        continue;
+      }
       processResponse(item, true);
+      lastStreamedSegment = item;
+    }
+  }
+
+  /**
+   * Streamed segments carry the full content of the block they belong to, so a progress update
+   * immediately followed by another one of the same kind doesn't need to be rendered. The content
+   * of a skipped update is never read, so it is never copied out of the parser.
+   */
+  private static boolean isSupersededBy(Segment item, Segment next) {
+    if (next == null || item.getClass() != next.getClass()) {
+      return false;
     }
+    return item instanceof Text
+        || item instanceof Thinking
+        || item instanceof Code
+        || item instanceof SearchWaiting
+        || item instanceof ReplaceWaiting;
   }
 
   public void displayMissingCredential() {
@@ -243,6 +267,7 @@ public class ChatMessageResponseBody extends JPanel {
 
   public void clear() {
     contentPanel.removeAll();
+    lastStreamedSegment = null;
     streamOutputParser.clear();
     loadingLabel.setVisible(false);
 
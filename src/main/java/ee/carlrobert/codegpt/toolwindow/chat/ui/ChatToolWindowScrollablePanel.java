@@ -2,6 +2,8 @@ package ee.carlrobert.codegpt.toolwindow.chat.ui;
 
 import static javax.swing.event.HyperlinkEvent.EventType.ACTIVATED;
 
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.options.ShowSettingsUtil;
 import com.intellij.openapi.roots.ui.componentsList.components.ScrollablePanel;
 import com.intellij.openapi.roots.ui.componentsList.layout.VerticalStackLayout;
@@ -20,14 +22,33 @@ import java.awt.Rectangle;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import javax.swing.BoxLayout;
 import javax.swing.JComponent;
 import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeListener;
 
 public class ChatToolWindowScrollablePanel extends ScrollablePanel {
 
+  private static final Logger LOG = Logger.getInstance(ChatToolWindowScrollablePanel.class);
+
+  /**
+   * Messages within this many viewport heights of the visible area are rendered, and messages
+   * further away than {@link #RELEASE_DISTANCE} viewport heights are released.
+   */
+  private static final int OVERSCAN = 1;
+  private static final int RELEASE_DISTANCE = 3;
+
   private final Map<UUID, JPanel> visibleMessagePanels = new HashMap<>();
+  private final ChangeListener viewportListener = event -> scheduleLazyMessageUpdate();
+  private JViewport viewport;
+  private boolean lazyMessageUpdateScheduled;
+  private long lazyMessagesAddedNanos = -1;
 
   public ChatToolWindowScrollablePanel() {
     super(new VerticalStackLayout());
@@ -67,11 +88,34 @@ public class ChatToolWindowScrollablePanel extends ScrollablePanel {
   }
 
   public ResponseMessagePanel getResponseMessagePanel(UUID messageId) {
-    return (ResponseMessagePanel) Arrays.stream(visibleMessagePanels.get(messageId).getComponents())
+    var messagePanel = visibleMessagePanels.get(messageId);
+    if (messagePanel instanceof LazyMessagePanel lazyMessagePanel) {
+      lazyMessagePanel.pin();
+    }
+    return (ResponseMessagePanel) Arrays.stream(messagePanel.getComponents())
         .filter(ResponseMessagePanel.class::isInstance)
         .findFirst().orElseThrow();
   }
 
+  /**
+   * Adds a message whose components are created once it scrolls into view, and disposed when it
+   * scrolls far out of it.
+   */
+  public JPanel addLazyMessage(
+      UUID messageId,
+      Function<Disposable, List<JComponent>> contentFactory,
+      int estimatedHeight,
+      Disposable parentDisposable) {
+    var messagePanel = new LazyMessagePanel(contentFactory, estimatedHeight, parentDisposable);
+    add(messagePanel);
+    visibleMessagePanels.put(messageId, messagePanel);
+    if (lazyMessagesAddedNanos == -1) {
+      lazyMessagesAddedNanos = System.nanoTime();
+    }
+    scheduleLazyMessageUpdate();
+    return messagePanel;
+  }
+
   public JPanel addMessage(UUID messageId) {
     var messageWrapper = new JPanel();
     messageWrapper.setLayout(new BoxLayout(messageWrapper, BoxLayout.PAGE_AXIS));
@@ -81,13 +125,21 @@ public class ChatToolWindowScrollablePanel extends ScrollablePanel {
   }
 
   public void removeMessage(UUID messageId) {
-    remove(visibleMessagePanels.get(messageId));
+    var messagePanel = visibleMessagePanels.get(messageId);
+    if (messagePanel instanceof LazyMessagePanel lazyMessagePanel) {
+      lazyMessagePanel.release();
+    }
+    remove(messagePanel);
     update();
     visibleMessagePanels.remove(messageId);
   }
 
   public void clearAll() {
+    visibleMessagePanels.values().stream()
+        .filter(LazyMessagePanel.class::isInstance)
+        .forEach(panel -> ((LazyMessagePanel) panel).release());
     visibleMessagePanels.clear();
+    lazyMessagesAddedNanos = -1;
     removeAll();
     update();
   }
@@ -101,6 +153,80 @@ public class ChatToolWindowScrollablePanel extends ScrollablePanel {
     revalidate();
   }
 
+  @Override
+  public void addNotify() {
+    super.addNotify();
+    if (getParent() instanceof JViewport parentViewport) {
+      viewport = parentViewport;
+      viewport.addChangeListener(viewportListener);
+      scheduleLazyMessageUpdate();
+    }
+  }
+
+  @Override
+  public void removeNotify() {
+    if (viewport != null) {
+      viewport.removeChangeListener(viewportListener);
+      viewport = null;
+    }
+    super.removeNotify();
+  }
+
+  private void scheduleLazyMessageUpdate() {
+    if (lazyMessageUpdateScheduled) {
+      return;
+    }
+    lazyMessageUpdateScheduled = true;
+    SwingUtilities.invokeLater(() -> {
+      lazyMessageUpdateScheduled = false;
+      updateLazyMessages();
+    });
+  }
+
+  private void updateLazyMessages() {
+    if (viewport == null || viewport.getHeight() == 0) {
+      return;
+    }
+
+    var viewRect = viewport.getViewRect();
+    var renderRect = expand(viewRect, viewRect.height * OVERSCAN);
+    var keepRect = expand(viewRect, viewRect.height * RELEASE_DISTANCE);
+    var rendered = 0;
+    var changed = false;
+    for (var component : getComponents()) {
+      if (component instanceof LazyMessagePanel messagePanel) {
+        var bounds = messagePanel.getBounds();
+        if (!messagePanel.isRendered() && bounds.intersects(renderRect)) {
+          messagePanel.render();
+          changed = true;
+        } else if (messagePanel.isRendered()
+            && !messagePanel.isPinned()
+            && !bounds.intersects(keepRect)) {
+          messagePanel.release();
+          changed = true;
+        }
+        if (messagePanel.isRendered()) {
+          rendered++;
+        }
+      }
+    }
+
+    if (lazyMessagesAddedNanos != -1 && rendered > 0) {
+      LOG.info(String.format("Rendered %d of %d messages in %d ms",
+          rendered,
+          visibleMessagePanels.size(),
+          TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lazyMessagesAddedNanos)));
+      lazyMessagesAddedNanos = -1;
+    }
+    if (changed) {
+      update();
+    }
+  }
+
+  private static Rectangle expand(Rectangle rect, int amount) {
+    return new Rectangle(rect.x, rect.y - amount, rect.width, rect.height + 2 * amount);
+  }
+
   public JPanel getLastComponent() {
     var comp = getComponents()[getComponentCount() - 1];
     if (comp instanceof JPanel panel) {
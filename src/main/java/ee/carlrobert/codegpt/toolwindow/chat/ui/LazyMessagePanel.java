@@ -0,0 +1,89 @@
+package ee.carlrobert.codegpt.toolwindow.chat.ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.util.Disposer;
+import java.awt.Dimension;
+import java.util.List;
+import java.util.function.Function;
+import javax.swing.BoxLayout;
+import javax.swing.JComponent;
+import javax.swing.JPanel;
+
+/**
+ * Message of a conversation loaded from history, whose components are created only while it is
+ * near the visible part of the chat.
+ *
+ * <p>Until it is rendered, and after it is released, the panel is an empty placeholder with the
+ * height the message last had, or an estimate if it was never rendered, so that the scroll position
+ * doesn't jump. Releasing disposes the message's components, including its code block editors.
+ */
+public class LazyMessagePanel extends JPanel {
+
+  private final Function<Disposable, List<JComponent>> contentFactory;
+  private final Disposable parentDisposable;
+  private int placeholderHeight;
+  private Disposable contentDisposable;
+  private boolean pinned;
+
+  /**
+   * @param contentFactory Creates the components of the message, with the given disposable as
+   *                       their parent.
+   */
+  public LazyMessagePanel(
+      Function<Disposable, List<JComponent>> contentFactory,
+      int estimatedHeight,
+      Disposable parentDisposable) {
+    this.contentFactory = contentFactory;
+    this.placeholderHeight = estimatedHeight;
+    this.parentDisposable = parentDisposable;
+    setLayout(new BoxLayout(this, BoxLayout.PAGE_AXIS));
+    setOpaque(false);
+  }
+
+  public boolean isRendered() {
+    return contentDisposable != null;
+  }
+
+  /**
+   * Whether the message must stay rendered, e.g. because a response is being streamed into it.
+   */
+  public boolean isPinned() {
+    return pinned;
+  }
+
+  public void pin() {
+    render();
+    pinned = true;
+  }
+
+  public void render() {
+    if (isRendered()) {
+      return;
+    }
+    contentDisposable = Disposer.newDisposable("LazyMessagePanel");
+    Disposer.register(parentDisposable, contentDisposable);
+    contentFactory.apply(contentDisposable).forEach(this::add);
+    revalidate();
+  }
+
+  public void release() {
+    if (!isRendered()) {
+      return;
+    }
+    if (getHeight() > 0) {
+      placeholderHeight = getHeight();
+    }
+    removeAll();
+    Disposer.dispose(contentDisposable);
+    contentDisposable = null;
+    revalidate();
+  }
+
+  @Override
+  public Dimension getPreferredSize() {
+    if (isRendered()) {
+      return super.getPreferredSize();
+    }
+    return new Dimension(super.getPreferredSize().width, placeholderHeight);
+  }
+}
@@ -0,0 +1,107 @@
+package ee.carlrobert.codegpt.toolwindow.chat.ui;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Batches streamed response deltas and renders them on the EDT at most once per frame. Deltas
+ * that open or close a code block or a thinking section are rendered right away, so structural
+ * changes never wait for the next frame.
+ */
+public final class ResponseRenderScheduler {
+
+  public static final int FRAME_INTERVAL_MS = 16;
+
+  private static final String[] SEGMENT_BOUNDARIES = {"```", "<think>", "</think>"};
+
+  private final Consumer<String> renderer;
+  private final ConcurrentLinkedQueue<String> pendingDeltas = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final AtomicInteger deltaCount = new AtomicInteger();
+  private final Timer frameTimer;
+
+  private long edtTimeNanos;
+  private int flushCount;
+
+  public ResponseRenderScheduler(Consumer<String> renderer) {
+    this.renderer = renderer;
+    this.frameTimer = new Timer(FRAME_INTERVAL_MS, e -> flush());
+    this.frameTimer.setRepeats(false);
+  }
+
+  /**
+   * Queues a delta for rendering. Can be called from any thread.
+   */
+  public void offer(String delta) {
+    if (delta.isEmpty()) {
+      return;
+    }
+
+    pendingDeltas.offer(delta);
+    deltaCount.incrementAndGet();
+    if (isSegmentBoundary(delta)) {
+      SwingUtilities.invokeLater(this::flush);
+    } else if (flushScheduled.compareAndSet(false, true)) {
+      frameTimer.restart();
+    }
+  }
+
+  /**
+   * Renders all queued deltas at once. Must be called on the EDT.
+   */
+  public void flush() {
+    flushScheduled.set(false);
+    if (pendingDeltas.isEmpty()) {
+      return;
+    }
+
+    var accumulatedMessage = new StringBuilder();
+    String delta;
+    while ((delta = pendingDeltas.poll()) != null) {
+      accumulatedMessage.append(delta);
+    }
+
+    long startTime = System.nanoTime();
+    try {
+      renderer.accept(accumulatedMessage.toString());
+    } finally {
+      edtTimeNanos += System.nanoTime() - startTime;
+      flushCount++;
+    }
+  }
+
+  public void stop() {
+    frameTimer.stop();
+    flushScheduled.set(false);
+  }
+
+  /**
+   * Returns the rendering statistics collected so far. Must be called on the EDT.
+   */
+  public RenderStats getStats() {
+    return new RenderStats(deltaCount.get(), flushCount, edtTimeNanos / 1_000_000);
+  }
+
+  private static boolean isSegmentBoundary(String delta) {
+    for (var boundary : SEGMENT_BOUNDARIES) {
+      if (delta.contains(boundary)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Rendering statistics of a single response.
+   *
+   * @param deltas        Number of deltas received.
+   * @param flushes       Number of times the response was rendered.
+   * @param edtTimeMillis Total time spent rendering on the EDT.
+   */
+  public record RenderStats(int deltas, int flushes, long edtTimeMillis) {
+  }
+}
@@ -11,10 +11,26 @@ public class DownloadingUtil {
 
   private static final int BYTES_IN_MB = 1024 * 1024;
 
-  public static String getFormattedDownloadProgress(long startTime, long fileSize, long bytesRead) {
-    long timeElapsed = System.currentTimeMillis() - startTime;
+  /**
+   * @param fileSize     Size of the file, or zero or less if the server didn't report it.
+   * @param resumedBytes Bytes downloaded before {@code startTime}, which don't count towards the
+   *                     download speed.
+   */
+  public static String getFormattedDownloadProgress(
+      long startTime,
+      long fileSize,
+      long bytesRead,
+      long resumedBytes) {
+    long timeElapsed = Math.max(1, System.currentTimeMillis() - startTime);
+
+    double speed = ((double) (bytesRead - resumedBytes) / timeElapsed) * 1000 / BYTES_IN_MB;
+    if (fileSize <= 0) {
+      return format(
+          "%s, Speed: %.2f MB/sec",
+          FileUtil.convertFileSize(bytesRead),
+          speed);
+    }
 
-    double speed = ((double) bytesRead / timeElapsed) * 1000 / BYTES_IN_MB;
     double percent = (double) bytesRead / fileSize * 100;
     double downloadedMB = (double) bytesRead / BYTES_IN_MB;
     double totalMB = (double) fileSize / BYTES_IN_MB;
@@ -11,6 +11,7 @@ import com.intellij.openapi.components.service
 import com.intellij.openapi.editor.EditorKind
 import com.intellij.openapi.util.TextRange
 import ee.carlrobert.codegpt.codecompletions.CodeCompletionService
+import ee.carlrobert.codegpt.codecompletions.DocumentSnapshot
 import ee.carlrobert.codegpt.nextedit.NextEditCoordinator
 import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
@@ -44,8 +45,13 @@ class CodeGPTLookupListener : LookupManagerListener {
                             InlineCompletionEvent.DirectCall(editor, editor.caretModel.currentCaret)
                         )
                     } else {
+                        val snapshot = DocumentSnapshot.capture(editor)
                         coroutineScope.launch {
-                            NextEditCoordinator.requestNextEdit(editor, editor.document.text, offset)
+                            NextEditCoordinator.requestNextEdit(
+                                editor,
+                                snapshot.content,
+                                snapshot.caretOffset
+                            )
                         }
                     }
                 }
@@ -8,6 +8,7 @@ import com.intellij.openapi.util.TextRange
 import com.intellij.psi.PsiDocumentManager
 import com.intellij.psi.PsiFile
 import com.intellij.psi.PsiReference
+import java.util.concurrent.TimeUnit
 
 data class UnresolvedSymbol(
     val name: String,
@@ -22,31 +23,61 @@ object AutoImportOrchestrator {
         KtResolver(),
     )
 
+    private val logger = thisLogger()
+
+    private class ImportPreview(
+        val resolver: AutoImportResolver,
+        val clonedPsiFile: PsiFile,
+        val unresolvedImports: Map<UnresolvedSymbol, List<String>>,
+    )
+
     /**
      * Preview imports by cloning the current editor file's PSI, finding unresolved imports within [range],
      * applying the best candidates to the clone, and returning the resulting content and list of added import FQNs.
      * Note: This does not modify the original editor file.
+     *
+     * Candidates of all symbols are gathered in a single read action, and all imports are applied
+     * to the clone in a single write command.
      */
     fun previewImports(editor: Editor, range: TextRange? = null): String? {
         val project = editor.project ?: return null
-        val psiFile =
-            runReadAction { PsiDocumentManager.getInstance(project).getPsiFile(editor.document) }
-                ?: return null
-        val clonedPsiFile = psiFile.copy() as? PsiFile ?: return null
-        val rangeToUse = range ?: runReadAction { TextRange(0, editor.document.textLength) }
-        val resolver = resolvers.firstOrNull { it.supports(clonedPsiFile) } ?: return null
-
-        runReadAction { resolver.getUnresolvedImports(psiFile, rangeToUse) }
-            .forEach { symbol, imports ->
-                WriteCommandAction.runWriteCommandAction(project) {
+        val startTime = System.nanoTime()
+        val preview = runReadAction {
+            val psiFile = PsiDocumentManager.getInstance(project).getPsiFile(editor.document)
+                ?: return@runReadAction null
+            val resolver = resolvers.firstOrNull { it.supports(psiFile) }
+                ?: return@runReadAction null
+            val clonedPsiFile = psiFile.copy() as? PsiFile ?: return@runReadAction null
+            val rangeToUse = range ?: TextRange(0, editor.document.textLength)
+            ImportPreview(
+                resolver,
+                clonedPsiFile,
+                resolver.getUnresolvedImports(psiFile, rangeToUse)
+            )
+        } ?: return null
+        val resolvedTime = System.nanoTime()
+
+        val symbols = preview.unresolvedImports.entries.distinctBy { it.key.name }
+        if (symbols.any { it.value.isNotEmpty() }) {
+            WriteCommandAction.runWriteCommandAction(project) {
+                symbols.forEach { (_, imports) ->
                     for (import in imports) {
-                        if (resolver.applyImport(clonedPsiFile, import)) {
+                        if (preview.resolver.applyImport(preview.clonedPsiFile, import)) {
                             break
                         }
                     }
                 }
             }
+        }
 
-        return runReadAction { clonedPsiFile.text }
+        if (logger.isDebugEnabled) {
+            val resolveMillis = TimeUnit.NANOSECONDS.toMillis(resolvedTime - startTime)
+            val applyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resolvedTime)
+            logger.debug(
+                "Resolved ${symbols.size} symbols in $resolveMillis ms, applied imports in " +
+                        "$applyMillis ms, ${ImportCandidateCache.getInstance(project).getStats()}"
+            )
+        }
+        return runReadAction { preview.clonedPsiFile.text }
     }
 }
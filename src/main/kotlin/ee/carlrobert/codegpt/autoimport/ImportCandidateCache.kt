@@ -0,0 +1,121 @@
+package ee.carlrobert.codegpt.autoimport
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.project.DumbService
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.SimpleModificationTracker
+import com.intellij.openapi.roots.ModuleRootEvent
+import com.intellij.openapi.roots.ModuleRootListener
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.psi.search.PsiShortNamesCache
+import com.intellij.psi.util.CachedValue
+import com.intellij.psi.util.CachedValueProvider
+import com.intellij.psi.util.CachedValuesManager
+import com.intellij.psi.util.PsiModificationTracker
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Qualified names of the classes with a given short name, as found by [PsiShortNamesCache].
+ *
+ * The cache is cleared whenever the indexes may have changed: when the structure of a Java or
+ * Kotlin file changes, e.g. a class is added to an existing file, when project roots change, when
+ * indexing finishes, and when files are created, deleted, moved or renamed. Names without any
+ * class are not cached, since they are usually classes that are still being written.
+ */
+@Service(Service.Level.PROJECT)
+class ImportCandidateCache(private val project: Project) : Disposable {
+
+    companion object {
+        private val CLASS_LANGUAGE_IDS = setOf("JAVA", "kotlin")
+
+        @JvmStatic
+        fun getInstance(project: Project): ImportCandidateCache = project.service()
+    }
+
+    data class CacheStats(val hits: Long, val misses: Long)
+
+    private val invalidations = SimpleModificationTracker()
+    private val qualifiedNamesByShortName: CachedValue<ConcurrentHashMap<String, List<String>>> =
+        CachedValuesManager.getManager(project).createCachedValue {
+            CachedValueProvider.Result.create(
+                ConcurrentHashMap(),
+                PsiModificationTracker.getInstance(project)
+                    .forLanguages { it.id in CLASS_LANGUAGE_IDS },
+                invalidations
+            )
+        }
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    init {
+        val connection = project.messageBus.connect(this)
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+            override fun after(events: MutableList<out VFileEvent>) {
+                if (events.any { isStructuralChange(it) }) {
+                    invalidate()
+                }
+            }
+        })
+        connection.subscribe(ModuleRootListener.TOPIC, object : ModuleRootListener {
+            override fun rootsChanged(event: ModuleRootEvent) {
+                invalidate()
+            }
+        })
+        connection.subscribe(DumbService.DUMB_MODE, object : DumbService.DumbModeListener {
+            override fun exitDumbMode() {
+                invalidate()
+            }
+        })
+    }
+
+    /**
+     * Returns the qualified names of all classes named [shortName]. Must be called in a read
+     * action.
+     */
+    fun getQualifiedNames(shortName: String): List<String> {
+        val cached = qualifiedNamesByShortName.value
+        cached[shortName]?.let {
+            hits.incrementAndGet()
+            return it
+        }
+
+        misses.incrementAndGet()
+        val qualifiedNames = PsiShortNamesCache.getInstance(project)
+            .getClassesByName(shortName, GlobalSearchScope.allScope(project))
+            .mapNotNull { it.qualifiedName }
+            .distinct()
+        if (qualifiedNames.isNotEmpty() && !DumbService.isDumb(project)) {
+            cached[shortName] = qualifiedNames
+        }
+        return qualifiedNames
+    }
+
+    fun getStats(): CacheStats = CacheStats(hits.get(), misses.get())
+
+    fun invalidate() {
+        invalidations.incModificationCount()
+    }
+
+    override fun dispose() {
+        invalidate()
+    }
+
+    private fun isStructuralChange(event: VFileEvent): Boolean {
+        return event is VFileCreateEvent
+                || event is VFileDeleteEvent
+                || event is VFileMoveEvent
+                || event is VFileCopyEvent
+                || (event is VFilePropertyChangeEvent && event.isRename)
+    }
+}
@@ -6,8 +6,6 @@ import com.intellij.openapi.util.TextRange
 import com.intellij.psi.*
 import com.intellij.psi.codeStyle.CodeStyleManager
 import com.intellij.psi.codeStyle.JavaCodeStyleManager
-import com.intellij.psi.search.GlobalSearchScope
-import com.intellij.psi.search.PsiShortNamesCache
 
 internal class JavaResolver : AutoImportResolver {
     override fun supports(file: PsiFile): Boolean = file is PsiJavaFile
@@ -17,6 +15,7 @@ internal class JavaResolver : AutoImportResolver {
         searchRange: TextRange
     ): Map<UnresolvedSymbol, List<String>> {
         val result = mutableMapOf<UnresolvedSymbol, List<String>>()
+        val candidatesByName = mutableMapOf<String, List<String>>()
         file.accept(object : JavaRecursiveElementWalkingVisitor() {
             override fun visitReferenceElement(referenceElement: PsiJavaCodeReferenceElement) {
                 super.visitReferenceElement(referenceElement)
@@ -29,7 +28,9 @@ internal class JavaResolver : AutoImportResolver {
                     if (name.isNotBlank()) {
                         val range = referenceElement.textRange ?: TextRange.EMPTY_RANGE
                         val symbol = UnresolvedSymbol(name, referenceElement as PsiReference, range)
-                        result.put(symbol, bestCandidatesFor(symbol, file))
+                        result[symbol] = candidatesByName.getOrPut(name) {
+                            bestCandidatesFor(symbol, file)
+                        }
                     }
                 }
             }
@@ -63,11 +64,10 @@ internal class JavaResolver : AutoImportResolver {
 
     private fun bestCandidatesFor(symbol: UnresolvedSymbol, file: PsiFile): List<String> {
         if (file !is PsiJavaFile) return emptyList()
-        val project = file.project
-        val scope = GlobalSearchScope.allScope(project)
-        val classes = runReadAction {
-            PsiShortNamesCache.getInstance(project).getClassesByName(symbol.name, scope)
+        val qualifiedNames = runReadAction {
+            ImportCandidateCache.getInstance(file.project).getQualifiedNames(symbol.name)
         }
+        if (qualifiedNames.isEmpty()) return emptyList()
 
         val alreadyImported: Set<String> = buildSet {
             val list = runReadAction { file.importList }
@@ -78,7 +78,7 @@ internal class JavaResolver : AutoImportResolver {
         }
         val currentPackage = runReadAction { file.packageName }
 
-        return classes.mapNotNull { runReadAction { it.qualifiedName } }
+        return qualifiedNames
             .filter { qn ->
                 val pkg = qn.substringBeforeLast('.', "")
                 pkg != currentPackage && qn !in alreadyImported
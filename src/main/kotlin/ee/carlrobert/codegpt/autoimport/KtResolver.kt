@@ -1,13 +1,10 @@
 package ee.carlrobert.codegpt.autoimport
 
 import com.intellij.openapi.util.TextRange
-import com.intellij.psi.JavaPsiFacade
 import com.intellij.psi.PsiElement
 import com.intellij.psi.PsiFile
 import com.intellij.psi.PsiReference
 import com.intellij.psi.codeStyle.CodeStyleManager
-import com.intellij.psi.search.GlobalSearchScope
-import com.intellij.psi.search.PsiShortNamesCache
 import org.jetbrains.kotlin.name.FqName
 import org.jetbrains.kotlin.psi.KtFile
 import org.jetbrains.kotlin.psi.KtPsiFactory
@@ -23,6 +20,7 @@ internal class KtResolver : AutoImportResolver {
         searchRange: TextRange
     ): Map<UnresolvedSymbol, List<String>> {
         val result = mutableMapOf<UnresolvedSymbol, List<String>>()
+        val candidatesByName = mutableMapOf<String, List<String>>()
         file.accept(object : KtTreeVisitorVoid() {
             override fun visitElement(element: PsiElement) {
                 super.visitElement(element)
@@ -38,7 +36,9 @@ internal class KtResolver : AutoImportResolver {
                             if (name.isNotBlank()) {
                                 val range = element.textRange ?: TextRange.EMPTY_RANGE
                                 val symbol = UnresolvedSymbol(name, ref, range)
-                                result.put(symbol, bestCandidatesFor(symbol, file))
+                                result[symbol] = candidatesByName.getOrPut(name) {
+                                    bestCandidatesFor(symbol, file)
+                                }
                             }
                         }
                     }
@@ -74,23 +74,15 @@ internal class KtResolver : AutoImportResolver {
 
     private fun bestCandidatesFor(symbol: UnresolvedSymbol, file: PsiFile): List<String> {
         if (file !is KtFile) return emptyList()
-        val project = file.project
-        val facade = JavaPsiFacade.getInstance(project)
-        val scope = GlobalSearchScope.allScope(project)
+        val qualifiedNames =
+            ImportCandidateCache.getInstance(file.project).getQualifiedNames(symbol.name)
+        if (qualifiedNames.isEmpty()) return emptyList()
 
-        val name = symbol.name
-        val classes = facade.findClasses(name, scope)
         val alreadyImported = file.importDirectives
             .mapNotNull { if (!it.isAllUnder) it.importedFqName?.asString() else null }
             .toSet()
 
-        val fromJavaFacade = classes.mapNotNull { it.qualifiedName }
-
-        val fromShortNamesCache = PsiShortNamesCache.getInstance(project)
-            .getClassesByName(name, scope)
-            .mapNotNull { it.qualifiedName }
-
-        return (fromJavaFacade + fromShortNamesCache)
+        return qualifiedNames
             .filter { qn -> qn !in alreadyImported }
             .distinct()
             .sortedByDescending { fqn -> getPackageScore(fqn) }
@@ -0,0 +1,79 @@
+package ee.carlrobert.codegpt.codecompletions
+
+/**
+ * Debounce delay for completion requests, learned from the user's typing rhythm and the provider's
+ * latency.
+ *
+ * A pause is assumed once the user hasn't typed for [PAUSE_FACTOR] times their usual interval
+ * between keystrokes, so fast typists get suggestions in short pauses and slow typists don't wait
+ * for a fixed window. A slow provider shortens the delay so that the delay and the request together
+ * stay within [LATENCY_BUDGET_MILLIS]. At likely pause points, such as after `(`, `=` or a
+ * newline, completions are prefetched with the minimum delay.
+ */
+class AdaptiveDebounce(
+    private val minDelayMillis: Long = MIN_DELAY_MILLIS,
+    private val maxDelayMillis: Long = MAX_DELAY_MILLIS,
+) {
+
+    companion object {
+        const val MIN_DELAY_MILLIS = 30L
+        const val MAX_DELAY_MILLIS = 400L
+
+        private const val PAUSE_FACTOR = 1.5
+        private const val LATENCY_BUDGET_MILLIS = 1_000.0
+        private const val SMOOTHING = 0.2
+        private const val INITIAL_TYPING_INTERVAL_MILLIS = 150.0
+        private const val INITIAL_PROVIDER_LATENCY_MILLIS = 400.0
+
+        /**
+         * Intervals longer than this are pauses rather than typing.
+         */
+        private const val MAX_TYPING_INTERVAL_MILLIS = 1_000L
+
+        private val PAUSE_CHARS = setOf('(', '=', '{', '\n')
+
+        /**
+         * Whether the user is likely to pause at the caret: the last character before it, ignoring
+         * spaces and tabs, opens a call, an assignment or a block, or ends a line.
+         */
+        fun isPausePoint(text: CharSequence, caretOffset: Int): Boolean {
+            var i = caretOffset.coerceAtMost(text.length) - 1
+            while (i >= 0 && (text[i] == ' ' || text[i] == '\t')) {
+                i--
+            }
+            return i >= 0 && text[i] in PAUSE_CHARS
+        }
+    }
+
+    private var typingIntervalMillis = INITIAL_TYPING_INTERVAL_MILLIS
+    private var providerLatencyMillis = INITIAL_PROVIDER_LATENCY_MILLIS
+    private var lastKeystrokeMillis = -1L
+
+    @Synchronized
+    fun onKeystroke(timeMillis: Long) {
+        val interval = timeMillis - lastKeystrokeMillis
+        if (lastKeystrokeMillis >= 0 && interval in 0..MAX_TYPING_INTERVAL_MILLIS) {
+            typingIntervalMillis = smooth(typingIntervalMillis, interval.toDouble())
+        }
+        lastKeystrokeMillis = timeMillis
+    }
+
+    @Synchronized
+    fun onProviderLatency(latencyMillis: Long) {
+        providerLatencyMillis = smooth(providerLatencyMillis, latencyMillis.toDouble())
+    }
+
+    @Synchronized
+    fun getDelayMillis(speculative: Boolean): Long {
+        if (speculative) {
+            return minDelayMillis
+        }
+        val pauseMillis = typingIntervalMillis * PAUSE_FACTOR
+        val remainingBudgetMillis = LATENCY_BUDGET_MILLIS - providerLatencyMillis
+        return minOf(pauseMillis, remainingBudgetMillis).toLong()
+            .coerceIn(minDelayMillis, maxDelayMillis)
+    }
+
+    private fun smooth(average: Double, sample: Double): Double =
+        average + SMOOTHING * (sample - average)
+}
@@ -1,77 +1,122 @@
 package ee.carlrobert.codegpt.codecompletions
 
-import com.google.common.cache.Cache
-import com.google.common.cache.CacheBuilder
+import com.intellij.openapi.Disposable
 import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.Service
+import com.intellij.openapi.editor.Document
 import com.intellij.openapi.editor.Editor
-import java.util.concurrent.ConcurrentHashMap
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.intellij.openapi.util.Disposer
+import java.util.concurrent.atomic.AtomicLong
 
 @Service(Service.Level.PROJECT)
-class CodeCompletionCacheService() {
-    private val cacheCounter = ConcurrentHashMap<String, Int>()
-    private val cache: Cache<String, String> = CacheBuilder.newBuilder()
-        .maximumSize(10)
-        .recordStats()
-        .build()
+class CodeCompletionCacheService : Disposable {
 
-    fun get(key: String): String? {
-        val value = cache.getIfPresent(key)
-        if (value != null) {
-            cache.invalidate(key)
-            cache.put(key, value)
-        }
-        return value
+    companion object {
+        private const val MAX_FILES = 20
+        private const val MAX_ENTRIES_PER_FILE = 16
+        private const val CONTEXT_LINES = 8
+        private const val MAX_CONTEXT_CHARS = 2_000
     }
 
-    fun clear() {
-        cache.invalidateAll()
-    }
+    data class CacheStats(
+        val hits: Long,
+        val misses: Long,
+        val evictedFiles: Long,
+        val files: Int,
+        val entries: Int,
+    )
 
-    fun delete(key: String) {
-        cache.invalidate(key)
-    }
+    private class IndexHolder(val index: FileCompletionIndex, val disposable: Disposable)
 
-    fun set(key: String, value: String) {
-        cache.put(key, value)
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val evictedFiles = AtomicLong()
+    private val indexes = object : LinkedHashMap<Document, IndexHolder>(MAX_FILES, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Document, IndexHolder>): Boolean {
+            if (size > MAX_FILES) {
+                Disposer.dispose(eldest.value.disposable)
+                evictedFiles.incrementAndGet()
+                return true
+            }
+            return false
+        }
     }
 
-    fun normalize(src: String): String {
-        return src.replace("\n", "").replace("\\s+".toRegex(), "").replace("\\s".toRegex(), "")
+    fun captureContext(snapshot: DocumentSnapshot): CompletionContext {
+        return CompletionContext.capture(
+            snapshot.text,
+            snapshot.caretOffset,
+            CONTEXT_LINES,
+            MAX_CONTEXT_CHARS
+        )
     }
 
-    fun getKey(prefix: String, suffix: String): String {
-        return if (suffix.isNotEmpty()) {
-            normalize("$prefix #### $suffix")
+    fun getCache(editor: Editor): String? {
+        val document = editor.document
+        val index = synchronized(indexes) { indexes[document]?.index }
+        if (index == null) {
+            misses.incrementAndGet()
+            return null
+        }
+
+        val completion = runReadAction {
+            index.find(document.immutableCharSequence, editor.caretModel.offset)
+        }
+        if (completion == null) {
+            misses.incrementAndGet()
         } else {
-            normalize(prefix)
+            hits.incrementAndGet()
         }
+        return completion
     }
 
-    fun getCache(editor: Editor): String? {
-        val caretOffset = runReadAction { editor.caretModel.offset }
-        val prefix = editor.document.text.substring(0, caretOffset)
-        val suffix = editor.document.text.substring(caretOffset)
-        return getCache(prefix, suffix)
+    fun setCache(
+        document: Document,
+        context: CompletionContext,
+        completion: String,
+        onServed: (() -> Unit)? = null
+    ) {
+        getOrCreateIndex(document).put(context, completion, onServed)
     }
 
-    fun getCache(prefix: String, suffix: String): String? {
-        val key = getKey(prefix, suffix)
-        if (cacheCounter.containsKey(key)) {
-            cacheCounter[key] = cacheCounter[key]!! + 1
-        } else {
-            cacheCounter[key] = 1
+    fun clear() {
+        synchronized(indexes) {
+            indexes.values.forEach { Disposer.dispose(it.disposable) }
+            indexes.clear()
         }
-        if (cacheCounter[key]!! > 3) {
-            cache.invalidate(key)
-            cacheCounter.remove(key)
+    }
+
+    fun getStats(): CacheStats {
+        return synchronized(indexes) {
+            CacheStats(
+                hits.get(),
+                misses.get(),
+                evictedFiles.get(),
+                indexes.size,
+                indexes.values.sumOf { it.index.size })
         }
+    }
 
-        return get(key)
+    override fun dispose() {
+        clear()
     }
 
-    fun setCache(prefix: String, suffix: String, completion: String) {
-        val key = getKey(prefix, suffix)
-        set(key, completion)
+    private fun getOrCreateIndex(document: Document): FileCompletionIndex {
+        synchronized(indexes) {
+            indexes[document]?.let { return it.index }
+
+            val index = FileCompletionIndex(MAX_ENTRIES_PER_FILE)
+            val disposable = Disposer.newDisposable("CodeCompletionCache")
+            Disposer.register(this, disposable)
+            document.addDocumentListener(object : DocumentListener {
+                override fun documentChanged(event: DocumentEvent) {
+                    index.onDocumentChange(event.offset, event.oldLength, event.newLength)
+                }
+            }, disposable)
+            indexes[document] = IndexHolder(index, disposable)
+            return index
+        }
     }
-}
\ No newline at end of file
+}
@@ -8,9 +8,9 @@ import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.editor.Editor
-import com.intellij.openapi.util.TextRange
 import ee.carlrobert.codegpt.CodeGPTKeys
 import ee.carlrobert.codegpt.nextedit.NextEditCoordinator
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
 import ee.carlrobert.codegpt.settings.service.ServiceType
@@ -25,6 +25,8 @@ import java.util.concurrent.atomic.AtomicBoolean
 class CodeCompletionEventListener(
     private val editor: Editor,
     private val channel: ProducerScope<InlineCompletionElement>,
+    private val snapshot: DocumentSnapshot = DocumentSnapshot.capture(editor),
+    private val triggerTimeMillis: Long = System.currentTimeMillis(),
 ) : CompletionEventListener<String> {
 
     companion object {
@@ -32,12 +34,19 @@ class CodeCompletionEventListener(
     }
 
     private val cancelled = AtomicBoolean(false)
+    private val shown = AtomicBoolean(false)
+    private val providerLatencyRecorded = AtomicBoolean(false)
     private val messageBuilder = StringBuilder()
-    private val cursorOffset = runReadAction { editor.caretModel.offset }
-    private val prefix = editor.document.getText(TextRange(0, cursorOffset))
-    private val suffix =
-        editor.document.getText(TextRange(cursorOffset, editor.document.textLength))
     private val cache = editor.project?.service<CodeCompletionCacheService>()
+    private val cacheContext = cache?.captureContext(snapshot)
+    private val requestStartTime = System.nanoTime()
+    private var firstTokenShown = false
+    private val streamingBuffer =
+        if (service<ConfigurationSettings>().state.codeCompletionSettings.streamingEnabled) {
+            StreamingCompletionBuffer(CodeCompletionFormatter(editor)::format)
+        } else {
+            null
+        }
 
     override fun onOpen() {
         setLoading(true)
@@ -48,7 +57,17 @@ class CodeCompletionEventListener(
             return
         }
 
+        recordProviderLatency()
         messageBuilder.append(message)
+
+        if (streamingBuffer != null) {
+            streamingBuffer.append(message)?.let { sendPartialCompletion(it) }
+            if (streamingBuffer.isFinished) {
+                cancelled.set(true)
+                cacheStreamedCompletion()
+                eventSource.cancel()
+            }
+        }
     }
 
     override fun onComplete(result: StringBuilder) {
@@ -59,10 +78,21 @@ class CodeCompletionEventListener(
             if (cancelled.get() || result.isEmpty()) {
                 return
             }
+            recordProviderLatency()
+
+            if (streamingBuffer != null) {
+                streamingBuffer.complete()?.let { sendPartialCompletion(it) }
+                cacheStreamedCompletion()
+                return
+            }
 
             var finalResult = CodeCompletionFormatter(editor).format(result.toString())
-            cache?.setCache(prefix, suffix, finalResult)
-            runInEdt { channel.trySend(InlineCompletionGrayTextElement(finalResult)) }
+            cacheCompletion(finalResult)
+            runInEdt {
+                if (channel.trySend(InlineCompletionGrayTextElement(finalResult)).isSuccess) {
+                    markShown(recordLatency = true)
+                }
+            }
         } finally {
             handleCompleted()
         }
@@ -74,6 +104,12 @@ class CodeCompletionEventListener(
     }
 
     override fun onError(error: ErrorDetails, ex: Throwable) {
+        if (streamingBuffer?.isFinished == true && cancelled.get()) {
+            setLoading(false)
+            closeChannel()
+            return
+        }
+
         val isCodeGPTService =
             service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION) == ServiceType.PROXYAI
         if (isCodeGPTService && "RATE_LIMIT_EXCEEDED" == error.code) {
@@ -88,16 +124,74 @@ class CodeCompletionEventListener(
         }
 
         setLoading(false)
-        channel.close()
+        closeChannel()
+    }
+
+    private fun sendPartialCompletion(text: String) {
+        if (!firstTokenShown) {
+            firstTokenShown = true
+            val elapsedMs = (System.nanoTime() - requestStartTime) / 1_000_000
+            if (service<ConfigurationSettings>().state.debugModeEnabled) {
+                logger.info("Time to first visible completion token: ${elapsedMs}ms")
+            }
+        }
+        runInEdt {
+            if (channel.trySend(InlineCompletionGrayTextElement(text)).isSuccess) {
+                markShown(recordLatency = true)
+            }
+        }
+    }
+
+    private fun cacheStreamedCompletion() {
+        cacheCompletion(streamingBuffer?.emitted ?: return)
+    }
+
+    private fun cacheCompletion(completion: String) {
+        if (cache != null && cacheContext != null) {
+            cache.setCache(editor.document, cacheContext, completion) {
+                markShown(recordLatency = false)
+            }
+        }
+    }
+
+    /**
+     * Records that the completion was shown, either as it arrived or later from the cache, in
+     * which case the cache hit records its own latency.
+     */
+    private fun markShown(recordLatency: Boolean) {
+        if (shown.compareAndSet(false, true)) {
+            val metrics = CodeCompletionMetrics.getInstance()
+            metrics.recordShownRequest()
+            if (recordLatency) {
+                metrics.recordSuggestionLatency(System.currentTimeMillis() - triggerTimeMillis)
+            }
+            if (service<ConfigurationSettings>().state.debugModeEnabled) {
+                logger.info("Code completion stats: ${metrics.getStats()}")
+            }
+        }
+    }
+
+    private fun recordProviderLatency() {
+        if (providerLatencyRecorded.compareAndSet(false, true)) {
+            CompletionTracker.recordProviderLatency((System.nanoTime() - requestStartTime) / 1_000_000)
+        }
+    }
+
+    /**
+     * Closes the channel after the elements already queued on the EDT have been sent.
+     */
+    private fun closeChannel() {
+        runInEdt { channel.close() }
     }
 
     private fun handleCompleted() {
         setLoading(false)
+        closeChannel()
 
         if (messageBuilder.isEmpty()) {
             NextEditCoordinator.requestNextEdit(
                 editor,
-                prefix + suffix,
+                snapshot.content,
                 runReadAction { editor.caretModel.offset },
                 false
             )
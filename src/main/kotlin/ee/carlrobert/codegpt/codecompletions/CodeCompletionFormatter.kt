@@ -22,6 +22,60 @@ class CodeCompletionFormatter(private val editor: Editor) {
             '[' to ']',
             '{' to '}'
         )
+
+        /**
+         * Returns the index of the first closing bracket that has no matching opening bracket in
+         * the completion, ignoring brackets inside string literals, or -1 if there is none. The
+         * completion is considered finished at that point.
+         */
+        fun findUnmatchedClosingBracket(text: CharSequence): Int =
+            BracketScanner().scan(text, text.length)
+    }
+
+    /**
+     * Finds the first unmatched closing bracket of a growing text, scanning each character once
+     * across calls.
+     */
+    class BracketScanner {
+
+        private val openBrackets = mutableListOf<Char>()
+        private var inString = false
+        private var stringChar = ' '
+        private var position = 0
+
+        /**
+         * Scans the text up to [end] and returns the index of the first unmatched closing
+         * bracket, or -1 if there is none.
+         */
+        fun scan(text: CharSequence, end: Int): Int {
+            while (position < end) {
+                val char = text[position]
+                if (char in QUOTES) {
+                    if (!inString) {
+                        inString = true
+                        stringChar = char
+                    } else if (char == stringChar) {
+                        inString = false
+                        stringChar = ' '
+                    }
+                }
+
+                if (!inString) {
+                    if (char in OPENING_BRACKETS) {
+                        openBrackets.add(char)
+                    } else if (char in CLOSING_BRACKETS) {
+                        val lastOpen = openBrackets.lastOrNull()
+                        if (lastOpen != null && BRACKET_PAIRS[lastOpen] == char) {
+                            openBrackets.removeAt(openBrackets.size - 1)
+                        } else {
+                            return position
+                        }
+                    }
+                }
+                position++
+            }
+            return -1
+        }
     }
 
     private val languageId = editor.virtualFile?.fileType?.name
@@ -57,47 +111,15 @@ class CodeCompletionFormatter(private val editor: Editor) {
             .getCompletion()
     }
 
-    private fun isMatchingPair(open: Char?, close: Char?): Boolean {
-        return BRACKET_PAIRS[open] == close
-    }
-
     private fun removeSuffix(): CodeCompletionFormatter {
         completion = completion.removeSuffix(textAfterCursor)
         return this
     }
 
     private fun matchCompletionBrackets(): CodeCompletionFormatter {
-        var accumulatedCompletion = ""
-        val openBrackets = mutableListOf<Char>()
-        var inString = false
-        var stringChar = ' '
-
-        for (char in originalCompletion) {
-            if (char in QUOTES) {
-                if (!inString) {
-                    inString = true
-                    stringChar = char
-                } else if (char == stringChar) {
-                    inString = false
-                    stringChar = ' '
-                }
-            }
-
-            if (!inString) {
-                if (char in OPENING_BRACKETS) {
-                    openBrackets.add(char)
-                } else if (char in CLOSING_BRACKETS) {
-                    val lastOpen = openBrackets.lastOrNull()
-                    if (lastOpen != null && isMatchingPair(lastOpen, char)) {
-                        openBrackets.removeAt(openBrackets.size - 1)
-                    } else {
-                        break
-                    }
-                }
-            }
-
-            accumulatedCompletion += char
-        }
+        val end = findUnmatchedClosingBracket(originalCompletion)
+        val accumulatedCompletion =
+            if (end == -1) originalCompletion else originalCompletion.substring(0, end)
 
         completion = accumulatedCompletion.trimEnd().ifEmpty { originalCompletion.trimEnd() }
 
@@ -227,7 +249,7 @@ class CodeCompletionFormatter(private val editor: Editor) {
         val lineCount = document.lineCount
         val originalNormalized = originalCompletion.trim()
 
-        if (originalCompletion.lines().size >= 3 && document.text.contains(originalCompletion)) {
+        if (originalCompletion.lines().size >= 3 && document.charsSequence.contains(originalCompletion)) {
             completion = ""
             return this
         }
@@ -29,8 +29,9 @@ class CodeCompletionInsertHandler : InlineCompletionInsertHandler {
             val editor = environment.editor
             acceptCompletion(completion, editor)
 
-            val currentContent = runReadAction { editor.document.text }
-            val caretOffset = runReadAction { editor.caretModel.offset }
+            val snapshot = DocumentSnapshot.capture(editor)
+            val currentContent = snapshot.content
+            val caretOffset = snapshot.caretOffset
 
             val completionRange = runReadAction { editor.getUserData(CodeGPTKeys.RECENT_COMPLETION_RANGE) }
             val contentWithImports = AutoImportOrchestrator.previewImports(editor, completionRange)
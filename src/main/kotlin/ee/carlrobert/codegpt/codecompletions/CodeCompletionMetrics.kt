@@ -0,0 +1,91 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import java.util.concurrent.atomic.AtomicLong
+import kotlin.math.ceil
+
+/**
+ * Counts code completion requests and how long suggestions took to show, from the keystroke that
+ * triggered them.
+ *
+ * A request is wasted if its completion is never shown, either because it was cancelled or
+ * because a prefetched completion was never served from the cache.
+ */
+@Service(Service.Level.APP)
+class CodeCompletionMetrics {
+
+    companion object {
+        private const val MAX_LATENCY_SAMPLES = 512
+
+        @JvmStatic
+        fun getInstance(): CodeCompletionMetrics = service()
+    }
+
+    /**
+     * @param speculativeRequests Requests prefetched at a likely pause point.
+     */
+    data class CompletionStats(
+        val requests: Long,
+        val speculativeRequests: Long,
+        val shownRequests: Long,
+        val p50LatencyMillis: Long,
+        val p95LatencyMillis: Long,
+    ) {
+        val wastedRequestRatio: Double
+            get() = if (requests == 0L) 0.0
+            else (requests - shownRequests).coerceAtLeast(0).toDouble() / requests
+    }
+
+    private val requests = AtomicLong()
+    private val speculativeRequests = AtomicLong()
+    private val shownRequests = AtomicLong()
+    private val latencies = LongArray(MAX_LATENCY_SAMPLES)
+    private var latencyCount = 0
+
+    fun recordRequest(speculative: Boolean) {
+        requests.incrementAndGet()
+        if (speculative) {
+            speculativeRequests.incrementAndGet()
+        }
+    }
+
+    /**
+     * Records that the completion of a request was shown. Must be called at most once per request.
+     */
+    fun recordShownRequest() {
+        shownRequests.incrementAndGet()
+    }
+
+    /**
+     * Records the time from a keystroke to the suggestion it triggered, whether it came from a
+     * request or from the cache.
+     */
+    @Synchronized
+    fun recordSuggestionLatency(latencyMillis: Long) {
+        latencies[latencyCount % MAX_LATENCY_SAMPLES] = latencyMillis
+        latencyCount++
+    }
+
+    fun getStats(): CompletionStats {
+        val samples = synchronized(this) {
+            latencies.copyOf(minOf(latencyCount, MAX_LATENCY_SAMPLES))
+        }
+        samples.sort()
+        return CompletionStats(
+            requests = requests.get(),
+            speculativeRequests = speculativeRequests.get(),
+            shownRequests = shownRequests.get(),
+            p50LatencyMillis = percentile(samples, 0.5),
+            p95LatencyMillis = percentile(samples, 0.95)
+        )
+    }
+
+    private fun percentile(sortedSamples: LongArray, percentile: Double): Long {
+        if (sortedSamples.isEmpty()) {
+            return 0
+        }
+        val rank = ceil(percentile * sortedSamples.size).toInt()
+        return sortedSamples[(rank - 1).coerceIn(0, sortedSamples.lastIndex)]
+    }
+}
@@ -79,7 +79,7 @@ class CodeCompletionService {
                         )
                     )
                     createFactory(
-                        CompletionClientProvider.getDefaultClientBuilder().build()
+                        CompletionClientProvider.getDefaultClient()
                     ).newEventSource(
                         buildChatBasedFIMHttpRequest(
                             infillRequest,
@@ -92,7 +92,7 @@ class CodeCompletionService {
                     )
                 } else {
                     createFactory(
-                        CompletionClientProvider.getDefaultClientBuilder().build()
+                        CompletionClientProvider.getDefaultClient()
                     ).newEventSource(
                         buildCustomRequest(infillRequest),
                         if (customSettings.parseResponseAsChatCompletions) {
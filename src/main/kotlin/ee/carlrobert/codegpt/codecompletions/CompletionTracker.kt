@@ -6,20 +6,27 @@ import com.intellij.openapi.util.Key
 object CompletionTracker {
 
     private val LAST_COMPLETION_REQUEST_TIME: Key<Long> = Key.create("LAST_COMPLETION_REQUEST_TIME")
-    private const val DEBOUNCE_INTERVAL_MS = 500L
+    private val debounce = AdaptiveDebounce()
 
-    fun calcDebounceTime(editor: Editor): Long {
-        val lastCompletionTimestamp = editor.getUserData(LAST_COMPLETION_REQUEST_TIME)
-        if (lastCompletionTimestamp != null) {
-            val elapsed = System.currentTimeMillis() - lastCompletionTimestamp
-            if (elapsed < DEBOUNCE_INTERVAL_MS) {
-                return DEBOUNCE_INTERVAL_MS - elapsed
-            }
-        }
-        return 0
+    /**
+     * Records a keystroke and returns how long to wait before requesting a completion.
+     *
+     * @param speculative Whether the caret is at a likely pause point, where a completion is
+     * prefetched right away.
+     */
+    fun calcDebounceTime(speculative: Boolean): Long {
+        debounce.onKeystroke(System.currentTimeMillis())
+        return debounce.getDelayMillis(speculative)
+    }
+
+    fun recordProviderLatency(latencyMillis: Long) {
+        debounce.onProviderLatency(latencyMillis)
     }
 
     fun updateLastCompletionRequestTime(editor: Editor) {
         editor.putUserData(LAST_COMPLETION_REQUEST_TIME, System.currentTimeMillis())
     }
+
+    fun getLastCompletionRequestTime(editor: Editor): Long? =
+        editor.getUserData(LAST_COMPLETION_REQUEST_TIME)
 }
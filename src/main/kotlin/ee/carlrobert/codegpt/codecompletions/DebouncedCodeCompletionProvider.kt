@@ -30,6 +30,12 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
 
     private val currentCallRef = AtomicReference<EventSource?>(null)
 
+    /**
+     * Completion prefetched at a pause point. It isn't cancelled when the user keeps typing, so
+     * that it can still be served from the cache, but only until the next prefetch.
+     */
+    private val speculativeCallRef = AtomicReference<EventSource?>(null)
+
     override val id: InlineCompletionProviderID
         get() = InlineCompletionProviderID("CodeGPTInlineCompletionProvider")
 
@@ -61,17 +67,24 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
                     return@channelFlow
                 }
 
+                val triggerTime = getTriggerTime(request)
                 val cacheValue = tryFindCache(request)
                 if (cacheValue != null) {
                     REMAINING_CODE_COMPLETION.set(editor, null)
                     trySend(InlineCompletionGrayTextElement(cacheValue))
+                    CodeCompletionMetrics.getInstance()
+                        .recordSuggestionLatency(System.currentTimeMillis() - triggerTime)
                     return@channelFlow
                 }
 
                 CompletionProgressNotifier.update(project, true)
 
-                var eventListener = CodeCompletionEventListener(request.editor, this)
-                val infillRequest = InfillRequestUtil.buildInfillRequest(request)
+                val snapshot = DocumentSnapshot.capture(editor)
+                val speculative = isSpeculative(request, snapshot)
+                CodeCompletionMetrics.getInstance().recordRequest(speculative)
+                val eventListener =
+                    CodeCompletionEventListener(request.editor, this, snapshot, triggerTime)
+                val infillRequest = InfillRequestUtil.buildInfillRequest(request, snapshot)
 
                 if (service<ModelSelectionService>().getServiceForFeature(FeatureType.CODE_COMPLETION) == ServiceType.PROXYAI) {
                     val grpcClient = project.service<GrpcClientService>()
@@ -82,9 +95,13 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
 
                 val call = service<CodeCompletionService>().getCodeCompletionAsync(
                     infillRequest,
-                    CodeCompletionEventListener(request.editor, this)
+                    eventListener
                 )
-                currentCallRef.set(call)
+                if (speculative) {
+                    speculativeCallRef.getAndSet(call)?.cancel()
+                } else {
+                    currentCallRef.set(call)
+                }
             } finally {
                 awaitClose { currentCallRef.getAndSet(null)?.cancel() }
             }
@@ -97,10 +114,24 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
         return project.service<CodeCompletionCacheService>().getCache(editor)
     }
 
+    private fun getTriggerTime(request: InlineCompletionRequest): Long {
+        val now = System.currentTimeMillis()
+        if (request.event is InlineCompletionEvent.DirectCall) {
+            return now
+        }
+        return CompletionTracker.getLastCompletionRequestTime(request.editor) ?: now
+    }
+
+    private fun isSpeculative(request: InlineCompletionRequest, snapshot: DocumentSnapshot): Boolean {
+        return request.event !is InlineCompletionEvent.DirectCall
+                && AdaptiveDebounce.isPausePoint(snapshot.text, snapshot.caretOffset)
+    }
+
     override suspend fun getDebounceDelay(request: InlineCompletionRequest): Duration {
         val force = request.event is InlineCompletionEvent.DirectCall
         return if (!force) {
-            val debounceMs = CompletionTracker.calcDebounceTime(request.editor)
+            val snapshot = DocumentSnapshot.capture(request.editor)
+            val debounceMs = CompletionTracker.calcDebounceTime(isSpeculative(request, snapshot))
             CompletionTracker.updateLastCompletionRequestTime(request.editor)
             debounceMs.toDuration(DurationUnit.MILLISECONDS)
         } else {
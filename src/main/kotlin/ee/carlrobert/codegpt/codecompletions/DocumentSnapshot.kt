@@ -0,0 +1,77 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.editor.Editor
+
+/**
+ * The text of a document and the caret, captured once per completion trigger.
+ *
+ * The text is the document's immutable char sequence, so capturing doesn't copy it. The prefix
+ * and the suffix are views over it, and [content] copies it into a string at most once, for
+ * consumers that need one, such as gRPC requests.
+ */
+class DocumentSnapshot private constructor(
+    val text: CharSequence,
+    val caretOffset: Int,
+    val filePath: String?,
+) {
+
+    companion object {
+        fun capture(editor: Editor): DocumentSnapshot = runReadAction {
+            val document = editor.document
+            DocumentSnapshot(
+                document.immutableCharSequence,
+                editor.caretModel.offset,
+                editor.virtualFile?.path
+            )
+        }
+
+        /**
+         * Creates a snapshot of text that doesn't belong to a document. The text must not change
+         * afterwards.
+         */
+        fun of(
+            text: CharSequence,
+            caretOffset: Int,
+            filePath: String? = null
+        ): DocumentSnapshot =
+            DocumentSnapshot(text, caretOffset.coerceIn(0, text.length), filePath)
+    }
+
+    val prefix: CharSequence
+        get() = TextView(text, 0, caretOffset)
+
+    val suffix: CharSequence
+        get() = TextView(text, caretOffset, text.length)
+
+    val content: String by lazy { text.toString() }
+
+    /**
+     * A range of a char sequence that doesn't copy it, unlike [String.subSequence].
+     */
+    private class TextView(
+        private val text: CharSequence,
+        private val start: Int,
+        private val end: Int,
+    ) : CharSequence {
+
+        override val length: Int
+            get() = end - start
+
+        override fun get(index: Int): Char {
+            if (index < 0 || index >= length) {
+                throw IndexOutOfBoundsException("Index $index out of range [0, $length)")
+            }
+            return text[start + index]
+        }
+
+        override fun subSequence(startIndex: Int, endIndex: Int): CharSequence {
+            if (startIndex < 0 || endIndex > length || startIndex > endIndex) {
+                throw IndexOutOfBoundsException("Range [$startIndex, $endIndex) out of [0, $length)")
+            }
+            return TextView(text, start + startIndex, start + endIndex)
+        }
+
+        override fun toString(): String = text.subSequence(start, end).toString()
+    }
+}
@@ -0,0 +1,188 @@
+package ee.carlrobert.codegpt.codecompletions
+
+/**
+ * Caret-local context of a completion request: the hash of the lines before the caret and the
+ * hash of the lines after it, along with the offsets they were taken from.
+ */
+data class CompletionContext(
+    val windowStart: Int,
+    val anchor: Int,
+    val prefixHash: Long,
+    val suffixLength: Int,
+    val suffixHash: Long,
+) {
+    companion object {
+        fun capture(
+            text: CharSequence,
+            caretOffset: Int,
+            contextLines: Int,
+            maxContextChars: Int
+        ): CompletionContext {
+            val anchor = caretOffset.coerceIn(0, text.length)
+            val windowStart = findWindowStart(text, anchor, contextLines, maxContextChars)
+            val suffixEnd = findWindowEnd(text, anchor, contextLines, maxContextChars)
+            return CompletionContext(
+                windowStart,
+                anchor,
+                hash(text, windowStart, anchor),
+                suffixEnd - anchor,
+                hash(text, anchor, suffixEnd)
+            )
+        }
+
+        internal fun hash(text: CharSequence, start: Int, end: Int): Long {
+            var result = 1125899906842597L
+            for (i in start until end) {
+                result = 31 * result + text[i].code
+            }
+            return result
+        }
+
+        private fun findWindowStart(text: CharSequence, anchor: Int, lines: Int, maxChars: Int): Int {
+            val limit = (anchor - maxChars).coerceAtLeast(0)
+            var newlines = 0
+            var i = anchor - 1
+            while (i >= limit) {
+                if (text[i] == '\n' && ++newlines > lines) {
+                    return i + 1
+                }
+                i--
+            }
+            return limit
+        }
+
+        private fun findWindowEnd(text: CharSequence, anchor: Int, lines: Int, maxChars: Int): Int {
+            val limit = (anchor + maxChars).coerceAtMost(text.length)
+            var newlines = 0
+            var i = anchor
+            while (i < limit) {
+                if (text[i] == '\n' && ++newlines > lines) {
+                    return i
+                }
+                i++
+            }
+            return limit
+        }
+    }
+}
+
+/**
+ * Bounded set of completions received for a single file.
+ *
+ * An entry matches when the text around the caret still hashes to the captured context. If the
+ * user has typed part of a cached completion since it was received, the remaining part is
+ * returned, so typing through a suggestion needs no new request.
+ */
+internal class FileCompletionIndex(private val maxEntries: Int) {
+
+    private class Entry(
+        var context: CompletionContext,
+        val completion: String,
+        var onServed: (() -> Unit)?,
+    ) {
+        var lastServedOffset = -1
+        var repeatCount = 0
+    }
+
+    private val entries = ArrayDeque<Entry>()
+
+    val size: Int
+        @Synchronized get() = entries.size
+
+    /**
+     * @param onServed Called the first time the completion is returned by [find].
+     */
+    @Synchronized
+    fun put(context: CompletionContext, completion: String, onServed: (() -> Unit)? = null) {
+        if (completion.isEmpty()) {
+            return
+        }
+        entries.removeAll { it.context == context }
+        entries.addFirst(Entry(context, completion, onServed))
+        while (entries.size > maxEntries) {
+            entries.removeLast()
+        }
+    }
+
+    @Synchronized
+    fun find(text: CharSequence, caretOffset: Int): String? {
+        val iterator = entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            val context = entry.context
+            val typedLength = caretOffset - context.anchor
+            if (typedLength < 0 || typedLength >= entry.completion.length) {
+                continue
+            }
+
+            val suffixEnd = caretOffset + context.suffixLength
+            if (suffixEnd > text.length
+                || !isTypedThrough(text, context.anchor, entry.completion, typedLength)
+                || CompletionContext.hash(text, caretOffset, suffixEnd) != context.suffixHash
+            ) {
+                continue
+            }
+
+            if (CompletionContext.hash(text, context.windowStart, context.anchor) != context.prefixHash) {
+                iterator.remove()
+                continue
+            }
+
+            if (entry.lastServedOffset == caretOffset) {
+                if (++entry.repeatCount > MAX_REPEATED_LOOKUPS) {
+                    iterator.remove()
+                    return null
+                }
+            } else {
+                entry.lastServedOffset = caretOffset
+                entry.repeatCount = 1
+            }
+            entry.onServed?.invoke()
+            entry.onServed = null
+            return entry.completion.substring(typedLength)
+        }
+        return null
+    }
+
+    /**
+     * Keeps entry offsets in sync with a document change. Entries are shifted when the change
+     * happens before their context window and dropped when it touches the text before the caret.
+     * Changes after the caret are checked on lookup instead, since they may be the user typing
+     * through the completion.
+     */
+    @Synchronized
+    fun onDocumentChange(offset: Int, oldLength: Int, newLength: Int) {
+        val delta = newLength - oldLength
+        val iterator = entries.iterator()
+        while (iterator.hasNext()) {
+            val entry = iterator.next()
+            val context = entry.context
+            if (offset + oldLength <= context.windowStart) {
+                entry.context = context.copy(
+                    windowStart = context.windowStart + delta,
+                    anchor = context.anchor + delta
+                )
+            } else if (offset < context.anchor) {
+                iterator.remove()
+            }
+        }
+    }
+
+    private fun isTypedThrough(
+        text: CharSequence,
+        anchor: Int,
+        completion: String,
+        typedLength: Int
+    ): Boolean {
+        for (i in 0 until typedLength) {
+            if (text[anchor + i] != completion[i]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    companion object {
+        private const val MAX_REPEATED_LOOKUPS = 3
+    }
+}
@@ -1,9 +1,7 @@
 package ee.carlrobert.codegpt.codecompletions
 
-import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.service
 import com.intellij.openapi.editor.Editor
-import com.intellij.openapi.util.TextRange
 import com.intellij.psi.PsiElement
 import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.codecompletions.psi.filePath
@@ -25,7 +23,16 @@ class InfillRequest private constructor(
     val stopTokens: List<String>,
 ) {
 
-    data class FileDetails(val fileContent: String, val filePath: String? = null)
+    /**
+     * Content of the file the request is for, copied from the snapshot only when it's needed.
+     */
+    class FileDetails(private val snapshot: DocumentSnapshot) {
+        val fileContent: String
+            get() = snapshot.content
+
+        val filePath: String?
+            get() = snapshot.filePath
+    }
 
     class Builder {
         private val prefix: String
@@ -50,19 +57,24 @@ class InfillRequest private constructor(
             this.stopTokens = getStopTokens()
         }
 
-        constructor(editor: Editor) {
-            val document = editor.document
-            val caretOffset = runReadAction { editor.caretModel.offset }
-            prefix =
-                document.getText(TextRange(0, caretOffset))
-                    .truncateText(MAX_PROMPT_TOKENS, false)
-            suffix =
-                document.getText(TextRange(caretOffset, document.textLength))
-                    .truncateText(MAX_PROMPT_TOKENS)
-            this.caretOffset = caretOffset
-            this.stopTokens = getStopTokens()
+        constructor(editor: Editor, snapshot: DocumentSnapshot = DocumentSnapshot.capture(editor)) :
+                this(snapshot, service<EncodingManager>()::truncateText) {
             this.editor = editor
-            this.fileDetails = FileDetails(editor.document.text, editor.virtualFile.path)
+        }
+
+        /**
+         * Builds the request from [snapshot], truncating the prefix and the suffix with [truncate]
+         * instead of the application's [EncodingManager].
+         */
+        internal constructor(
+            snapshot: DocumentSnapshot,
+            truncate: (text: CharSequence, maxTokens: Int, fromStart: Boolean) -> String,
+        ) {
+            prefix = truncate(snapshot.prefix, MAX_PROMPT_TOKENS, false)
+            suffix = truncate(snapshot.suffix, MAX_PROMPT_TOKENS, true)
+            this.caretOffset = snapshot.caretOffset
+            this.stopTokens = getStopTokens()
+            this.fileDetails = FileDetails(snapshot)
         }
 
         fun gitDiff(gitDiff: String) =
@@ -130,6 +142,6 @@ class ContextElement(val psiElement: PsiElement) {
     fun text() = this.psiElement.readText()
 }
 
-fun String.truncateText(maxTokens: Int, fromStart: Boolean = true): String {
+fun CharSequence.truncateText(maxTokens: Int, fromStart: Boolean = true): String {
     return service<EncodingManager>().truncateText(this, maxTokens, fromStart)
 }
\ No newline at end of file
@@ -8,8 +8,11 @@ import ee.carlrobert.codegpt.util.GitUtil
 
 object InfillRequestUtil {
 
-    suspend fun buildInfillRequest(request: InlineCompletionRequest): InfillRequest {
-        val infillRequestBuilder = InfillRequest.Builder(request.editor)
+    suspend fun buildInfillRequest(
+        request: InlineCompletionRequest,
+        snapshot: DocumentSnapshot = DocumentSnapshot.capture(request.editor)
+    ): InfillRequest {
+        val infillRequestBuilder = InfillRequest.Builder(request.editor, snapshot)
 
         val project = request.editor.project ?: return infillRequestBuilder.build()
         if (service<ConfigurationSettings>().state.codeCompletionSettings.gitDiffEnabled) {
@@ -0,0 +1,96 @@
+package ee.carlrobert.codegpt.codecompletions
+
+/**
+ * Accumulates streamed completion tokens and releases formatted text in whole-line chunks.
+ *
+ * The formatter only changes the edges of a completion (the text next to the caret and the text
+ * before the suffix), so it runs on the first lines until they produce visible text and once more
+ * on the whole completion when it ends. Lines in between are released as they arrive, cut at the
+ * first unmatched closing bracket, which is tracked as the text streams in.
+ *
+ * Since inline completion elements can only be appended, the final text is released only if it
+ * extends what has already been shown. Streaming stops once the completion is cut by an unmatched
+ * closing bracket or the formatted text diverges from what has been shown.
+ */
+class StreamingCompletionBuffer(private val format: (String) -> String) {
+
+    private val raw = StringBuilder()
+    private val shown = StringBuilder()
+    private val brackets = CodeCompletionFormatter.BracketScanner()
+
+    /**
+     * Length of the raw text that [shown] covers. Trailing whitespace is held back until more
+     * text follows it.
+     */
+    private var consumed = 0
+
+    val emitted: String
+        get() = shown.toString()
+    var isFinished: Boolean = false
+        private set
+
+    /**
+     * Appends the streamed delta and returns the text to append to the visible suggestion, or
+     * `null` if nothing new can be shown yet.
+     */
+    fun append(delta: String): String? {
+        if (isFinished) {
+            return null
+        }
+
+        val searchStart = raw.length
+        raw.append(delta)
+        val lastNewline = raw.lastIndexOf("\n")
+        if (lastNewline < searchStart) {
+            return null
+        }
+
+        var end = lastNewline + 1
+        val unmatched = brackets.scan(raw, end)
+        if (unmatched != -1) {
+            isFinished = true
+            end = unmatched
+        }
+
+        if (shown.isEmpty()) {
+            val chunk = raw.substring(0, end)
+            val formatted = format(chunk)
+            if (formatted.isEmpty()) {
+                return null
+            }
+            consumed = chunk.trimEnd().length
+            shown.append(formatted)
+            return formatted
+        }
+
+        val tail = raw.substring(consumed, end).trimEnd()
+        if (tail.isEmpty()) {
+            return null
+        }
+        consumed += tail.length
+        shown.append(tail)
+        return tail
+    }
+
+    /**
+     * Formats the whole completion and returns the remaining text to show, or `null` if streaming
+     * has already finished or nothing is left.
+     */
+    fun complete(): String? {
+        if (isFinished) {
+            return null
+        }
+        isFinished = true
+
+        val formatted = format(raw.toString())
+        if (!formatted.startsWith(shown)) {
+            return null
+        }
+        val delta = formatted.substring(shown.length)
+        if (delta.isEmpty()) {
+            return null
+        }
+        shown.append(delta)
+        return delta
+    }
+}
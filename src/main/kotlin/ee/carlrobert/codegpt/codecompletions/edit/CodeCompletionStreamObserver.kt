@@ -16,10 +16,17 @@ import kotlinx.coroutines.channels.ProducerScope
 import okhttp3.Request
 import okhttp3.sse.EventSource
 
+/**
+ * @param onSessionAccepted Called when the server stored the documents of the request.
+ * @param onSessionLost Called instead of reporting an error when the server doesn't hold the
+ * revisions the request was based on, so that the request can be sent again in full.
+ */
 class CodeCompletionStreamObserver(
     private val editor: Editor,
     private val channel: ProducerScope<InlineCompletionElement>,
     private val eventListener: CodeCompletionEventListener,
+    private val onSessionAccepted: () -> Unit = {},
+    private val onSessionLost: (() -> Unit)? = null,
 ) : StreamObserver<PartialCodeCompletionResponse> {
 
     companion object {
@@ -37,6 +44,9 @@ class CodeCompletionStreamObserver(
     }
 
     override fun onNext(value: PartialCodeCompletionResponse) {
+        if (value.sessionAccepted) {
+            onSessionAccepted()
+        }
         CodeGPTKeys.LAST_COMPLETION_RESPONSE_ID.set(editor, value.id)
         messageBuilder.append(value.partialCompletion)
         eventListener.onMessage(value.partialCompletion, emptyEventSource)
@@ -55,6 +65,11 @@ class CodeCompletionStreamObserver(
                 channel.close(t)
                 return
             }
+
+            if (code == Status.Code.FAILED_PRECONDITION && onSessionLost != null) {
+                onSessionLost.invoke()
+                return
+            }
         }
 
         logger.error("Unexpected error occurred while fetching code completion", t)
@@ -0,0 +1,151 @@
+package ee.carlrobert.codegpt.codecompletions.edit
+
+import java.security.MessageDigest
+import java.util.HexFormat
+
+/**
+ * Tracks which revision of each document the server holds, and encodes new contents of a document
+ * as edits to that revision.
+ *
+ * A revision becomes the base of later edits only once the server acknowledged it. Until then,
+ * documents are sent in full, so requests that were canceled or rejected never leave the client
+ * and the server out of sync.
+ */
+class DocumentDeltaEncoder(private val maxPendingRevisions: Int = DEFAULT_MAX_PENDING_REVISIONS) {
+
+    companion object {
+        private const val DEFAULT_MAX_PENDING_REVISIONS = 8
+        private const val REVISION_BYTES = 16
+
+        fun revisionOf(content: String): String {
+            val digest = MessageDigest.getInstance("SHA-256").digest(content.toByteArray())
+            return HexFormat.of().formatHex(digest, 0, REVISION_BYTES)
+        }
+
+        /**
+         * Returns the edit that turns [base] into [content], covering everything between their
+         * common prefix and common suffix, or no edits if they are equal.
+         */
+        fun diff(base: String, content: String): List<TextEdit> {
+            val maxPrefix = minOf(base.length, content.length)
+            var prefix = 0
+            while (prefix < maxPrefix && base[prefix] == content[prefix]) {
+                prefix++
+            }
+            if (prefix == base.length && prefix == content.length) {
+                return emptyList()
+            }
+
+            val maxSuffix = maxPrefix - prefix
+            var suffix = 0
+            while (suffix < maxSuffix
+                && base[base.length - 1 - suffix] == content[content.length - 1 - suffix]
+            ) {
+                suffix++
+            }
+            // Keeps surrogate pairs together.
+            if (prefix > 0 && Character.isHighSurrogate(base[prefix - 1])) prefix--
+            if (suffix > 0 && Character.isLowSurrogate(base[base.length - suffix])) suffix--
+
+            return listOf(
+                TextEdit(
+                    offset = prefix,
+                    deletedLength = base.length - prefix - suffix,
+                    insertedText = content.substring(prefix, content.length - suffix)
+                )
+            )
+        }
+
+        /**
+         * Applies edits whose offsets refer to [base] and don't overlap.
+         */
+        fun apply(base: String, edits: List<TextEdit>): String {
+            if (edits.isEmpty()) {
+                return base
+            }
+
+            val result = StringBuilder(base.length)
+            var position = 0
+            edits.sortedBy { it.offset }.forEach { edit ->
+                require(edit.offset >= position && edit.offset + edit.deletedLength <= base.length) {
+                    "Edit out of range: $edit"
+                }
+                result.append(base, position, edit.offset).append(edit.insertedText)
+                position = edit.offset + edit.deletedLength
+            }
+            return result.append(base, position, base.length).toString()
+        }
+    }
+
+    data class TextEdit(val offset: Int, val deletedLength: Int, val insertedText: String)
+
+    sealed interface Encoding {
+        val revision: String
+
+        data class Full(val content: String, override val revision: String) : Encoding
+
+        data class Delta(
+            val baseRevision: String,
+            val edits: List<TextEdit>,
+            override val revision: String,
+        ) : Encoding
+
+        data class Unchanged(override val revision: String) : Encoding
+    }
+
+    private class Snapshot(val revision: String, val content: String)
+
+    private class DocumentState {
+        var acknowledged: Snapshot? = null
+        val pending = LinkedHashMap<String, String>()
+    }
+
+    private val documents = HashMap<String, DocumentState>()
+
+    /**
+     * Encodes the content of the document identified by [key] relative to the revision the
+     * server holds. An edit that isn't smaller than the document is sent as the full document.
+     */
+    @Synchronized
+    fun encode(key: String, content: String): Encoding {
+        val revision = revisionOf(content)
+        val state = documents.getOrPut(key) { DocumentState() }
+        val base = state.acknowledged
+        if (base != null && base.revision == revision) {
+            return Encoding.Unchanged(revision)
+        }
+
+        state.pending.remove(revision)
+        state.pending[revision] = content
+        while (state.pending.size > maxPendingRevisions) {
+            state.pending.remove(state.pending.keys.first())
+        }
+
+        if (base != null) {
+            val edits = diff(base.content, content)
+            if (edits.sumOf { it.insertedText.length } < content.length / 2) {
+                return Encoding.Delta(base.revision, edits, revision)
+            }
+        }
+        return Encoding.Full(content, revision)
+    }
+
+    /**
+     * Marks the given revision of the document as held by the server.
+     */
+    @Synchronized
+    fun acknowledge(key: String, revision: String) {
+        val state = documents[key] ?: return
+        val content = state.pending.remove(revision) ?: return
+        state.acknowledged = Snapshot(revision, content)
+        state.pending.clear()
+    }
+
+    /**
+     * Forgets all acknowledged revisions, e.g. when the server lost the session.
+     */
+    @Synchronized
+    fun reset() {
+        documents.clear()
+    }
+}
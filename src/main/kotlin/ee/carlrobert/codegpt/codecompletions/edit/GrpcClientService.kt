@@ -37,6 +37,7 @@ class GrpcClientService(private val project: Project) : Disposable {
     private var nextEditStreamObserver: NextEditStreamObserver? = null
     private var codeCompletionContext: Context.CancellableContext? = null
     private var nextEditContext: Context.CancellableContext? = null
+    private val payloadEncoder = GrpcPayloadEncoder()
 
     companion object {
         private const val HOST = "grpc.tryproxy.io"
@@ -49,14 +50,26 @@ class GrpcClientService(private val project: Project) : Disposable {
     fun getCodeCompletionAsync(
         request: InfillRequest,
         eventListener: CodeCompletionEventListener,
-        channel: ProducerScope<InlineCompletionElement>
+        channel: ProducerScope<InlineCompletionElement>,
+        retryOnSessionLoss: Boolean = true,
     ) {
         ensureCodeCompletionConnection()
 
         val editor = request.editor ?: return
-        val grpcRequest = createCodeCompletionGrpcRequest(request)
-        codeCompletionObserver =
-            CodeCompletionStreamObserver(editor, channel, eventListener)
+        val encodedRequest = createCodeCompletionGrpcRequest(request)
+        val grpcRequest = encodedRequest.request
+        codeCompletionObserver = CodeCompletionStreamObserver(
+            editor,
+            channel,
+            eventListener,
+            onSessionAccepted = { payloadEncoder.onAccepted(encodedRequest) },
+            onSessionLost = if (retryOnSessionLoss) {
+                {
+                    payloadEncoder.reset()
+                    getCodeCompletionAsync(request, eventListener, channel, false)
+                }
+            } else null
+        )
         codeCompletionContext?.cancel(null)
         val ctx = Context.current().withCancellation()
         codeCompletionContext = ctx
@@ -82,11 +95,29 @@ class GrpcClientService(private val project: Project) : Disposable {
         fileContent: String,
         caretOffset: Int,
         addToQueue: Boolean = false,
+        retryOnSessionLoss: Boolean = true,
     ) {
         ensureNextEditConnection()
 
-        val request = createNextEditGrpcRequest(editor, fileContent, caretOffset)
-        nextEditStreamObserver = NextEditStreamObserver(editor, addToQueue) { refreshConnection() }
+        val document = editor.document
+        val documentStamp = document.modificationStamp
+            .takeIf { document.immutableCharSequence.contentEquals(fileContent) }
+            ?: NextEditStreamObserver.UNKNOWN_STAMP
+        val encodedRequest = createNextEditGrpcRequest(editor, fileContent, caretOffset)
+        val request = encodedRequest.request
+        nextEditStreamObserver = NextEditStreamObserver(
+            editor,
+            fileContent,
+            documentStamp,
+            addToQueue,
+            onSessionAccepted = { payloadEncoder.onAccepted(encodedRequest) },
+            onSessionLost = if (retryOnSessionLoss) {
+                {
+                    payloadEncoder.reset()
+                    getNextEdit(editor, fileContent, caretOffset, addToQueue, false)
+                }
+            } else null
+        ) { refreshConnection() }
         nextEditContext?.cancel(null)
 
         val ctx = Context.current().withCancellation()
@@ -143,8 +174,14 @@ class GrpcClientService(private val project: Project) : Disposable {
             )
     }
 
+    /**
+     * Returns the size of the requests sent so far compared to the documents they carried.
+     */
+    fun getPayloadStats(): GrpcPayloadEncoder.PayloadStats = payloadEncoder.getStats()
+
     @Synchronized
     fun refreshConnection() {
+        payloadEncoder.reset()
         codeCompletionContext?.cancel(null)
         codeCompletionContext = null
         nextEditContext?.cancel(null)
@@ -186,37 +223,39 @@ class GrpcClientService(private val project: Project) : Disposable {
         }
     }
 
-    private fun createCodeCompletionGrpcRequest(request: InfillRequest): GrpcCodeCompletionRequest {
+    private fun createCodeCompletionGrpcRequest(
+        request: InfillRequest
+    ): GrpcPayloadEncoder.EncodedRequest<GrpcCodeCompletionRequest> {
         val fileDetails = request.fileDetails ?: throw IllegalArgumentException("File details are required")
         val gitDiff = request.gitDiff ?: ""
-        return GrpcCodeCompletionRequest.newBuilder()
-            .setModel(
-                ModelSelectionService.getInstance().getModelForFeature(FeatureType.CODE_COMPLETION)
-            )
-            .setFilePath(fileDetails.filePath)
-            .setFileContent(fileDetails.fileContent)
-            .setGitDiff(gitDiff)
-            .setCursorPosition(request.caretOffset)
-            .setPluginVersion(CodeGPTPlugin.getVersion())
-            .build()
+        return payloadEncoder.createCodeCompletionRequest(
+            model = ModelSelectionService.getInstance()
+                .getModelForFeature(FeatureType.CODE_COMPLETION),
+            filePath = fileDetails.filePath.orEmpty(),
+            fileContent = fileDetails.fileContent,
+            cursorPosition = request.caretOffset,
+            gitDiff = gitDiff,
+            pluginVersion = CodeGPTPlugin.getVersion()
+        )
     }
 
     private fun createNextEditGrpcRequest(
         editor: Editor,
         fileContent: String,
         caretOffset: Int
-    ): NextEditRequest {
+    ): GrpcPayloadEncoder.EncodedRequest<NextEditRequest> {
         val recentlyViewedPairs =
             RecentlyViewedFilesUtil.orderedFiles(project, editor.virtualFile, 3)
                 .map { it.path to FileUtil.readContent(it) }
-        return NextEditRequest.newBuilder()
-            .setFileName(editor.virtualFile.name)
-            .setFileContent(fileContent)
-            .setGitDiff(GitUtil.getCurrentChanges(project) ?: "")
-            .setCursorPosition(caretOffset)
-            .putAllRecentlyViewedFiles(recentlyViewedPairs.toMap())
-            .setPluginVersion(CodeGPTPlugin.getVersion())
-            .build()
+        return payloadEncoder.createNextEditRequest(
+            fileName = editor.virtualFile.name,
+            filePath = editor.virtualFile.path,
+            fileContent = fileContent,
+            cursorPosition = caretOffset,
+            gitDiff = GitUtil.getCurrentChanges(project) ?: "",
+            recentlyViewedFiles = recentlyViewedPairs.toMap(),
+            pluginVersion = CodeGPTPlugin.getVersion()
+        )
     }
 
     private fun createChannel(): ManagedChannel = NettyChannelBuilder.forAddress(HOST, PORT)
@@ -0,0 +1,181 @@
+package ee.carlrobert.codegpt.codecompletions.edit
+
+import com.google.protobuf.MessageLite
+import ee.carlrobert.codegpt.codecompletions.edit.DocumentDeltaEncoder.Encoding
+import ee.carlrobert.service.DocumentDelta
+import ee.carlrobert.service.GrpcCodeCompletionRequest
+import ee.carlrobert.service.NextEditRequest
+import ee.carlrobert.service.NextEditResponse
+import ee.carlrobert.service.TextEdit
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Builds next-edit and code completion requests of a session. Documents the server already holds
+ * are sent as edits to the revision it holds, or left out if they didn't change.
+ *
+ * Servers that don't support sessions never accept one, so they keep receiving full payloads.
+ */
+class GrpcPayloadEncoder {
+
+    /**
+     * A request along with the document revisions it carries, which the server holds once it
+     * accepts the request.
+     */
+    class EncodedRequest<T>(val request: T, internal val revisions: Map<String, String>)
+
+    /**
+     * @param bytesSent Serialized size of the requests.
+     * @param documentChars Length of the documents the requests represent, i.e. roughly what the
+     * requests would have cost without a session.
+     */
+    data class PayloadStats(val requests: Long, val bytesSent: Long, val documentChars: Long)
+
+    private val documents = DocumentDeltaEncoder()
+    private val requests = AtomicLong()
+    private val bytesSent = AtomicLong()
+    private val documentChars = AtomicLong()
+
+    @Volatile
+    var sessionId: String = UUID.randomUUID().toString()
+        private set
+
+    fun createNextEditRequest(
+        fileName: String,
+        filePath: String,
+        fileContent: String,
+        cursorPosition: Int,
+        gitDiff: String,
+        recentlyViewedFiles: Map<String, String>,
+        pluginVersion: String,
+    ): EncodedRequest<NextEditRequest> {
+        val revisions = mutableMapOf<String, String>()
+        val builder = NextEditRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setFileName(fileName)
+            .setCursorPosition(cursorPosition)
+            .setPluginVersion(pluginVersion)
+
+        val fileEncoding = encode("next-edit:file:$filePath", fileContent, revisions)
+        builder.setFileDelta(toDelta(fileEncoding))
+        if (fileEncoding is Encoding.Full) {
+            builder.setFileContent(fileContent)
+        }
+        val gitDiffEncoding = encode("next-edit:git-diff", gitDiff, revisions)
+        builder.setGitDiffDelta(toDelta(gitDiffEncoding))
+        if (gitDiffEncoding is Encoding.Full) {
+            builder.setGitDiff(gitDiff)
+        }
+        recentlyViewedFiles.forEach { (path, content) ->
+            val encoding = encode("next-edit:viewed:$path", content, revisions)
+            builder.putRecentlyViewedFileRevisions(path, encoding.revision)
+            if (encoding !is Encoding.Unchanged) {
+                builder.putRecentlyViewedFiles(path, content)
+            }
+        }
+
+        val documentsSize = fileContent.length + gitDiff.length +
+                recentlyViewedFiles.values.sumOf { it.length }
+        return EncodedRequest(record(builder.build(), documentsSize), revisions)
+    }
+
+    fun createCodeCompletionRequest(
+        model: String,
+        filePath: String,
+        fileContent: String,
+        cursorPosition: Int,
+        gitDiff: String,
+        pluginVersion: String,
+    ): EncodedRequest<GrpcCodeCompletionRequest> {
+        val revisions = mutableMapOf<String, String>()
+        val builder = GrpcCodeCompletionRequest.newBuilder()
+            .setSessionId(sessionId)
+            .setModel(model)
+            .setFilePath(filePath)
+            .setCursorPosition(cursorPosition)
+            .setPluginVersion(pluginVersion)
+
+        val fileEncoding = encode("completion:file:$filePath", fileContent, revisions)
+        builder.setFileDelta(toDelta(fileEncoding))
+        if (fileEncoding is Encoding.Full) {
+            builder.setFileContent(fileContent)
+        }
+        val gitDiffEncoding = encode("completion:git-diff", gitDiff, revisions)
+        builder.setGitDiffDelta(toDelta(gitDiffEncoding))
+        if (gitDiffEncoding is Encoding.Full) {
+            builder.setGitDiff(gitDiff)
+        }
+
+        val documentsSize = fileContent.length + gitDiff.length
+        return EncodedRequest(record(builder.build(), documentsSize), revisions)
+    }
+
+    /**
+     * Marks the documents of the request as held by the server.
+     */
+    fun onAccepted(request: EncodedRequest<*>) {
+        request.revisions.forEach { (key, revision) -> documents.acknowledge(key, revision) }
+    }
+
+    /**
+     * Starts a new session, e.g. after the server lost the previous one.
+     */
+    fun reset() {
+        documents.reset()
+        sessionId = UUID.randomUUID().toString()
+    }
+
+    fun getStats(): PayloadStats =
+        PayloadStats(requests.get(), bytesSent.get(), documentChars.get())
+
+    private fun encode(
+        key: String,
+        content: String,
+        revisions: MutableMap<String, String>
+    ): Encoding = documents.encode(key, content).also { revisions[key] = it.revision }
+
+    private fun <T : MessageLite> record(request: T, documentsSize: Int): T {
+        requests.incrementAndGet()
+        bytesSent.addAndGet(request.serializedSize.toLong())
+        documentChars.addAndGet(documentsSize.toLong())
+        return request
+    }
+
+    private fun toDelta(encoding: Encoding): DocumentDelta {
+        val builder = DocumentDelta.newBuilder().setRevision(encoding.revision)
+        when (encoding) {
+            is Encoding.Delta -> builder
+                .setBaseRevision(encoding.baseRevision)
+                .addAllEdits(encoding.edits.map { toTextEdit(it) })
+
+            is Encoding.Unchanged -> builder.setBaseRevision(encoding.revision)
+            is Encoding.Full -> Unit
+        }
+        return builder.build()
+    }
+
+    private fun toTextEdit(edit: DocumentDeltaEncoder.TextEdit): TextEdit =
+        TextEdit.newBuilder()
+            .setOffset(edit.offset)
+            .setDeletedLength(edit.deletedLength)
+            .setInsertedText(edit.insertedText)
+            .build()
+}
+
+/**
+ * Fills in the old and next revision of a response that was sent as hunks to the requested file.
+ */
+fun NextEditResponse.withRevisions(fileContent: String): NextEditResponse {
+    if (hunksCount == 0) {
+        return this
+    }
+
+    val edits = hunksList.map {
+        DocumentDeltaEncoder.TextEdit(it.offset, it.deletedLength, it.insertedText)
+    }
+    return toBuilder()
+        .setOldRevision(fileContent)
+        .setNextRevision(DocumentDeltaEncoder.apply(fileContent, edits))
+        .clearHunks()
+        .build()
+}
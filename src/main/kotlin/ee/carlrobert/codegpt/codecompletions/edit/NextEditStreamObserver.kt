@@ -13,26 +13,53 @@ import io.grpc.StatusRuntimeException
 import io.grpc.stub.StreamObserver
 import ee.carlrobert.codegpt.codecompletions.CodeCompletionFormatter
 
+/**
+ * @param fileContent The file content the request was made for.
+ * @param documentStamp Modification stamp of the document when it matched [fileContent], or
+ * [UNKNOWN_STAMP].
+ * @param onSessionAccepted Called when the server stored the documents of the request.
+ * @param onSessionLost Called instead of completing when the server doesn't hold the revisions
+ * the request was based on, so that the request can be sent again in full.
+ */
 class NextEditStreamObserver(
     private val editor: Editor,
+    private val fileContent: String,
+    private val documentStamp: Long,
     private val addToQueue: Boolean = false,
+    private val onSessionAccepted: () -> Unit = {},
+    private val onSessionLost: (() -> Unit)? = null,
     private val onRefreshConnection: () -> Unit
 ) : StreamObserver<NextEditResponse> {
 
     companion object {
+        const val UNKNOWN_STAMP = -1L
+
         private val logger = thisLogger()
     }
 
-    override fun onNext(response: NextEditResponse) {
+    override fun onNext(value: NextEditResponse) {
+        if (value.sessionAccepted) {
+            onSessionAccepted()
+        }
+
+        val response = value.withRevisions(fileContent)
         if (addToQueue) {
             CodeGPTKeys.REMAINING_NEXT_EDITS.set(editor, response)
         } else {
+            // Compared here rather than on the EDT, where only the document stamp is checked.
+            if (response.nextRevision == response.oldRevision) {
+                return
+            }
+            val isForRequestedContent =
+                documentStamp != UNKNOWN_STAMP && response.oldRevision == fileContent
             runInEdt {
-                val documentText = editor.document.text
-                if (LookupManager.getActiveLookup(editor) == null
-                    && documentText != response.nextRevision
-                    && documentText == response.oldRevision
-                ) {
+                val document = editor.document
+                val isCurrent = if (isForRequestedContent) {
+                    document.modificationStamp == documentStamp
+                } else {
+                    document.immutableCharSequence.contentEquals(response.oldRevision)
+                }
+                if (LookupManager.getActiveLookup(editor) == null && isCurrent) {
                     NextEditDiffViewer.displayNextEdit(editor, response)
                 }
             }
@@ -40,8 +67,16 @@ class NextEditStreamObserver(
     }
 
     override fun onError(ex: Throwable) {
-        if (ex is StatusRuntimeException && ex.status.code == Status.Code.UNAVAILABLE) {
-            onRefreshConnection()
+        if (ex is StatusRuntimeException) {
+            when (ex.status.code) {
+                Status.Code.UNAVAILABLE -> onRefreshConnection()
+                Status.Code.FAILED_PRECONDITION -> if (onSessionLost != null) {
+                    onSessionLost.invoke()
+                    return
+                }
+
+                else -> Unit
+            }
         }
 
         onCompleted()
@@ -0,0 +1,248 @@
+package ee.carlrobert.codegpt.completions
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import ee.carlrobert.codegpt.EncodingManager
+import ee.carlrobert.codegpt.conversations.ConversationSearchIndex
+import ee.carlrobert.codegpt.conversations.ConversationsState
+import ee.carlrobert.codegpt.conversations.message.Message
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import java.util.*
+
+/**
+ * Fits the history of a conversation into a model's context window, next to the parts of a request
+ * that are sent regardless of it: the system prompt, the current prompt with its referenced files
+ * and PSI structure, and the tokens reserved for the response.
+ *
+ * Token counts of messages are cached by message id and recounted only when a message changes,
+ * e.g. when its response arrives. Which messages to keep when the history doesn't fit is up to a
+ * [HistoryPolicy], chosen in the chat completion settings.
+ */
+@Service
+class ContextBudgeter(
+    private val tokenCounter: (String) -> Int = { EncodingManager.getInstance().countTokens(it) },
+) {
+
+    companion object {
+        private const val MAX_CACHED_MESSAGES = 10_000
+
+        // Every message follows <|start|>{role/name}\n{content}<|end|>\n
+        private const val TOKENS_PER_MESSAGE = 4
+        private const val TOKENS_PER_TOOL_CALL = 8
+        private const val TOKENS_PER_TOOL_RESULT = 10
+
+        // The response is reserved at most a quarter of the context window
+        private const val RESPONSE_SHARE_DIVISOR = 4
+
+        /**
+         * Keeps the most recent messages that fit, like dropping messages from the start of the
+         * conversation until the rest fits.
+         */
+        @JvmField
+        val RECENCY = HistoryPolicy { history, budget, _ ->
+            var remaining = budget
+            history
+                .asReversed()
+                .takeWhile { message ->
+                    remaining -= message.tokens
+                    remaining >= 0
+                }
+                .asReversed()
+        }
+
+        /**
+         * Keeps the most recent message and then the messages sharing the most words with the
+         * prompt, as long as they fit.
+         */
+        @JvmField
+        val RELEVANCE = HistoryPolicy { history, budget, prompt ->
+            val promptTerms = ConversationSearchIndex.tokenize(prompt).toSet()
+            val scores = history.associateWith { counted ->
+                val message = counted.message
+                listOfNotNull(message.prompt, message.response)
+                    .flatMap { ConversationSearchIndex.tokenize(it) }
+                    .toSet()
+                    .count { it in promptTerms }
+            }
+            val candidates = history.withIndex()
+                .sortedWith(
+                    compareByDescending<IndexedValue<CountedMessage>> { it.index == history.lastIndex }
+                        .thenByDescending { scores.getValue(it.value) }
+                        .thenByDescending { it.index }
+                )
+
+            var remaining = budget
+            candidates
+                .filter { (_, counted) ->
+                    val fits = counted.tokens <= remaining
+                    if (fits) {
+                        remaining -= counted.tokens
+                    }
+                    fits
+                }
+                .sortedBy { it.index }
+                .map { it.value }
+        }
+
+        /**
+         * Returns the policy selected in the chat completion settings.
+         */
+        @JvmStatic
+        fun configuredPolicy(): HistoryPolicy =
+            if (service<ConfigurationSettings>().state.chatCompletionSettings.relevantHistoryEnabled) {
+                RELEVANCE
+            } else {
+                RECENCY
+            }
+
+        /**
+         * Returns the tokens to reserve for the response: [maxTokens], but no more than a quarter
+         * of the context window, so that the reservation alone doesn't fill a small window.
+         */
+        @JvmStatic
+        fun reservedResponseTokens(maxTokens: Int, contextWindow: Int?): Int =
+            if (contextWindow == null) {
+                maxTokens
+            } else {
+                minOf(maxTokens, contextWindow / RESPONSE_SHARE_DIVISOR)
+            }
+
+        @JvmStatic
+        fun getInstance(): ContextBudgeter = service()
+    }
+
+    /**
+     * Chooses which messages of a history that doesn't fit to send.
+     */
+    fun interface HistoryPolicy {
+
+        /**
+         * @param history The messages, oldest first.
+         * @param budget Tokens available for the history.
+         * @param prompt The prompt the history is sent with.
+         * @return The messages to keep, oldest first. Their tokens must not exceed the budget.
+         */
+        fun select(history: List<CountedMessage>, budget: Int, prompt: String): List<CountedMessage>
+    }
+
+    data class CountedMessage(val message: Message, val tokens: Int)
+
+    /**
+     * @param exceedsWindow Whether the whole history didn't fit and messages were left out.
+     */
+    data class Budget(
+        val history: List<Message>,
+        val historyTokens: Int,
+        val exceedsWindow: Boolean,
+    )
+
+    private class CachedCount(val fingerprint: Int, val tokens: Int)
+
+    private val messageTokenCounts: Cache<UUID, CachedCount> = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_MESSAGES.toLong())
+        .build()
+
+    /**
+     * Returns the tokens the prompt, response and tool calls of the message take up in a request.
+     */
+    fun countTokens(message: Message): Int {
+        val fingerprint = fingerprint(message)
+        val cached = messageTokenCounts.getIfPresent(message.id)
+        if (cached != null && cached.fingerprint == fingerprint) {
+            return cached.tokens
+        }
+
+        val tokens = countUncachedTokens(message)
+        messageTokenCounts.put(message.id, CachedCount(fingerprint, tokens))
+        return tokens
+    }
+
+    /**
+     * Fits the history into what is left of the context window after the fixed parts of a request.
+     * An empty history always fits, since leaving out messages can't make the request smaller.
+     *
+     * @param fixedTokens Tokens sent regardless of the history, including those reserved for the
+     * response.
+     * @param contextWindow The model's context window, or null if it isn't known, in which case the
+     * whole history is kept.
+     */
+    fun fit(
+        history: List<Message>,
+        fixedTokens: Int,
+        contextWindow: Int?,
+        prompt: String,
+        policy: HistoryPolicy = RECENCY,
+    ): Budget {
+        val counted = history.map { CountedMessage(it, countTokens(it)) }
+        val historyTokens = counted.sumOf { it.tokens }
+        if (contextWindow == null
+            || history.isEmpty()
+            || fixedTokens + historyTokens <= contextWindow
+        ) {
+            return Budget(history, historyTokens, false)
+        }
+
+        val kept = policy.select(counted, (contextWindow - fixedTokens).coerceAtLeast(0), prompt)
+        return Budget(kept.map { it.message }, kept.sumOf { it.tokens }, true)
+    }
+
+    /**
+     * Returns the messages of the request's conversation to send with it, including the current
+     * message if the conversation contains it.
+     *
+     * @param policy Which messages to keep, by default the one selected in the settings.
+     * @throws TotalUsageExceededException If the history doesn't fit and token limits aren't
+     * discarded for the conversation.
+     */
+    fun fitConversation(
+        params: ChatCompletionParameters,
+        fixedTokens: Int,
+        contextWindow: Int?,
+        policy: HistoryPolicy = configuredPolicy(),
+    ): List<Message> {
+        val conversation = params.conversation
+        val currentMessageId = params.message.id
+        val history = conversation.messages.filter { it.id != currentMessageId }
+        val budget = fit(history, fixedTokens, contextWindow, params.message.prompt.orEmpty(), policy)
+        if (!budget.exceedsWindow) {
+            return conversation.messages
+        }
+
+        if (!ConversationsState.getInstance().discardAllTokenLimits
+            && !conversation.isDiscardTokenLimit
+        ) {
+            throw TotalUsageExceededException()
+        }
+        val keptIds = budget.history.mapTo(HashSet()) { it.id }
+        return conversation.messages.filter { it.id == currentMessageId || it.id in keptIds }
+    }
+
+    private fun countUncachedTokens(message: Message): Int {
+        var tokens = countMessageTokens("user", message.prompt)
+        tokens += countMessageTokens("assistant", message.response)
+        message.toolCalls?.forEach { toolCall ->
+            tokens += countTokens(toolCall.id) + countTokens(toolCall.type) +
+                    countTokens(toolCall.function?.name) +
+                    countTokens(toolCall.function?.arguments) + TOKENS_PER_TOOL_CALL
+        }
+        message.toolCallResults?.forEach { (callId, result) ->
+            tokens += countTokens(callId) + countTokens(result) + TOKENS_PER_TOOL_RESULT
+        }
+        return tokens
+    }
+
+    private fun countMessageTokens(role: String, content: String?): Int =
+        if (content.isNullOrEmpty()) 0 else countTokens(role + content) + TOKENS_PER_MESSAGE
+
+    private fun countTokens(text: String?): Int =
+        if (text.isNullOrEmpty()) 0 else tokenCounter(text)
+
+    private fun fingerprint(message: Message): Int = Objects.hash(
+        message.prompt,
+        message.response,
+        message.toolCalls?.map { listOf(it.id, it.type, it.function?.name, it.function?.arguments) },
+        message.toolCallResults
+    )
+}
@@ -1,11 +1,15 @@
 package ee.carlrobert.codegpt.completions.factory
 
 import com.intellij.openapi.components.service
+import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.completions.BaseRequestFactory
 import ee.carlrobert.codegpt.completions.ChatCompletionParameters
+import ee.carlrobert.codegpt.completions.ContextBudgeter
 import ee.carlrobert.codegpt.completions.ToolApprovalMode
+import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.mcp.McpToolPromptFormatter
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.settings.models.ModelRegistry
 import ee.carlrobert.codegpt.settings.prompts.FilteredPromptsService
 import ee.carlrobert.codegpt.settings.prompts.PromptsSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
@@ -15,11 +19,25 @@ import ee.carlrobert.llm.completion.CompletionRequest
 
 class ClaudeRequestFactory : BaseRequestFactory() {
 
+    companion object {
+        private val CONTEXT_WINDOWS = mapOf(
+            ModelRegistry.CLAUDE_OPUS_4_20250514 to 200_000,
+            ModelRegistry.CLAUDE_SONNET_4_20250514 to 200_000,
+        )
+
+        /**
+         * Returns the context window of the model, or null if it isn't known, in which case the
+         * whole history is sent.
+         */
+        internal fun findContextWindow(model: String?): Int? = CONTEXT_WINDOWS[model]
+    }
+
     private val mcpToolPromptFormatter = McpToolPromptFormatter()
 
     override fun createChatRequest(params: ChatCompletionParameters): ClaudeCompletionRequest {
+        val selectedModel = ModelSelectionService.getInstance().getModelForFeature(FeatureType.CHAT)
         return ClaudeCompletionRequest().apply {
-            model = ModelSelectionService.getInstance().getModelForFeature(FeatureType.CHAT)
+            model = selectedModel
             maxTokens = service<ConfigurationSettings>().state.maxTokens
             isStream = true
 
@@ -60,7 +78,19 @@ class ClaudeRequestFactory : BaseRequestFactory() {
                 system = systemPrompt
             }
 
-            messages = buildClaudeMessages(params)
+            val promptWithContext = getPromptWithFilesContext(params)
+            val encodingManager = EncodingManager.getInstance()
+            val contextWindow = findContextWindow(selectedModel)
+            val fixedTokens = encodingManager.countTokens(systemPrompt) +
+                    encodingManager.countMessageTokens("user", promptWithContext) +
+                    ContextBudgeter.reservedResponseTokens(
+                        service<ConfigurationSettings>().state.maxTokens,
+                        contextWindow
+                    )
+            messages = buildClaudeMessages(
+                params,
+                ContextBudgeter.getInstance().fitConversation(params, fixedTokens, contextWindow)
+            )
 
             if (params.toolResults.isNullOrEmpty()) {
                 when {
@@ -83,7 +113,6 @@ class ClaudeRequestFactory : BaseRequestFactory() {
                     }
 
                     else -> {
-                        val promptWithContext = getPromptWithFilesContext(params)
                         if (promptWithContext.isNotBlank()) {
                             messages.add(
                                 ClaudeCompletionStandardMessage(
@@ -114,10 +143,13 @@ class ClaudeRequestFactory : BaseRequestFactory() {
         }
     }
 
-    private fun buildClaudeMessages(params: ChatCompletionParameters): MutableList<ClaudeCompletionMessage> {
+    private fun buildClaudeMessages(
+        params: ChatCompletionParameters,
+        conversationMessages: List<Message>
+    ): MutableList<ClaudeCompletionMessage> {
         val messages = mutableListOf<ClaudeCompletionMessage>()
 
-        for (prevMessage in params.conversation.messages) {
+        for (prevMessage in conversationMessages) {
             if (prevMessage.id == params.message.id && params.toolResults.isNullOrEmpty()) {
                 if (params.retry) {
                     break
@@ -31,7 +31,8 @@ class CustomOpenAIRequestFactory : BaseRequestFactory() {
             params,
             params.referencedFiles,
             params.history,
-            params.psiStructure
+            params.psiStructure,
+            serviceState.chatCompletionSettings.contextWindow
         )
         val request = buildCustomOpenAIChatCompletionRequest(
             serviceState.chatCompletionSettings,
@@ -4,9 +4,9 @@ import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.completions.BaseRequestFactory
 import ee.carlrobert.codegpt.completions.ChatCompletionParameters
+import ee.carlrobert.codegpt.completions.ContextBudgeter
 import ee.carlrobert.codegpt.completions.ConversationType
-import ee.carlrobert.codegpt.completions.TotalUsageExceededException
-import ee.carlrobert.codegpt.conversations.ConversationsState
+import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.prompts.FilteredPromptsService
 import ee.carlrobert.codegpt.settings.prompts.PromptsSettings
@@ -65,41 +65,37 @@ class GoogleRequestFactory : BaseRequestFactory() {
         model: String?,
         params: ChatCompletionParameters
     ): List<GoogleCompletionContent> {
-        val messages = buildGoogleMessages(params)
-
-        if (model == null) {
-            return messages
-        }
+        val contextWindow = model?.let { GoogleModel.findByCode(it)?.maxTokens }
+            ?: return buildGoogleMessages(params, params.conversation.messages)
 
         val encodingManager = service<EncodingManager>()
-        val totalUsage = messages.parallelStream()
-            .mapToInt { message ->
+        val currentMessages = params.conversation.messages.filter { it.id == params.message.id }
+        val fixedTokens = buildGoogleMessages(params, currentMessages)
+            .sumOf { message ->
                 encodingManager.countMessageTokens(
                     message.role,
                     message.parts.joinToString(",") { it.text ?: "" }
                 )
-            }
-            .sum() + service<ConfigurationSettings>().state.maxTokens
-
-        return GoogleModel.findByCode(model)?.let { googleModel ->
-            if (totalUsage <= googleModel.maxTokens) {
-                messages
-            } else {
-                tryReducingGoogleMessagesOrThrow(
-                    messages,
-                    params.conversation.isDiscardTokenLimit,
-                    totalUsage,
-                    googleModel.maxTokens
+            } +
+                encodingManager.countTokens(buildSystemInstruction(params).orEmpty()) +
+                ContextBudgeter.reservedResponseTokens(
+                    service<ConfigurationSettings>().state.maxTokens,
+                    contextWindow
                 )
-            }
-        } ?: messages
+        return buildGoogleMessages(
+            params,
+            ContextBudgeter.getInstance().fitConversation(params, fixedTokens, contextWindow)
+        )
     }
 
-    private fun buildGoogleMessages(params: ChatCompletionParameters): List<GoogleCompletionContent> {
+    private fun buildGoogleMessages(
+        params: ChatCompletionParameters,
+        conversationMessages: List<Message>
+    ): List<GoogleCompletionContent> {
         val message = params.message
         val messages = mutableListOf<GoogleCompletionContent>()
 
-        for (prevMessage in params.conversation.messages) {
+        for (prevMessage in conversationMessages) {
             if (params.retry && prevMessage.id == message.id) {
                 break
             }
@@ -156,37 +152,6 @@ class GoogleRequestFactory : BaseRequestFactory() {
         return messages
     }
 
-    private fun tryReducingGoogleMessagesOrThrow(
-        messages: List<GoogleCompletionContent>,
-        discardTokenLimit: Boolean,
-        totalUsage: Int,
-        modelMaxTokens: Int
-    ): List<GoogleCompletionContent> {
-        if (!service<ConversationsState>().state!!.discardAllTokenLimits) {
-            if (!discardTokenLimit) {
-                throw TotalUsageExceededException()
-            }
-        }
-
-        val encodingManager = EncodingManager.getInstance()
-        var currentUsage = totalUsage
-
-        // skip the system prompt
-        val updatedMessages = messages.mapIndexed { index, message ->
-            if (index == 0 || currentUsage <= modelMaxTokens) {
-                message
-            } else {
-                currentUsage -= encodingManager.countMessageTokens(
-                    message.role,
-                    message.parts.joinToString(",") { it.text }
-                )
-                null
-            }
-        }
-
-        return updatedMessages.filterNotNull()
-    }
-
     private fun buildSystemInstruction(params: ChatCompletionParameters): String? {
         return when (params.conversationType) {
             ConversationType.DEFAULT -> {
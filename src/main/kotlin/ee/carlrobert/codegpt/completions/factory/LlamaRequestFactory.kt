@@ -7,6 +7,7 @@ import ee.carlrobert.codegpt.completions.InlineEditCompletionParameters
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
+import ee.carlrobert.codegpt.settings.service.llama.LlamaSettings
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionRequest
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionStandardMessage
 
@@ -16,7 +17,11 @@ class LlamaRequestFactory : BaseRequestFactory() {
         val model = ModelSelectionService.getInstance().getModelForFeature(FeatureType.CHAT)
         val configuration = service<ConfigurationSettings>().state
         return OpenAIChatCompletionRequest.Builder(
-            OpenAIRequestFactory.buildOpenAIMessages(model, params)
+            OpenAIRequestFactory.buildOpenAIMessages(
+                model = model,
+                callParameters = params,
+                contextWindow = LlamaSettings.getCurrentState().contextSize
+            )
         )
             .setModel(model)
             .setStream(true)
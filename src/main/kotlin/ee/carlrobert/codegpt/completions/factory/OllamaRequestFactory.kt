@@ -8,6 +8,7 @@ import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.models.ModelSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
+import ee.carlrobert.codegpt.settings.service.ollama.OllamaSettings
 import ee.carlrobert.llm.client.openai.completion.request.OpenAIChatCompletionRequest
 import ee.carlrobert.llm.completion.CompletionRequest
 
@@ -24,6 +25,7 @@ class OllamaRequestFactory : BaseRequestFactory() {
                 referencedFiles = params.referencedFiles,
                 conversationsHistory = params.history,
                 psiStructure = params.psiStructure,
+                contextWindow = service<OllamaSettings>().state.contextSize.takeIf { it > 0 },
             )
         )
             .setModel(model)
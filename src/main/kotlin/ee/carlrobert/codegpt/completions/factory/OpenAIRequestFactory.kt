@@ -6,7 +6,7 @@ import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.ReferencedFile
 import ee.carlrobert.codegpt.completions.*
 import ee.carlrobert.codegpt.conversations.Conversation
-import ee.carlrobert.codegpt.conversations.ConversationsState
+import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.mcp.McpToolConverter
 import ee.carlrobert.codegpt.mcp.McpToolPromptFormatter
 import ee.carlrobert.codegpt.psistructure.models.ClassStructure
@@ -30,7 +30,7 @@ class OpenAIRequestFactory : BaseRequestFactory() {
         val model = ModelSelectionService.getInstance().getModelForFeature(params.featureType)
         val configuration = service<ConfigurationSettings>().state
         val requestBuilder: OpenAIChatCompletionRequest.Builder =
-            OpenAIChatCompletionRequest.Builder(buildOpenAIChatMessages(model, params))
+            OpenAIChatCompletionRequest.Builder(buildOpenAIMessages(model, params))
                 .setModel(model)
                 .setStream(true)
                 .setMaxTokens(null)
@@ -220,57 +220,54 @@ class OpenAIRequestFactory : BaseRequestFactory() {
                 .build()
         }
 
+        /**
+         * @param contextWindow The model's context window, for leaving out older messages that
+         * don't fit, or null if it isn't known.
+         */
         fun buildOpenAIMessages(
             model: String?,
             callParameters: ChatCompletionParameters,
             referencedFiles: List<ReferencedFile>? = null,
             conversationsHistory: List<Conversation>? = null,
-            psiStructure: Set<ClassStructure>? = null
+            psiStructure: Set<ClassStructure>? = null,
+            contextWindow: Int? = findContextWindow(model),
         ): List<OpenAIChatCompletionMessage> {
-            val messages = buildOpenAIChatMessages(
-                model = model,
-                callParameters = callParameters,
-                referencedFiles = referencedFiles ?: callParameters.referencedFiles,
-                conversationsHistory = conversationsHistory ?: callParameters.history,
-                psiStructure = psiStructure,
-            )
+            val buildMessages = { conversationMessages: List<Message> ->
+                buildOpenAIChatMessages(
+                    model = model,
+                    callParameters = callParameters,
+                    referencedFiles = referencedFiles ?: callParameters.referencedFiles,
+                    conversationsHistory = conversationsHistory ?: callParameters.history,
+                    psiStructure = psiStructure,
+                    conversationMessages = conversationMessages,
+                )
+            }
 
-            if (model == null) {
-                return messages
+            if (contextWindow == null) {
+                return buildMessages(callParameters.conversation.messages)
             }
 
+            val currentMessages = callParameters.conversation.messages
+                .filter { it.id == callParameters.message.id }
             val encodingManager = EncodingManager.getInstance()
-            val totalUsage = messages.parallelStream()
-                .mapToInt { message: OpenAIChatCompletionMessage? ->
-                    when (message) {
-                        is OpenAIChatCompletionToolMessage -> {
-                            countToolMessageTokens(message, encodingManager)
-                        }
-
-                        is OpenAIChatCompletionAssistantMessage -> {
-                            countAssistantMessageTokens(message, encodingManager)
-                        }
-
-                        else -> encodingManager.countMessageTokens(message)
-                    }
-                }
-                .sum() + getState().maxTokens
-            val modelMaxTokens: Int
-            try {
-                modelMaxTokens = findByCode(model).maxTokens
+            val fixedTokens = buildMessages(currentMessages)
+                .sumOf { countMessageTokens(it, encodingManager) } +
+                    ContextBudgeter.reservedResponseTokens(getState().maxTokens, contextWindow)
+            return buildMessages(
+                ContextBudgeter.getInstance()
+                    .fitConversation(callParameters, fixedTokens, contextWindow)
+            )
+        }
 
-                if (totalUsage <= modelMaxTokens) {
-                    return messages
-                }
-            } catch (ex: NoSuchElementException) {
-                return messages
+        private fun findContextWindow(model: String?): Int? {
+            if (model == null) {
+                return null
+            }
+            return try {
+                findByCode(model).maxTokens
+            } catch (_: NoSuchElementException) {
+                null
             }
-            return tryReducingMessagesOrThrow(
-                messages,
-                callParameters.conversation.isDiscardTokenLimit,
-                totalUsage,
-                modelMaxTokens
-            )
         }
 
         private fun buildOpenAIChatMessages(
@@ -278,7 +275,8 @@ class OpenAIRequestFactory : BaseRequestFactory() {
             callParameters: ChatCompletionParameters,
             referencedFiles: List<ReferencedFile>? = null,
             conversationsHistory: List<Conversation>? = null,
-            psiStructure: Set<ClassStructure>? = null
+            psiStructure: Set<ClassStructure>? = null,
+            conversationMessages: List<Message> = callParameters.conversation.messages,
         ): MutableList<OpenAIChatCompletionMessage> {
             val messages = mutableListOf<OpenAIChatCompletionMessage>()
             val role = if (isReasoningModel(model)) "user" else "system"
@@ -291,15 +289,27 @@ class OpenAIRequestFactory : BaseRequestFactory() {
 
             when (callParameters.requestType) {
                 RequestType.TOOL_CALL_REQUEST -> {
-                    handleToolCallRequest(messages, callParameters, effectiveRefs, effectivePsi)
+                    handleToolCallRequest(
+                        messages,
+                        callParameters,
+                        conversationMessages,
+                        effectiveRefs,
+                        effectivePsi
+                    )
                 }
 
                 RequestType.TOOL_CALL_CONTINUATION -> {
-                    handleToolCallContinuation(messages, callParameters)
+                    handleToolCallContinuation(messages, callParameters, conversationMessages)
                 }
 
                 RequestType.NORMAL_REQUEST -> {
-                    handleNormalRequest(messages, callParameters, effectiveRefs, effectivePsi)
+                    handleNormalRequest(
+                        messages,
+                        callParameters,
+                        conversationMessages,
+                        effectiveRefs,
+                        effectivePsi
+                    )
                 }
             }
 
@@ -381,9 +391,10 @@ class OpenAIRequestFactory : BaseRequestFactory() {
 
         private fun addConversationHistory(
             messages: MutableList<OpenAIChatCompletionMessage>,
-            callParameters: ChatCompletionParameters
+            callParameters: ChatCompletionParameters,
+            conversationMessages: List<Message>
         ) {
-            callParameters.conversation.messages.forEach { msg ->
+            conversationMessages.forEach { msg ->
                 val isCurrent = msg.id == callParameters.message.id
 
                 if (msg.prompt.isNotEmpty() && !isCurrent) {
@@ -427,10 +438,11 @@ class OpenAIRequestFactory : BaseRequestFactory() {
         private fun handleNormalRequest(
             messages: MutableList<OpenAIChatCompletionMessage>,
             callParameters: ChatCompletionParameters,
+            conversationMessages: List<Message>,
             referencedFiles: List<ReferencedFile>?,
             psiStructure: Set<ClassStructure>?
         ) {
-            addConversationHistory(messages, callParameters)
+            addConversationHistory(messages, callParameters, conversationMessages)
 
             val message = callParameters.message
             val imageDetails = callParameters.imageDetails
@@ -459,10 +471,11 @@ class OpenAIRequestFactory : BaseRequestFactory() {
         private fun handleToolCallRequest(
             messages: MutableList<OpenAIChatCompletionMessage>,
             callParameters: ChatCompletionParameters,
+            conversationMessages: List<Message>,
             referencedFiles: List<ReferencedFile>?,
             psiStructure: Set<ClassStructure>?
         ) {
-            addConversationHistory(messages, callParameters)
+            addConversationHistory(messages, callParameters, conversationMessages)
 
             val message = callParameters.message
             if (message.prompt.isNotEmpty()) {
@@ -481,9 +494,10 @@ class OpenAIRequestFactory : BaseRequestFactory() {
 
         private fun handleToolCallContinuation(
             messages: MutableList<OpenAIChatCompletionMessage>,
-            callParameters: ChatCompletionParameters
+            callParameters: ChatCompletionParameters,
+            conversationMessages: List<Message>
         ) {
-            addConversationHistory(messages, callParameters)
+            addConversationHistory(messages, callParameters, conversationMessages)
 
             val message = callParameters.message
             if (message.prompt.isNotEmpty()) {
@@ -511,47 +525,6 @@ class OpenAIRequestFactory : BaseRequestFactory() {
             }
         }
 
-        private fun tryReducingMessagesOrThrow(
-            messages: MutableList<OpenAIChatCompletionMessage>,
-            discardTokenLimit: Boolean,
-            totalInputUsage: Int,
-            modelMaxTokens: Int
-        ): List<OpenAIChatCompletionMessage> {
-            val result: MutableList<OpenAIChatCompletionMessage?> = messages.toMutableList()
-            var totalUsage = totalInputUsage
-            if (!ConversationsState.getInstance().discardAllTokenLimits) {
-                if (!discardTokenLimit) {
-                    throw TotalUsageExceededException()
-                }
-            }
-            val encodingManager = EncodingManager.getInstance()
-            // skip the system prompt
-            for (i in 1 until result.size - 1) {
-                if (totalUsage <= modelMaxTokens) {
-                    break
-                }
-
-                val message = result[i]
-                when (message) {
-                    is OpenAIChatCompletionStandardMessage -> {
-                        totalUsage -= encodingManager.countMessageTokens(message)
-                        result[i] = null
-                    }
-
-                    is OpenAIChatCompletionToolMessage -> {
-                        totalUsage -= encodingManager.countMessageTokens(message)
-                    }
-
-                    is OpenAIChatCompletionDetailedMessage -> {
-                        totalUsage -= encodingManager.countMessageTokens(message)
-                        result[i] = null
-                    }
-                }
-            }
-
-            return result.filterNotNull()
-        }
-
         fun createBasicCompletionRequest(
             systemPrompt: String,
             userPrompt: String,
@@ -569,6 +542,18 @@ class OpenAIRequestFactory : BaseRequestFactory() {
                 .build()
         }
 
+        private fun countMessageTokens(
+            message: OpenAIChatCompletionMessage,
+            encodingManager: EncodingManager
+        ): Int = when (message) {
+            is OpenAIChatCompletionToolMessage -> countToolMessageTokens(message, encodingManager)
+            is OpenAIChatCompletionAssistantMessage -> {
+                countAssistantMessageTokens(message, encodingManager)
+            }
+
+            else -> encodingManager.countMessageTokens(message)
+        }
+
         private fun countToolMessageTokens(
             message: OpenAIChatCompletionToolMessage,
             encodingManager: EncodingManager
@@ -0,0 +1,208 @@
+package ee.carlrobert.codegpt.conversations
+
+import ee.carlrobert.codegpt.conversations.message.Message
+import ee.carlrobert.codegpt.util.ProjectPathUtils
+import java.util.*
+
+/**
+ * Inverted index over the text of conversations, kept up to date as they are saved.
+ *
+ * Each term maps to the conversations containing it, with how often it occurs in each field. A
+ * query matches the conversations containing, for each of its terms, a term starting with it.
+ * Matches are scored by occurrences weighted by field, and exact terms count twice as much as
+ * prefixes.
+ */
+class ConversationSearchIndex {
+
+    enum class Field(val weight: Int) {
+        /** The conversation's title and its first prompt, which is shown as the title. */
+        TITLE(4),
+        PROJECT(2),
+        MESSAGE(1)
+    }
+
+    private class Posting {
+        val counts = IntArray(Field.entries.size)
+
+        fun isEmpty() = counts.all { it == 0 }
+
+        fun score(fields: Set<Field>) = fields.sumOf { counts[it.ordinal] * it.weight }
+    }
+
+    private class IndexedConversation(
+        var title: String?,
+        var projectName: String?,
+        var headerTerms: Map<String, IntArray>,
+        val messageTerms: MutableMap<UUID, Map<String, Int>> = HashMap(),
+    )
+
+    private val terms = TreeMap<String, HashMap<UUID, Posting>>()
+    private val conversations = HashMap<UUID, IndexedConversation>()
+
+    @Synchronized
+    fun contains(conversationId: UUID) = conversations.containsKey(conversationId)
+
+    /**
+     * Indexes the conversation, tokenizing only the header and the messages that weren't indexed
+     * before.
+     *
+     * @param changedMessageId A message that was indexed before and has changed since.
+     */
+    @Synchronized
+    fun update(conversation: Conversation, messages: List<Message>, changedMessageId: UUID? = null) {
+        val id = conversation.id
+        val title = listOfNotNull(conversation.title, messages.firstOrNull()?.prompt)
+            .joinToString("\n")
+        val projectName = ProjectPathUtils.extractProjectName(conversation.projectPath)
+
+        val indexed = conversations[id]
+        if (indexed == null) {
+            val headerTerms = createHeaderTerms(title, projectName)
+            addTerms(id, headerTerms)
+            conversations[id] = IndexedConversation(title, projectName, headerTerms)
+        } else if (indexed.title != title || indexed.projectName != projectName) {
+            removeTerms(id, indexed.headerTerms)
+            indexed.title = title
+            indexed.projectName = projectName
+            indexed.headerTerms = createHeaderTerms(title, projectName)
+            addTerms(id, indexed.headerTerms)
+        }
+
+        val messageTerms = conversations.getValue(id).messageTerms
+        val messageIds = messages.mapTo(HashSet()) { it.id }
+        messageTerms.keys.filter { it !in messageIds || it == changedMessageId }.forEach {
+            removeTerms(id, messageTerms.remove(it)!!, Field.MESSAGE)
+        }
+        messages.filter { it.id !in messageTerms }.forEach { message ->
+            val counts = countTerms(listOfNotNull(message.prompt, message.response))
+            messageTerms[message.id] = counts
+            addTerms(id, counts, Field.MESSAGE)
+        }
+    }
+
+    @Synchronized
+    fun remove(conversationId: UUID) {
+        val indexed = conversations.remove(conversationId) ?: return
+        removeTerms(conversationId, indexed.headerTerms)
+        indexed.messageTerms.values.forEach { removeTerms(conversationId, it, Field.MESSAGE) }
+    }
+
+    @Synchronized
+    fun clear() {
+        terms.clear()
+        conversations.clear()
+    }
+
+    /**
+     * Returns the scores of the conversations matching every term of the query in the given
+     * fields, or nothing if the query has no terms.
+     */
+    @Synchronized
+    fun search(query: String, fields: Set<Field> = Field.entries.toSet()): Map<UUID, Int> {
+        var scores: Map<UUID, Int>? = null
+        for (queryTerm in tokenize(query).distinct()) {
+            val previous = scores
+            val termScores = HashMap<UUID, Int>()
+            terms.subMap(queryTerm, true, queryTerm + Char.MAX_VALUE, true).forEach { (term, postings) ->
+                val multiplier = if (term == queryTerm) 2 else 1
+                postings.forEach { (id, posting) ->
+                    val score = posting.score(fields)
+                    if (score > 0 && (previous == null || id in previous)) {
+                        termScores.merge(id, score * multiplier, Int::plus)
+                    }
+                }
+            }
+            previous?.let { termScores.replaceAll { id, score -> score + it.getValue(id) } }
+            scores = termScores
+            if (termScores.isEmpty()) {
+                break
+            }
+        }
+        return scores.orEmpty()
+    }
+
+    private fun createHeaderTerms(title: String, projectName: String?): Map<String, IntArray> {
+        val headerTerms = HashMap<String, IntArray>()
+        countTerms(listOf(title)).forEach { (term, count) ->
+            headerTerms.getOrPut(term) { IntArray(Field.entries.size) }[Field.TITLE.ordinal] = count
+        }
+        countTerms(listOfNotNull(projectName)).forEach { (term, count) ->
+            headerTerms.getOrPut(term) { IntArray(Field.entries.size) }[Field.PROJECT.ordinal] = count
+        }
+        return headerTerms
+    }
+
+    private fun addTerms(id: UUID, headerTerms: Map<String, IntArray>) {
+        headerTerms.forEach { (term, counts) ->
+            val posting = terms.getOrPut(term) { HashMap() }.getOrPut(id) { Posting() }
+            counts.forEachIndexed { field, count -> posting.counts[field] += count }
+        }
+    }
+
+    private fun removeTerms(id: UUID, headerTerms: Map<String, IntArray>) {
+        headerTerms.forEach { (term, counts) ->
+            updatePosting(term, id) { posting ->
+                counts.forEachIndexed { field, count -> posting.counts[field] -= count }
+            }
+        }
+    }
+
+    private fun addTerms(id: UUID, counts: Map<String, Int>, field: Field) {
+        counts.forEach { (term, count) ->
+            terms.getOrPut(term) { HashMap() }.getOrPut(id) { Posting() }.counts[field.ordinal] += count
+        }
+    }
+
+    private fun removeTerms(id: UUID, counts: Map<String, Int>, field: Field) {
+        counts.forEach { (term, count) ->
+            updatePosting(term, id) { it.counts[field.ordinal] -= count }
+        }
+    }
+
+    private fun updatePosting(term: String, id: UUID, update: (Posting) -> Unit) {
+        val postings = terms[term] ?: return
+        val posting = postings[id] ?: return
+        update(posting)
+        if (posting.isEmpty()) {
+            postings.remove(id)
+            if (postings.isEmpty()) {
+                terms.remove(term)
+            }
+        }
+    }
+
+    private fun countTerms(texts: List<String>): Map<String, Int> {
+        val counts = HashMap<String, Int>()
+        texts.forEach { text -> tokenize(text).forEach { counts.merge(it, 1, Int::plus) } }
+        return counts
+    }
+
+    companion object {
+
+        /**
+         * Splits text into lowercase terms of letters and digits, keeping the trailing `+` and `#`
+         * of names like C++ and C#.
+         */
+        fun tokenize(text: String): List<String> {
+            val tokens = mutableListOf<String>()
+            var start = -1
+            var inSuffix = false
+            for (i in 0..text.length) {
+                val c = if (i < text.length) text[i] else ' '
+                val isSuffixChar = start >= 0 && (c == '+' || c == '#')
+                val isTermChar = isSuffixChar || (!inSuffix && (c.isLetterOrDigit() || c == '_'))
+                if (isTermChar) {
+                    if (start < 0) {
+                        start = i
+                    }
+                    inSuffix = isSuffixChar
+                } else if (start >= 0) {
+                    tokens.add(text.substring(start, i).lowercase())
+                    start = if (c.isLetterOrDigit() || c == '_') i else -1
+                    inSuffix = false
+                }
+            }
+            return tokens
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package ee.carlrobert.codegpt.conversations
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.annotation.JsonInclude
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule
+import com.intellij.openapi.diagnostic.thisLogger
+import ee.carlrobert.codegpt.CodeGPTPlugin
+import ee.carlrobert.codegpt.conversations.message.Message
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.time.LocalDateTime
+import java.util.*
+
+/**
+ * Stores each conversation in its own append-only file, along with an append-only index of the
+ * conversations' metadata.
+ *
+ * Only the index is read up front. A conversation's messages are read the first time they are
+ * accessed. Saving a conversation appends its new and changed messages to its file and its
+ * metadata to the index. A file is rewritten when it is read and its superseded records outnumber
+ * its live ones.
+ */
+class ConversationStore(private val directory: Path) {
+
+    companion object {
+        private const val INDEX_FILE_NAME = "index.jsonl"
+        private const val MESSAGES_FILE_EXTENSION = ".jsonl"
+        private const val PREVIEW_LENGTH = 200
+        private const val COMPACTION_SLACK = 16
+
+        @JvmStatic
+        fun getDefaultDirectory(): Path =
+            Path.of(CodeGPTPlugin.getPluginOptionsPath(), "conversations")
+    }
+
+    /**
+     * Metadata of a conversation, or a marker that it was deleted.
+     *
+     * @param firstMessage Preview of the first message, for listing conversations without loading
+     * their messages.
+     * @param lastMessage Preview of the last message.
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    class IndexRecord(
+        var id: UUID? = null,
+        var title: String? = null,
+        var createdOn: LocalDateTime? = null,
+        var updatedOn: LocalDateTime? = null,
+        var projectPath: String? = null,
+        var discardTokenLimit: Boolean = false,
+        var messageCount: Int = 0,
+        var firstMessage: Message? = null,
+        var lastMessage: Message? = null,
+        var deleted: Boolean = false,
+    )
+
+    /**
+     * A message added or changed since the previous record with its id, or the id of a removed
+     * message.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    class MessageRecord(
+        var message: Message? = null,
+        var removedMessageId: UUID? = null,
+    )
+
+    private val logger = thisLogger()
+    private val objectMapper = ObjectMapper()
+        .registerModule(Jdk8Module())
+        .registerModule(JavaTimeModule())
+
+    private val conversations = LinkedHashMap<UUID, Conversation>()
+    private val indexRecords = LinkedHashMap<UUID, IndexRecord>()
+    private val persistedMessageIds = HashMap<UUID, MutableSet<UUID>>()
+    private var indexFileRecordCount = 0
+
+    init {
+        loadIndex()
+    }
+
+    @Synchronized
+    fun getConversations(): List<Conversation> = conversations.values.toList()
+
+    @Synchronized
+    fun findConversation(id: UUID): Conversation? = conversations[id]
+
+    /**
+     * Saves the conversation's metadata and the messages added to or removed from it since it was
+     * last saved.
+     *
+     * @param changedMessage A message of the conversation that was saved before and has changed
+     * since, e.g. by receiving its response.
+     */
+    fun saveConversation(conversation: Conversation, changedMessage: Message? = null) {
+        // Read the conversation before locking the store, since loading its messages locks both.
+        val messages = if (conversation.isMessagesLoaded) conversation.messages.toList() else null
+        val indexRecord = createIndexRecord(conversation, messages)
+
+        synchronized(this) {
+            conversations[conversation.id] = conversation
+            if (messages != null) {
+                appendMessageChanges(conversation.id, messages, changedMessage)
+            }
+            appendIndexRecord(indexRecord)
+        }
+    }
+
+    /**
+     * Adds conversations that aren't in the store yet, writing each of their files at once.
+     *
+     * A conversation whose messages couldn't be written is kept in memory but left out of the
+     * index, so that importing it again later doesn't skip it.
+     *
+     * @return Whether every conversation was written.
+     */
+    fun importConversations(imported: List<Conversation>): Boolean {
+        val pending = imported.map { it to it.messages.toList() }
+        var written = true
+        synchronized(this) {
+            pending.forEach { (conversation, messages) ->
+                if (conversations.containsKey(conversation.id)) {
+                    return@forEach
+                }
+                conversations[conversation.id] = conversation
+                written = rewriteMessages(conversation.id, messages)
+                        && appendIndexRecord(createIndexRecord(conversation, messages))
+                        && written
+            }
+        }
+        return written
+    }
+
+    /**
+     * Returns the messages of a conversation without loading them into it, e.g. for indexing.
+     */
+    fun peekMessages(conversation: Conversation): List<Message> {
+        if (conversation.isMessagesLoaded) {
+            return conversation.messages.toList()
+        }
+        return synchronized(this) { readMessages(conversation.id).values.toList() }
+    }
+
+    @Synchronized
+    fun deleteConversation(id: UUID) {
+        conversations.remove(id) ?: return
+        persistedMessageIds.remove(id)
+        try {
+            Files.deleteIfExists(getMessagesFile(id))
+        } catch (e: IOException) {
+            logger.warn("Unable to delete conversation $id", e)
+        }
+        appendIndexRecord(IndexRecord(id = id, deleted = true))
+    }
+
+    @Synchronized
+    fun clear() {
+        val ids = conversations.keys.toList()
+        conversations.clear()
+        indexRecords.clear()
+        persistedMessageIds.clear()
+        indexFileRecordCount = 0
+        try {
+            ids.forEach { Files.deleteIfExists(getMessagesFile(it)) }
+            Files.deleteIfExists(directory.resolve(INDEX_FILE_NAME))
+        } catch (e: IOException) {
+            logger.warn("Unable to delete conversations", e)
+        }
+    }
+
+    @Synchronized
+    private fun loadMessages(id: UUID): List<Message> {
+        val messages = readMessages(id)
+        persistedMessageIds[id] = messages.keys.toHashSet()
+        return messages.values.toList()
+    }
+
+    private fun readMessages(id: UUID): LinkedHashMap<UUID, Message> {
+        val messages = LinkedHashMap<UUID, Message>()
+        val file = getMessagesFile(id)
+        if (!Files.exists(file)) {
+            return messages
+        }
+
+        var recordCount = 0
+        readRecords(file, MessageRecord::class.java).forEach { record ->
+            record.message?.let { messages[it.id] = it }
+            record.removedMessageId?.let { messages.remove(it) }
+            recordCount++
+        }
+        if (recordCount > messages.size * 2 + COMPACTION_SLACK) {
+            rewriteMessages(id, messages.values.toList())
+        }
+        return messages
+    }
+
+    private fun appendMessageChanges(id: UUID, messages: List<Message>, changedMessage: Message?) {
+        val persisted = persistedMessageIds.getOrPut(id) { readMessages(id).keys.toHashSet() }
+        val currentIds = messages.mapTo(HashSet()) { it.id }
+        val records = persisted
+            .filter { it !in currentIds }
+            .map { MessageRecord(removedMessageId = it) }
+            .toMutableList()
+        messages
+            .filter { it.id !in persisted || it.id == changedMessage?.id }
+            .forEach { records.add(MessageRecord(message = it)) }
+
+        if (records.isNotEmpty() && appendRecords(getMessagesFile(id), records)) {
+            persisted.retainAll(currentIds)
+            persisted.addAll(currentIds)
+        }
+    }
+
+    private fun rewriteMessages(id: UUID, messages: List<Message>): Boolean {
+        if (!writeRecords(getMessagesFile(id), messages.map { MessageRecord(message = it) })) {
+            return false
+        }
+        persistedMessageIds[id] = messages.mapTo(HashSet()) { it.id }
+        return true
+    }
+
+    private fun loadIndex() {
+        val file = directory.resolve(INDEX_FILE_NAME)
+        if (!Files.exists(file)) {
+            return
+        }
+
+        readRecords(file, IndexRecord::class.java).forEach { record ->
+            val id = record.id ?: return@forEach
+            if (record.deleted) {
+                indexRecords.remove(id)
+            } else {
+                indexRecords[id] = record
+            }
+            indexFileRecordCount++
+        }
+        indexRecords.values.forEach { conversations[it.id!!] = createConversation(it) }
+        compactIndexIfNeeded()
+    }
+
+    private fun appendIndexRecord(record: IndexRecord): Boolean {
+        val id = record.id!!
+        if (record.deleted) {
+            indexRecords.remove(id)
+        } else {
+            indexRecords[id] = record
+        }
+        val appended = appendRecords(directory.resolve(INDEX_FILE_NAME), listOf(record))
+        if (appended) {
+            indexFileRecordCount++
+        }
+        compactIndexIfNeeded()
+        return appended
+    }
+
+    private fun compactIndexIfNeeded() {
+        if (indexFileRecordCount > indexRecords.size * 2 + COMPACTION_SLACK
+            && writeRecords(directory.resolve(INDEX_FILE_NAME), indexRecords.values.toList())
+        ) {
+            indexFileRecordCount = indexRecords.size
+        }
+    }
+
+    private fun createConversation(record: IndexRecord): Conversation {
+        val id = record.id!!
+        return Conversation().apply {
+            this.id = id
+            title = record.title
+            createdOn = record.createdOn
+            updatedOn = record.updatedOn
+            projectPath = record.projectPath
+            if (record.discardTokenLimit) {
+                discardTokenLimits()
+            }
+            setMessageLoader(
+                { loadMessages(id) },
+                record.messageCount,
+                record.firstMessage,
+                record.lastMessage
+            )
+        }
+    }
+
+    private fun createIndexRecord(
+        conversation: Conversation,
+        messages: List<Message>?
+    ): IndexRecord {
+        val firstMessage =
+            if (messages != null) messages.firstOrNull() else conversation.firstMessage
+        val lastMessage =
+            if (messages != null) messages.lastOrNull() else conversation.lastMessage
+        return IndexRecord(
+            id = conversation.id,
+            title = conversation.title,
+            createdOn = conversation.createdOn,
+            updatedOn = conversation.updatedOn,
+            projectPath = conversation.projectPath,
+            discardTokenLimit = conversation.isDiscardTokenLimit,
+            messageCount = messages?.size ?: conversation.messageCount,
+            firstMessage = firstMessage?.let { createPreview(it) },
+            lastMessage = lastMessage?.let { createPreview(it) }
+        )
+    }
+
+    private fun createPreview(message: Message): Message =
+        Message(message.prompt?.take(PREVIEW_LENGTH), message.response?.take(PREVIEW_LENGTH))
+
+    private fun getMessagesFile(id: UUID): Path = directory.resolve("$id$MESSAGES_FILE_EXTENSION")
+
+    /**
+     * Reads the records of a file, skipping lines that can't be parsed, such as a last line that
+     * was cut short.
+     */
+    private fun <T> readRecords(file: Path, type: Class<T>): List<T> {
+        return try {
+            Files.readAllLines(file).mapNotNull { line ->
+                if (line.isBlank()) {
+                    return@mapNotNull null
+                }
+                try {
+                    objectMapper.readValue(line, type)
+                } catch (e: IOException) {
+                    logger.debug("Skipping unreadable record in $file", e)
+                    null
+                }
+            }
+        } catch (e: IOException) {
+            logger.warn("Unable to read $file", e)
+            emptyList()
+        }
+    }
+
+    /**
+     * Appends records to a file. If its last line was cut short, e.g. by a crash while writing,
+     * the records start on a new line, so that the first of them isn't lost along with it.
+     */
+    private fun appendRecords(file: Path, records: List<Any>): Boolean {
+        return try {
+            Files.createDirectories(directory)
+            val tornTail = !endsWithLineBreak(file)
+            Files.newBufferedWriter(
+                file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+            ).use { writer ->
+                if (tornTail) {
+                    writer.write("\n")
+                }
+                records.forEach {
+                    writer.write(objectMapper.writeValueAsString(it))
+                    writer.write("\n")
+                }
+            }
+            true
+        } catch (e: IOException) {
+            logger.warn("Unable to write $file", e)
+            false
+        }
+    }
+
+    private fun endsWithLineBreak(file: Path): Boolean {
+        if (!Files.exists(file)) {
+            return true
+        }
+        Files.newByteChannel(file).use { channel ->
+            val size = channel.size()
+            if (size == 0L) {
+                return true
+            }
+            val lastByte = ByteBuffer.allocate(1)
+            channel.position(size - 1).read(lastByte)
+            return lastByte.get(0) == '\n'.code.toByte()
+        }
+    }
+
+    private fun writeRecords(file: Path, records: List<Any>): Boolean {
+        return try {
+            Files.createDirectories(directory)
+            val tempFile = Files.createTempFile(directory, file.fileName.toString(), ".tmp")
+            Files.newBufferedWriter(tempFile).use { writer ->
+                records.forEach {
+                    writer.write(objectMapper.writeValueAsString(it))
+                    writer.write("\n")
+                }
+            }
+            Files.move(
+                tempFile,
+                file,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+            )
+            true
+        } catch (e: IOException) {
+            logger.warn("Unable to write $file", e)
+            false
+        }
+    }
+}
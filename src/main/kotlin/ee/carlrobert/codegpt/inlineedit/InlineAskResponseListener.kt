@@ -2,10 +2,12 @@ package ee.carlrobert.codegpt.inlineedit
 
 import com.intellij.openapi.application.runInEdt
 import com.intellij.openapi.diagnostic.Logger
+import com.intellij.openapi.diagnostic.debug
 import com.intellij.openapi.project.Project
 import ee.carlrobert.codegpt.codecompletions.CompletionProgressNotifier
 import ee.carlrobert.codegpt.completions.ChatCompletionParameters
 import ee.carlrobert.codegpt.completions.CompletionResponseEventListener
+import ee.carlrobert.codegpt.toolwindow.chat.ui.ResponseRenderScheduler
 import ee.carlrobert.codegpt.ui.OverlayUtil
 import ee.carlrobert.llm.client.openai.completion.ErrorDetails
 
@@ -15,7 +17,11 @@ class InlineAskResponseListener(
 ) : CompletionResponseEventListener {
 
     private val logger = Logger.getInstance(InlineAskResponseListener::class.java)
-    private val builder = StringBuilder()
+    private val builder = StringBuffer()
+    private val renderScheduler = ResponseRenderScheduler { message ->
+        inlay.updateAskResponseStream(message)
+        inlay.setAskLastAssistantResponse(builder.toString())
+    }
 
     override fun handleRequestOpen() {
         runInEdt { inlay.setThinkingVisible(true) }
@@ -24,13 +30,13 @@ class InlineAskResponseListener(
 
     override fun handleMessage(message: String) {
         builder.append(message)
-        inlay.updateAskResponseStream(message)
-        inlay.setAskLastAssistantResponse(builder.toString())
+        renderScheduler.offer(message)
     }
 
     override fun handleCompleted(fullMessage: String, callParameters: ChatCompletionParameters) {
         try {
             runInEdt {
+                finishRendering()
                 inlay.onCompletionFinished()
                 inlay.setAskLastAssistantResponse(fullMessage)
                 inlay.updateApplyVisibilityAfterComplete(fullMessage)
@@ -43,10 +49,20 @@ class InlineAskResponseListener(
 
     override fun handleError(error: ErrorDetails?, ex: Throwable?) {
         runInEdt {
+            finishRendering()
             inlay.onCompletionFinished()
             CompletionProgressNotifier.update(project, false)
             val message = error?.message ?: ex?.message ?: "Something went wrong"
             OverlayUtil.showNotification(message)
         }
     }
+
+    private fun finishRendering() {
+        renderScheduler.flush()
+        renderScheduler.stop()
+        logger.debug {
+            val stats = renderScheduler.stats
+            "Rendered ${stats.deltas} deltas in ${stats.flushes} flushes, ${stats.edtTimeMillis} ms on EDT"
+        }
+    }
 }
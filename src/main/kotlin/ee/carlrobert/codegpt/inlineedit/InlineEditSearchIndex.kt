@@ -0,0 +1,204 @@
+package ee.carlrobert.codegpt.inlineedit
+
+import com.intellij.openapi.util.TextRange
+
+/**
+ * Line index of the text an inline edit applies to, used to find SEARCH blocks regardless of
+ * differences in whitespace.
+ *
+ * A block of several lines is looked up by its first line and compared line by line, so finding
+ * it takes time proportional to the block rather than the text. Its last line may be incomplete,
+ * as it is while the block is still streaming. Other blocks, and blocks whose line breaks differ
+ * from the text, are found by a rolling hash over the text with whitespace runs collapsed.
+ */
+class InlineEditSearchIndex(val content: String) {
+
+    private val lineStarts: IntArray
+    private val normalizedLines: Array<String>
+    private val nonBlankLines: IntArray
+    private val positionsByLine = HashMap<String, MutableList<Int>>()
+
+    private val collapsed: CollapsedText by lazy { CollapsedText(content) }
+
+    init {
+        val starts = ArrayList<Int>()
+        starts.add(0)
+        content.forEachIndexed { index, char ->
+            if (char == '\n') {
+                starts.add(index + 1)
+            }
+        }
+        lineStarts = starts.toIntArray()
+        normalizedLines = Array(lineStarts.size) { normalize(getLine(it)) }
+
+        val nonBlank = ArrayList<Int>()
+        normalizedLines.forEachIndexed { line, normalized ->
+            if (normalized.isNotEmpty()) {
+                positionsByLine.getOrPut(normalized) { mutableListOf() }.add(nonBlank.size)
+                nonBlank.add(line)
+            }
+        }
+        nonBlankLines = nonBlank.toIntArray()
+    }
+
+    val lineCount: Int
+        get() = lineStarts.size
+
+    fun getLine(line: Int): String = content.substring(lineStarts[line], getLineEndOffset(line))
+
+    fun getLineStartOffset(line: Int): Int = lineStarts[line]
+
+    /**
+     * Offset of the end of the line, excluding its line separator.
+     */
+    fun getLineEndOffset(line: Int): Int {
+        var end = if (line + 1 < lineStarts.size) lineStarts[line + 1] - 1 else content.length
+        if (end > lineStarts[line] && content[end - 1] == '\r') {
+            end--
+        }
+        return end
+    }
+
+    fun getLineNumber(offset: Int): Int {
+        val index = lineStarts.binarySearch(offset)
+        return if (index >= 0) index else -index - 2
+    }
+
+    /**
+     * Returns all occurrences of the pattern, ignoring leading and trailing whitespace and treating
+     * any run of whitespace as equal to any other.
+     */
+    fun find(pattern: String): List<TextRange> {
+        val patternLines = pattern.split('\n').map { normalize(it) }.filter { it.isNotEmpty() }
+        if (patternLines.isEmpty()) {
+            return emptyList()
+        }
+
+        if (patternLines.size > 1) {
+            val matches = findLines(patternLines)
+            if (matches.isNotEmpty()) {
+                return matches
+            }
+        }
+        return collapsed.find(patternLines.joinToString(" "))
+    }
+
+    private fun findLines(patternLines: List<String>): List<TextRange> {
+        val candidates = positionsByLine[patternLines.first()] ?: return emptyList()
+        val lastIndex = patternLines.lastIndex
+        return candidates.mapNotNull { position ->
+            if (position + lastIndex >= nonBlankLines.size) {
+                return@mapNotNull null
+            }
+            for (i in 1 until lastIndex) {
+                if (normalizedLines[nonBlankLines[position + i]] != patternLines[i]) {
+                    return@mapNotNull null
+                }
+            }
+            val lastLine = nonBlankLines[position + lastIndex]
+            if (!normalizedLines[lastLine].startsWith(patternLines[lastIndex])) {
+                return@mapNotNull null
+            }
+
+            val firstLine = nonBlankLines[position]
+            val start = lineStarts[firstLine] + getLine(firstLine).indexOfFirst { !it.isWhitespace() }
+            TextRange(start, offsetAfter(lastLine, patternLines[lastIndex].length))
+        }
+    }
+
+    /**
+     * Returns the offset after the given number of characters of the normalized line.
+     */
+    private fun offsetAfter(line: Int, normalizedLength: Int): Int {
+        var offset = lineStarts[line]
+        val end = getLineEndOffset(line)
+        while (offset < end && content[offset].isWhitespace()) offset++
+
+        var count = 0
+        while (offset < end && count < normalizedLength) {
+            if (content[offset].isWhitespace()) {
+                while (offset < end && content[offset].isWhitespace()) offset++
+            } else {
+                offset++
+            }
+            count++
+        }
+        return offset
+    }
+
+    private class CollapsedText(content: String) {
+
+        private val text: String
+        private val originalOffsets: IntArray
+
+        init {
+            val builder = StringBuilder(content.length)
+            val offsets = IntArray(content.length)
+            var previousWhitespace = false
+            content.forEachIndexed { index, char ->
+                val whitespace = char.isWhitespace()
+                if (!whitespace || !previousWhitespace) {
+                    offsets[builder.length] = index
+                    builder.append(if (whitespace) ' ' else char)
+                }
+                previousWhitespace = whitespace
+            }
+            text = builder.toString()
+            originalOffsets = offsets.copyOf(text.length)
+        }
+
+        fun find(pattern: String): List<TextRange> {
+            val length = pattern.length
+            if (length == 0 || length > text.length) {
+                return emptyList()
+            }
+
+            var power = 1
+            var patternHash = 0
+            var hash = 0
+            for (i in 0 until length) {
+                if (i > 0) power *= HASH_BASE
+                patternHash = patternHash * HASH_BASE + pattern[i].code
+                hash = hash * HASH_BASE + text[i].code
+            }
+
+            val matches = mutableListOf<TextRange>()
+            var start = 0
+            while (true) {
+                if (hash == patternHash && text.regionMatches(start, pattern, 0, length)) {
+                    matches.add(
+                        TextRange(originalOffsets[start], originalOffsets[start + length - 1] + 1)
+                    )
+                }
+                if (start + length >= text.length) {
+                    break
+                }
+                hash = (hash - text[start].code * power) * HASH_BASE + text[start + length].code
+                start++
+            }
+            return matches
+        }
+    }
+
+    private companion object {
+        const val HASH_BASE = 31
+
+        fun normalize(line: String): String {
+            val trimmed = line.trim()
+            if (trimmed.none { it.isWhitespace() }) {
+                return trimmed
+            }
+
+            val builder = StringBuilder(trimmed.length)
+            var previousWhitespace = false
+            for (char in trimmed) {
+                val whitespace = char.isWhitespace()
+                if (!whitespace || !previousWhitespace) {
+                    builder.append(if (whitespace) ' ' else char)
+                }
+                previousWhitespace = whitespace
+            }
+            return builder.toString()
+        }
+    }
+}
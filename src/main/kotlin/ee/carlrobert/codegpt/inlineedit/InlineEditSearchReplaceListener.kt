@@ -74,6 +74,11 @@ class InlineEditSearchReplaceListener(
     private var hintComponent: JComponent? = null
     private var lastHintMessage: String? = null
     private val waitingAlarm = Alarm()
+    private var searchIndex: InlineEditSearchIndex? = null
+    private var searchIndexStamp = -1L
+
+    @Volatile
+    private var appliedBlocks: AppliedBlocks? = null
 
     private val searchHighlightColor = JBColor(
         Color(255, 235, 59, 80),
@@ -92,6 +97,15 @@ class InlineEditSearchReplaceListener(
         ERROR
     }
 
+    /**
+     * Result of applying the first blocks of the response, which later segments continue from.
+     */
+    private class AppliedBlocks(
+        val originalContent: String,
+        val blocks: List<Pair<String, String>>,
+        val content: String
+    )
+
     sealed class ValidationResult {
         object Success : ValidationResult()
         data class Error(val message: String) : ValidationResult()
@@ -151,12 +165,18 @@ class InlineEditSearchReplaceListener(
         searchReplaceBlocks: List<Pair<String, String>>
     ): String {
         val deduplicatedBlocks = deduplicateSearchReplaceBlocks(searchReplaceBlocks)
-        var currentContent = originalContent
+        val applied = appliedBlocks?.takeIf {
+            it.originalContent == originalContent
+                    && deduplicatedBlocks.size >= it.blocks.size
+                    && deduplicatedBlocks.subList(0, it.blocks.size) == it.blocks
+        }
+        var currentContent = applied?.content ?: originalContent
+        var currentIndex: InlineEditSearchIndex? = null
         var totalReplacements = 0
 
         val docEol = if (originalContent.contains("\r\n")) "\r\n" else "\n"
 
-        for ((search, replace) in deduplicatedBlocks) {
+        for ((search, replace) in deduplicatedBlocks.drop(applied?.blocks?.size ?: 0)) {
             val searchText = search.trim().replace("\r\n", "\n").replace("\n", docEol)
             val replaceText = replace.trim().replace("\r\n", "\n").replace("\n", docEol)
 
@@ -190,17 +210,13 @@ class InlineEditSearchReplaceListener(
             }
 
             if (replacementCount == 0) {
-                val tokens = searchText.split(Regex("\\s+")).filter { it.isNotEmpty() }
-                if (tokens.isNotEmpty()) {
-                    val pattern = tokens.joinToString("\\s+") { Regex.escape(it) }
-                    val regex =
-                        Regex(pattern, setOf(RegexOption.DOT_MATCHES_ALL, RegexOption.MULTILINE))
-                    val match = regex.find(currentContent)
-                    if (match != null) {
-                        currentContent = currentContent.replaceRange(match.range, replaceText)
-                        totalReplacements++
-                        continue
-                    }
+                val index = currentIndex?.takeIf { it.content === currentContent }
+                    ?: InlineEditSearchIndex(currentContent).also { currentIndex = it }
+                val match = index.find(searchText).minByOrNull { it.startOffset }
+                if (match != null) {
+                    currentContent =
+                        currentContent.replaceRange(match.startOffset, match.endOffset, replaceText)
+                    totalReplacements++
                 }
                 continue
             }
@@ -209,6 +225,7 @@ class InlineEditSearchReplaceListener(
             totalReplacements += replacementCount
         }
 
+        appliedBlocks = AppliedBlocks(originalContent, deduplicatedBlocks, currentContent)
         return currentContent
     }
 
@@ -255,6 +272,22 @@ class InlineEditSearchReplaceListener(
         }
     }
 
+    /**
+     * Returns the index of the target range, built once per document revision.
+     */
+    private fun searchIndex(): InlineEditSearchIndex {
+        val stamp = editor.document.modificationStamp
+        val cached = searchIndex
+        if (cached != null && searchIndexStamp == stamp) {
+            return cached
+        }
+
+        return InlineEditSearchIndex(editor.document.getText(targetRange())).also {
+            searchIndex = it
+            searchIndexStamp = stamp
+        }
+    }
+
     override fun onMessage(message: String, eventSource: EventSource) {
         if (!isCurrentRequest()) return
         if (isStopping) return
@@ -698,49 +731,38 @@ class InlineEditSearchReplaceListener(
     }
 
     private fun findPatternInContent(
-        content: String,
+        index: InlineEditSearchIndex,
         pattern: String,
         fuzzyMatch: Boolean = true
     ): List<TextRange> {
-        val matches = mutableListOf<TextRange>()
         val cleanPattern = pattern.trim()
-
         if (cleanPattern.isEmpty()) {
-            return matches
-        }
-
-        var index = content.indexOf(cleanPattern)
-        while (index >= 0) {
-            matches.add(TextRange(index, index + cleanPattern.length))
-            index = content.indexOf(cleanPattern, index + 1)
+            return emptyList()
         }
 
+        val matches = index.find(cleanPattern)
         if (matches.isEmpty() && fuzzyMatch && (pattern.contains("...") || cleanPattern.length < pattern.length)) {
-            val partialMatches = findPartialMatches(content, cleanPattern)
-            matches.addAll(partialMatches)
+            return findPartialMatches(index, cleanPattern)
         }
-
         return matches
     }
 
-    private fun findPartialMatches(content: String, pattern: String): List<TextRange> {
+    private fun findPartialMatches(index: InlineEditSearchIndex, pattern: String): List<TextRange> {
         val identifiers = extractIdentifiers(pattern)
         if (identifiers.isEmpty()) {
             val firstLine = pattern.lines().firstOrNull()?.trim()
-            if (!firstLine.isNullOrEmpty() && content.contains(firstLine)) {
-                val index = content.indexOf(firstLine)
-                return listOf(expandToLogicalBlock(content, index))
+            if (!firstLine.isNullOrEmpty() && index.content.contains(firstLine)) {
+                val offset = index.content.indexOf(firstLine)
+                return listOf(expandToLogicalBlock(index, index.getLineNumber(offset)))
             }
             return emptyList()
         }
 
         val matches = mutableListOf<TextRange>()
-        val lines = content.lines()
-
-        for (i in lines.indices) {
-            if (identifiers.all { identifier -> lines[i].contains(identifier) }) {
-                val blockRange = expandToLogicalBlock(content, getLineStartOffset(content, i))
-                matches.add(blockRange)
+        for (i in 0 until index.lineCount) {
+            val line = index.getLine(i)
+            if (identifiers.all { identifier -> line.contains(identifier) }) {
+                matches.add(expandToLogicalBlock(index, i))
             }
         }
 
@@ -773,20 +795,13 @@ class InlineEditSearchReplaceListener(
         return identifiers.toList().take(3)
     }
 
-    private fun expandToLogicalBlock(content: String, charOffset: Int): TextRange {
-        val lines = content.lines()
-        val lineIndex = getLineIndex(content, charOffset)
-
-        if (lineIndex >= lines.size) {
-            return TextRange(charOffset, charOffset)
-        }
-
+    private fun expandToLogicalBlock(index: InlineEditSearchIndex, lineIndex: Int): TextRange {
         var startLine = lineIndex
         var endLine = lineIndex
         var braceCount = 0
 
         for (i in lineIndex downTo 0) {
-            val line = lines[i]
+            val line = index.getLine(i)
             if (line.contains("{")) braceCount++
             if (line.contains("}")) braceCount--
 
@@ -797,8 +812,8 @@ class InlineEditSearchReplaceListener(
         }
 
         braceCount = 0
-        for (i in lineIndex until lines.size) {
-            val line = lines[i]
+        for (i in lineIndex until index.lineCount) {
+            val line = index.getLine(i)
             if (line.contains("{")) braceCount++
             if (line.contains("}")) braceCount--
 
@@ -808,7 +823,7 @@ class InlineEditSearchReplaceListener(
             }
         }
 
-        return convertLinesToTextRange(content, startLine, endLine)
+        return TextRange(index.getLineStartOffset(startLine), index.getLineEndOffset(endLine))
     }
 
     private fun isBlockStart(line: String): Boolean {
@@ -822,44 +837,6 @@ class InlineEditSearchReplaceListener(
                 trimmed.endsWith(":")
     }
 
-    private fun getLineIndex(content: String, charOffset: Int): Int {
-        return content.substring(0, charOffset).count { it == '\n' }
-    }
-
-    private fun getLineStartOffset(content: String, lineIndex: Int): Int {
-        val lines = content.lines()
-        var offset = 0
-
-        for (i in 0 until lineIndex) {
-            if (i < lines.size) {
-                offset += lines[i].length + 1
-            }
-        }
-
-        return offset
-    }
-
-    private fun convertLinesToTextRange(content: String, startLine: Int, endLine: Int): TextRange {
-        val lines = content.lines()
-
-        var startOffset = 0
-        for (i in 0 until startLine) {
-            if (i < lines.size) {
-                startOffset += lines[i].length + 1
-            }
-        }
-
-        var endOffset = startOffset
-        for (i in startLine..endLine) {
-            if (i < lines.size) {
-                endOffset += lines[i].length
-                if (i < lines.size - 1) endOffset += 1
-            }
-        }
-
-        return TextRange(startOffset, endOffset)
-    }
-
     private fun highlightSearchRegions(pattern: String, isReplaceReady: Boolean = false) {
         runInEdt {
             if (isStopping) return@runInEdt
@@ -869,14 +846,8 @@ class InlineEditSearchReplaceListener(
                 return@runInEdt
             }
 
-            val hasSelection = selectionTextRange.startOffset < selectionTextRange.endOffset
-            val (content, baseOffset) = if (hasSelection) {
-                editor.document.getText(selectionTextRange) to selectionTextRange.startOffset
-            } else {
-                editor.document.text to 0
-            }
-
-            val matches = findPatternInContent(content, pattern)
+            val baseOffset = targetRange().startOffset
+            val matches = findPatternInContent(searchIndex(), pattern)
             if (matches.isEmpty()) {
                 showPatternNotFoundHint(pattern)
                 return@runInEdt
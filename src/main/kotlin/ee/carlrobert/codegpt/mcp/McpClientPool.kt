@@ -0,0 +1,321 @@
+package ee.carlrobert.codegpt.mcp
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.util.concurrency.AppExecutorUtil
+import io.modelcontextprotocol.client.McpClient
+import io.modelcontextprotocol.client.McpSyncClient
+import io.modelcontextprotocol.client.transport.ServerParameters
+import io.modelcontextprotocol.client.transport.StdioClientTransport
+import io.modelcontextprotocol.spec.McpSchema
+import io.modelcontextprotocol.spec.McpSchema.ClientCapabilities
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * Shares one initialized MCP client per server configuration across all conversations.
+ *
+ * Every conversation that uses a server holds a lease on its client. When the last lease is
+ * released, the server process is kept alive for [IDLE_TIMEOUT] so that reopening a chat doesn't
+ * pay the startup cost again, and is shut down afterwards.
+ *
+ * The tool and resource catalogs are fetched once when the server starts and refreshed when the
+ * server sends a list-changed notification.
+ */
+@Service(Service.Level.APP)
+class McpClientPool : Disposable {
+
+    companion object {
+        private val logger = thisLogger()
+
+        private val IDLE_TIMEOUT: Duration = Duration.ofMinutes(5)
+        private val REQUEST_TIMEOUT: Duration = Duration.ofSeconds(30)
+    }
+
+    /**
+     * Identifies a server process by everything that affects how it's started, so that settings
+     * entries with the same configuration share a process.
+     */
+    data class ServerKey(
+        val command: String,
+        val arguments: List<String>,
+        val environment: Map<String, String>,
+    ) {
+        companion object {
+            fun of(parameters: ServerParameters): ServerKey =
+                ServerKey(parameters.command, parameters.args, parameters.env.toSortedMap())
+        }
+    }
+
+    /**
+     * @param startupMillis Time it took to start the process and complete the MCP handshake.
+     * @param residentMemoryBytes Resident memory of the server process and its children, or
+     * `null` if it can't be measured on this platform.
+     * @param leases Number of conversations using the server.
+     * @param idleMillis Time since the last lease was released, or `null` if the server is in use.
+     */
+    data class ServerStats(
+        val serverName: String,
+        val command: String,
+        val pid: Long?,
+        val startupMillis: Long,
+        val residentMemoryBytes: Long?,
+        val toolCount: Int,
+        val resourceCount: Int,
+        val leases: Int,
+        val idleMillis: Long?,
+    )
+
+    class PooledClient internal constructor(
+        val key: ServerKey,
+        val serverName: String,
+    ) {
+        lateinit var client: McpSyncClient
+            internal set
+
+        @Volatile
+        var tools: List<McpSchema.Tool> = emptyList()
+            internal set
+
+        @Volatile
+        var resources: List<McpSchema.Resource> = emptyList()
+            internal set
+
+        internal var process: ProcessHandle? = null
+        internal var startupMillis = 0L
+        internal val owners = mutableSetOf<String>()
+        internal var idleSince: Long? = null
+        internal var idleShutdown: ScheduledFuture<*>? = null
+
+        @Volatile
+        internal var closed = false
+
+        fun isAlive(): Boolean = !closed && process?.isAlive != false
+    }
+
+    private val clients = ConcurrentHashMap<ServerKey, PooledClient>()
+    private val locks = ConcurrentHashMap<ServerKey, Any>()
+
+    /**
+     * Returns the client for the given server configuration, starting the server if it isn't
+     * running, and registers [owner] as one of its users. Acquiring a client more than once for
+     * the same owner holds a single lease.
+     */
+    fun acquire(owner: String, serverName: String, parameters: ServerParameters): PooledClient {
+        val key = ServerKey.of(parameters)
+        synchronized(lockFor(key)) {
+            val existing = clients[key]
+            val pooledClient = if (existing != null && existing.isAlive()) {
+                existing
+            } else {
+                existing?.let { close(it) }
+                start(key, serverName, parameters).also { clients[key] = it }
+            }
+
+            pooledClient.owners.add(owner)
+            pooledClient.idleShutdown?.cancel(false)
+            pooledClient.idleShutdown = null
+            pooledClient.idleSince = null
+            return pooledClient
+        }
+    }
+
+    /**
+     * Releases the lease [owner] holds on the client. The server is shut down once it has been
+     * unused for [IDLE_TIMEOUT].
+     */
+    fun release(owner: String, key: ServerKey) {
+        synchronized(lockFor(key)) {
+            val pooledClient = clients[key] ?: return
+            if (!pooledClient.owners.remove(owner) || pooledClient.owners.isNotEmpty()) {
+                return
+            }
+
+            pooledClient.idleSince = System.currentTimeMillis()
+            pooledClient.idleShutdown = AppExecutorUtil.getAppScheduledExecutorService().schedule(
+                { shutdownIfIdle(pooledClient) },
+                IDLE_TIMEOUT.toMillis(),
+                TimeUnit.MILLISECONDS
+            )
+        }
+    }
+
+    fun getClient(key: ServerKey): PooledClient? = clients[key]
+
+    fun getStats(): List<ServerStats> {
+        val now = System.currentTimeMillis()
+        return clients.values.map { pooledClient ->
+            val (leases, idleSince) = synchronized(lockFor(pooledClient.key)) {
+                pooledClient.owners.size to pooledClient.idleSince
+            }
+            ServerStats(
+                serverName = pooledClient.serverName,
+                command = pooledClient.key.command,
+                pid = pooledClient.process?.pid(),
+                startupMillis = pooledClient.startupMillis,
+                residentMemoryBytes = pooledClient.process?.let { getResidentMemory(it) },
+                toolCount = pooledClient.tools.size,
+                resourceCount = pooledClient.resources.size,
+                leases = leases,
+                idleMillis = idleSince?.let { now - it }
+            )
+        }
+    }
+
+    /**
+     * Formats [getStats] as a human-readable report, one line per running server.
+     */
+    fun getStatsReport(): String {
+        val stats = getStats()
+        if (stats.isEmpty()) {
+            return "No MCP servers running"
+        }
+
+        return stats.joinToString("\n") {
+            val memory = it.residentMemoryBytes?.let { bytes -> "${bytes / (1024 * 1024)} MB" }
+                ?: "n/a"
+            val state = it.idleMillis?.let { idle -> "idle for ${idle / 1000} s" }
+                ?: "${it.leases} conversation(s)"
+            "${it.serverName} (pid ${it.pid ?: "n/a"}): startup ${it.startupMillis} ms, " +
+                    "RSS $memory, ${it.toolCount} tools, ${it.resourceCount} resources, $state"
+        }
+    }
+
+    override fun dispose() {
+        clients.values.forEach { close(it) }
+        clients.clear()
+    }
+
+    private fun start(
+        key: ServerKey,
+        serverName: String,
+        parameters: ServerParameters
+    ): PooledClient {
+        val pooledClient = PooledClient(key, serverName)
+        val childrenBefore = ProcessHandle.current().children().map { it.pid() }.toList().toSet()
+        val startTime = System.nanoTime()
+
+        val client = McpClient.sync(StdioClientTransport(parameters))
+            .requestTimeout(REQUEST_TIMEOUT)
+            .capabilities(ClientCapabilities.builder().build())
+            .toolsChangeConsumer { tools ->
+                pooledClient.tools = tools
+                logger.info("MCP server '$serverName' changed its tools (${tools.size} tools)")
+            }
+            .resourcesChangeConsumer { resources ->
+                pooledClient.resources = resources
+                logger.info("MCP server '$serverName' changed its resources (${resources.size} resources)")
+            }
+            .build()
+
+        try {
+            client.initialize()
+        } catch (e: Exception) {
+            client.closeGracefully()
+            throw e
+        }
+
+        pooledClient.client = client
+        pooledClient.startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+        pooledClient.process = findServerProcess(key.command, childrenBefore)
+        pooledClient.tools = fetchTools(client, serverName)
+        pooledClient.resources = fetchResources(client, serverName)
+
+        logger.info(
+            "Started MCP server '$serverName' in ${pooledClient.startupMillis} ms " +
+                    "(pid ${pooledClient.process?.pid() ?: "unknown"})"
+        )
+        return pooledClient
+    }
+
+    private fun shutdownIfIdle(pooledClient: PooledClient) {
+        synchronized(lockFor(pooledClient.key)) {
+            if (pooledClient.owners.isNotEmpty()) {
+                return
+            }
+
+            clients.remove(pooledClient.key, pooledClient)
+            close(pooledClient)
+            logger.info("Shut down idle MCP server '${pooledClient.serverName}'")
+        }
+    }
+
+    private fun close(pooledClient: PooledClient) {
+        pooledClient.closed = true
+        pooledClient.idleShutdown?.cancel(false)
+        try {
+            pooledClient.client.closeGracefully()
+        } catch (e: Exception) {
+            logger.warn("Error closing MCP client for server '${pooledClient.serverName}'", e)
+        }
+    }
+
+    private fun fetchTools(client: McpSyncClient, serverName: String): List<McpSchema.Tool> {
+        return try {
+            client.listTools().tools
+        } catch (e: Exception) {
+            logger.warn("Failed to discover tools for server '$serverName'", e)
+            emptyList()
+        }
+    }
+
+    private fun fetchResources(
+        client: McpSyncClient,
+        serverName: String
+    ): List<McpSchema.Resource> {
+        return try {
+            client.listResources().resources
+        } catch (e: Exception) {
+            logger.warn("Failed to discover resources for server '$serverName'", e)
+            emptyList()
+        }
+    }
+
+    /**
+     * The transport doesn't expose the process it starts, so it's looked up among the child
+     * processes that appeared while the client was initializing.
+     */
+    private fun findServerProcess(command: String, childrenBefore: Set<Long>): ProcessHandle? {
+        val commandName = Path.of(command).fileName?.toString() ?: command
+        val newChildren = ProcessHandle.current().children()
+            .filter { it.pid() !in childrenBefore }
+            .toList()
+        return newChildren.firstOrNull { child ->
+            child.info().command().map { it.endsWith(commandName) }.orElse(false)
+        } ?: newChildren.singleOrNull()
+    }
+
+    /**
+     * Returns the resident memory of the process and its descendants (e.g. the Node process
+     * started by `npx`), or `null` if `/proc` isn't available.
+     */
+    private fun getResidentMemory(process: ProcessHandle): Long? {
+        val processes = listOf(process) + process.descendants().toList()
+        val sizes = processes.map { readResidentMemory(it.pid()) }
+        if (sizes.all { it == null }) {
+            return null
+        }
+        return sizes.sumOf { it ?: 0 }
+    }
+
+    private fun readResidentMemory(pid: Long): Long? {
+        return try {
+            Files.readAllLines(Path.of("/proc", pid.toString(), "status"))
+                .firstOrNull { it.startsWith("VmRSS:") }
+                ?.substringAfter(':')
+                ?.trim()
+                ?.substringBefore(' ')
+                ?.toLongOrNull()
+                ?.times(1024)
+        } catch (_: Exception) {
+            null
+        }
+    }
+
+    private fun lockFor(key: ServerKey): Any = locks.computeIfAbsent(key) { Any() }
+}
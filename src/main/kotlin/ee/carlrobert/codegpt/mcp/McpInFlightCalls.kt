@@ -0,0 +1,42 @@
+package ee.carlrobert.codegpt.mcp
+
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Tool calls that are still running, so that an identical call made in the meantime shares the
+ * result instead of being sent to the server again.
+ *
+ * Only calls of read-only tools may be shared, see [McpToolCallHandler.isReadOnlyTool]; a second
+ * call of a tool with side effects must run again.
+ */
+internal class McpInFlightCalls<K : Any, V> {
+
+    private val calls = ConcurrentHashMap<K, CompletableFuture<V>>()
+
+    val size: Int
+        get() = calls.size
+
+    /**
+     * Returns the result of the running call with the same key, or starts the call and keeps it
+     * until it completes. [onShared] is invoked if an already running call was reused.
+     */
+    fun run(key: K, onShared: () -> Unit = {}, start: () -> CompletableFuture<V>): CompletableFuture<V> {
+        var started = false
+        val call = calls.computeIfAbsent(key) {
+            started = true
+            start()
+        }
+        if (started) {
+            call.whenComplete { _, _ -> calls.remove(key, call) }
+        } else {
+            onShared()
+        }
+        return call
+    }
+
+    fun cancelAll() {
+        calls.values.forEach { it.cancel(true) }
+        calls.clear()
+    }
+}
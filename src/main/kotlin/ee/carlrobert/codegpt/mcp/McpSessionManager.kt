@@ -5,12 +5,9 @@ import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.thisLogger
 import ee.carlrobert.codegpt.settings.mcp.McpServerDetailsState
 import ee.carlrobert.codegpt.settings.mcp.McpSettings
-import io.modelcontextprotocol.client.McpClient
 import io.modelcontextprotocol.client.McpSyncClient
 import io.modelcontextprotocol.client.transport.ServerParameters
-import io.modelcontextprotocol.client.transport.StdioClientTransport
-import io.modelcontextprotocol.spec.McpSchema.ClientCapabilities
-import java.time.Duration
+import io.modelcontextprotocol.spec.McpSchema
 import java.util.*
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
@@ -24,7 +21,8 @@ class McpSessionManager {
 
     private val attachmentsByConversation =
         ConcurrentHashMap<String, ConcurrentHashMap<String, McpSessionAttachment>>()
-    private val activeClients = ConcurrentHashMap<String, McpSyncClient>()
+    private val leases = ConcurrentHashMap<String, McpClientPool.ServerKey>()
+    private val clientPool = service<McpClientPool>()
     private val mcpSettings = service<McpSettings>()
 
     fun attachServerToSession(
@@ -35,38 +33,16 @@ class McpSessionManager {
             try {
                 val serverDetails = getServerDetails(serverId)
                     ?: throw IllegalArgumentException("Server with ID $serverId not found")
+                val serverName = serverDetails.name ?: "Unknown Server"
 
-                val command = serverDetails.command ?: "npx"
-                val resolvedCommand = McpCommandValidator.resolveCommand(command)
-                if (resolvedCommand == null) {
-                    val errorMsg = McpCommandValidator.getCommandNotFoundMessage(command)
-                    logger.error(
-                        "MCP command not found for server '${serverDetails.name}' (id=$serverId): $command"
-                    )
-                    throw IllegalArgumentException("Failed to resolve command: $errorMsg")
-                }
-
-                val mergedEnv =
-                    McpPathHelper.createEnvironment(serverDetails.environmentVariables)
-
-                val serverParameters = ServerParameters.builder(resolvedCommand)
-                    .args(*serverDetails.arguments.toTypedArray())
-                    .env(mergedEnv)
-                    .build()
-
-                val client = initializeSession(serverParameters)
-                val clientKey = "${conversationId}:${serverId}"
-                activeClients[clientKey] = client
-
-                val tools = discoverTools(client, serverId)
-                val resources = discoverResources(client, serverId)
+                val pooledClient = acquireClient(conversationId, serverId, serverDetails)
 
                 val attachment = McpSessionAttachment(
                     serverId = serverId,
-                    serverName = serverDetails.name ?: "Unknown Server",
+                    serverName = serverName,
                     connectionStatus = ConnectionStatus.CONNECTED,
-                    availableTools = tools,
-                    availableResources = resources,
+                    availableTools = toTools(pooledClient.tools, serverId),
+                    availableResources = toResources(pooledClient.resources, serverId),
                     attachedAt = System.currentTimeMillis()
                 )
 
@@ -94,8 +70,37 @@ class McpSessionManager {
         }
     }
 
+    /**
+     * Releases all MCP servers attached to the conversation. Servers that are no longer used by
+     * any conversation are shut down after a while.
+     */
+    fun detachSession(conversationId: UUID) {
+        attachmentsByConversation.remove(conversationId.toString())?.keys?.forEach { serverId ->
+            releaseClient("${conversationId}:${serverId}")
+        }
+        if (logger.isDebugEnabled) {
+            logger.debug("MCP servers after detaching conversation '$conversationId':\n" +
+                    clientPool.getStatsReport())
+        }
+    }
+
+    /**
+     * Returns the servers attached to the conversation. The tools and resources of connected
+     * servers reflect the latest catalog the server reported.
+     */
     fun getSessionAttachments(conversationId: UUID): List<McpSessionAttachment> {
-        return getConversationAttachments(conversationId).values.toList()
+        return getConversationAttachments(conversationId).values.map { attachment ->
+            val pooledClient = leases["${conversationId}:${attachment.serverId}"]
+                ?.let { clientPool.getClient(it) }
+            if (attachment.isConnected() && pooledClient != null) {
+                attachment.copy(
+                    availableTools = toTools(pooledClient.tools, attachment.serverId),
+                    availableResources = toResources(pooledClient.resources, attachment.serverId)
+                )
+            } else {
+                attachment
+            }
+        }
     }
 
     fun getServerInfo(conversationId: UUID, serverId: String): String? {
@@ -109,44 +114,41 @@ class McpSessionManager {
     }
 
     fun ensureClientConnected(clientKey: String): CompletableFuture<McpSyncClient?> {
-        return CompletableFuture.supplyAsync {
-            var client = activeClients[clientKey]
-            if (client != null) {
-                return@supplyAsync client
-            }
+        return CompletableFuture.supplyAsync { getConnectedClient(clientKey) }
+    }
 
-            val parts = clientKey.split(":")
-            if (parts.size != 2) {
-                logger.warn("Invalid client key format: '$clientKey'")
-                return@supplyAsync null
-            }
+    /**
+     * Returns the client for the given `conversationId:serverId` key, reconnecting it if the
+     * server stopped. Blocks while the server is starting.
+     */
+    fun getConnectedClient(clientKey: String): McpSyncClient? {
+        val pooledClient = leases[clientKey]?.let { clientPool.getClient(it) }
+        if (pooledClient != null && pooledClient.isAlive()) {
+            return pooledClient.client
+        }
 
-            val conversationId = parts[0]
-            val serverId = parts[1]
+        val parts = clientKey.split(":")
+        if (parts.size != 2) {
+            logger.warn("Invalid client key format: '$clientKey'")
+            return null
+        }
 
-            val attachment = attachmentsByConversation[conversationId]?.get(serverId)
+        val conversationId = parts[0]
+        val serverId = parts[1]
 
-            if (attachment != null && attachment.isConnected()) {
-                try {
-                    logger.info("Reconnecting MCP client for key '$clientKey'")
-                    val reconnectFuture = reconnectServer(UUID.fromString(conversationId), serverId)
-                    reconnectFuture.get()
-                    return@supplyAsync activeClients[clientKey]
-                } catch (e: Exception) {
-                    logger.error("Failed to reconnect MCP client for key '$clientKey'", e)
-                }
-            }
+        val attachment = attachmentsByConversation[conversationId]?.get(serverId)
+        val serverDetails = getServerDetails(serverId)
 
-            null
+        if (attachment != null && attachment.isConnected() && serverDetails != null) {
+            try {
+                logger.info("Reconnecting MCP client for key '$clientKey'")
+                return acquireClient(UUID.fromString(conversationId), serverId, serverDetails).client
+            } catch (e: Exception) {
+                logger.error("Failed to reconnect MCP client for key '$clientKey'", e)
+            }
         }
-    }
 
-    private fun reconnectServer(
-        conversationId: UUID,
-        serverId: String
-    ): CompletableFuture<McpSessionAttachment> {
-        return detachServerFromSession(conversationId, serverId)
-            .thenCompose { attachServerToSession(conversationId, serverId) }
+        return null
     }
 
     private fun getSessionAttachment(
@@ -154,92 +156,82 @@ class McpSessionManager {
         serverId: String,
     ): McpSessionAttachment? {
         return try {
-            getSessionAttachments(conversationId).find { it.serverId == serverId }
+            getConversationAttachments(conversationId)[serverId]
         } catch (e: Exception) {
             logger.warn("Error getting session attachment for server '$serverId'", e)
             null
         }
     }
 
-    private fun initializeSession(connectionParams: ServerParameters): McpSyncClient {
-        val transport = StdioClientTransport(connectionParams)
-        val client = McpClient.sync(transport)
-            .requestTimeout(Duration.ofSeconds(30))
-            .capabilities(ClientCapabilities.builder().build())
-            .build()
+    private fun acquireClient(
+        conversationId: UUID,
+        serverId: String,
+        serverDetails: McpServerDetailsState
+    ): McpClientPool.PooledClient {
+        val command = serverDetails.command ?: "npx"
+        val resolvedCommand = McpCommandValidator.resolveCommand(command)
+        if (resolvedCommand == null) {
+            val errorMsg = McpCommandValidator.getCommandNotFoundMessage(command)
+            logger.error(
+                "MCP command not found for server '${serverDetails.name}' (id=$serverId): $command"
+            )
+            throw IllegalArgumentException("Failed to resolve command: $errorMsg")
+        }
 
-        client.initialize()
-        return client
-    }
+        val mergedEnv = McpPathHelper.createEnvironment(serverDetails.environmentVariables)
 
-    private fun detachServerFromSession(
-        conversationId: UUID,
-        serverId: String
-    ): CompletableFuture<Unit> {
-        return CompletableFuture.supplyAsync {
-            try {
-                val clientKey = "${conversationId}:${serverId}"
-                activeClients[clientKey]?.let { client ->
-                    try {
-                        client.close()
-                    } catch (e: Exception) {
-                        logger.warn("Error closing MCP client for server '$serverId'", e)
-                    }
-                    activeClients.remove(clientKey)
-                }
+        val serverParameters = ServerParameters.builder(resolvedCommand)
+            .args(*serverDetails.arguments.toTypedArray())
+            .env(mergedEnv)
+            .build()
 
-                val convAttachments = getConversationAttachments(conversationId)
-                convAttachments.remove(serverId)
-                logger.info("Detached MCP server '$serverId' from conversation '$conversationId'")
-            } catch (e: Exception) {
-                logger.error(
-                    "Failed to detach MCP server '$serverId' from conversation '$conversationId'",
-                    e
-                )
-                throw e
-            }
+        val clientKey = "${conversationId}:${serverId}"
+        val pooledClient = clientPool.acquire(
+            clientKey,
+            serverDetails.name ?: "Unknown Server",
+            serverParameters
+        )
+        val previousKey = leases.put(clientKey, pooledClient.key)
+        if (previousKey != null && previousKey != pooledClient.key) {
+            // The server settings changed since the server was last attached.
+            clientPool.release(clientKey, previousKey)
         }
+        return pooledClient
     }
 
-    private fun discoverTools(client: McpSyncClient, serverId: String): List<McpTool> {
-        return try {
-            val toolsResult = client.listTools()
+    private fun releaseClient(clientKey: String) {
+        leases.remove(clientKey)?.let { clientPool.release(clientKey, it) }
+    }
 
-            toolsResult.tools.map { tool ->
-                McpTool(
-                    name = tool.name,
-                    description = tool.description ?: "",
-                    serverId = serverId,
-                    schema = tool.inputSchema?.let {
-                        mutableMapOf(
-                            "type" to "object",
-                            "properties" to it.properties,
-                            "required" to (it.required ?: emptyList())
-                        )
-                    } ?: mutableMapOf()
-                )
-            }
-        } catch (e: Exception) {
-            logger.warn("Failed to discover tools for server '$serverId'", e)
-            emptyList()
+    private fun toTools(tools: List<McpSchema.Tool>, serverId: String): List<McpTool> {
+        return tools.map { tool ->
+            McpTool(
+                name = tool.name,
+                description = tool.description ?: "",
+                serverId = serverId,
+                schema = tool.inputSchema?.let {
+                    mutableMapOf(
+                        "type" to "object",
+                        "properties" to it.properties,
+                        "required" to (it.required ?: emptyList())
+                    )
+                } ?: mutableMapOf()
+            )
         }
     }
 
-    private fun discoverResources(client: McpSyncClient, serverId: String): List<McpResource> {
-        return try {
-            val resourcesResult = client.listResources()
-            resourcesResult.resources.map { resource ->
-                McpResource(
-                    uri = resource.uri,
-                    name = resource.name,
-                    description = resource.description,
-                    serverId = serverId,
-                    mimeType = resource.mimeType
-                )
-            }
-        } catch (e: Exception) {
-            logger.warn("Failed to discover resources for server '$serverId'", e)
-            emptyList()
+    private fun toResources(
+        resources: List<McpSchema.Resource>,
+        serverId: String
+    ): List<McpResource> {
+        return resources.map { resource ->
+            McpResource(
+                uri = resource.uri,
+                name = resource.name,
+                description = resource.description,
+                serverId = serverId,
+                mimeType = resource.mimeType
+            )
         }
     }
 
@@ -354,17 +354,24 @@ class McpToolCallEventListener(
     ) {
         val allFutures = toolCallResults.map { it.second }.toTypedArray()
         CompletableFuture.allOf(*allFutures).thenRun {
-            invokeLater {
-                val results = toolCallResults.map { (toolCall, future) ->
-                    try {
-                        val result = future.join()
-                        toolCall to result
-                    } catch (e: Exception) {
-                        logger.error("Tool '${toolCall.function.name}' failed", e)
-                        toolCall to "Error: ${e.message}"
-                    }
+            val results = toolCallResults.map { (toolCall, future) ->
+                try {
+                    future.join()
+                } catch (e: Exception) {
+                    logger.error("Tool '${toolCall.function.name}' failed", e)
+                    "Error: ${e.message}"
                 }
-                continueWithToolResults(results, originalCalls)
+            }
+            // Counting tokens of large results is kept off the EDT.
+            val limitedResults = toolCallHandler.limitBatchOutput(results)
+            if (logger.isDebugEnabled) {
+                logger.debug("MCP tool metrics: ${toolCallHandler.getToolMetrics()}")
+            }
+            invokeLater {
+                continueWithToolResults(
+                    toolCallResults.map { it.first }.zip(limitedResults),
+                    originalCalls
+                )
             }
         }.exceptionally { throwable ->
             logger.error("Tool execution failed", throwable)
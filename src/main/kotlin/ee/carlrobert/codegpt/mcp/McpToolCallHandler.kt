@@ -1,11 +1,14 @@
 package ee.carlrobert.codegpt.mcp
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.SerializationFeature
 import com.intellij.openapi.application.runInEdt
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.project.Project
+import com.intellij.util.concurrency.AppExecutorUtil
+import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.completions.ToolApprovalMode
 import ee.carlrobert.codegpt.toolwindow.ui.mcp.McpApprovalPanel
 import ee.carlrobert.codegpt.toolwindow.ui.mcp.McpStatusPanel
@@ -18,7 +21,7 @@ import io.modelcontextprotocol.spec.McpSchema.TextContent
 import java.util.*
 import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ConcurrentHashMap
-import java.util.concurrent.TimeUnit
+import java.util.concurrent.ExecutorService
 import java.util.concurrent.TimeoutException
 import javax.swing.JPanel
 
@@ -33,6 +36,11 @@ class McpToolCallHandler {
     private val pendingApprovals = ConcurrentHashMap<String, CompletableFuture<Boolean>>()
     private val statusPanels = ConcurrentHashMap<String, McpStatusPanel>()
     private val activeExecutions = ConcurrentHashMap<String, CompletableFuture<*>>()
+    private val inFlightCalls = McpInFlightCalls<CallKey, ToolOutcome>()
+    private val serverExecutors = ConcurrentHashMap<String, ExecutorService>()
+    private val metrics = McpToolMetrics()
+    private val canonicalMapper = ObjectMapper()
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true)
 
     fun executeToolCall(
         toolCall: McpToolCall,
@@ -128,29 +136,100 @@ class McpToolCallHandler {
             onUIUpdate(statusPanel)
         }
 
-        val execution = CompletableFuture.supplyAsync {
-            try {
-                val clientKey = "$conversationId:$serverId"
-                val mcpClient = sessionManager.ensureClientConnected(clientKey).get()
-                if (mcpClient == null) {
-                    return@supplyAsync "Error: MCP server '$actualServerName' not connected"
-                }
+        val startCall = {
+            CompletableFuture.supplyAsync(
+                { callTool("$conversationId:$serverId", actualServerName, toolCall) },
+                executorFor(serverId)
+            )
+        }
+        val outcome = if (isReadOnlyTool(toolCall.name)) {
+            val callKey = CallKey(
+                conversationId,
+                serverId,
+                toolCall.name,
+                canonicalMapper.writeValueAsString(toolCall.arguments)
+            )
+            inFlightCalls.run(callKey, { metrics.recordDeduplicated(toolCall.name) }, startCall)
+        } else {
+            startCall()
+        }
 
-                executeWithClient(mcpClient, toolCall)
-            } catch (e: Exception) {
-                logger.error("Exception in executeToolInternal: ${e.message}", e)
-                "Error executing tool: ${e.message}"
+        val execution = outcome.thenApply { result ->
+            // Queued after the status panel is registered above, so the panel is always found.
+            runInEdt {
+                statusPanels.remove(toolCall.id)?.let { panel ->
+                    if (result.success) {
+                        panel.complete(true, formatSuccessMessage(result.content), result.content)
+                    } else {
+                        panel.complete(false, null, formatForStatusPanel(result.content))
+                    }
+                }
             }
+            result.content
         }
         activeExecutions[toolCall.id] = execution
         execution.whenComplete { _, _ -> activeExecutions.remove(toolCall.id) }
         return execution
     }
 
+    /**
+     * Returns the latency and output size statistics of the tool calls executed so far.
+     */
+    fun getToolMetrics(): Map<String, McpToolMetrics.ToolStats> = metrics.getStats()
+
+    /**
+     * Shrinks the results of a batch of tool calls so that together they stay within
+     * [MAX_BATCH_RESULT_TOKENS]. The budget is shared evenly, with the unused part of small
+     * results going to the larger ones.
+     */
+    fun limitBatchOutput(results: List<String>): List<String> {
+        val encodingManager = EncodingManager.getInstance()
+        val tokenCounts = results.map { encodingManager.countTokens(it) }
+        if (tokenCounts.sum() <= MAX_BATCH_RESULT_TOKENS) {
+            return results
+        }
+
+        var remainingBudget = MAX_BATCH_RESULT_TOKENS
+        var remainingResults = results.size
+        val limits = IntArray(results.size)
+        tokenCounts.withIndex().sortedBy { it.value }.forEach { (index, tokens) ->
+            val share = remainingBudget / remainingResults
+            limits[index] = minOf(tokens, share)
+            remainingBudget -= limits[index]
+            remainingResults--
+        }
+        return results.mapIndexed { index, result ->
+            truncateOutput(result, tokenCounts[index], limits[index])
+        }
+    }
+
+    private fun callTool(clientKey: String, serverName: String, toolCall: McpToolCall): ToolOutcome {
+        val startTime = System.nanoTime()
+        val result = try {
+            val mcpClient = sessionManager.getConnectedClient(clientKey)
+            if (mcpClient == null) {
+                ToolOutcome(false, "Error: MCP server '$serverName' not connected")
+            } else {
+                executeWithClient(mcpClient, toolCall)
+            }
+        } catch (e: Exception) {
+            logger.error("Exception in executeToolInternal: ${e.message}", e)
+            ToolOutcome(false, "Error executing tool: ${e.message}")
+        }
+
+        metrics.recordCall(
+            toolCall.name,
+            System.nanoTime() - startTime,
+            result.content.length,
+            result.success
+        )
+        return limitOutput(toolCall.name, result)
+    }
+
     private fun executeWithClient(
         client: McpSyncClient,
         toolCall: McpToolCall,
-    ): String {
+    ): ToolOutcome {
         return try {
             val validatedArguments = when {
                 toolCall.arguments.isEmpty() -> {
@@ -163,18 +242,17 @@ class McpToolCallHandler {
             }
             val callToolRequest = McpSchema.CallToolRequest(toolCall.name, validatedArguments)
             val toolResult = try {
-                val future = CompletableFuture.supplyAsync {
-                    client.callTool(callToolRequest)
-                }
-                future.get(30, TimeUnit.SECONDS)
-            } catch (e: TimeoutException) {
-                val message = "Tool call '${toolCall.name}' timed out after 30 seconds"
-                logger.error(message, e)
-                return message
+                // Times out after the client's request timeout.
+                client.callTool(callToolRequest)
             } catch (e: Exception) {
-                val message = "Tool call '${toolCall.name}' failed: ${e.message}"
+                val message = if (generateSequence<Throwable>(e) { it.cause }
+                        .any { it is TimeoutException }) {
+                    "Tool call '${toolCall.name}' timed out"
+                } else {
+                    "Tool call '${toolCall.name}' failed: ${e.message}"
+                }
                 logger.error(message, e)
-                return message
+                return ToolOutcome(false, message)
             }
 
             if (toolResult.isError == true) {
@@ -191,14 +269,7 @@ class McpToolCallHandler {
                     else -> content?.toString() ?: "Unknown error"
                 }
 
-                statusPanels[toolCall.id]?.let { panel ->
-                    runInEdt {
-                        panel.complete(false, null, errorMessage)
-                    }
-                    statusPanels.remove(toolCall.id)
-                }
-
-                return "Tool execution failed: $errorMessage"
+                return ToolOutcome(false, "Tool execution failed: $errorMessage")
             }
 
             val resultContent = when {
@@ -227,31 +298,62 @@ class McpToolCallHandler {
                 else -> "Tool executed successfully (no content returned)"
             }
 
-            statusPanels[toolCall.id]?.let { panel ->
-                runInEdt {
-                    val displayMessage = formatSuccessMessage(resultContent)
-                    panel.complete(true, displayMessage, resultContent)
-                }
-                statusPanels.remove(toolCall.id)
-            }
-
-            resultContent
+            ToolOutcome(true, resultContent)
         } catch (e: Exception) {
             val errorMessage = "Tool execution error: ${e.message ?: "Unknown error"}"
             logger.error("Tool execution failed for '${toolCall.name}': $errorMessage", e)
+            ToolOutcome(false, errorMessage)
+        }
+    }
 
-            val formattedError = formatForStatusPanel(errorMessage)
-            statusPanels[toolCall.id]?.let { panel ->
-                runInEdt {
-                    panel.complete(false, null, formattedError)
-                }
-                statusPanels.remove(toolCall.id)
-            }
+    private fun limitOutput(toolName: String, outcome: ToolOutcome): ToolOutcome =
+        outcome.copy(content = limitOutput(toolName, outcome.content))
+
+    /**
+     * Truncates a single tool result to [MAX_RESULT_TOKENS].
+     */
+    internal fun limitOutput(toolName: String, content: String): String {
+        // A token spans at least one UTF-8 byte, while a single character may take several
+        // tokens, so only the byte length is a safe bound for skipping the count.
+        if (!exceedsUtf8Length(content, MAX_RESULT_TOKENS)) {
+            return content
+        }
 
-            errorMessage
+        val tokenCount = EncodingManager.getInstance().countTokens(content)
+        if (tokenCount <= MAX_RESULT_TOKENS) {
+            return content
         }
+
+        metrics.recordTruncated(toolName)
+        return truncateOutput(content, tokenCount, MAX_RESULT_TOKENS)
     }
 
+    /**
+     * Keeps the beginning and the end of the output, which usually hold the most relevant parts
+     * of listings and logs.
+     */
+    private fun truncateOutput(output: String, tokenCount: Int, maxTokens: Int): String {
+        if (tokenCount <= maxTokens) {
+            return output
+        }
+
+        val encodingManager = EncodingManager.getInstance()
+        val headTokens = maxTokens * 3 / 4
+        val tailTokens = maxTokens - headTokens
+        val omittedTokens = tokenCount - headTokens - tailTokens
+        return encodingManager.truncateText(output, headTokens, true) +
+                "\n\n[... $omittedTokens tokens of output omitted ...]\n\n" +
+                encodingManager.truncateText(output, tailTokens, false)
+    }
+
+    private fun executorFor(serverId: String): ExecutorService =
+        serverExecutors.computeIfAbsent(serverId) {
+            AppExecutorUtil.createBoundedApplicationPoolExecutor(
+                "MCP Tool Calls ($serverId)",
+                MAX_CONCURRENT_CALLS_PER_SERVER
+            )
+        }
+
     fun cancelAllPendingApprovals() {
         pendingApprovals.values.forEach { it.complete(false) }
         pendingApprovals.clear()
@@ -260,11 +362,66 @@ class McpToolCallHandler {
     fun cancelAllExecutions() {
         activeExecutions.values.forEach { it.cancel(true) }
         activeExecutions.clear()
+        inFlightCalls.cancelAll()
     }
 
+    /**
+     * Identifies calls of read-only tools that return the same result, so that identical calls
+     * made while one is still running share its result.
+     */
+    private data class CallKey(
+        val conversationId: UUID,
+        val serverId: String,
+        val toolName: String,
+        val arguments: String,
+    )
+
+    private data class ToolOutcome(val success: Boolean, val content: String)
+
     companion object {
         private val logger = thisLogger()
 
+        private const val MAX_CONCURRENT_CALLS_PER_SERVER = 4
+        internal const val MAX_RESULT_TOKENS = 8_000
+        private const val MAX_BATCH_RESULT_TOKENS = 24_000
+
+        private val READ_ONLY_TOOL_PREFIXES = listOf(
+            "get", "list", "read", "search", "find", "fetch", "describe", "view", "show"
+        )
+
+        /**
+         * Returns whether the tool is known to only read data, judging by the verb its name
+         * starts with, e.g. `read_file` or `listDirectory`. Tools such as `run_command` or
+         * `write_file` are not, so identical calls of them are never merged.
+         */
+        internal fun isReadOnlyTool(toolName: String): Boolean {
+            val verb = toolName.take(1) + toolName.drop(1).takeWhile { it.isLowerCase() }
+            return READ_ONLY_TOOL_PREFIXES.any { verb.equals(it, ignoreCase = true) }
+        }
+
+        /**
+         * Returns whether the UTF-8 encoding of the text is longer than [limit] bytes, without
+         * encoding it.
+         */
+        private fun exceedsUtf8Length(text: String, limit: Int): Boolean {
+            if (text.length > limit) {
+                return true
+            }
+            var bytes = 0
+            for (char in text) {
+                bytes += when {
+                    char.code < 0x80 -> 1
+                    char.code < 0x800 -> 2
+                    char.isSurrogate() -> 2
+                    else -> 3
+                }
+                if (bytes > limit) {
+                    return true
+                }
+            }
+            return false
+        }
+
         @JvmStatic
         fun getInstance(project: Project): McpToolCallHandler {
             return project.service<McpToolCallHandler>()
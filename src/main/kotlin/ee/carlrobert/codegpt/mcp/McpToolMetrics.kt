@@ -0,0 +1,81 @@
+package ee.carlrobert.codegpt.mcp
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Latency and output size statistics of MCP tool calls, collected per tool name.
+ */
+class McpToolMetrics {
+
+    /**
+     * @param calls Number of calls that were sent to the server.
+     * @param deduplicated Number of calls answered by an identical call that was already running.
+     * @param truncated Number of results that were cut down to the output limit.
+     * @param outputChars Total size of the results before truncation.
+     */
+    data class ToolStats(
+        val calls: Long,
+        val failures: Long,
+        val deduplicated: Long,
+        val truncated: Long,
+        val averageLatencyMillis: Long,
+        val maxLatencyMillis: Long,
+        val outputChars: Long,
+        val maxOutputChars: Long,
+    )
+
+    private class Counters {
+        val calls = AtomicLong()
+        val failures = AtomicLong()
+        val deduplicated = AtomicLong()
+        val truncated = AtomicLong()
+        val latencyNanos = AtomicLong()
+        val maxLatencyNanos = AtomicLong()
+        val outputChars = AtomicLong()
+        val maxOutputChars = AtomicLong()
+    }
+
+    private val countersByTool = ConcurrentHashMap<String, Counters>()
+
+    fun recordCall(toolName: String, latencyNanos: Long, outputChars: Int, success: Boolean) {
+        val counters = countersFor(toolName)
+        counters.calls.incrementAndGet()
+        if (!success) {
+            counters.failures.incrementAndGet()
+        }
+        counters.latencyNanos.addAndGet(latencyNanos)
+        counters.maxLatencyNanos.accumulateAndGet(latencyNanos, ::maxOf)
+        counters.outputChars.addAndGet(outputChars.toLong())
+        counters.maxOutputChars.accumulateAndGet(outputChars.toLong(), ::maxOf)
+    }
+
+    fun recordDeduplicated(toolName: String) {
+        countersFor(toolName).deduplicated.incrementAndGet()
+    }
+
+    fun recordTruncated(toolName: String) {
+        countersFor(toolName).truncated.incrementAndGet()
+    }
+
+    fun getStats(): Map<String, ToolStats> {
+        return countersByTool.mapValues { (_, counters) ->
+            val calls = counters.calls.get()
+            ToolStats(
+                calls = calls,
+                failures = counters.failures.get(),
+                deduplicated = counters.deduplicated.get(),
+                truncated = counters.truncated.get(),
+                averageLatencyMillis = if (calls == 0L) 0 else
+                    TimeUnit.NANOSECONDS.toMillis(counters.latencyNanos.get() / calls),
+                maxLatencyMillis = TimeUnit.NANOSECONDS.toMillis(counters.maxLatencyNanos.get()),
+                outputChars = counters.outputChars.get(),
+                maxOutputChars = counters.maxOutputChars.get()
+            )
+        }
+    }
+
+    private fun countersFor(toolName: String): Counters =
+        countersByTool.computeIfAbsent(toolName) { Counters() }
+}
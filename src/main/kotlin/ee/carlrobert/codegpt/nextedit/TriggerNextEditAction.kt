@@ -2,13 +2,13 @@ package ee.carlrobert.codegpt.nextedit
 
 import com.intellij.codeInsight.hint.HintManagerImpl
 import com.intellij.openapi.actionSystem.DataContext
-import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.editor.Caret
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.editor.actionSystem.EditorAction
 import com.intellij.openapi.editor.actionSystem.EditorWriteActionHandler
 import com.intellij.util.application
+import ee.carlrobert.codegpt.codecompletions.DocumentSnapshot
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ModelSelectionService
 import ee.carlrobert.codegpt.settings.service.ServiceType
@@ -36,10 +36,11 @@ class TriggerNextEditAction : EditorAction(Handler()), HintManagerImpl.ActionToI
 
             try {
                 application.executeOnPooledThread {
+                    val snapshot = DocumentSnapshot.capture(editor)
                     NextEditCoordinator.requestNextEdit(
                         editor,
-                        editor.document.text,
-                        runReadAction { editor.caretModel.offset },
+                        snapshot.content,
+                        snapshot.caretOffset,
                         false
                     )
                 }
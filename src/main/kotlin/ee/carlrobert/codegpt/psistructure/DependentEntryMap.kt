@@ -0,0 +1,68 @@
+package ee.carlrobert.codegpt.psistructure
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Index entries keyed by file URL, together with the reverse dependencies between the files.
+ *
+ * The structure of a file is built by resolving its references against the files it depends on,
+ * so invalidating a file also drops the entries of the files that depend on it.
+ */
+internal class DependentEntryMap<E : Any>(private val dependenciesOf: (E) -> List<String>) {
+
+    private val entries = ConcurrentHashMap<String, E>()
+    private val dependents = ConcurrentHashMap<String, MutableSet<String>>()
+
+    val size: Int
+        get() = entries.size
+
+    operator fun get(url: String): E? = entries[url]
+
+    @Synchronized
+    fun put(url: String, entry: E) {
+        entries.put(url, entry)?.let { unlink(url, it) }
+        dependenciesOf(entry).forEach { dependency ->
+            dependents.computeIfAbsent(dependency) { ConcurrentHashMap.newKeySet() }.add(url)
+        }
+    }
+
+    /**
+     * Removes the entry of the file and the entries of the files that depend on it.
+     */
+    @Synchronized
+    fun invalidate(url: String) {
+        remove(url)
+        dependents.remove(url)?.forEach { remove(it) }
+    }
+
+    /**
+     * Invalidates every file whose URL matches the predicate, see [invalidate].
+     */
+    @Synchronized
+    fun invalidateIf(predicate: (String) -> Boolean) {
+        entries.keys.filter(predicate).forEach { invalidate(it) }
+    }
+
+    @Synchronized
+    fun clear() {
+        entries.clear()
+        dependents.clear()
+    }
+
+    fun isEmpty(): Boolean = entries.isEmpty()
+
+    fun snapshot(): Map<String, E> = HashMap(entries)
+
+    private fun remove(url: String) {
+        entries.remove(url)?.let { unlink(url, it) }
+    }
+
+    private fun unlink(url: String, entry: E) {
+        dependenciesOf(entry).forEach { dependency ->
+            dependents.computeIfPresent(dependency) { _, urls ->
+                urls.remove(url)
+                urls.ifEmpty { null }
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ee.carlrobert.codegpt.psistructure
+
+/**
+ * Breadth-first work queue that visits every item at most once and tracks the depth at which it
+ * was first reached. Items are deduplicated by [keyOf], so lookups stay constant-time regardless
+ * of how many items have been visited.
+ */
+class DepthQueue<T>(
+    initial: List<T>,
+    private val maxDepth: Int = -1,
+    private val maxItems: Int = Int.MAX_VALUE,
+    private val keyOf: (T) -> Any,
+) {
+
+    private class DepthItem<T>(val item: T, val depth: Int)
+
+    private val depths = HashMap<Any, Int>()
+    private val queue = ArrayDeque<DepthItem<T>>()
+
+    init {
+        initial.forEach { add(it, 0) }
+    }
+
+    /**
+     * Number of distinct items that have been queued so far.
+     */
+    val visitedCount: Int
+        @Synchronized get() = depths.size
+
+    @Synchronized
+    fun pop(): T? = queue.removeFirstOrNull()?.item
+
+    /**
+     * Removes and returns all queued items at the lowest queued depth.
+     */
+    @Synchronized
+    fun popLevel(): List<T> {
+        val depth = queue.firstOrNull()?.depth ?: return emptyList()
+        val level = mutableListOf<T>()
+        while (queue.firstOrNull()?.depth == depth) {
+            level.add(queue.removeFirst().item)
+        }
+        return level
+    }
+
+    /**
+     * Queues [item] one level below [base], unless it was already queued, exceeds the maximum
+     * depth or the visited item limit has been reached.
+     */
+    @Synchronized
+    fun put(item: T, base: T) {
+        val baseDepth = depths[keyOf(base)] ?: 0
+        add(item, baseDepth + 1)
+    }
+
+    private fun add(item: T, depth: Int) {
+        if (maxDepth != -1 && depth > maxDepth || depths.size >= maxItems) return
+        val key = keyOf(item)
+        if (depths.containsKey(key)) return
+        depths[key] = depth
+        queue.add(DepthItem(item, depth))
+    }
+}
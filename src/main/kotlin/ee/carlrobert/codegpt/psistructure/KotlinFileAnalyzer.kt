@@ -324,7 +324,7 @@ class KotlinFileAnalyzer(
             }
 
         foundKtFiles.forEach { psiFile ->
-            psiFileQueue.put(psiFile, ktFile.name)
+            psiFileQueue.put(psiFile, ktFile)
         }
     }
 }
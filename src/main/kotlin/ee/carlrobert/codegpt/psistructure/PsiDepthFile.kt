@@ -1,8 +0,0 @@
-package ee.carlrobert.codegpt.psistructure
-
-import com.intellij.psi.PsiFile
-
-data class PsiDepthFile(
-    val psiFile: PsiFile,
-    val depth: Int,
-)
\ No newline at end of file
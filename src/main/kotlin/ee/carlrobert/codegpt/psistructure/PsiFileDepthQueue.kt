@@ -2,36 +2,28 @@ package ee.carlrobert.codegpt.psistructure
 
 import com.intellij.psi.PsiFile
 
+/**
+ * [DepthQueue] of PSI files, deduplicated by their virtual file so that distinct files sharing a
+ * name are all visited.
+ */
 class PsiFileDepthQueue(
     initial: List<PsiFile>,
-    private val maxDepth: Int = -1,
+    maxDepth: Int = -1,
+    maxFiles: Int = Int.MAX_VALUE,
 ) {
 
-    private val psiFiles = mutableSetOf<PsiDepthFile>().apply {
-        addAll(initial.map { PsiDepthFile(it, 0) })
+    private val queue = DepthQueue(initial, maxDepth, maxFiles) { psiFile: PsiFile ->
+        psiFile.virtualFile ?: psiFile
     }
 
-    private val queue = ArrayDeque(initial.map { PsiDepthFile(it, 0) })
+    val visitedCount: Int
+        get() = queue.visitedCount
 
-    @Synchronized
-    fun pop(): PsiFile? {
-        while (queue.isNotEmpty()) {
-            val first = queue.first()
-            if (maxDepth == -1 || first.depth <= maxDepth) {
-                return queue.removeFirst().psiFile
-            } else {
-                queue.removeFirst()
-            }
-        }
-        return null
-    }
+    fun pop(): PsiFile? = queue.pop()
+
+    fun popLevel(): List<PsiFile> = queue.popLevel()
 
-    @Synchronized
-    fun put(psiFile: PsiFile, baseFileName: String) {
-        if (psiFiles.any { it.psiFile.name == psiFile.name }) return
-        val baseFileDepth = psiFiles.find { it.psiFile.name == baseFileName }?.depth ?: 0
-        val newItem = PsiDepthFile(psiFile, baseFileDepth + 1)
-        queue.add(newItem)
-        psiFiles.add(newItem)
+    fun put(psiFile: PsiFile, baseFile: PsiFile) {
+        queue.put(psiFile, baseFile)
     }
-}
\ No newline at end of file
+}
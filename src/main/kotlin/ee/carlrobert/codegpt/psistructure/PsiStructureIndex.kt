@@ -0,0 +1,285 @@
+package ee.carlrobert.codegpt.psistructure
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.PathManager
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import com.intellij.psi.PsiFile
+import com.intellij.psi.PsiManager
+import com.intellij.psi.PsiTreeAnyChangeAbstractAdapter
+import ee.carlrobert.codegpt.psistructure.models.ClassStructure
+import org.jetbrains.kotlin.psi.KtFile
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Project-wide index of the class structures declared in each Kotlin file, along with the files
+ * they depend on. An entry is reused as long as the file's modification stamp (or, after an IDE
+ * restart, its content) is unchanged, so only edited files are analyzed again. Changing a file
+ * also drops the entries of the files that depend on it.
+ *
+ * Entries are read without locking, which lets several structure collections run while others
+ * are still indexing. The index is stored in the IDE system directory when the project closes.
+ */
+@Service(Service.Level.PROJECT)
+class PsiStructureIndex(private val project: Project) : Disposable {
+
+    companion object {
+        private val logger = thisLogger()
+
+        private const val NO_MODIFICATION_STAMP = -1L
+        private val INDEXED_EXTENSIONS = setOf("kt", "java")
+    }
+
+    data class FileStructure(
+        val classes: Set<ClassStructure>,
+        val dependencies: List<PsiFile>,
+    )
+
+    data class Stats(
+        val files: Int,
+        val hits: Long,
+        val misses: Long,
+        val loadedFromDisk: Int,
+    )
+
+    private data class Entry(
+        val modificationStamp: Long,
+        val contentHash: Long,
+        val structures: Set<ClassStructure>,
+        val dependencyUrls: List<String>,
+    )
+
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+
+    @Volatile
+    private var loadedFromDisk = 0
+
+    private val loadedEntries = lazy { load() }
+    private val entries: DependentEntryMap<Entry> by loadedEntries
+
+    init {
+        project.messageBus.connect(this).subscribe(
+            VirtualFileManager.VFS_CHANGES,
+            object : BulkFileListener {
+                override fun after(events: MutableList<out VFileEvent>) {
+                    invalidateChangedFiles(events)
+                    invalidateDirectories(events)
+                }
+            })
+        PsiManager.getInstance(project).addPsiTreeChangeListener(
+            object : PsiTreeAnyChangeAbstractAdapter() {
+                override fun onChange(file: PsiFile?) {
+                    if (loadedEntries.isInitialized()) {
+                        file?.virtualFile?.let { entries.invalidate(it.url) }
+                    }
+                }
+            },
+            this
+        )
+    }
+
+    /**
+     * Returns the class structures declared in the given file and the files they reference,
+     * analyzing the file only if it changed since it was last indexed. Must be called inside a
+     * read action.
+     */
+    fun getFileStructure(ktFile: KtFile): FileStructure {
+        val virtualFile = ktFile.virtualFile
+        if (virtualFile == null) {
+            val entry = analyze(ktFile)
+            return FileStructure(entry.structures, resolveFiles(entry.dependencyUrls))
+        }
+
+        val url = virtualFile.url
+        val modificationStamp = ktFile.modificationStamp
+        val entry = entries[url]
+        if (entry != null && entry.modificationStamp == modificationStamp) {
+            hits.incrementAndGet()
+            return FileStructure(entry.structures, resolveFiles(entry.dependencyUrls))
+        }
+
+        val contentHash = hash(ktFile.viewProvider.contents)
+        val current = if (entry != null && entry.contentHash == contentHash) {
+            hits.incrementAndGet()
+            entry.copy(modificationStamp = modificationStamp)
+        } else {
+            misses.incrementAndGet()
+            if (entry != null) {
+                entries.invalidate(url)
+            }
+            analyze(ktFile).copy(modificationStamp = modificationStamp, contentHash = contentHash)
+        }
+        entries.put(url, current)
+        return FileStructure(current.structures, resolveFiles(current.dependencyUrls))
+    }
+
+    fun getStats(): Stats = Stats(entries.size, hits.get(), misses.get(), loadedFromDisk)
+
+    fun clear() {
+        entries.clear()
+    }
+
+    override fun dispose() {
+        save()
+    }
+
+    private fun analyze(ktFile: KtFile): Entry {
+        val dependencyQueue = PsiFileDepthQueue(emptyList())
+        val structures = KotlinFileAnalyzer(dependencyQueue, ktFile).analyze()
+        val dependencyUrls = generateSequence { dependencyQueue.pop() }
+            .mapNotNull { it.virtualFile?.url }
+            .toList()
+        return Entry(NO_MODIFICATION_STAMP, 0, structures, dependencyUrls)
+    }
+
+    private fun resolveFiles(urls: List<String>): List<PsiFile> {
+        val virtualFileManager = VirtualFileManager.getInstance()
+        val psiManager = PsiManager.getInstance(project)
+        return urls.mapNotNull { url ->
+            virtualFileManager.findFileByUrl(url)
+                ?.takeIf { it.isValid }
+                ?.let { psiManager.findFile(it) }
+        }
+    }
+
+    private fun invalidateChangedFiles(events: List<VFileEvent>) {
+        if (!loadedEntries.isInitialized()) {
+            return
+        }
+
+        events.filterIsInstance<VFileContentChangeEvent>().forEach {
+            entries.invalidate(it.file.url)
+        }
+    }
+
+    /**
+     * Types declared in a file are resolved against the other files of its package, so adding,
+     * removing or renaming a source file invalidates the entries of its directory.
+     */
+    private fun invalidateDirectories(events: List<VFileEvent>) {
+        if (!loadedEntries.isInitialized()) {
+            return
+        }
+
+        val directoryPaths = mutableSetOf<String>()
+        events.forEach { event ->
+            when (event) {
+                is VFileCreateEvent -> if (isSourceFile(event.childName)) {
+                    directoryPaths.add(event.parent.path)
+                }
+
+                is VFileDeleteEvent -> if (isSourceFile(event.file.name)) {
+                    directoryPaths.add(event.path.substringBeforeLast('/'))
+                }
+
+                is VFileMoveEvent -> if (isSourceFile(event.file.name)) {
+                    directoryPaths.add(event.oldParent.path)
+                    directoryPaths.add(event.newParent.path)
+                }
+
+                is VFileCopyEvent -> if (isSourceFile(event.newChildName)) {
+                    directoryPaths.add(event.newParent.path)
+                }
+
+                is VFilePropertyChangeEvent -> if (event.isRename && isSourceFile(event.file.name)) {
+                    event.file.parent?.let { directoryPaths.add(it.path) }
+                }
+            }
+        }
+
+        if (directoryPaths.isNotEmpty()) {
+            entries.invalidateIf { url ->
+                VirtualFileManager.extractPath(url).substringBeforeLast('/') in directoryPaths
+            }
+        }
+    }
+
+    private fun isSourceFile(fileName: String): Boolean =
+        fileName.substringAfterLast('.', "") in INDEXED_EXTENSIONS
+
+    private fun getStoragePath(): Path =
+        PathManager.getSystemDir()
+            .resolve("codegpt")
+            .resolve("psi-structure")
+            .resolve("${project.locationHash}.bin")
+
+    private fun load(): DependentEntryMap<Entry> {
+        val result = DependentEntryMap<Entry> { it.dependencyUrls }
+        val path = getStoragePath()
+        if (!Files.exists(path)) {
+            return result
+        }
+
+        val virtualFileManager = VirtualFileManager.getInstance()
+        try {
+            DataInputStream(Files.newInputStream(path).buffered()).use { input ->
+                PsiStructureIndexStorage.read(input, project.name) { url ->
+                    virtualFileManager.findFileByUrl(url)?.takeIf { it.isValid }
+                }.forEach {
+                    val entry = Entry(
+                        NO_MODIFICATION_STAMP,
+                        it.contentHash,
+                        it.structures,
+                        it.dependencyUrls
+                    )
+                    result.put(it.url, entry)
+                }
+            }
+            loadedFromDisk = result.size
+        } catch (e: IOException) {
+            logger.warn("Discarding unreadable PSI structure index", e)
+            result.clear()
+        }
+        return result
+    }
+
+    private fun save() {
+        if (!loadedEntries.isInitialized() || entries.isEmpty()) {
+            return
+        }
+
+        val path = getStoragePath()
+        val tempPath = path.resolveSibling("${path.fileName}.tmp")
+        try {
+            Files.createDirectories(path.parent)
+            DataOutputStream(Files.newOutputStream(tempPath).buffered()).use { output ->
+                PsiStructureIndexStorage.write(output, entries.snapshot().map { (url, entry) ->
+                    PsiStructureIndexStorage.StoredEntry(
+                        url,
+                        entry.contentHash,
+                        entry.structures,
+                        entry.dependencyUrls
+                    )
+                })
+            }
+            Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING)
+        } catch (e: IOException) {
+            logger.warn("Failed to save PSI structure index", e)
+        }
+    }
+
+    private fun hash(text: CharSequence): Long {
+        var result = -0x340d631b7bdddcdbL
+        for (i in text.indices) {
+            result = (result xor text[i].code.toLong()) * 0x100000001b3L
+        }
+        return result
+    }
+}
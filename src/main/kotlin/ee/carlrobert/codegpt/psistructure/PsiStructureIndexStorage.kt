@@ -0,0 +1,202 @@
+package ee.carlrobert.codegpt.psistructure
+
+import com.intellij.openapi.vfs.VirtualFile
+import ee.carlrobert.codegpt.psistructure.models.ClassLanguage
+import ee.carlrobert.codegpt.psistructure.models.ClassName
+import ee.carlrobert.codegpt.psistructure.models.ClassStructure
+import ee.carlrobert.codegpt.psistructure.models.ClassType
+import ee.carlrobert.codegpt.psistructure.models.ConstructorStructure
+import ee.carlrobert.codegpt.psistructure.models.EnumEntryName
+import ee.carlrobert.codegpt.psistructure.models.FieldStructure
+import ee.carlrobert.codegpt.psistructure.models.MethodStructure
+import ee.carlrobert.codegpt.psistructure.models.ParameterInfo
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+/**
+ * Compact binary format of the [PsiStructureIndex] entries. Virtual files are stored by URL and
+ * resolved again on read; entries whose file no longer exists are skipped.
+ */
+internal object PsiStructureIndexStorage {
+
+    private const val MAGIC = 0x50534958
+    private const val VERSION = 2
+    private const val MAX_COUNT = 1_000_000
+
+    data class StoredEntry(
+        val url: String,
+        val contentHash: Long,
+        val structures: Set<ClassStructure>,
+        val dependencyUrls: List<String>,
+    )
+
+    fun write(output: DataOutputStream, entries: Collection<StoredEntry>) {
+        output.writeInt(MAGIC)
+        output.writeInt(VERSION)
+        output.writeInt(entries.size)
+        entries.forEach { entry ->
+            output.writeUTF(entry.url)
+            output.writeLong(entry.contentHash)
+            output.writeInt(entry.structures.size)
+            entry.structures.forEach { writeClass(output, it) }
+            writeStrings(output, entry.dependencyUrls)
+        }
+    }
+
+    /**
+     * Reads the entries written by [write], or returns an empty list if the data was written by
+     * another version of the format.
+     *
+     * @throws IOException If the data is truncated or corrupted.
+     */
+    fun read(
+        input: DataInputStream,
+        repositoryName: String,
+        findFile: (String) -> VirtualFile?,
+    ): List<StoredEntry> {
+        if (input.readInt() != MAGIC) {
+            throw IOException("Not a PSI structure index")
+        }
+        if (input.readInt() != VERSION) {
+            return emptyList()
+        }
+
+        val entries = mutableListOf<StoredEntry>()
+        repeat(readCount(input)) {
+            val url = input.readUTF()
+            val contentHash = input.readLong()
+            val virtualFile = findFile(url)
+            val structures = List(readCount(input)) {
+                readClass(input, repositoryName, virtualFile)
+            }
+            val dependencyUrls = readStrings(input)
+            if (virtualFile != null) {
+                entries.add(
+                    StoredEntry(url, contentHash, structures.filterNotNull().toSet(), dependencyUrls)
+                )
+            }
+        }
+        return entries
+    }
+
+    private fun writeClass(output: DataOutputStream, structure: ClassStructure) {
+        output.writeUTF(structure.name.value)
+        output.writeUTF(structure.simpleName.value)
+        output.writeUTF(structure.classType.name)
+        writeStrings(output, structure.modifierList)
+        output.writeUTF(structure.packageName)
+        output.writeUTF(structure.lang.name)
+        output.writeInt(structure.constructors.size)
+        structure.constructors.forEach {
+            writeParameters(output, it.parameters)
+            writeStrings(output, it.modifiers)
+        }
+        output.writeInt(structure.fields.size)
+        structure.fields.forEach {
+            output.writeUTF(it.name)
+            output.writeUTF(it.type.value)
+            writeStrings(output, it.modifiers)
+        }
+        output.writeInt(structure.methods.size)
+        structure.methods.forEach {
+            output.writeUTF(it.name)
+            output.writeUTF(it.returnType.value)
+            writeParameters(output, it.parameters)
+            writeStrings(output, it.modifiers)
+        }
+        writeStrings(output, structure.supertypes.map { it.value })
+        writeStrings(output, structure.enumEntries.map { it.value })
+        output.writeInt(structure.classes.size)
+        structure.classes.forEach { writeClass(output, it) }
+    }
+
+    /**
+     * Reads a class structure, returning `null` (after consuming its data) if the file it belongs
+     * to could not be resolved.
+     */
+    private fun readClass(
+        input: DataInputStream,
+        repositoryName: String,
+        virtualFile: VirtualFile?,
+    ): ClassStructure? {
+        val name = ClassName(input.readUTF())
+        val simpleName = ClassName(input.readUTF())
+        val classType = readEnum<ClassType>(input)
+        val modifierList = readStrings(input)
+        val packageName = input.readUTF()
+        val lang = readEnum<ClassLanguage>(input)
+        val constructors = MutableList(readCount(input)) {
+            ConstructorStructure(readParameters(input), readStrings(input))
+        }
+        val fields = MutableList(readCount(input)) {
+            FieldStructure(input.readUTF(), ClassName(input.readUTF()), readStrings(input))
+        }
+        val methods = MutableList(readCount(input)) {
+            MethodStructure(
+                input.readUTF(),
+                ClassName(input.readUTF()),
+                readParameters(input),
+                readStrings(input)
+            )
+        }
+        val supertypes = readStrings(input).mapTo(mutableListOf()) { ClassName(it) }
+        val enumEntries = readStrings(input).mapTo(mutableListOf()) { EnumEntryName(it) }
+        val classes = List(readCount(input)) { readClass(input, repositoryName, virtualFile) }
+
+        return virtualFile?.let {
+            ClassStructure(
+                name = name,
+                virtualFile = it,
+                simpleName = simpleName,
+                classType = classType,
+                modifierList = modifierList,
+                packageName = packageName,
+                repositoryName = repositoryName,
+                lang = lang,
+                constructors = constructors,
+                fields = fields,
+                methods = methods,
+                supertypes = supertypes,
+                enumEntries = enumEntries,
+                classes = classes.filterNotNullTo(mutableListOf())
+            )
+        }
+    }
+
+    private fun writeParameters(output: DataOutputStream, parameters: List<ParameterInfo>) {
+        output.writeInt(parameters.size)
+        parameters.forEach {
+            output.writeUTF(it.name)
+            output.writeUTF(it.type.value)
+            writeStrings(output, it.modifiers)
+        }
+    }
+
+    private fun readParameters(input: DataInputStream): List<ParameterInfo> =
+        List(readCount(input)) {
+            ParameterInfo(input.readUTF(), ClassName(input.readUTF()), readStrings(input))
+        }
+
+    private fun writeStrings(output: DataOutputStream, values: List<String>) {
+        output.writeInt(values.size)
+        values.forEach { output.writeUTF(it) }
+    }
+
+    private fun readStrings(input: DataInputStream): List<String> =
+        List(readCount(input)) { input.readUTF() }
+
+    private fun readCount(input: DataInputStream): Int {
+        val count = input.readInt()
+        if (count !in 0..MAX_COUNT) {
+            throw IOException("Invalid count: $count")
+        }
+        return count
+    }
+
+    private inline fun <reified T : Enum<T>> readEnum(input: DataInputStream): T {
+        val name = input.readUTF()
+        return enumValues<T>().firstOrNull { it.name == name }
+            ?: throw IOException("Unknown ${T::class.java.simpleName}: $name")
+    }
+}
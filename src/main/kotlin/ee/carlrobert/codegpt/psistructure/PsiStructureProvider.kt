@@ -2,18 +2,39 @@ package ee.carlrobert.codegpt.psistructure
 
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.application.ReadAction
+import com.intellij.openapi.components.service
+import com.intellij.openapi.project.Project
 import com.intellij.psi.PsiFile
+import com.intellij.util.concurrency.AppExecutorUtil
 import com.intellij.util.io.await
 import ee.carlrobert.codegpt.psistructure.models.ClassStructure
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.asExecutor
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import kotlinx.coroutines.currentCoroutineContext
 import kotlinx.coroutines.delay
 import kotlinx.coroutines.ensureActive
 import org.jetbrains.kotlin.psi.KtFile
+import java.util.concurrent.ExecutorService
 import kotlin.coroutines.cancellation.CancellationException
 
-class PsiStructureProvider {
+/**
+ * Collects the class structures of the given files and the files they depend on, level by level.
+ * Files at the same depth are analyzed in parallel, each in its own non-blocking read action, so
+ * a write action only restarts the analysis of the files it interrupted.
+ *
+ * @param parallelism Maximum number of files analyzed at the same time.
+ * @param maxVisitedFiles Maximum number of files visited in a single collection.
+ */
+class PsiStructureProvider @JvmOverloads constructor(
+    parallelism: Int = DEFAULT_PARALLELISM,
+    private val maxVisitedFiles: Int = DEFAULT_MAX_VISITED_FILES,
+) {
+
+    private val executor: ExecutorService = AppExecutorUtil.createBoundedApplicationPoolExecutor(
+        "PsiStructureProvider",
+        parallelism.coerceAtLeast(1)
+    )
 
     suspend fun get(
         psiFiles: List<PsiFile>,
@@ -26,6 +47,9 @@ class PsiStructureProvider {
         val kotlinFileAnalyzerAvailable: Boolean = ApplicationManager
             .getApplication()
             .hasComponent(KotlinFileAnalyzer::class.java)
+        if (!kotlinFileAnalyzerAvailable) {
+            return emptySet()
+        }
 
         while (result == null && attempts < maxAttempts) {
             attempts++
@@ -34,52 +58,69 @@ class PsiStructureProvider {
                     .map { it.project }
                     .firstOrNull { !it.isDisposed } ?: error("Project not available")
 
-                val coroutineContext = currentCoroutineContext()
-                val future = ReadAction.nonBlocking<Set<ClassStructure>> {
-                    val classStructureSet = mutableSetOf<ClassStructure>()
-                    val processedPsiFiles = mutableSetOf<PsiFile?>()
-                    val psiFileDepthQueue = PsiFileDepthQueue(psiFiles, analyzeDepth)
-
-                    while (true) {
-                        coroutineContext.ensureActive()
+                result = collect(project, psiFiles, analyzeDepth)
+            } catch (e: CancellationException) {
+                throw e
+            } catch (_: Exception) {
+                delay(DELAY_RESTART_READ_ACTION)
+            }
+        }
 
-                        val psiFile = psiFileDepthQueue.pop()
+        return result ?: emptySet()
+    }
 
-                        when {
-                            processedPsiFiles.contains(psiFile) -> Unit
+    private suspend fun collect(
+        project: Project,
+        psiFiles: List<PsiFile>,
+        analyzeDepth: Int,
+    ): Set<ClassStructure> = coroutineScope {
+        val index = project.service<PsiStructureIndex>()
+        val classStructureSet = mutableSetOf<ClassStructure>()
+        val psiFileDepthQueue = PsiFileDepthQueue(psiFiles, analyzeDepth, maxVisitedFiles)
 
-                            kotlinFileAnalyzerAvailable && psiFile is KtFile -> {
-                                classStructureSet.addAll(
-                                    KotlinFileAnalyzer(
-                                        psiFileQueue = psiFileDepthQueue,
-                                        ktFile = psiFile,
-                                    ).analyze()
-                                )
-                                processedPsiFiles.add(psiFile)
-                            }
+        while (true) {
+            val level = psiFileDepthQueue.popLevel()
+            if (level.isEmpty()) {
+                break
+            }
 
-                            psiFile == null -> break
-                        }
+            level
+                .filterIsInstance<KtFile>()
+                .map { ktFile -> async { ktFile to analyze(project, index, ktFile) } }
+                .awaitAll()
+                .forEach { (ktFile, fileStructure) ->
+                    classStructureSet.addAll(fileStructure.classes)
+                    fileStructure.dependencies.forEach { dependency ->
+                        psiFileDepthQueue.put(dependency, ktFile)
                     }
-
-                    classStructureSet.toSet()
                 }
-                    .inSmartMode(project)
-                    .coalesceBy(this@PsiStructureProvider)
-                    .submit(Dispatchers.Default.asExecutor())
+        }
 
-                result = future.await()
-            } catch (e: CancellationException) {
-                throw e
-            } catch (_: Exception) {
-                delay(DELAY_RESTART_READ_ACTION)
+        classStructureSet.toSet()
+    }
+
+    private suspend fun analyze(
+        project: Project,
+        index: PsiStructureIndex,
+        ktFile: KtFile,
+    ): PsiStructureIndex.FileStructure {
+        val coroutineContext = currentCoroutineContext()
+        return ReadAction.nonBlocking<PsiStructureIndex.FileStructure> {
+            coroutineContext.ensureActive()
+            if (ktFile.isValid) {
+                index.getFileStructure(ktFile)
+            } else {
+                PsiStructureIndex.FileStructure(emptySet(), emptyList())
             }
         }
-
-        return result ?: emptySet()
+            .inSmartMode(project)
+            .submit(executor)
+            .await()
     }
 
     private companion object {
         const val DELAY_RESTART_READ_ACTION = 200L
+        const val DEFAULT_MAX_VISITED_FILES = 500
+        val DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
     }
-}
\ No newline at end of file
+}
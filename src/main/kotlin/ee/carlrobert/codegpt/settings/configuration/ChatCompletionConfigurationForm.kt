@@ -30,6 +30,11 @@ class ChatCompletionConfigurationForm {
         service<ConfigurationSettings>().state.chatCompletionSettings.clickableLinksEnabled
     )
 
+    private val relevantHistoryCheckBox = JBCheckBox(
+        CodeGPTBundle.get("configurationConfigurable.section.chatCompletion.relevantHistory.title"),
+        service<ConfigurationSettings>().state.chatCompletionSettings.relevantHistoryEnabled
+    )
+
     private val sendWithAltEnterCheckBox = JBCheckBox(
         Toolkit.getProperty("AWT.alt", "Alt"),
         service<ConfigurationSettings>().state.chatCompletionSettings.sendWithAltEnter
@@ -66,6 +71,10 @@ class ChatCompletionConfigurationForm {
                 cell(psiStructureAnalyzeDepthField)
                     .comment(CodeGPTBundle.get("configurationConfigurable.section.chatCompletion.psiStructure.analyzeDepth.comment"))
             }
+            row {
+                cell(relevantHistoryCheckBox)
+                    .comment(CodeGPTBundle.get("configurationConfigurable.section.chatCompletion.relevantHistory.description"))
+            }
             group(CodeGPTBundle.get("configurationConfigurable.section.chatCompletion.sendMessageShortcut.title")) {
                 row {
                     comment(CodeGPTBundle.get("configurationConfigurable.section.chatCompletion.sendMessageShortcut.description"))
@@ -88,6 +97,7 @@ class ChatCompletionConfigurationForm {
         psiStructureCheckBox.isSelected = prevState.psiStructureEnabled
         psiStructureAnalyzeDepthField.number = prevState.psiStructureAnalyzeDepth
         clickableLinksCheckBox.isSelected = prevState.clickableLinksEnabled
+        relevantHistoryCheckBox.isSelected = prevState.relevantHistoryEnabled
         sendWithAltEnterCheckBox.isSelected = prevState.sendWithAltEnter
         sendWithCtrlEnterCheckBox.isSelected = prevState.sendWithCtrlEnter
         sendWithShiftEnterCheckBox.isSelected = prevState.sendWithShiftEnter
@@ -99,6 +109,7 @@ class ChatCompletionConfigurationForm {
             this.psiStructureEnabled = psiStructureCheckBox.isSelected
             this.psiStructureAnalyzeDepth = psiStructureAnalyzeDepthField.number
             this.clickableLinksEnabled = clickableLinksCheckBox.isSelected
+            this.relevantHistoryEnabled = relevantHistoryCheckBox.isSelected
             this.sendWithAltEnter = sendWithAltEnterCheckBox.isSelected
             this.sendWithCtrlEnter = sendWithCtrlEnterCheckBox.isSelected
             this.sendWithShiftEnter = sendWithShiftEnterCheckBox.isSelected
@@ -22,6 +22,10 @@ class CodeCompletionConfigurationForm {
         CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.collectDependencyStructure.title"),
         service<ConfigurationSettings>().state.codeCompletionSettings.collectDependencyStructure
     )
+    private val streamingCheckBox = JBCheckBox(
+        CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.streaming.title"),
+        service<ConfigurationSettings>().state.codeCompletionSettings.streamingEnabled
+    )
     private val psiStructureAnalyzeDepthField = PortField().apply {
         number = service<ConfigurationSettings>().state.codeCompletionSettings.psiStructureAnalyzeDepth
     }
@@ -40,6 +44,10 @@ class CodeCompletionConfigurationForm {
                 cell(collectDependencyStructureBox)
                     .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.collectDependencyStructure.description"))
             }
+            row {
+                cell(streamingCheckBox)
+                    .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.streaming.description"))
+            }
             row {
                 label(
                     CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.analyzeDepth.title"),
@@ -55,6 +63,7 @@ class CodeCompletionConfigurationForm {
         gitDiffCheckBox.isSelected = prevState.gitDiffEnabled
         collectDependencyStructureBox.isSelected = prevState.collectDependencyStructure
         psiStructureAnalyzeDepthField.number = prevState.psiStructureAnalyzeDepth
+        streamingCheckBox.isSelected = prevState.streamingEnabled
     }
 
     fun getFormState(): CodeCompletionSettingsState {
@@ -63,6 +72,7 @@ class CodeCompletionConfigurationForm {
             this.gitDiffEnabled = gitDiffCheckBox.isSelected
             this.collectDependencyStructure = collectDependencyStructureBox.isSelected
             this.psiStructureAnalyzeDepth = psiStructureAnalyzeDepthField.number
+            this.streamingEnabled = streamingCheckBox.isSelected
         }
     }
 }
\ No newline at end of file
@@ -51,6 +51,7 @@ class ChatCompletionSettingsState : BaseState() {
     var psiStructureEnabled by property(true)
     var psiStructureAnalyzeDepth by property(3)
     var clickableLinksEnabled by property(true)
+    var relevantHistoryEnabled by property(false)
     var sendWithAltEnter by property(false)
     var sendWithCtrlEnter by property(false)
     var sendWithShiftEnter by property(false)
@@ -62,4 +63,5 @@ class CodeCompletionSettingsState : BaseState() {
     var collectDependencyStructure by property(false)
     var contextAwareEnabled by property(false)
     var psiStructureAnalyzeDepth by property(2)
+    var streamingEnabled by property(false)
 }
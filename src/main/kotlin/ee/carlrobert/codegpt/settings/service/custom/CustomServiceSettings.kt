@@ -17,6 +17,7 @@ import java.util.UUID
 import ee.carlrobert.codegpt.util.MapConverter
 
 private const val DEFAULT_SERVICE_SETTINGS_NANE = "Default"
+const val DEFAULT_CONTEXT_WINDOW = 128_000
 
 @Service
 @State(
@@ -171,6 +172,7 @@ class CustomServiceSettingsState : BaseState() {
 @JsonIgnoreProperties(ignoreUnknown = true)
 class CustomServiceChatCompletionSettingsState : BaseState() {
     var url by string(CustomServiceChatCompletionTemplate.OPENAI.url)
+    var contextWindow by property(DEFAULT_CONTEXT_WINDOW)
     var headers by map<String, String>()
 
     @get:OptionTag(converter = MapConverter::class)
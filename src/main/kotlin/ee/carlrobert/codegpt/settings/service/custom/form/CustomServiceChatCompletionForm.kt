@@ -1,6 +1,7 @@
 package ee.carlrobert.codegpt.settings.service.custom.form
 
 import com.intellij.openapi.ui.MessageType
+import com.intellij.ui.components.fields.IntegerField
 import com.intellij.util.ui.FormBuilder
 import ee.carlrobert.codegpt.CodeGPTBundle
 import ee.carlrobert.codegpt.completions.CompletionRequestService
@@ -9,6 +10,7 @@ import ee.carlrobert.codegpt.settings.service.custom.CustomServiceChatCompletion
 import ee.carlrobert.codegpt.settings.service.custom.CustomServiceFormTabbedPane
 import ee.carlrobert.codegpt.settings.service.custom.form.model.CustomServiceChatCompletionSettingsData
 import ee.carlrobert.codegpt.ui.OverlayUtil
+import ee.carlrobert.codegpt.ui.UIUtil
 import ee.carlrobert.codegpt.ui.URLTextField
 import ee.carlrobert.llm.client.openai.completion.ErrorDetails
 import ee.carlrobert.llm.completion.CompletionEventListener
@@ -23,6 +25,10 @@ class CustomServiceChatCompletionForm(
 ) {
 
     private val urlField = URLTextField(state.url, 30)
+    private val contextWindowField = IntegerField("context_window", 256, 10_000_000).apply {
+        columns = 12
+        value = state.contextWindow
+    }
     private val tabbedPane = CustomServiceFormTabbedPane(state.headers, state.body)
     private val testConnectionButton = JButton(
         CodeGPTBundle.get("settingsConfigurable.service.custom.openai.testConnection.label")
@@ -52,6 +58,12 @@ class CustomServiceChatCompletionForm(
             tabbedPane.body = value
         }
 
+    var contextWindow: Int
+        get() = contextWindowField.value
+        set(value) {
+            contextWindowField.value = value
+        }
+
     val form: JPanel
         get() = FormBuilder.createFormBuilder()
             .addVerticalGap(8)
@@ -62,6 +74,13 @@ class CustomServiceChatCompletionForm(
                     add(testConnectionButton, BorderLayout.EAST)
                 }
             )
+            .addLabeledComponent(
+                CodeGPTBundle.get("settingsConfigurable.service.custom.openai.contextWindow.label"),
+                contextWindowField
+            )
+            .addComponentToRightColumn(
+                UIUtil.createComment("settingsConfigurable.service.custom.openai.contextWindow.comment")
+            )
             .addComponent(tabbedPane)
             .addComponentFillVertically(JPanel(), 0)
             .panel
@@ -70,6 +89,7 @@ class CustomServiceChatCompletionForm(
         urlField.text = settings.url
         tabbedPane.headers = settings.headers
         tabbedPane.body = settings.body
+        contextWindowField.value = settings.contextWindow
     }
 
     private fun testConnection() {
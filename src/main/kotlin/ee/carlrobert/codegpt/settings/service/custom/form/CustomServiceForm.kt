@@ -212,6 +212,7 @@ class CustomServiceForm(
                 url = chatCompletionSettings.url.orEmpty()
                 body = chatCompletionSettings.body.toMutableMap()
                 headers = chatCompletionSettings.headers.toMutableMap()
+                contextWindow = chatCompletionSettings.contextWindow
             }
             codeCompletionsForm.apply {
                 val codeCompletionSettings = selectedItem.codeCompletionSettings
@@ -246,6 +247,7 @@ class CustomServiceForm(
                     url = chatCompletionsForm.url,
                     body = chatCompletionsForm.body,
                     headers = chatCompletionsForm.headers,
+                    contextWindow = chatCompletionsForm.contextWindow,
                 ),
                 codeCompletionSettings = editedItem.codeCompletionSettings.copy(
                     codeCompletionsEnabled = codeCompletionsForm.codeCompletionsEnabled,
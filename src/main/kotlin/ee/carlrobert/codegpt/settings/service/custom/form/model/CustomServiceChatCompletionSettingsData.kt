@@ -1,7 +1,10 @@
 package ee.carlrobert.codegpt.settings.service.custom.form.model
 
+import ee.carlrobert.codegpt.settings.service.custom.DEFAULT_CONTEXT_WINDOW
+
 data class CustomServiceChatCompletionSettingsData(
     val url: String?,
     val headers: Map<String, String>,
-    val body: Map<String, Any>
+    val body: Map<String, Any>,
+    val contextWindow: Int = DEFAULT_CONTEXT_WINDOW
 )
@@ -20,6 +20,7 @@ fun CustomServiceChatCompletionSettingsData.mapToState(): CustomServiceChatCompl
         serviceState.url = url
         serviceState.headers = headers.toMutableMap()
         serviceState.body = body.toMutableMap()
+        serviceState.contextWindow = contextWindow
     }
 
 fun CustomServiceCodeCompletionSettingsData.mapToState(): CustomServiceCodeCompletionSettingsState =
@@ -26,7 +26,8 @@ fun CustomServiceChatCompletionSettingsState.mapToData(): CustomServiceChatCompl
     CustomServiceChatCompletionSettingsData(
         url = url ?: "",
         headers = headers,
-        body = body
+        body = body,
+        contextWindow = contextWindow
     )
 
 fun CustomServiceCodeCompletionSettingsState.mapToData(): CustomServiceCodeCompletionSettingsData =
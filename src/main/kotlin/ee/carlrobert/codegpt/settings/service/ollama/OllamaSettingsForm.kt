@@ -12,6 +12,7 @@ import com.intellij.openapi.ui.MessageType
 import com.intellij.ui.TitledSeparator
 import com.intellij.ui.components.JBPasswordField
 import com.intellij.ui.components.JBTextField
+import com.intellij.ui.components.fields.IntegerField
 import com.intellij.util.concurrency.AppExecutorUtil
 import com.intellij.util.ui.FormBuilder
 import ee.carlrobert.codegpt.CodeGPTBundle
@@ -40,6 +41,7 @@ class OllamaSettingsForm {
     private val refreshModelsButton =
         JButton(CodeGPTBundle.get("settingsConfigurable.service.ollama.models.refresh"))
     private val hostField: JBTextField
+    private val contextSizeField: IntegerField
     private val modelComboBoxes: Map<FeatureType, ComboBox<String>>
     private val codeCompletionConfigurationForm: CodeCompletionConfigurationForm
     private val apiKeyField: JBPasswordField
@@ -70,6 +72,10 @@ class OllamaSettingsForm {
                 }
             }
         }
+        contextSizeField = IntegerField("context_size", 0, 1_048_576).apply {
+            columns = 12
+            value = settings.contextSize
+        }
         refreshModelsButton.addActionListener {
             refreshModels(
                 mapOf(
@@ -99,6 +105,13 @@ class OllamaSettingsForm {
                     modelComboBoxes[FeatureType.CHAT]!!
                 )
                 .addComponent(refreshModelsButton)
+                .addLabeledComponent(
+                    CodeGPTBundle.get("settingsConfigurable.service.ollama.contextSize.label"),
+                    contextSizeField
+                )
+                .addComponentToRightColumn(
+                    UIUtil.createComment("settingsConfigurable.service.ollama.contextSize.comment")
+                )
                 .addComponent(TitledSeparator(CodeGPTBundle.get("settingsConfigurable.shared.authentication.title")))
                 .setFormLeftIndent(32)
                 .addLabeledComponent(
@@ -122,6 +135,7 @@ class OllamaSettingsForm {
         service<OllamaSettings>().state.run {
             hostField.text = host
             modelComboBoxes[FeatureType.CHAT]!!.item = model ?: ""
+            contextSizeField.value = contextSize
             codeCompletionConfigurationForm.isCodeCompletionsEnabled = codeCompletionsEnabled
             codeCompletionConfigurationForm.fimTemplate = fimTemplate
             codeCompletionConfigurationForm.fimOverride != fimOverride
@@ -134,6 +148,7 @@ class OllamaSettingsForm {
             host = hostField.text
             if (modelComboBoxes[FeatureType.CHAT]?.isEnabled == true)
                 model = modelComboBoxes[FeatureType.CHAT]?.item
+            contextSize = contextSizeField.value
             codeCompletionsEnabled = codeCompletionConfigurationForm.isCodeCompletionsEnabled
             fimTemplate = codeCompletionConfigurationForm.fimTemplate ?: fimTemplate
             fimOverride = codeCompletionConfigurationForm.fimOverride == true
@@ -144,6 +159,7 @@ class OllamaSettingsForm {
     fun isModified() = service<OllamaSettings>().state.run {
         hostField.text != host
                 || (modelComboBoxes[FeatureType.CHAT]!!.item != model && modelComboBoxes[FeatureType.CHAT]!!.isEnabled)
+                || contextSizeField.value != contextSize
                 || codeCompletionConfigurationForm.isCodeCompletionsEnabled != codeCompletionsEnabled
                 || codeCompletionConfigurationForm.fimTemplate != fimTemplate
                 || codeCompletionConfigurationForm.fimOverride != fimOverride
@@ -1,8 +1,10 @@
 package ee.carlrobert.codegpt.toolwindow.chat
 
+import com.intellij.openapi.progress.ProgressIndicator
 import com.intellij.openapi.project.Project
 import ee.carlrobert.codegpt.ReferencedFile
 import ee.carlrobert.codegpt.conversations.message.Message
+import ee.carlrobert.codegpt.ui.textarea.TagContextAssembler
 import ee.carlrobert.codegpt.ui.textarea.TagProcessorFactory
 import ee.carlrobert.codegpt.ui.textarea.header.tag.TagDetails
 import java.util.*
@@ -11,9 +13,16 @@ class MessageBuilder(private val project: Project, private val text: String) {
     private val message = Message("")
     private var inlayContent: String = ""
 
-    fun withInlays(appliedTags: List<TagDetails>): MessageBuilder {
+    /**
+     * Adds the context of the tags to the message. Cancelling [indicator] stops collecting it.
+     */
+    @JvmOverloads
+    fun withInlays(
+        appliedTags: List<TagDetails>,
+        indicator: ProgressIndicator? = null
+    ): MessageBuilder {
         if (appliedTags.isNotEmpty()) {
-            inlayContent = processTags(message, appliedTags)
+            inlayContent = processTags(message, appliedTags, indicator)
         }
         return this
     }
@@ -50,12 +59,10 @@ class MessageBuilder(private val project: Project, private val text: String) {
 
     private fun processTags(
         message: Message,
-        tags: List<TagDetails>
+        tags: List<TagDetails>,
+        indicator: ProgressIndicator?
     ): String = buildString {
-        tags
-            .map {
-                TagProcessorFactory.getProcessor(project, it)
-            }
-            .forEach { it.process(message, this) }
+        val processors = tags.map { TagProcessorFactory.getProcessor(project, it) }
+        TagContextAssembler().assemble(processors, message, this, indicator)
     }
 }
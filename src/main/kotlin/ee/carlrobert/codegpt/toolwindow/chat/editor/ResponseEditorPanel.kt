@@ -7,6 +7,7 @@ import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.application.runInEdt
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.EditorFactory
 import com.intellij.openapi.editor.EditorKind
 import com.intellij.openapi.editor.LogicalPosition
 import com.intellij.openapi.editor.ScrollType
@@ -294,6 +295,21 @@ class ResponseEditorPanel(
         if (filePath != null) {
             DiffSyncManager.unregisterEditor(filePath, editor)
         }
+        releaseEditor(editor)
+    }
+
+    private fun releaseEditor(editor: EditorEx) {
+        if (editor.isDisposed) {
+            return
+        }
+        val diffViewer = RESPONSE_EDITOR_DIFF_VIEWER_KEY.get(editor)
+        runInEdt {
+            if (diffViewer != null) {
+                Disposer.dispose(diffViewer)
+            } else if (!editor.isDisposed) {
+                EditorFactory.getInstance().releaseEditor(editor)
+            }
+        }
     }
 
     private fun configureEditor(editor: EditorEx) {
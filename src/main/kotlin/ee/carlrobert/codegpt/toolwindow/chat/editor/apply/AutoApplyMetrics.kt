@@ -0,0 +1,64 @@
+package ee.carlrobert.codegpt.toolwindow.chat.editor.apply
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Counts how code snippets were applied to files, either locally or by the auto apply model, and
+ * how long it took.
+ */
+@Service(Service.Level.APP)
+class AutoApplyMetrics {
+
+    companion object {
+        @JvmStatic
+        fun getInstance(): AutoApplyMetrics = service()
+    }
+
+    /**
+     * @param localApplies Snippets applied by [LocalApplyEngine].
+     * @param remoteApplies Snippets sent to the auto apply model, including the ones the local
+     * engine couldn't place.
+     */
+    data class ApplyStats(
+        val localApplies: Long,
+        val remoteApplies: Long,
+        val averageLocalLatencyMillis: Long,
+        val averageRemoteLatencyMillis: Long,
+    ) {
+        val localRate: Double
+            get() = if (localApplies + remoteApplies == 0L) 0.0
+            else localApplies.toDouble() / (localApplies + remoteApplies)
+    }
+
+    private val localApplies = AtomicLong()
+    private val localLatencyNanos = AtomicLong()
+    private val remoteApplies = AtomicLong()
+    private val remoteLatencyNanos = AtomicLong()
+
+    fun recordLocalApply(latencyNanos: Long) {
+        localApplies.incrementAndGet()
+        localLatencyNanos.addAndGet(latencyNanos)
+    }
+
+    fun recordRemoteApply(latencyNanos: Long) {
+        remoteApplies.incrementAndGet()
+        remoteLatencyNanos.addAndGet(latencyNanos)
+    }
+
+    fun getStats(): ApplyStats {
+        val local = localApplies.get()
+        val remote = remoteApplies.get()
+        return ApplyStats(
+            localApplies = local,
+            remoteApplies = remote,
+            averageLocalLatencyMillis = averageMillis(localLatencyNanos.get(), local),
+            averageRemoteLatencyMillis = averageMillis(remoteLatencyNanos.get(), remote)
+        )
+    }
+
+    private fun averageMillis(totalNanos: Long, count: Long): Long =
+        if (count == 0L) 0 else TimeUnit.NANOSECONDS.toMillis(totalNanos / count)
+}
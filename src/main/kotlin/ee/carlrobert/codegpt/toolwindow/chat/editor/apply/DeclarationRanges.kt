@@ -0,0 +1,37 @@
+package ee.carlrobert.codegpt.toolwindow.chat.editor.apply
+
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiManager
+import com.intellij.psi.PsiNameIdentifierOwner
+import com.intellij.psi.util.PsiTreeUtil
+
+object DeclarationRanges {
+
+    /**
+     * Returns the last line of each named declaration in the file, such as a class or a method,
+     * keyed by the first line of the declaration and by the line of its name, which differ when
+     * the declaration starts with annotations or a doc comment. Outer declarations win over
+     * nested ones starting on the same line.
+     */
+    fun collect(project: Project, virtualFile: VirtualFile): Map<Int, Int> = runReadAction {
+        val psiFile = PsiManager.getInstance(project).findFile(virtualFile)
+            ?: return@runReadAction emptyMap()
+        val document = PsiDocumentManager.getInstance(project).getDocument(psiFile)
+            ?: return@runReadAction emptyMap()
+
+        val declarationEnds = mutableMapOf<Int, Int>()
+        PsiTreeUtil.collectElementsOfType(psiFile, PsiNameIdentifierOwner::class.java)
+            .forEach { element ->
+                val range = element.textRange ?: return@forEach
+                val endLine = document.getLineNumber(range.endOffset)
+                declarationEnds.putIfAbsent(document.getLineNumber(range.startOffset), endLine)
+                element.nameIdentifier?.textRange?.let {
+                    declarationEnds.putIfAbsent(document.getLineNumber(it.startOffset), endLine)
+                }
+            }
+        declarationEnds
+    }
+}
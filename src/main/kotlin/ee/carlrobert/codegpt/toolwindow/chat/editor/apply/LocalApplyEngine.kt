@@ -0,0 +1,192 @@
+package ee.carlrobert.codegpt.toolwindow.chat.editor.apply
+
+import ee.carlrobert.codegpt.util.StringUtil
+
+/**
+ * Applies a code snippet from a chat response to a file without a model, by finding the region of
+ * the file that the snippet rewrites.
+ *
+ * A candidate region starts at a line equal to the first line of the snippet, and ends at a line
+ * equal to its last line or where the declaration starting at that line ends. Lines are compared by
+ * the hashes of their trimmed text. Candidates are scored by the lines and the character bigrams
+ * they share with the snippet, and the best one is used only if it scores at least
+ * [minConfidence], no other region scores about as well, and its text occurs once in the file.
+ */
+class LocalApplyEngine(private val minConfidence: Double = DEFAULT_MIN_CONFIDENCE) {
+
+    companion object {
+        const val DEFAULT_MIN_CONFIDENCE = 0.65
+
+        private const val MAX_CANDIDATES = 256
+        private const val AMBIGUITY_MARGIN = 0.02
+        private val ELISION_PATTERN = Regex("""^(//+|#+|--|;+|/\*+|<!--)?\s*(\.{3}|…)""")
+        private val COMMENT_PATTERN = Regex("""^(//+|#+|--|;+|/\*+|<!--)""")
+    }
+
+    /**
+     * @param search Lines of the file the snippet replaces.
+     * @param replacement The snippet, indented like the lines it replaces.
+     */
+    data class Match(val search: String, val replacement: String, val confidence: Double)
+
+    private data class Region(val startLine: Int, val endLine: Int)
+
+    private class ScoredRegion(val region: Region, val score: Double)
+
+    /**
+     * @param declarationEnds Last line of the declaration starting at each line, e.g. of a method,
+     * keyed by both the first line of the declaration and the line of its name.
+     * @return the region to replace, or null if the snippet can't be placed with enough confidence.
+     */
+    fun findMatch(
+        fileText: String,
+        snippet: String,
+        declarationEnds: Map<Int, Int> = emptyMap()
+    ): Match? {
+        val snippetLines = trimSnippet(snippet.split('\n')) ?: return null
+        val snippetText = snippetLines.joinToString("\n")
+        val snippetHashes = sortedLineHashes(snippetLines)
+        val firstHash = lineHash(snippetLines.first())
+        val lastHash = lineHash(snippetLines.last())
+
+        val fileLines = fileText.split('\n')
+        val fileHashes = IntArray(fileLines.size) { lineHash(fileLines[it]) }
+        val maxRegionLines = snippetLines.size * 2 + 10
+        val candidates = LinkedHashSet<Region>()
+        for (start in fileLines.indices) {
+            if (fileHashes[start] != firstHash) {
+                continue
+            }
+            declarationEnds[start]?.let { candidates.add(Region(start, it)) }
+            val limit = minOf(fileLines.lastIndex, start + maxRegionLines)
+            for (end in start..limit) {
+                if (fileHashes[end] == lastHash) {
+                    candidates.add(Region(start, end))
+                }
+            }
+            if (candidates.size >= MAX_CANDIDATES) {
+                break
+            }
+        }
+
+        val scored = candidates
+            .map { region ->
+                val lines = fileLines.subList(region.startLine, region.endLine + 1)
+                val lineScore = diceCoefficient(sortedLineHashes(lines), snippetHashes)
+                val bigramScore =
+                    StringUtil.getDiceCoefficient(lines.joinToString("\n"), snippetText)
+                ScoredRegion(region, (lineScore + bigramScore) / 2)
+            }
+            .sortedByDescending { it.score }
+        val best = scored.firstOrNull() ?: return null
+        if (best.score < minConfidence || isAmbiguous(best, scored)) {
+            return null
+        }
+
+        val searchLines = fileLines.subList(best.region.startLine, best.region.endLine + 1)
+        val search = searchLines.joinToString("\n")
+        val trimmedSearch = search.trim()
+        if (fileText.indexOf(trimmedSearch) != fileText.lastIndexOf(trimmedSearch)) {
+            return null
+        }
+        return Match(search, reindent(snippetLines, indentOf(searchLines.first())), best.score)
+    }
+
+    private fun isAmbiguous(best: ScoredRegion, scored: List<ScoredRegion>): Boolean {
+        return scored.any {
+            it !== best
+                    && it.score >= best.score - AMBIGUITY_MARGIN
+                    && (it.region.startLine > best.region.endLine
+                    || it.region.endLine < best.region.startLine)
+        }
+    }
+
+    /**
+     * Drops blank lines and elision comments such as `// ... existing code ...` around the
+     * snippet. Returns null if the snippet is empty or elides code in between.
+     */
+    private fun trimSnippet(lines: List<String>): List<String>? {
+        val start = lines.indexOfFirst { it.isNotBlank() && !isElision(it) }
+        val end = lines.indexOfLast { it.isNotBlank() && !isElision(it) }
+        if (start == -1) {
+            return null
+        }
+
+        val trimmed = lines.subList(start, end + 1)
+        return if (trimmed.any { isElision(it) }) null else trimmed
+    }
+
+    private fun isElision(line: String): Boolean {
+        val trimmed = line.trim()
+        return ELISION_PATTERN.containsMatchIn(trimmed)
+                || (COMMENT_PATTERN.containsMatchIn(trimmed)
+                && trimmed.contains("existing code", ignoreCase = true))
+    }
+
+    private fun reindent(lines: List<String>, targetIndent: String): String {
+        val sourceIndent = indentOf(lines.first())
+        if (sourceIndent == targetIndent
+            || lines.any { it.isNotBlank() && !it.startsWith(sourceIndent) }
+        ) {
+            return lines.joinToString("\n")
+        }
+        return lines.joinToString("\n") {
+            if (it.isBlank()) it else targetIndent + it.substring(sourceIndent.length)
+        }
+    }
+
+    private fun indentOf(line: String): String = line.takeWhile { it == ' ' || it == '\t' }
+
+    private fun sortedLineHashes(lines: List<String>): IntArray {
+        val hashes = IntArray(lines.size)
+        var size = 0
+        for (line in lines) {
+            if (line.isNotBlank()) {
+                hashes[size++] = lineHash(line)
+            }
+        }
+        return hashes.copyOf(size).apply { sort() }
+    }
+
+    /**
+     * Dice coefficient of two sorted multisets.
+     */
+    private fun diceCoefficient(first: IntArray, second: IntArray): Double {
+        if (first.isEmpty() && second.isEmpty()) {
+            return 0.0
+        }
+
+        var i = 0
+        var j = 0
+        var shared = 0
+        while (i < first.size && j < second.size) {
+            when {
+                first[i] == second[j] -> {
+                    shared++
+                    i++
+                    j++
+                }
+
+                first[i] < second[j] -> i++
+                else -> j++
+            }
+        }
+        return 2.0 * shared / (first.size + second.size)
+    }
+
+    /**
+     * Hash of the line without its leading and trailing whitespace.
+     */
+    private fun lineHash(line: String): Int {
+        var start = 0
+        var end = line.length
+        while (start < end && line[start].isWhitespace()) start++
+        while (end > start && line[end - 1].isWhitespace()) end--
+
+        var hash = 0
+        for (i in start until end) {
+            hash = 31 * hash + line[i].code
+        }
+        return hash
+    }
+}
@@ -18,6 +18,9 @@ import ee.carlrobert.codegpt.settings.service.ServiceType.INCEPTION
 import ee.carlrobert.codegpt.settings.service.ServiceType.PROXYAI
 import ee.carlrobert.codegpt.toolwindow.chat.editor.ResponseEditorPanel
 import ee.carlrobert.codegpt.toolwindow.chat.editor.actions.*
+import ee.carlrobert.codegpt.toolwindow.chat.editor.apply.AutoApplyMetrics
+import ee.carlrobert.codegpt.toolwindow.chat.editor.apply.DeclarationRanges
+import ee.carlrobert.codegpt.toolwindow.chat.editor.apply.LocalApplyEngine
 import ee.carlrobert.codegpt.util.EditorUtil
 import ee.carlrobert.codegpt.util.StringUtil
 import okhttp3.sse.EventSource
@@ -30,6 +33,8 @@ class DefaultHeaderPanel(config: HeaderConfig) : HeaderPanel(config) {
     }
 
     private var currentEventSource: EventSource? = null
+    private var remoteApplyStartTime: Long? = null
+    private val localApplyEngine = LocalApplyEngine()
     private val loadingPanel = LoadingPanel(
         CodeGPTBundle.get("toolwindow.chat.editor.diff.thinking")
     ) {
@@ -63,6 +68,11 @@ class DefaultHeaderPanel(config: HeaderConfig) : HeaderPanel(config) {
 
     fun handleDone() {
         runInEdt {
+            remoteApplyStartTime?.let {
+                AutoApplyMetrics.getInstance().recordRemoteApply(System.nanoTime() - it)
+                remoteApplyStartTime = null
+                logger.debug("Apply stats: ${AutoApplyMetrics.getInstance().getStats()}")
+            }
             currentEventSource = null
             setRightPanelComponent(createHeaderActions().component)
         }
@@ -93,18 +103,33 @@ class DefaultHeaderPanel(config: HeaderConfig) : HeaderPanel(config) {
             val responseEditorPanel = editor.component.parent as? ResponseEditorPanel
                 ?: throw IllegalStateException("Could not find editor panel")
 
-            val directApplyThreshold = 0.85
-            val coefficient =
-                StringUtil.getDiceCoefficient(editor.document.text, EditorUtil.getFileContent(file))
-            if (coefficient > directApplyThreshold) {
+            val startTime = System.nanoTime()
+            val fileContent = EditorUtil.getFileContent(file)
+            val snippet = editor.document.text
+            val match = localApplyEngine.findMatch(
+                fileContent,
+                snippet,
+                DeclarationRanges.collect(project, file)
+            )
+            if (match != null) {
                 responseEditorPanel.createDiffEditorForDirectApply(
-                    EditorUtil.getFileContent(file),
-                    editor.document.text,
+                    match.search,
+                    match.replacement,
                     file
                 )
+                recordLocalApply(startTime)
+                return
+            }
+
+            val directApplyThreshold = 0.85
+            val coefficient = StringUtil.getDiceCoefficient(snippet, fileContent)
+            if (coefficient > directApplyThreshold) {
+                responseEditorPanel.createDiffEditorForDirectApply(fileContent, snippet, file)
+                recordLocalApply(startTime)
                 return
             }
 
+            remoteApplyStartTime = startTime
             val modelSelection =
                 ModelSelectionService.getInstance()
                     .getModelSelectionForFeature(FeatureType.AUTO_APPLY);
@@ -119,6 +144,12 @@ class DefaultHeaderPanel(config: HeaderConfig) : HeaderPanel(config) {
         }
     }
 
+    private fun recordLocalApply(startTime: Long) {
+        val metrics = AutoApplyMetrics.getInstance()
+        metrics.recordLocalApply(System.nanoTime() - startTime)
+        logger.debug("Apply stats: ${metrics.getStats()}")
+    }
+
     private fun createToolbar(actionGroup: ActionGroup): ActionToolbar {
         val toolbar = ActionManager.getInstance()
             .createActionToolbar("NAVIGATION_BAR_TOOLBAR", actionGroup, true)
@@ -1,5 +1,7 @@
 package ee.carlrobert.codegpt.toolwindow.chat.parser
 
+import java.util.Objects
+
 sealed class Segment(
     open val content: String = "",
     open val language: String = "",
@@ -14,25 +16,89 @@ data class CodeHeader(
 ) : Segment("", language, filePath)
 
 data class CodeHeaderWaiting(val partial: String) : Segment(partial)
-data class Code(
-    override val content: String,
+/**
+ * Code of a block. While the block is streamed, the text is read from the parser's block builder
+ * the first time [content] is accessed, so superseded progress updates are never copied.
+ */
+class Code internal constructor(
+    private val text: Lazy<String>,
     override val language: String,
     override val filePath: String?
-) : Segment(content, language, filePath)
+) : Segment("", language, filePath) {
+
+    constructor(content: String, language: String, filePath: String?) :
+            this(lazyOf(content), language, filePath)
+
+    override val content: String
+        get() = text.value
+
+    override fun equals(other: Any?): Boolean =
+        other is Code && language == other.language && filePath == other.filePath
+                && content == other.content
+
+    override fun hashCode(): Int = Objects.hash(content, language, filePath)
+
+    override fun toString(): String =
+        "Code(content=$content, language=$language, filePath=$filePath)"
+}
 
 data class CodeEnd(override val content: String) : Segment(content)
-data class SearchWaiting(
-    val search: String,
+/**
+ * Search part of a search/replace block that is still being streamed, see [Code].
+ */
+class SearchWaiting internal constructor(
+    private val text: Lazy<String>,
     override val language: String,
     override val filePath: String?
-) : Segment(search, language, filePath)
+) : Segment("", language, filePath) {
+
+    constructor(search: String, language: String, filePath: String?) :
+            this(lazyOf(search), language, filePath)
+
+    val search: String
+        get() = text.value
+
+    override val content: String
+        get() = search
 
-data class ReplaceWaiting(
+    override fun equals(other: Any?): Boolean =
+        other is SearchWaiting && language == other.language && filePath == other.filePath
+                && search == other.search
+
+    override fun hashCode(): Int = Objects.hash(search, language, filePath)
+
+    override fun toString(): String =
+        "SearchWaiting(search=$search, language=$language, filePath=$filePath)"
+}
+
+/**
+ * Replace part of a search/replace block that is still being streamed, see [Code].
+ */
+class ReplaceWaiting internal constructor(
     val search: String,
-    val replace: String,
+    private val text: Lazy<String>,
     override val language: String,
     override val filePath: String?
-) : Segment(replace, language, filePath)
+) : Segment("", language, filePath) {
+
+    constructor(search: String, replace: String, language: String, filePath: String?) :
+            this(search, lazyOf(replace), language, filePath)
+
+    val replace: String
+        get() = text.value
+
+    override val content: String
+        get() = replace
+
+    override fun equals(other: Any?): Boolean =
+        other is ReplaceWaiting && language == other.language && filePath == other.filePath
+                && search == other.search && replace == other.replace
+
+    override fun hashCode(): Int = Objects.hash(search, replace, language, filePath)
+
+    override fun toString(): String =
+        "ReplaceWaiting(search=$search, replace=$replace, language=$language, filePath=$filePath)"
+}
 
 data class SearchReplace(
     val search: String,
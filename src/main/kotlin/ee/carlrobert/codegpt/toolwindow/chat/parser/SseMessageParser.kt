@@ -19,28 +19,31 @@ class SseMessageParser : MessageParser {
     }
 
     private var parserState: ParserState = ParserState.Outside
+
+    /**
+     * Unparsed input. Characters before [start] have been consumed and characters before
+     * [scanned] are known not to contain the markers the current state is waiting for, so
+     * no input is scanned twice.
+     */
     private val buffer = StringBuilder()
+    private var start = 0
+    private var scanned = 0
 
     fun clear() {
         parserState = ParserState.Outside
         buffer.clear()
+        start = 0
+        scanned = 0
     }
 
     override fun parse(input: String): List<Segment> {
         val segments = mutableListOf<Segment>()
-        var position = 0
-
-        while (position < input.length) {
-            val endPosition = minOf(position + 16, input.length)
-            val chunk = input.substring(position, endPosition)
-            buffer.append(chunk)
-
-            while (processNextSegment(segments)) {
-            }
+        buffer.append(input)
 
-            position = endPosition
+        while (processNextSegment(segments)) {
         }
         segments.addAll(getPendingSegments())
+        compactBuffer()
 
         return segments
     }
@@ -57,19 +60,19 @@ class SseMessageParser : MessageParser {
     }
 
     private fun processOutsideState(segments: MutableList<Segment>): Boolean {
-        val fenceIdx = buffer.indexOf(CODE_FENCE)
-        val thinkStartIdx = buffer.indexOf(THINK_START)
+        val fenceIdx = indexOfUnscanned(CODE_FENCE)
+        val thinkStartIdx = indexOfUnscanned(THINK_START)
 
         return when {
             shouldProcessCodeFence(fenceIdx, thinkStartIdx) -> {
-                val textBeforeFence = buffer.substring(0, fenceIdx)
-                val lineStartIdx = textBeforeFence.lastIndexOf(NEWLINE) + 1
-                val indentation = textBeforeFence.substring(lineStartIdx)
+                val lineStartIdx = buffer.lastIndexOf(NEWLINE, fenceIdx - 1)
+                    .coerceAtLeast(start - 1) + 1
+                val indentation = buffer.substring(lineStartIdx, fenceIdx)
 
                 // Emit text that comes before the line with the code fence.
                 extractTextBeforeIndex(lineStartIdx)?.let { segments.add(it) }
 
-                consumeFromBuffer(fenceIdx + CODE_FENCE.length)
+                consumeUntil(fenceIdx + CODE_FENCE.length)
                 // Transition to CodeHeaderWaiting with the captured indentation.
                 parserState = ParserState.CodeHeaderWaiting(indentation = indentation)
                 true
@@ -77,12 +80,15 @@ class SseMessageParser : MessageParser {
 
             thinkStartIdx != -1 -> {
                 extractTextBeforeIndex(thinkStartIdx)?.let { segments.add(it) }
-                consumeFromBuffer(thinkStartIdx + THINK_START.length)
+                consumeUntil(thinkStartIdx + THINK_START.length)
                 parserState = ParserState.InThinking()
                 true
             }
 
-            else -> false
+            else -> {
+                scanned = buffer.length
+                false
+            }
         }
     }
 
@@ -90,11 +96,7 @@ class SseMessageParser : MessageParser {
         segments: MutableList<Segment>,
         state: ParserState.CodeHeaderWaiting
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
-        if (nlIdx < 0) return false
-
-        val headerLine = buffer.substring(0, nlIdx).trim()
-        consumeFromBuffer(nlIdx + 1)
+        val headerLine = nextLine()?.trim() ?: return false
 
         val updatedHeader = state.content + headerLine
         val header = parseCodeHeader(updatedHeader)
@@ -114,16 +116,12 @@ class SseMessageParser : MessageParser {
         segments: MutableList<Segment>,
         state: ParserState.InCode
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
-        if (nlIdx < 0) return false
-
-        val line = buffer.substring(0, nlIdx)
-        consumeFromBuffer(nlIdx + 1)
+        val line = nextLine() ?: return false
 
         return when {
             line.trimEnd() == state.indentation + CODE_FENCE -> {
-                if (state.content.isNotEmpty()) {
-                    segments.add(Code(state.content, state.header.language, state.header.filePath))
+                if (state.content.isNotEmpty() && state.hasUnemittedContent()) {
+                    segments.add(state.toCode())
                 }
                 segments.add(CodeEnd(""))
                 parserState = ParserState.Outside
@@ -132,18 +130,16 @@ class SseMessageParser : MessageParser {
 
             isSearchStartLine(line) -> {
                 // Emit accumulated code content before transitioning
-                if (state.content.isNotEmpty()) {
-                    segments.add(Code(state.content, state.header.language, state.header.filePath))
+                if (state.content.isNotEmpty() && state.hasUnemittedContent()) {
+                    segments.add(state.toCode())
                 }
                 segments.add(SearchWaiting("", state.header.language, state.header.filePath))
-                parserState = ParserState.InSearch(state.header, "", state.indentation)
+                parserState = ParserState.InSearch(state.header, indentation = state.indentation)
                 true
             }
 
             else -> {
-                val newContent =
-                    if (state.content.isEmpty()) line else state.content + NEWLINE + line
-                parserState = ParserState.InCode(state.header, newContent, state.indentation)
+                state.content.appendLine(line)
                 true
             }
         }
@@ -153,49 +149,36 @@ class SseMessageParser : MessageParser {
         segments: MutableList<Segment>,
         state: ParserState.InSearch
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
-        if (nlIdx < 0) return false
-
-        val line = buffer.substring(0, nlIdx)
-        consumeFromBuffer(nlIdx + 1)
-
-        return if (isSeparatorLine(line)) {
-            segments.add(
-                ReplaceWaiting(
-                    state.searchContent,
-                    "",
-                    state.header.language,
-                    state.header.filePath
-                )
-            )
-            parserState =
-                ParserState.InReplace(state.header, state.searchContent, "", state.indentation)
-            true
+        val line = nextLine() ?: return false
+
+        if (isSeparatorLine(line)) {
+            if (state.searchContent.isNotBlank() && state.hasUnemittedContent()) {
+                segments.add(state.toSearchWaiting())
+            }
+            val search = state.searchContent.toString()
+            segments.add(ReplaceWaiting(search, "", state.header.language, state.header.filePath))
+            parserState = ParserState.InReplace(state.header, search, indentation = state.indentation)
         } else {
-            val newSearch =
-                if (state.searchContent.isEmpty()) line else state.searchContent + NEWLINE + line
-            segments.add(SearchWaiting(newSearch, state.header.language, state.header.filePath))
-            parserState = ParserState.InSearch(state.header, newSearch, state.indentation)
-            false
+            state.searchContent.appendLine(line)
         }
+        return true
     }
 
     private fun processInReplaceState(
         segments: MutableList<Segment>,
         state: ParserState.InReplace
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
-        if (nlIdx < 0) return false
-
-        val line = buffer.substring(0, nlIdx)
-        consumeFromBuffer(nlIdx + 1)
+        val line = nextLine() ?: return false
 
         return when {
             isReplaceEndLine(line) -> {
+                if (state.hasUnemittedContent()) {
+                    state.toReplaceWaiting()?.let { segments.add(it) }
+                }
                 segments.add(
                     SearchReplace(
                         search = state.searchContent,
-                        replace = state.replaceContent,
+                        replace = state.replaceContent.toString(),
                         language = state.header.language,
                         filePath = state.header.filePath
                     )
@@ -205,28 +188,16 @@ class SseMessageParser : MessageParser {
             }
 
             line.trimEnd() == state.indentation + CODE_FENCE -> {
+                if (state.hasUnemittedContent()) {
+                    state.toReplaceWaiting()?.let { segments.add(it) }
+                }
                 segments.add(CodeEnd(""))
                 parserState = ParserState.Outside
                 true
             }
 
             else -> {
-                val newReplace =
-                    if (state.replaceContent.isEmpty()) line else state.replaceContent + NEWLINE + line
-                segments.add(
-                    ReplaceWaiting(
-                        state.searchContent,
-                        newReplace,
-                        state.header.language,
-                        state.header.filePath
-                    )
-                )
-                parserState = ParserState.InReplace(
-                    state.header,
-                    state.searchContent,
-                    newReplace,
-                    state.indentation
-                )
+                state.replaceContent.appendLine(line)
                 true
             }
         }
@@ -236,28 +207,20 @@ class SseMessageParser : MessageParser {
         segments: MutableList<Segment>,
         state: ParserState.InThinking
     ): Boolean {
-        val currentBuffer = buffer.toString()
-        val combined = state.content + currentBuffer
-        val endIdxCombined = combined.indexOf(THINK_END)
-
-        return if (endIdxCombined >= 0) {
-            val thinkingContent = combined.substring(0, endIdxCombined)
-            segments.add(Thinking(thinkingContent))
+        val content = state.content
+        val searchFrom = (content.length - THINK_END.length + 1).coerceAtLeast(0)
+        content.append(buffer, start, buffer.length)
+        consumeUntil(buffer.length)
+        val endIdx = content.indexOf(THINK_END, searchFrom)
 
-            val consumedFromBuffer = (endIdxCombined + THINK_END.length - state.content.length)
-                .coerceAtLeast(0)
-                .coerceAtMost(currentBuffer.length)
-            consumeFromBuffer(consumedFromBuffer)
+        return if (endIdx >= 0) {
+            segments.add(Thinking(content.substring(0, endIdx)))
 
+            // Return whatever follows the closing tag to the input.
+            buffer.append(content, endIdx + THINK_END.length, content.length)
             parserState = ParserState.Outside
             true
         } else {
-            if (buffer.isNotEmpty()) {
-                val newContent = state.content + currentBuffer
-                segments.add(Thinking(newContent))
-                buffer.clear()
-                parserState = ParserState.InThinking(newContent)
-            }
             false
         }
     }
@@ -265,7 +228,8 @@ class SseMessageParser : MessageParser {
     private fun getPendingSegments(): List<Segment> {
         return when (val state = parserState) {
             is ParserState.Outside -> {
-                if (buffer.isNotBlank()) listOf(Text(buffer.toString()))
+                val text = buffer.substring(start)
+                if (text.isNotBlank()) listOf(Text(text))
                 else emptyList()
             }
 
@@ -277,49 +241,31 @@ class SseMessageParser : MessageParser {
             is ParserState.InCode -> {
                 val segments = mutableListOf<Segment>()
 
-                if (buffer.toString().trimEnd() == state.indentation + CODE_FENCE) {
-                    if (state.content.isNotBlank()) {
-                        segments.add(
-                            Code(state.content, state.header.language, state.header.filePath)
-                        )
+                if (buffer.substring(start).trimEnd() == state.indentation + CODE_FENCE) {
+                    if (state.content.isNotBlank() && state.hasUnemittedContent()) {
+                        segments.add(state.toCode())
                     }
                     segments.add(CodeEnd(""))
-                } else if (state.content.isNotBlank()) {
-                    segments.add(Code(state.content, state.header.language, state.header.filePath))
+                } else if (state.content.isNotBlank() && state.hasUnemittedContent()) {
+                    segments.add(state.toCode())
                 }
 
                 segments
             }
 
             is ParserState.InSearch -> {
-                if (state.searchContent.isNotBlank()) {
-                    listOf(
-                        SearchWaiting(
-                            state.searchContent,
-                            state.header.language,
-                            state.header.filePath
-                        )
-                    )
+                if (state.searchContent.isNotBlank() && state.hasUnemittedContent()) {
+                    listOf(state.toSearchWaiting())
                 } else emptyList()
             }
 
             is ParserState.InReplace -> {
-                if (state.replaceContent.isNotBlank()) {
-                    listOf(
-                        ReplaceWaiting(
-                            state.searchContent,
-                            state.replaceContent,
-                            state.header.language,
-                            state.header.filePath
-                        )
-                    )
-                } else emptyList()
+                if (state.hasUnemittedContent()) listOfNotNull(state.toReplaceWaiting())
+                else emptyList()
             }
 
             is ParserState.InThinking -> {
-                val fullContent = state.content + buffer.toString()
-                buffer.clear()
-                if (fullContent.isNotBlank()) listOf(Thinking(fullContent))
+                if (state.content.isNotBlank()) listOf(Thinking(state.content.toString()))
                 else emptyList()
             }
         }
@@ -330,11 +276,44 @@ class SseMessageParser : MessageParser {
     }
 
     private fun extractTextBeforeIndex(index: Int): Text? {
-        return if (index > 0) Text(buffer.substring(0, index)) else null
+        return if (index > start) Text(buffer.substring(start, index)) else null
+    }
+
+    /**
+     * Searches the unconsumed input for [pattern], skipping the part that was already scanned
+     * except for the characters a match could start in.
+     */
+    private fun indexOfUnscanned(pattern: String): Int {
+        return buffer.indexOf(pattern, maxOf(start, scanned - pattern.length + 1))
+    }
+
+    /**
+     * Consumes and returns the next complete line without its line break, or returns `null` if
+     * the input doesn't contain one yet.
+     */
+    private fun nextLine(): String? {
+        val nlIdx = indexOfUnscanned(NEWLINE)
+        if (nlIdx < 0) {
+            scanned = buffer.length
+            return null
+        }
+
+        val line = buffer.substring(start, nlIdx)
+        consumeUntil(nlIdx + 1)
+        return line
+    }
+
+    private fun consumeUntil(index: Int) {
+        start = index
+        scanned = index
     }
 
-    private fun consumeFromBuffer(length: Int) {
-        buffer.delete(0, length)
+    private fun compactBuffer() {
+        if (start > 0) {
+            buffer.delete(0, start)
+            scanned -= start
+            start = 0
+        }
     }
 
     private fun parseCodeHeader(headerText: String): CodeHeader? {
@@ -362,7 +341,6 @@ class SseMessageParser : MessageParser {
         return trimmed.startsWith(REPLACE_MARKER) || REPLACE_END_REGEX.matches(trimmed)
     }
 
-    // Step 1: Update parser states to hold indentation information.
     private sealed class ParserState {
         object Outside : ParserState()
 
@@ -371,27 +349,96 @@ class SseMessageParser : MessageParser {
             val indentation: String = ""
         ) : ParserState()
 
-        data class InCode(
+        class InCode(
             val header: CodeHeader,
-            val content: String = "",
             val indentation: String = ""
-        ) : ParserState()
+        ) : ParserState() {
+            val content = LineBuilder()
+            private var emittedLength = -1
+
+            fun hasUnemittedContent(): Boolean = content.length != emittedLength
+
+            fun toCode(): Code {
+                emittedLength = content.length
+                return Code(content.snapshot(), header.language, header.filePath)
+            }
+        }
 
-        data class InSearch(
+        class InSearch(
             val header: CodeHeader,
-            val searchContent: String = "",
             val indentation: String = ""
-        ) : ParserState()
+        ) : ParserState() {
+            val searchContent = LineBuilder()
+            private var emittedLength = -1
+
+            fun hasUnemittedContent(): Boolean = searchContent.length != emittedLength
 
-        data class InReplace(
+            fun toSearchWaiting(): SearchWaiting {
+                emittedLength = searchContent.length
+                return SearchWaiting(searchContent.snapshot(), header.language, header.filePath)
+            }
+        }
+
+        class InReplace(
             val header: CodeHeader,
             val searchContent: String,
-            val replaceContent: String = "",
             val indentation: String = ""
-        ) : ParserState()
+        ) : ParserState() {
+            val replaceContent = LineBuilder()
+            private var emittedLength = -1
+
+            fun hasUnemittedContent(): Boolean = replaceContent.length != emittedLength
+
+            fun toReplaceWaiting(): ReplaceWaiting? {
+                if (replaceContent.isBlank()) return null
+                emittedLength = replaceContent.length
+                return ReplaceWaiting(
+                    searchContent,
+                    replaceContent.snapshot(),
+                    header.language,
+                    header.filePath
+                )
+            }
+        }
 
-        data class InThinking(
-            val content: String = ""
-        ) : ParserState()
+        class InThinking : ParserState() {
+            val content = StringBuilder()
+        }
+    }
+
+    /**
+     * Append-only block of lines joined by line breaks. Segments take snapshots of the block that
+     * are copied out only when read, possibly on another thread, while the parser keeps appending.
+     */
+    private class LineBuilder : CharSequence {
+        private val builder = StringBuilder()
+
+        override val length: Int
+            get() = builder.length
+
+        override fun get(index: Int): Char = builder[index]
+
+        override fun subSequence(startIndex: Int, endIndex: Int): CharSequence =
+            builder.subSequence(startIndex, endIndex)
+
+        @Synchronized
+        fun appendLine(line: String) {
+            if (builder.isNotEmpty()) {
+                builder.append(NEWLINE)
+            }
+            builder.append(line)
+        }
+
+        /**
+         * Returns the lines appended so far. The text is copied from the block when the value is
+         * first read, and lines appended after this call are not part of it.
+         */
+        fun snapshot(): Lazy<String> {
+            val end = builder.length
+            return lazy { synchronized(this) { builder.substring(0, end) } }
+        }
+
+        @Synchronized
+        override fun toString(): String = builder.toString()
     }
 }
@@ -212,7 +212,7 @@ class ChatHistoryItemPanel(
                     .align(AlignX.LEFT)
                     .resizableColumn()
 
-                val messageCount = conversation.messages.size
+                val messageCount = conversation.messageCount
                 if (messageCount > 0) {
                     val text = if (messageCount == 1) {
                         CodeGPTBundle.get("conversation.messageCount.singular", messageCount)
@@ -257,12 +257,12 @@ class ChatHistoryItemPanel(
     }
 
     private fun getFirstPrompt(): String {
-        return conversation.messages.firstOrNull()?.prompt?.trim()
+        return conversation.firstMessage?.prompt?.trim()
             ?: CodeGPTBundle.get("conversation.defaultTitle")
     }
 
     private fun getPreviewText(): String {
-        val lastMessage = conversation.messages.lastOrNull() ?: return ""
+        val lastMessage = conversation.lastMessage ?: return ""
         val text = lastMessage.response?.trim() ?: lastMessage.prompt?.trim() ?: ""
 
         val cleanedText = text.replace("\n", " ").replace(Regex("\\s+"), " ").trim()
@@ -22,6 +22,7 @@ import ee.carlrobert.codegpt.conversations.ConversationService
 import ee.carlrobert.codegpt.conversations.ConversationsState
 import ee.carlrobert.codegpt.toolwindow.chat.ChatToolWindowContentManager
 import ee.carlrobert.codegpt.util.ProjectPathUtils
+import java.util.UUID
 import javax.swing.JOptionPane
 import javax.swing.JPanel
 import javax.swing.SwingUtilities
@@ -34,7 +35,6 @@ class ChatHistoryToolWindow(private val project: Project) : BorderLayoutPanel()
     companion object {
         private val KEY: Key<Boolean> = Key.create("SELECTED_STATE")
         private const val SEARCH_DEBOUNCE_MS = 300
-        private const val MAX_MESSAGES_TO_SEARCH = 5
     }
 
     private val conversationService = ConversationService.getInstance()
@@ -48,8 +48,6 @@ class ChatHistoryToolWindow(private val project: Project) : BorderLayoutPanel()
         foreground = UIUtil.getContextHelpForeground()
         border = JBUI.Borders.empty(2, 8)
     }
-    private var lastSearchText = ""
-    private var lastFilteredConversations: List<Conversation>? = null
     private var isDataLoaded = false
     private var projectInfoCache: Map<String, ProjectInfo> = emptyMap()
 
@@ -175,9 +173,8 @@ class ChatHistoryToolWindow(private val project: Project) : BorderLayoutPanel()
     }
 
     private fun countMatchingConversations(searchText: String): Int {
-        return allConversations.count { conversation ->
-            matchesSearchText(conversation, searchText)
-        }
+        val matchingIds = findMatchingConversationIds(searchText)
+        return allConversations.count { it.id in matchingIds }
     }
 
     private fun formatSearchResultMessage(count: Int): String {
@@ -193,37 +190,11 @@ class ChatHistoryToolWindow(private val project: Project) : BorderLayoutPanel()
             projectFilter.matches(conversation.projectPath, project.basePath)
         }
 
-        return if (searchText.isBlank()) {
-            lastSearchText = ""
-            lastFilteredConversations = null
-            projectFiltered
-        } else if (searchText == lastSearchText && lastFilteredConversations != null) {
-            lastFilteredConversations?.filter { conversation ->
-                projectFiltered.contains(conversation)
-            }.orEmpty()
-        } else {
-            val startList = getOptimizedSearchStartList(searchText).filter { conversation ->
-                projectFiltered.contains(conversation)
-            }
-            val filtered = startList.filter { conversation ->
-                matchesSearchText(conversation, searchText)
-            }
-            cacheFilterResults(searchText, filtered)
-            filtered
+        if (searchText.isBlank()) {
+            return projectFiltered
         }
-    }
-
-    private fun getOptimizedSearchStartList(searchText: String): List<Conversation> {
-        return if (lastSearchText.isNotEmpty() && searchText.startsWith(lastSearchText) && lastFilteredConversations != null) {
-            lastFilteredConversations.orEmpty()
-        } else {
-            allConversations
-        }
-    }
-
-    private fun cacheFilterResults(searchText: String, filtered: List<Conversation>) {
-        lastSearchText = searchText
-        lastFilteredConversations = filtered
+        val matchingIds = findMatchingConversationIds(searchText)
+        return projectFiltered.filter { it.id in matchingIds }
     }
 
     private fun getSortIcon(sortOption: SortOption) = when (sortOption) {
@@ -444,14 +415,13 @@ class ChatHistoryToolWindow(private val project: Project) : BorderLayoutPanel()
     private fun loadConversationsAsync() {
         thread {
             val conversations = conversationService.sortedConversations
-                .filter { it.messages.isNotEmpty() }
-                .filter { !(it.messages.size == 1 && it.messages[0].response.isNullOrBlank()) }
+                .filter { it.messageCount > 0 }
+                .filter { !(it.messageCount == 1 && it.firstMessage?.response.isNullOrBlank()) }
                 .toMutableList()
+            conversationService.buildSearchIndex()
             SwingUtilities.invokeLater {
                 allConversations = conversations
                 projectInfoCache = discoverProjects(conversations)
-                lastSearchText = ""
-                lastFilteredConversations = null
                 isDataLoaded = true
                 sortAndFilterConversations()
             }
@@ -476,38 +446,22 @@ class ChatHistoryToolWindow(private val project: Project) : BorderLayoutPanel()
                 ).lowercase()
             }
 
-            SortOption.MESSAGE_COUNT_DESC -> conversations.sortedByDescending { it.messages.size }
-            SortOption.MESSAGE_COUNT_ASC -> conversations.sortedBy { it.messages.size }
+            SortOption.MESSAGE_COUNT_DESC -> conversations.sortedByDescending { it.messageCount }
+            SortOption.MESSAGE_COUNT_ASC -> conversations.sortedBy { it.messageCount }
         }
     }
 
     private fun getConversationDisplayTitle(conversation: Conversation): String {
         return conversation.title?.takeIf { it.isNotBlank() }
-            ?: conversation.messages.firstOrNull()?.prompt?.take(50)
+            ?: conversation.firstMessage?.prompt?.take(50)
             ?: CodeGPTBundle.get("conversation.defaultTitle")
     }
 
-    private fun matchesSearchText(conversation: Conversation, searchText: String): Boolean {
-        val searchLower = searchText.lowercase()
-
-        if (conversation.title?.lowercase()?.contains(searchLower) == true) {
-            return true
-        }
-
-        conversation.projectPath?.let { path ->
-            val projectName = ProjectPathUtils.extractProjectName(path)?.lowercase()
-            if (projectName?.contains(searchLower) == true) {
-                return true
-            }
-        }
-
-        return conversation.messages.take(MAX_MESSAGES_TO_SEARCH).any { message ->
-            message.prompt?.lowercase()?.contains(searchLower) == true ||
-                    message.response?.lowercase()?.contains(searchLower) == true
-        }
+    private fun findMatchingConversationIds(searchText: String): Set<UUID> {
+        return conversationService.searchConversations(searchText, false)
+            .mapTo(HashSet()) { it.id }
     }
 
-
     private fun discoverProjects(conversations: List<Conversation>): Map<String, ProjectInfo> {
         return conversations
             .mapNotNull { conversation ->
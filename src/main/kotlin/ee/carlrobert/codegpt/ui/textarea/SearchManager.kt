@@ -63,8 +63,11 @@ class SearchManager(
         allGroups.forEach { group ->
             try {
                 if (group is LookupGroupItem) {
+                    // Files are looked up in the file name index, other groups are small enough
+                    // to be listed in full and filtered below.
+                    val groupSearchText = if (group is FilesGroupItem) searchText else ""
                     val lookupActionItems =
-                        group.getLookupItems("").filterIsInstance<LookupActionItem>()
+                        group.getLookupItems(groupSearchText).filterIsInstance<LookupActionItem>()
                     allResults.addAll(lookupActionItems)
                 }
             } catch (e: CancellationException) {
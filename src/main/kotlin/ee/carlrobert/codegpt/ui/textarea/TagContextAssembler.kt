@@ -0,0 +1,160 @@
+package ee.carlrobert.codegpt.ui.textarea
+
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.progress.EmptyProgressIndicator
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressIndicator
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.util.concurrency.AppExecutorUtil
+import ee.carlrobert.codegpt.conversations.message.Message
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+/**
+ * Builds the context of a message from its tags, collecting the context of slow sources
+ * concurrently so that the message is ready once its slowest source is.
+ *
+ * Contexts are added to the message in the order of the tags, each as soon as it and all those
+ * before it are collected. A source that fails or takes longer than [timeoutMillis] is cancelled
+ * and left out. Cancelling the given progress indicator, by default the calling thread's, cancels
+ * all sources that are still being collected, and the remaining tags are not processed.
+ */
+class TagContextAssembler(
+    private val executor: ExecutorService = AppExecutorUtil.getAppExecutorService(),
+    private val timeoutMillis: Long = DEFAULT_TIMEOUT_MILLIS,
+) {
+
+    companion object {
+        private const val DEFAULT_TIMEOUT_MILLIS = 10_000L
+        private const val CANCELLATION_CHECK_INTERVAL_MILLIS = 50L
+    }
+
+    enum class Status { COMPLETED, TIMED_OUT, FAILED }
+
+    data class SourceTiming(val source: String, val latencyMillis: Long, val status: Status)
+
+    private val logger = thisLogger()
+
+    private inner class PendingContext<T>(
+        private val processor: ContextCollectingTagProcessor<T>,
+    ) {
+        val source: String = processor.javaClass.simpleName.ifEmpty { processor.javaClass.name }
+        val indicator = EmptyProgressIndicator()
+        private val startTime = System.nanoTime()
+        @Volatile
+        private var endTime = 0L
+        val future: Future<T> = executor.submit<T> {
+            try {
+                ProgressManager.getInstance().runProcess<T>({ processor.collect() }, indicator)
+            } finally {
+                endTime = System.nanoTime()
+            }
+        }
+
+        fun apply(context: Any?, message: Message, promptBuilder: StringBuilder) {
+            @Suppress("UNCHECKED_CAST")
+            processor.apply(context as T, message, promptBuilder)
+        }
+
+        fun cancel() {
+            indicator.cancel()
+            future.cancel(true)
+        }
+
+        /**
+         * Time from submitting the collection until it finished, or until now if it hasn't.
+         */
+        fun elapsedMillis(): Long {
+            val end = endTime.takeIf { it != 0L } ?: System.nanoTime()
+            return TimeUnit.NANOSECONDS.toMillis(end - startTime)
+        }
+    }
+
+    /**
+     * Applies the processors to the message in order and returns how long each slow source took.
+     *
+     * @throws ProcessCanceledException if [indicator] is cancelled before all tags are processed
+     */
+    fun assemble(
+        processors: List<TagProcessor>,
+        message: Message,
+        promptBuilder: StringBuilder,
+        indicator: ProgressIndicator? = ProgressManager.getGlobalProgressIndicator(),
+    ): List<SourceTiming> {
+        val startTime = System.nanoTime()
+        indicator?.isIndeterminate = false
+        val pending = processors.map { processor ->
+            if (processor is ContextCollectingTagProcessor<*>) PendingContext(processor) else null
+        }
+
+        val timings = mutableListOf<SourceTiming>()
+        try {
+            processors.forEachIndexed { index, processor ->
+                indicator?.checkCanceled()
+                indicator?.fraction = index.toDouble() / processors.size
+                val context = pending[index]
+                if (context == null) {
+                    processor.process(message, promptBuilder)
+                    return@forEachIndexed
+                }
+
+                indicator?.text2 = context.source
+                val timing = await(context, indicator) { collected ->
+                    context.apply(collected, message, promptBuilder)
+                }
+                timings.add(timing)
+                logger.debug(
+                    "Collected context of ${timing.source} in ${timing.latencyMillis} ms "
+                            + "(${timing.status})"
+                )
+            }
+        } finally {
+            pending.forEach { it?.cancel() }
+        }
+
+        logger.debug(
+            "Assembled context of ${processors.size} tags in "
+                    + "${TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)} ms"
+        )
+        return timings
+    }
+
+    private fun await(
+        context: PendingContext<*>,
+        parentIndicator: ProgressIndicator?,
+        onCollected: (Any?) -> Unit
+    ): SourceTiming {
+        while (true) {
+            if (parentIndicator?.isCanceled == true) {
+                throw ProcessCanceledException()
+            }
+
+            val remainingMillis = timeoutMillis - context.elapsedMillis()
+            if (remainingMillis <= 0 && !context.future.isDone) {
+                logger.warn("Context of ${context.source} timed out after $timeoutMillis ms")
+                context.cancel()
+                return SourceTiming(context.source, context.elapsedMillis(), Status.TIMED_OUT)
+            }
+
+            try {
+                val collected = context.future.get(
+                    remainingMillis.coerceIn(0, CANCELLATION_CHECK_INTERVAL_MILLIS),
+                    TimeUnit.MILLISECONDS
+                )
+                onCollected(collected)
+                return SourceTiming(context.source, context.elapsedMillis(), Status.COMPLETED)
+            } catch (_: TimeoutException) {
+                // Check for cancellation and the deadline again
+            } catch (e: ExecutionException) {
+                logger.warn("Unable to collect context of ${context.source}", e.cause)
+                return SourceTiming(context.source, context.elapsedMillis(), Status.FAILED)
+            } catch (_: CancellationException) {
+                return SourceTiming(context.source, context.elapsedMillis(), Status.FAILED)
+            }
+        }
+    }
+}
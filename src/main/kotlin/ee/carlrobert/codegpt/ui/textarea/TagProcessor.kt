@@ -5,3 +5,20 @@ import ee.carlrobert.codegpt.conversations.message.Message
 fun interface TagProcessor {
     fun process(message: Message, promptBuilder: StringBuilder)
 }
+
+/**
+ * Tag processor whose context comes from a slow source, such as git or the file system.
+ *
+ * [collect] may run concurrently with other processors and must not touch the message. [apply]
+ * then adds the collected context to the message, in the order of the tags.
+ */
+interface ContextCollectingTagProcessor<T> : TagProcessor {
+
+    fun collect(): T
+
+    fun apply(context: T, message: Message, promptBuilder: StringBuilder)
+
+    override fun process(message: Message, promptBuilder: StringBuilder) {
+        apply(collect(), message, promptBuilder)
+    }
+}
@@ -17,6 +17,7 @@ import com.intellij.psi.PsiManager
 import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.completions.CompletionRequestUtil
 import ee.carlrobert.codegpt.conversations.Conversation
+import ee.carlrobert.codegpt.conversations.ConversationService
 import ee.carlrobert.codegpt.conversations.ConversationsState
 import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.mcp.ConnectionStatus
@@ -126,19 +127,23 @@ class PersonaTagProcessor(
 
 class FolderTagProcessor(
     private val tagDetails: FolderTagDetails,
-) : TagProcessor {
-    override fun process(
-        message: Message,
-        promptBuilder: StringBuilder
-    ) {
+) : ContextCollectingTagProcessor<List<String>> {
+
+    override fun collect(): List<String> {
+        val filePaths = mutableListOf<String>()
+        processFolder(tagDetails.folder, filePaths)
+        return filePaths
+    }
+
+    override fun apply(context: List<String>, message: Message, promptBuilder: StringBuilder) {
         if (message.referencedFilePaths == null) {
             message.referencedFilePaths = mutableListOf()
         }
-
-        processFolder(tagDetails.folder, message.referencedFilePaths ?: mutableListOf())
+        message.referencedFilePaths?.addAll(context)
     }
 
     private fun processFolder(folder: VirtualFile, referencedFilePaths: MutableList<String>) {
+        ProgressManager.checkCanceled()
         folder.children.forEach { child ->
             when {
                 child.isDirectory -> processFolder(child, referencedFilePaths)
@@ -160,54 +165,41 @@ class WebTagProcessor : TagProcessor {
 class GitCommitTagProcessor(
     private val project: Project,
     private val tagDetails: GitCommitTagDetails,
-) : TagProcessor {
-    override fun process(message: Message, promptBuilder: StringBuilder) {
+) : ContextCollectingTagProcessor<String> {
+
+    override fun collect(): String = getDiffString(project, tagDetails.gitCommit)
+
+    override fun apply(context: String, message: Message, promptBuilder: StringBuilder) {
         promptBuilder
             .append("\n```shell\n")
-            .append(getDiffString(project, tagDetails.gitCommit))
+            .append(context)
             .append("\n```\n")
     }
 
     private fun getDiffString(project: Project, gitCommit: GitCommit): String {
-        return ProgressManager.getInstance().runProcessWithProgressSynchronously<String, Exception>(
-            {
-                val repository = GitUtil.getProjectRepository(project)
-                    ?: return@runProcessWithProgressSynchronously ""
-
-                val commitId = gitCommit.id.asString()
-                val diff = GitUtil.getCommitDiffs(project, repository, commitId)
-                    .joinToString("\n")
-
-                service<EncodingManager>().truncateText(diff, 8192, true)
-            },
-            "Getting Commit Diff",
-            true,
-            project
-        )
+        val repository = GitUtil.getProjectRepository(project) ?: return ""
+
+        val commitId = gitCommit.id.asString()
+        val diff = GitUtil.getCommitDiffs(project, repository, commitId)
+            .joinToString("\n")
+
+        return service<EncodingManager>().truncateText(diff, 8192, true)
     }
 }
 
 class CurrentGitChangesTagProcessor(
     private val project: Project,
-) : TagProcessor {
+) : ContextCollectingTagProcessor<String?> {
 
-    override fun process(
-        message: Message,
-        promptBuilder: StringBuilder
-    ) {
-        ProgressManager.getInstance().runProcessWithProgressSynchronously<Unit, Exception>(
-            {
-                GitUtil.getCurrentChanges(project)?.let {
-                    promptBuilder
-                        .append("\n```shell\n")
-                        .append(it)
-                        .append("\n```\n")
-                }
-            },
-            "Getting Current Changes",
-            true,
-            project
-        )
+    override fun collect(): String? = GitUtil.getCurrentChanges(project)
+
+    override fun apply(context: String?, message: Message, promptBuilder: StringBuilder) {
+        context?.let {
+            promptBuilder
+                .append("\n```shell\n")
+                .append(it)
+                .append("\n```\n")
+        }
     }
 }
 
@@ -237,9 +229,7 @@ class ConversationTagProcessor(
         fun getConversation(conversationId: UUID) =
             ConversationsState.getCurrentConversation()?.takeIf {
                 it.id.equals(conversationId)
-            } ?: ConversationsState.getInstance().conversations.find {
-                it.id.equals(conversationId)
-            }
+            } ?: ConversationService.getInstance().findConversation(conversationId).orElse(null)
 
         fun formatConversation(conversation: Conversation): String {
             val stringBuilder = StringBuilder()
@@ -270,11 +260,14 @@ class ConversationTagProcessor(
 class DiagnosticsTagProcessor(
     private val project: Project,
     private val tagDetails: DiagnosticsTagDetails,
-) : TagProcessor {
-    override fun process(message: Message, promptBuilder: StringBuilder) {
+) : ContextCollectingTagProcessor<String> {
+
+    override fun collect(): String = getDiagnosticsString(project, tagDetails.virtualFile)
+
+    override fun apply(context: String, message: Message, promptBuilder: StringBuilder) {
         promptBuilder
             .append("\n## Current File Problems\n")
-            .append(getDiagnosticsString(project, tagDetails.virtualFile))
+            .append(context)
             .append("\n")
     }
 
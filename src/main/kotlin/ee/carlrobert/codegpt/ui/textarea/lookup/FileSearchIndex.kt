@@ -0,0 +1,211 @@
+package ee.carlrobert.codegpt.ui.textarea.lookup
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.readAction
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.roots.ModuleRootEvent
+import com.intellij.openapi.roots.ModuleRootListener
+import com.intellij.openapi.roots.ProjectFileIndex
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import com.intellij.psi.codeStyle.NameUtil
+import kotlinx.coroutines.currentCoroutineContext
+import kotlinx.coroutines.ensureActive
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import java.util.PriorityQueue
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Names of all files in the project content, kept up to date from VFS and project root events so
+ * that file lookups don't have to iterate the project on every keystroke.
+ *
+ * Each name is stored with a bitmask of the letters and digits it contains. A query can only
+ * match names whose mask covers the query's mask, so most names are rejected without running the
+ * fuzzy matcher.
+ */
+@Service(Service.Level.PROJECT)
+class FileSearchIndex(private val project: Project) : Disposable {
+
+    companion object {
+        private const val CANCELLATION_CHECK_INTERVAL = 1024
+    }
+
+    private class Entry(val file: VirtualFile, val name: String, val mask: Long)
+
+    private class Match(val entry: Entry, val degree: Int)
+
+    private val entries = ConcurrentHashMap<VirtualFile, Entry>()
+    private val buildMutex = Mutex()
+
+    @Volatile
+    private var indexed = false
+
+    @Volatile
+    private var snapshot: Array<Entry>? = null
+
+    init {
+        val connection = project.messageBus.connect(this)
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+            override fun after(events: MutableList<out VFileEvent>) {
+                if (indexed) {
+                    events.forEach { handleEvent(it) }
+                }
+            }
+        })
+        connection.subscribe(ModuleRootListener.TOPIC, object : ModuleRootListener {
+            override fun rootsChanged(event: ModuleRootEvent) {
+                invalidate()
+            }
+        })
+    }
+
+    /**
+     * Returns up to [limit] files whose name matches [query], best matches first. Names starting
+     * with the query are ranked first; if there are enough of them, the remaining names are not
+     * fuzzy-matched at all. The search checks for cancellation while scanning.
+     */
+    suspend fun search(
+        query: String,
+        limit: Int,
+        filter: (VirtualFile) -> Boolean = { true },
+    ): List<VirtualFile> {
+        val entries = getEntries()
+        val coroutineContext = currentCoroutineContext()
+        if (query.isEmpty()) {
+            val result = mutableListOf<VirtualFile>()
+            for (entry in entries) {
+                if (result.size >= limit) break
+                if (entry.file.isValid && filter(entry.file)) {
+                    result.add(entry.file)
+                }
+            }
+            return result
+        }
+
+        val matcher = NameUtil.buildMatcher("*$query").build()
+        val queryMask = mask(query)
+        val topMatches = PriorityQueue<Match>(limit + 1, compareBy<Match> { it.degree }
+            .thenByDescending { it.entry.name.length })
+
+        fun offer(entry: Entry) {
+            if (!entry.file.isValid || !filter(entry.file)) return
+            val degree = matcher.matchingDegree(entry.name)
+            if (degree == Int.MIN_VALUE) return
+            topMatches.add(Match(entry, degree))
+            if (topMatches.size > limit) {
+                topMatches.poll()
+            }
+        }
+
+        entries.forEachIndexed { index, entry ->
+            if (index % CANCELLATION_CHECK_INTERVAL == 0) coroutineContext.ensureActive()
+            if (entry.name.startsWith(query, ignoreCase = true)) {
+                offer(entry)
+            }
+        }
+
+        if (topMatches.size < limit) {
+            entries.forEachIndexed { index, entry ->
+                if (index % CANCELLATION_CHECK_INTERVAL == 0) coroutineContext.ensureActive()
+                if (entry.mask and queryMask == queryMask
+                    && !entry.name.startsWith(query, ignoreCase = true)
+                ) {
+                    offer(entry)
+                }
+            }
+        }
+
+        return generateSequence { topMatches.poll() }
+            .map { it.entry.file }
+            .toList()
+            .asReversed()
+    }
+
+    fun invalidate() {
+        indexed = false
+        snapshot = null
+    }
+
+    override fun dispose() {
+        entries.clear()
+        snapshot = null
+    }
+
+    private suspend fun getEntries(): Array<Entry> {
+        if (!indexed) {
+            buildMutex.withLock {
+                if (!indexed) build()
+            }
+        }
+        return snapshot ?: entries.values.toTypedArray().also { snapshot = it }
+    }
+
+    private suspend fun build() {
+        val files = readAction {
+            val files = mutableListOf<VirtualFile>()
+            ProjectFileIndex.getInstance(project).iterateContent { file ->
+                ProgressManager.checkCanceled()
+                if (!file.isDirectory) {
+                    files.add(file)
+                }
+                true
+            }
+            files
+        }
+
+        entries.clear()
+        files.forEach { add(it) }
+        snapshot = null
+        indexed = true
+    }
+
+    private fun handleEvent(event: VFileEvent) {
+        val file = when (event) {
+            is VFileCopyEvent -> event.findCreatedFile()
+            is VFilePropertyChangeEvent -> if (event.isRename) event.file else null
+            is VFileCreateEvent, is VFileDeleteEvent, is VFileMoveEvent -> event.file
+            else -> null
+        } ?: return
+
+        if (file.isDirectory) {
+            // Directory changes may affect any number of files, so the index is rebuilt lazily.
+            invalidate()
+            return
+        }
+
+        if (event is VFileDeleteEvent || !ProjectFileIndex.getInstance(project).isInContent(file)) {
+            entries.remove(file)
+        } else {
+            add(file)
+        }
+        snapshot = null
+    }
+
+    private fun add(file: VirtualFile) {
+        entries[file] = Entry(file, file.name, mask(file.name))
+    }
+
+    private fun mask(text: String): Long {
+        var mask = 0L
+        for (char in text) {
+            val bit = when (char) {
+                in 'a'..'z' -> char - 'a'
+                in 'A'..'Z' -> char - 'A'
+                in '0'..'9' -> 26 + (char - '0')
+                else -> continue
+            }
+            mask = mask or (1L shl bit)
+        }
+        return mask
+    }
+}
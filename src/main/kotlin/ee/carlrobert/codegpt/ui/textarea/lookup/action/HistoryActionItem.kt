@@ -13,7 +13,7 @@ class HistoryActionItem(
 
     companion object {
         fun getConversationTitle(conversation: Conversation): String {
-            return conversation.messages.firstOrNull()?.let { firstMessage ->
+            return conversation.firstMessage?.let { firstMessage ->
                 firstMessage.prompt?.take(60) ?: firstMessage.response?.take(60)
             } ?: "Conversation"
         }
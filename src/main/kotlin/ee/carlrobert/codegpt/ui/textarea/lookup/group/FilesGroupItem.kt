@@ -11,16 +11,16 @@ import com.intellij.openapi.roots.ProjectFileIndex
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.codeStyle.NameUtil
 import ee.carlrobert.codegpt.CodeGPTBundle
+import ee.carlrobert.codegpt.ui.textarea.PromptTextFieldConstants
 import ee.carlrobert.codegpt.ui.textarea.header.tag.FileTagDetails
 import ee.carlrobert.codegpt.ui.textarea.header.tag.TagManager
 import ee.carlrobert.codegpt.ui.textarea.header.tag.TagUtil
 import ee.carlrobert.codegpt.ui.textarea.lookup.DynamicLookupGroupItem
+import ee.carlrobert.codegpt.ui.textarea.lookup.FileSearchIndex
 import ee.carlrobert.codegpt.ui.textarea.lookup.LookupActionItem
 import ee.carlrobert.codegpt.ui.textarea.lookup.LookupUtil
 import ee.carlrobert.codegpt.ui.textarea.lookup.action.files.FileActionItem
 import ee.carlrobert.codegpt.ui.textarea.lookup.action.files.IncludeOpenFilesActionItem
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.withContext
 
 class FilesGroupItem(
     private val project: Project,
@@ -31,35 +31,21 @@ class FilesGroupItem(
     override val icon = AllIcons.FileTypes.Any_type
 
     override suspend fun updateLookupList(lookup: LookupImpl, searchText: String) {
-        withContext(Dispatchers.Default) {
-            project.service<ProjectFileIndex>().iterateContent {
-                if (!it.isDirectory && !containsTag(it)) {
-                    val actionItem = FileActionItem(project, it)
-                    runInEdt {
-                        LookupUtil.addLookupItem(lookup, actionItem)
-                    }
-                }
-                true
-            }
+        val actionItems = project.service<FileSearchIndex>()
+            .search(searchText, PromptTextFieldConstants.MAX_SEARCH_RESULTS) { !containsTag(it) }
+            .map { FileActionItem(project, it) }
+        runInEdt {
+            actionItems.forEach { LookupUtil.addLookupItem(lookup, it) }
         }
     }
 
     override suspend fun getLookupItems(searchText: String): List<LookupActionItem> {
+        val matchingFiles = project.service<FileSearchIndex>()
+            .search(searchText, PromptTextFieldConstants.MAX_SEARCH_RESULTS) { !containsTag(it) }
+
         return readAction {
             val projectFileIndex = project.service<ProjectFileIndex>()
             val matcher = NameUtil.buildMatcher("*$searchText").build()
-            val matchingFiles = mutableListOf<VirtualFile>()
-
-            projectFileIndex.iterateContent { file ->
-                if (!file.isDirectory &&
-                    !containsTag(file) &&
-                    (searchText.isEmpty() || matcher.matchingDegree(file.name) != Int.MIN_VALUE)
-                ) {
-                    matchingFiles.add(file)
-                }
-                true
-            }
-
             val openFiles = project.service<FileEditorManager>().openFiles
                 .filter {
                     projectFileIndex.isInContent(it) &&
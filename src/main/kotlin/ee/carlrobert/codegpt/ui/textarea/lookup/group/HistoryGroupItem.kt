@@ -4,7 +4,7 @@ import com.intellij.codeInsight.lookup.impl.LookupImpl
 import com.intellij.icons.AllIcons
 import com.intellij.openapi.application.runInEdt
 import ee.carlrobert.codegpt.CodeGPTBundle
-import ee.carlrobert.codegpt.conversations.ConversationsState
+import ee.carlrobert.codegpt.conversations.ConversationService
 import ee.carlrobert.codegpt.ui.textarea.lookup.DynamicLookupGroupItem
 import ee.carlrobert.codegpt.ui.textarea.lookup.LookupActionItem
 import ee.carlrobert.codegpt.ui.textarea.lookup.LookupUtil
@@ -21,16 +21,8 @@ class HistoryGroupItem : AbstractLookupGroupItem(), DynamicLookupGroupItem {
     private val addedItems = mutableSetOf<String>()
 
     override suspend fun getLookupItems(searchText: String): List<LookupActionItem> {
-        return ConversationsState.getInstance().conversations
-            .sortedByDescending { it.updatedOn }
-            .filter { conversation ->
-                if (searchText.isEmpty()) {
-                    true
-                } else {
-                    val title = HistoryActionItem.getConversationTitle(conversation)
-                    title.contains(searchText, ignoreCase = true)
-                }
-            }
+        return ConversationService.getInstance()
+            .searchConversations(searchText, true)
             .map { HistoryActionItem(it) }
     }
 
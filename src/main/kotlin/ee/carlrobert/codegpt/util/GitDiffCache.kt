@@ -0,0 +1,122 @@
+package ee.carlrobert.codegpt.util
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Per-file patches of the uncommitted changes and the diff assembled from them.
+ *
+ * The diff is served from the cache until a file with a patch is marked as changed or the set of
+ * changed files is marked as changed. Only new and changed files are then rebuilt, and the diff is
+ * assembled again only if a patch was rebuilt or removed.
+ *
+ * @param C The change a patch is built from.
+ */
+class GitDiffCache<C>(
+    private val buildPatch: (C) -> FilePatch,
+    private val assemble: (String) -> String = { it },
+) {
+
+    data class FilePatch(val text: String, val timestamp: Long)
+
+    data class Stats(
+        val files: Int,
+        val diffLength: Int,
+        val rebuilds: Long,
+        val rebuiltFiles: Long,
+        val lastRebuildMillis: Long,
+        val cacheHits: Long,
+    )
+
+    private val patches = ConcurrentHashMap<String, FilePatch>()
+    private val dirtyPaths = ConcurrentHashMap.newKeySet<String>()
+
+    @Volatile
+    private var changeSetDirty = true
+
+    @Volatile
+    private var cachedDiff: String? = null
+
+    private var rebuilds = 0L
+    private var rebuiltFiles = 0L
+    private var lastRebuildMillis = 0L
+    private var cacheHits = 0L
+
+    /**
+     * Marks the file as changed if it has a patch. Files without one are picked up once the set
+     * of changed files is marked as changed.
+     */
+    fun markFileChanged(path: String) {
+        if (patches.containsKey(path)) {
+            dirtyPaths.add(path)
+        }
+    }
+
+    fun markChangeSetChanged() {
+        changeSetDirty = true
+    }
+
+    fun invalidate() {
+        patches.clear()
+        dirtyPaths.clear()
+        changeSetDirty = true
+    }
+
+    /**
+     * Returns the cached diff, or rebuilds it from the given changes, keyed by file path, if
+     * something was marked as changed since.
+     */
+    @Synchronized
+    fun getDiff(changes: () -> Map<String, C>): String {
+        val cached = cachedDiff
+        if (cached != null && !changeSetDirty && dirtyPaths.isEmpty()) {
+            cacheHits++
+            return cached
+        }
+        return rebuild(changes())
+    }
+
+    @Synchronized
+    fun getStats(): Stats = Stats(
+        patches.size,
+        cachedDiff?.length ?: 0,
+        rebuilds,
+        rebuiltFiles,
+        lastRebuildMillis,
+        cacheHits
+    )
+
+    private fun rebuild(changes: Map<String, C>): String {
+        val startTime = System.currentTimeMillis()
+        changeSetDirty = false
+        val dirty = dirtyPaths.toSet()
+        dirtyPaths.removeAll(dirty)
+
+        val patchCount = patches.size
+        patches.keys.retainAll(changes.keys)
+        val removedCount = patchCount - patches.size
+        var rebuiltCount = 0
+        changes.forEach { (path, change) ->
+            if (!patches.containsKey(path) || path in dirty) {
+                patches[path] = buildPatch(change)
+                rebuiltCount++
+            }
+        }
+
+        val previousDiff = cachedDiff
+        val diff = if (rebuiltCount == 0 && removedCount == 0 && previousDiff != null) {
+            previousDiff
+        } else {
+            assemble(
+                patches.values
+                    .sortedByDescending { it.timestamp }
+                    .joinToString("") { it.text }
+            )
+        }
+        cachedDiff = diff
+
+        rebuilds++
+        rebuiltFiles += rebuiltCount
+        lastRebuildMillis = System.currentTimeMillis() - startTime
+        return diff
+    }
+}
@@ -0,0 +1,109 @@
+package ee.carlrobert.codegpt.util
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.diagnostic.debug
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.diff.impl.patch.IdeaTextPatchBuilder
+import com.intellij.openapi.diff.impl.patch.UnifiedDiffWriter
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.io.toNioPathOrNull
+import com.intellij.openapi.vcs.VcsException
+import com.intellij.openapi.vcs.changes.Change
+import com.intellij.openapi.vcs.changes.ChangeListListener
+import com.intellij.openapi.vcs.changes.ChangeListManager
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import ee.carlrobert.codegpt.codecompletions.truncateText
+import java.io.StringWriter
+import java.nio.file.Path
+
+/**
+ * Keeps the project's uncommitted changes as per-file patches and serves the assembled, already
+ * truncated diff without rebuilding it on every request. Files with a patch are rebuilt when VFS
+ * reports them as changed, and new or reverted files are picked up when the change list manager
+ * finishes an update. Editing a document doesn't invalidate anything until it is saved.
+ */
+@Service(Service.Level.PROJECT)
+class GitDiffContextService(private val project: Project) : Disposable {
+
+    companion object {
+        private val logger = thisLogger()
+
+        const val MAX_DIFF_TOKENS = 16_000
+    }
+
+    private val cache = GitDiffCache<Change>(
+        buildPatch = { change -> buildFilePatch(change) },
+        assemble = { diff -> diff.truncateText(MAX_DIFF_TOKENS, true) }
+    )
+
+    init {
+        val connection = project.messageBus.connect(this)
+        connection.subscribe(ChangeListListener.TOPIC, object : ChangeListListener {
+            override fun changeListUpdateDone() {
+                cache.markChangeSetChanged()
+            }
+        })
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+            override fun after(events: MutableList<out VFileEvent>) {
+                events.forEach { cache.markFileChanged(it.path) }
+            }
+        })
+    }
+
+    /**
+     * Returns the current uncommitted changes as a unified diff truncated to [MAX_DIFF_TOKENS], or
+     * `null` if the diff could not be built.
+     */
+    fun getDiff(): String? {
+        if (project.basePath?.toNioPathOrNull() == null) {
+            return null
+        }
+
+        return try {
+            val diff = cache.getDiff { collectChanges() }
+            logger.debug { "Git diff context: ${cache.getStats()}" }
+            diff
+        } catch (e: VcsException) {
+            logger.error("Failed to get git context", e)
+            cache.invalidate()
+            null
+        }
+    }
+
+    fun getStats(): GitDiffCache.Stats = cache.getStats()
+
+    fun invalidate() {
+        cache.invalidate()
+    }
+
+    override fun dispose() {
+        cache.invalidate()
+    }
+
+    private fun collectChanges(): Map<String, Change> =
+        ChangeListManager.getInstance(project).allChanges
+            .mapNotNull { change ->
+                val file = change.virtualFile ?: return@mapNotNull null
+                if (file.fileType.isBinary) null else file.path to change
+            }
+            .toMap()
+
+    private fun buildFilePatch(change: Change): GitDiffCache.FilePatch {
+        val repoRootPath: Path = project.basePath?.toNioPathOrNull()
+            ?: return GitDiffCache.FilePatch("", 0L)
+        val filePatches =
+            IdeaTextPatchBuilder.buildPatch(project, listOf(change), repoRootPath, false, true)
+        val writer = StringWriter()
+        UnifiedDiffWriter.write(null, repoRootPath, filePatches, writer, "\n\n", null, null)
+        val timestamp = filePatches.maxOfOrNull { patch ->
+            patch.afterVersionId
+                ?.substringAfter("(date ")
+                ?.substringBefore(")")
+                ?.toLongOrNull() ?: 0L
+        } ?: 0L
+        return GitDiffCache.FilePatch(writer.toString(), timestamp)
+    }
+}
@@ -2,14 +2,9 @@ package ee.carlrobert.codegpt.util
 
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.thisLogger
-import com.intellij.openapi.diff.impl.patch.IdeaTextPatchBuilder
-import com.intellij.openapi.diff.impl.patch.UnifiedDiffWriter
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.project.guessProjectDir
-import com.intellij.openapi.util.io.toNioPathOrNull
 import com.intellij.openapi.vcs.VcsException
-import com.intellij.openapi.vcs.changes.ChangeListManager
-import ee.carlrobert.codegpt.codecompletions.truncateText
 import git4idea.GitCommit
 import git4idea.commands.Git
 import git4idea.commands.GitCommand
@@ -17,7 +12,6 @@ import git4idea.commands.GitLineHandler
 import git4idea.history.GitHistoryUtils
 import git4idea.repo.GitRepository
 import git4idea.repo.GitRepositoryManager
-import java.io.StringWriter
 import kotlin.Throws
 
 object GitUtil {
@@ -38,31 +32,7 @@ object GitUtil {
     }
 
     fun getCurrentChanges(project: Project): String? {
-        try {
-            val repoRootPath = project.basePath?.toNioPathOrNull() ?: return null
-            val changes = ChangeListManager.getInstance(project).allChanges
-                .filter { change ->
-                    change.virtualFile?.let { !it.fileType.isBinary } ?: false
-                }
-
-            val patches = IdeaTextPatchBuilder.buildPatch(
-                project, changes, repoRootPath, false, true
-            ).sortedByDescending { patch ->
-                patch.afterVersionId?.let {
-                    it.substringAfter("(date ")
-                        .substringBefore(")")
-                        .toLongOrNull() ?: 0L
-                } ?: 0L
-            }
-            val diffWriter = StringWriter()
-            UnifiedDiffWriter.write(
-                null, repoRootPath, patches, diffWriter, "\n\n", null, null
-            )
-            return diffWriter.toString().truncateText(16_000, true)
-        } catch (e: VcsException) {
-            logger.error("Failed to get git context", e)
-            return null
-        }
+        return project.service<GitDiffContextService>().getDiff()
     }
 
     @Throws(VcsException::class)
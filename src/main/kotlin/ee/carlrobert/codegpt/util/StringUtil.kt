@@ -23,17 +23,53 @@ object StringUtil {
         return completionLine
     }
 
+    /**
+     * Dice coefficient of the distinct character bigrams of both strings.
+     */
     fun getDiceCoefficient(s1: String, s2: String): Double {
-        fun bigrams(str: String): Set<String> =
-            if (str.length < 2) emptySet()
-            else str.windowed(2).toSet()
+        val bigrams1 = distinctBigrams(s1)
+        val bigrams2 = distinctBigrams(s2)
+        if (bigrams1.isEmpty() && bigrams2.isEmpty()) {
+            return 0.0
+        }
+
+        var i = 0
+        var j = 0
+        var intersection = 0
+        while (i < bigrams1.size && j < bigrams2.size) {
+            when {
+                bigrams1[i] == bigrams2[j] -> {
+                    intersection++
+                    i++
+                    j++
+                }
 
-        val bigrams1 = bigrams(s1)
-        val bigrams2 = bigrams(s2)
-        val intersection = bigrams1.intersect(bigrams2).size
+                bigrams1[i] < bigrams2[j] -> i++
+                else -> j++
+            }
+        }
         return (2.0 * intersection) / (bigrams1.size + bigrams2.size)
     }
 
+    /**
+     * Returns the sorted, distinct bigrams of the string, each packed into an int.
+     */
+    private fun distinctBigrams(str: String): IntArray {
+        if (str.length < 2) {
+            return IntArray(0)
+        }
+
+        val bigrams = IntArray(str.length - 1) { (str[it].code shl 16) or str[it + 1].code }
+        bigrams.sort()
+        var size = 0
+        for (bigram in bigrams) {
+            if (size == 0 || bigrams[size - 1] != bigram) {
+                bigrams[size++] = bigram
+            }
+        }
+        return bigrams.copyOf(size)
+    }
+
     fun String.extractUntilNewline(): String {
         val index = this.indexOf('\n')
         if (index == -1) {
@@ -1,23 +1,14 @@
 package ee.carlrobert.codegpt.util.file
 
-import com.fasterxml.jackson.core.JsonProcessingException
-import com.fasterxml.jackson.core.type.TypeReference
-import com.fasterxml.jackson.databind.ObjectMapper
 import com.intellij.openapi.diagnostic.thisLogger
-import com.intellij.openapi.progress.ProgressIndicator
 import com.intellij.openapi.util.io.FileUtil.createDirectory
 import com.intellij.openapi.vfs.JarFileSystem
 import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.openapi.vfs.VfsUtilCore
 import com.intellij.openapi.vfs.VirtualFile
-import ee.carlrobert.codegpt.settings.service.llama.LlamaSettings.getLlamaModelsPath
 import java.io.File
-import java.io.FileOutputStream
 import java.io.IOException
 import java.io.Writer
-import java.net.URL
-import java.nio.ByteBuffer
-import java.nio.channels.Channels
 import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.Path
@@ -25,8 +16,6 @@ import java.nio.file.Paths
 import java.nio.file.StandardOpenOption
 import java.text.DecimalFormat
 import java.util.*
-import java.util.regex.Pattern
-import kotlin.Throws
 
 object FileUtil {
 
@@ -74,36 +63,6 @@ object FileUtil {
         }
     }
 
-    @JvmStatic
-    @Throws(IOException::class)
-    fun copyFileWithProgress(
-        fileName: String,
-        url: URL,
-        bytesRead: LongArray,
-        fileSize: Long,
-        indicator: ProgressIndicator
-    ) {
-        tryCreateDirectory(getLlamaModelsPath())
-
-        Channels.newChannel(url.openStream()).use { readableByteChannel ->
-            FileOutputStream(
-                getLlamaModelsPath().resolve(fileName).toFile()
-            ).use { fileOutputStream ->
-                val buffer = ByteBuffer.allocateDirect(1024 * 10)
-                while (readableByteChannel.read(buffer) != -1) {
-                    if (indicator.isCanceled) {
-                        readableByteChannel.close()
-                        break
-                    }
-                    buffer.flip()
-                    bytesRead[0] += fileOutputStream.channel.write(buffer).toLong()
-                    buffer.clear()
-                    indicator.fraction = bytesRead[0].toDouble() / fileSize
-                }
-            }
-        }
-    }
-
     private fun tryCreateDirectory(directoryPath: Path) {
         Files.exists(directoryPath).takeUnless { it } ?: return
         try {
@@ -113,45 +72,18 @@ object FileUtil {
         }.takeIf { it } ?: throw RuntimeException("Failed to create directory: $directoryPath")
     }
 
+    /**
+     * Returns the text after the last dot of the given file name or path, or the whole name if it
+     * has no dot.
+     */
     @JvmStatic
     fun getFileExtension(filename: String?): String {
-        val pattern = Pattern.compile("[^.]+$")
-        val matcher = filename?.let { pattern.matcher(it) }
-
-        if (matcher?.find() == true) {
-            return matcher.group()
-        }
-        return ""
+        return filename?.substringAfterLast('.') ?: ""
     }
 
     @JvmStatic
     fun findLanguageExtensionMapping(language: String? = ""): Map.Entry<String, String> {
-        val defaultValue = mapOf("Text" to ".txt").entries.first()
-        val mapper = ObjectMapper()
-
-        val extensionToLanguageMappings: List<FileExtensionLanguageDetails>
-        val languageToExtensionMappings: List<LanguageFileExtensionDetails>
-        try {
-            extensionToLanguageMappings = mapper.readValue(
-                getResourceContent("/fileExtensionLanguageMappings.json"),
-                object : TypeReference<List<FileExtensionLanguageDetails>>() {
-                })
-            languageToExtensionMappings = mapper.readValue(
-                getResourceContent("/languageFileExtensionMappings.json"),
-                object : TypeReference<List<LanguageFileExtensionDetails>>() {
-                })
-        } catch (e: JsonProcessingException) {
-            logger.error("Unable to extract file extension", e)
-            return defaultValue
-        }
-
-        return findFirstExtension(languageToExtensionMappings, language)
-            .or {
-                extensionToLanguageMappings.stream()
-                    .filter { it.extension.equals(language, ignoreCase = true) }
-                    .findFirst()
-                    .flatMap { findFirstExtension(languageToExtensionMappings, it.value) }
-            }.orElse(defaultValue)
+        return LanguageRegistry.instance.findMapping(language)
     }
 
     fun isUtf8File(filePath: String?): Boolean {
@@ -216,27 +148,6 @@ object FileUtil {
         return value.toString()
     }
 
-    @JvmStatic
-    fun findFirstExtension(
-        languageFileExtensionMappings: List<LanguageFileExtensionDetails>,
-        language: String? = ""
-    ): Optional<Map.Entry<String, String>> {
-        return languageFileExtensionMappings.stream()
-            .filter {
-                language.equals(it.name, ignoreCase = true)
-                        && it.extensions != null
-                        && it.extensions.stream().anyMatch(String::isNotBlank)
-            }
-            .findFirst()
-            .map {
-                java.util.Map.entry(
-                    it.name,
-                    it.extensions?.stream()?.filter(String::isNotBlank)?.findFirst()?.orElse("")
-                        ?: ""
-                )
-            }
-    }
-
     fun resolveVirtualFile(filePath: String?): VirtualFile? {
         if (filePath == null) return null
         return try {
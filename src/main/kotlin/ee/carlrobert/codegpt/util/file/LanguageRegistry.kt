@@ -0,0 +1,80 @@
+package ee.carlrobert.codegpt.util.file
+
+import com.fasterxml.jackson.core.JsonProcessingException
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.intellij.openapi.diagnostic.thisLogger
+import java.util.*
+
+/**
+ * Maps languages to their file extensions and back, as listed in the bundled
+ * `languageFileExtensionMappings.json` and `fileExtensionLanguageMappings.json`.
+ *
+ * The mappings are parsed once, on first use. Lookups ignore case; when a language or extension
+ * is listed more than once, its first entry wins.
+ */
+internal class LanguageRegistry(
+    languageMappings: List<LanguageFileExtensionDetails>,
+    extensionMappings: List<FileExtensionLanguageDetails>,
+) {
+
+    companion object {
+        private val logger = thisLogger()
+
+        val DEFAULT_MAPPING: Map.Entry<String, String> = java.util.Map.entry("Text", ".txt")
+
+        val instance: LanguageRegistry by lazy { load() }
+
+        private fun load(): LanguageRegistry {
+            val mapper = ObjectMapper()
+            return try {
+                LanguageRegistry(
+                    mapper.readValue(
+                        FileUtil.getResourceContent("/languageFileExtensionMappings.json"),
+                        object : TypeReference<List<LanguageFileExtensionDetails>>() {}
+                    ),
+                    mapper.readValue(
+                        FileUtil.getResourceContent("/fileExtensionLanguageMappings.json"),
+                        object : TypeReference<List<FileExtensionLanguageDetails>>() {}
+                    )
+                )
+            } catch (e: JsonProcessingException) {
+                logger.error("Unable to read language mappings", e)
+                LanguageRegistry(emptyList(), emptyList())
+            }
+        }
+
+        private fun normalize(value: String) = value.lowercase(Locale.ROOT)
+    }
+
+    private val languageToExtension: Map<String, Map.Entry<String, String>>
+    private val extensionToLanguage: Map<String, String>
+
+    init {
+        val languages = HashMap<String, Map.Entry<String, String>>()
+        languageMappings.forEach { details ->
+            val extension = details.extensions?.firstOrNull { it.isNotBlank() } ?: return@forEach
+            languages.putIfAbsent(normalize(details.name), java.util.Map.entry(details.name, extension))
+        }
+        val extensions = HashMap<String, String>()
+        extensionMappings.forEach { extensions.putIfAbsent(normalize(it.extension), it.value) }
+
+        languageToExtension = Collections.unmodifiableMap(languages)
+        extensionToLanguage = Collections.unmodifiableMap(extensions)
+    }
+
+    /**
+     * Returns the language and its primary extension for either a language name or a file
+     * extension (without the dot), falling back to [DEFAULT_MAPPING].
+     */
+    fun findMapping(languageOrExtension: String?): Map.Entry<String, String> {
+        if (languageOrExtension == null) {
+            return DEFAULT_MAPPING
+        }
+
+        val key = normalize(languageOrExtension)
+        return languageToExtension[key]
+            ?: extensionToLanguage[key]?.let { languageToExtension[normalize(it)] }
+            ?: DEFAULT_MAPPING
+    }
+}
@@ -0,0 +1,476 @@
+package ee.carlrobert.codegpt.util.file
+
+import com.intellij.util.concurrency.AppExecutorUtil
+import java.io.IOException
+import java.net.HttpURLConnection
+import java.net.URL
+import java.nio.ByteBuffer
+import java.nio.channels.Channels
+import java.nio.channels.ClosedByInterruptException
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardCopyOption
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Downloads large files over several HTTP Range requests in parallel, writing each segment
+ * directly into its place in a preallocated `.part` file.
+ *
+ * The progress of every segment is recorded in a manifest next to the partial file, so a
+ * canceled or failed download continues where it stopped, as long as the remote file did not
+ * change. If the server publishes the SHA-256 of the file (Hugging Face does so in the
+ * `X-Linked-Etag` header), the completed file is verified before it replaces the target.
+ *
+ * @param segments Maximum number of segments downloaded in parallel.
+ * @param maxBytesPerSecond Bandwidth limit shared by all segments, or `0` for no limit.
+ */
+class SegmentedDownloader @JvmOverloads constructor(
+    private val segments: Int = DEFAULT_SEGMENTS,
+    maxBytesPerSecond: Long = 0,
+) {
+
+    companion object {
+        const val DEFAULT_SEGMENTS = 4
+
+        private const val MIN_SEGMENT_SIZE = 8L * 1024 * 1024
+        private const val BUFFER_SIZE = 256 * 1024
+        private const val MAX_REDIRECTS = 10
+        private const val MAX_RETRIES = 3
+        private const val RETRY_DELAY_MILLIS = 1000L
+        private const val MANIFEST_SAVE_INTERVAL_MILLIS = 1000L
+        private const val CONNECT_TIMEOUT_MILLIS = 15_000
+        private const val READ_TIMEOUT_MILLIS = 30_000
+        private const val MANIFEST_VERSION = "1"
+
+        private val SHA256_PATTERN = Regex("[0-9a-f]{64}")
+    }
+
+    /**
+     * The file behind a download URL, after following redirects.
+     *
+     * @param url The URL the file is downloaded from.
+     * @param sha256 Expected SHA-256 of the file as a lowercase hex string, if the server sent it.
+     * @param version Identifies the version of the file (its ETag); a partial download of another
+     * version is discarded.
+     */
+    data class RemoteFile(
+        val url: URL,
+        val size: Long,
+        val acceptsRanges: Boolean,
+        val sha256: String?,
+        val version: String?,
+    )
+
+    /**
+     * Progress of a download. Can be read from any thread while the download is running.
+     */
+    class Progress {
+        val downloadedBytes = AtomicLong()
+
+        /** Bytes that were already downloaded by an earlier, interrupted download. */
+        @Volatile
+        var resumedBytes = 0L
+            internal set
+
+        @Volatile
+        var verifying = false
+            internal set
+    }
+
+    /**
+     * A byte range of the file, from [start] to [end] inclusive. A segment that is not [ranged]
+     * streams the whole file and is complete when the stream ends.
+     */
+    private class Segment(
+        val start: Long,
+        val end: Long,
+        @Volatile var position: Long,
+        val ranged: Boolean = true,
+    ) {
+        val isComplete: Boolean get() = position > end
+    }
+
+    private val bandwidthLimiter = maxBytesPerSecond.takeIf { it > 0 }?.let { BandwidthLimiter(it) }
+
+    /**
+     * Resolves the final download URL, size and checksum of the file without downloading it.
+     */
+    @Throws(IOException::class)
+    fun probe(url: URL): RemoteFile {
+        var currentUrl = url
+        var sha256: String? = null
+        repeat(MAX_REDIRECTS) {
+            val connection = openConnection(currentUrl)
+            try {
+                connection.requestMethod = "HEAD"
+                connection.instanceFollowRedirects = false
+                val responseCode = connection.responseCode
+                sha256 = sha256 ?: parseSha256(connection.getHeaderField("X-Linked-Etag"))
+
+                if (responseCode in 300..399) {
+                    val location = connection.getHeaderField("Location")
+                        ?: throw IOException("Redirect without location from $currentUrl")
+                    currentUrl = URL(currentUrl, location)
+                    return@repeat
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw IOException("Unexpected response $responseCode from $currentUrl")
+                }
+
+                val etag = connection.getHeaderField("ETag")
+                return RemoteFile(
+                    url = currentUrl,
+                    size = connection.contentLengthLong,
+                    acceptsRanges = connection.getHeaderField("Accept-Ranges")
+                        ?.contains("bytes", ignoreCase = true) == true,
+                    sha256 = sha256 ?: parseSha256(etag),
+                    version = etag
+                )
+            } finally {
+                connection.disconnect()
+            }
+        }
+        throw IOException("Too many redirects for $url")
+    }
+
+    /**
+     * Downloads the file to [target], resuming an earlier partial download if there is one.
+     *
+     * @return `true` if the file was downloaded and verified, `false` if it was canceled or the
+     * calling thread was interrupted; the partial download is kept so it can be resumed.
+     * @throws IOException if the download failed after retrying, or the checksum didn't match.
+     */
+    @Throws(IOException::class)
+    fun download(
+        remoteFile: RemoteFile,
+        target: Path,
+        progress: Progress,
+        isCanceled: () -> Boolean,
+    ): Boolean {
+        Files.createDirectories(target.toAbsolutePath().parent)
+        val partFile = target.resolveSibling("${target.fileName}.part")
+        val manifestFile = target.resolveSibling("${target.fileName}.part.manifest")
+
+        val rangesSupported = remoteFile.acceptsRanges && remoteFile.size > 0
+        val segments = (if (rangesSupported) loadManifest(manifestFile, remoteFile) else null)
+            ?.takeIf { Files.exists(partFile) && Files.size(partFile) == remoteFile.size }
+            ?: createSegments(remoteFile, rangesSupported).also {
+                Files.deleteIfExists(manifestFile)
+                FileChannel.open(
+                    partFile,
+                    StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING
+                ).use { channel ->
+                    if (remoteFile.size > 0) {
+                        // Preallocates the file so that segments can be written at any offset.
+                        channel.write(ByteBuffer.wrap(byteArrayOf(0)), remoteFile.size - 1)
+                    }
+                }
+            }
+
+        progress.resumedBytes = segments.sumOf { it.position - it.start }
+        progress.downloadedBytes.set(progress.resumedBytes)
+
+        val completed = FileChannel.open(partFile, StandardOpenOption.WRITE).use { channel ->
+            downloadSegments(remoteFile, segments, partFile, progress, isCanceled) {
+                if (rangesSupported) {
+                    val manifest = createManifest(remoteFile, segments)
+                    // The manifest must not record bytes that haven't reached the disk yet.
+                    channel.force(false)
+                    saveManifest(manifestFile, manifest)
+                }
+            }
+        }
+        if (!completed) {
+            return false
+        }
+
+        if (remoteFile.sha256 != null) {
+            progress.verifying = true
+            val actualSha256 = sha256(partFile, isCanceled) ?: return false
+            if (actualSha256 != remoteFile.sha256) {
+                Files.deleteIfExists(partFile)
+                Files.deleteIfExists(manifestFile)
+                throw IOException(
+                    "Checksum mismatch for ${target.fileName}: expected ${remoteFile.sha256}, " +
+                            "got $actualSha256"
+                )
+            }
+        }
+
+        Files.move(partFile, target, StandardCopyOption.REPLACE_EXISTING)
+        Files.deleteIfExists(manifestFile)
+        return true
+    }
+
+    private fun downloadSegments(
+        remoteFile: RemoteFile,
+        segments: List<Segment>,
+        partFile: Path,
+        progress: Progress,
+        isCanceled: () -> Boolean,
+        saveProgress: () -> Unit,
+    ): Boolean {
+        val pending = segments.filterNot { it.isComplete }
+        if (pending.isEmpty()) {
+            return true
+        }
+
+        // Segments are stopped by this flag rather than by interrupting their threads.
+        val stopped = AtomicBoolean()
+        val shouldStop = { stopped.get() || isCanceled() }
+        val executor =
+            AppExecutorUtil.createBoundedApplicationPoolExecutor("Model Download", pending.size)
+        try {
+            val futures = pending.map { segment ->
+                executor.submit {
+                    downloadSegment(remoteFile, segment, partFile, progress, shouldStop)
+                }
+            }
+
+            while (!awaitAll(futures, MANIFEST_SAVE_INTERVAL_MILLIS)) {
+                saveProgress()
+            }
+            saveProgress()
+            return !isCanceled() && segments.all { it.isComplete }
+        } catch (_: ClosedByInterruptException) {
+            // Interrupted while syncing the file; the last saved manifest is still valid.
+            return false
+        } catch (e: IOException) {
+            saveProgress()
+            throw e
+        } catch (_: InterruptedException) {
+            saveProgress()
+            Thread.currentThread().interrupt()
+            return false
+        } finally {
+            stopped.set(true)
+            executor.shutdown()
+        }
+    }
+
+    /**
+     * Waits for all futures up to the given time, and rethrows the first failure.
+     */
+    private fun awaitAll(futures: List<Future<*>>, timeoutMillis: Long): Boolean {
+        val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis)
+        for (future in futures) {
+            try {
+                future.get(maxOf(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)
+            } catch (_: TimeoutException) {
+                return false
+            } catch (e: ExecutionException) {
+                val cause = e.cause
+                throw cause as? IOException ?: IOException(cause)
+            }
+        }
+        return true
+    }
+
+    /**
+     * Downloads the segment, retrying failed transfers. Each segment writes through its own
+     * channel, since an interrupted write closes the channel it was made on. An interrupt stops
+     * the segment and leaves the interrupt flag set.
+     */
+    private fun downloadSegment(
+        remoteFile: RemoteFile,
+        segment: Segment,
+        partFile: Path,
+        progress: Progress,
+        shouldStop: () -> Boolean,
+    ) {
+        FileChannel.open(partFile, StandardOpenOption.WRITE).use { channel ->
+            var attempt = 0
+            while (!segment.isComplete && !shouldStop()) {
+                try {
+                    transferSegment(remoteFile, segment, channel, progress, shouldStop)
+                } catch (_: ClosedByInterruptException) {
+                    return
+                } catch (e: IOException) {
+                    if (++attempt > MAX_RETRIES) {
+                        throw e
+                    }
+                    try {
+                        Thread.sleep(RETRY_DELAY_MILLIS * attempt)
+                    } catch (_: InterruptedException) {
+                        Thread.currentThread().interrupt()
+                        return
+                    }
+                } catch (_: InterruptedException) {
+                    Thread.currentThread().interrupt()
+                    return
+                }
+            }
+        }
+    }
+
+    private fun transferSegment(
+        remoteFile: RemoteFile,
+        segment: Segment,
+        channel: FileChannel,
+        progress: Progress,
+        shouldStop: () -> Boolean,
+    ) {
+        val ranged = segment.ranged
+        if (!ranged && segment.position > 0) {
+            // The server can't continue a download, so it starts over.
+            progress.downloadedBytes.addAndGet(-segment.position)
+            segment.position = 0
+        }
+
+        val connection = openConnection(remoteFile.url)
+        try {
+            if (ranged) {
+                connection.setRequestProperty("Range", "bytes=${segment.position}-${segment.end}")
+            }
+            val responseCode = connection.responseCode
+            val expectedCode = if (ranged) 206 else HttpURLConnection.HTTP_OK
+            if (responseCode != expectedCode) {
+                throw IOException("Unexpected response $responseCode from ${remoteFile.url}")
+            }
+
+            Channels.newChannel(connection.inputStream).use { input ->
+                val buffer = ByteBuffer.allocate(BUFFER_SIZE)
+                while (!segment.isComplete && !shouldStop()) {
+                    if (ranged) {
+                        val remaining = segment.end - segment.position + 1
+                        buffer.limit(minOf(BUFFER_SIZE.toLong(), remaining).toInt())
+                    }
+                    val read = input.read(buffer)
+                    if (read == -1) {
+                        if (ranged) {
+                            throw IOException("Connection closed at byte ${segment.position}")
+                        }
+                        segment.position = segment.end + 1
+                        break
+                    }
+
+                    bandwidthLimiter?.acquire(read)
+                    buffer.flip()
+                    while (buffer.hasRemaining()) {
+                        segment.position += channel.write(buffer, segment.position)
+                    }
+                    buffer.clear()
+                    progress.downloadedBytes.addAndGet(read.toLong())
+                }
+            }
+        } finally {
+            connection.disconnect()
+        }
+    }
+
+    private fun createSegments(remoteFile: RemoteFile, rangesSupported: Boolean): List<Segment> {
+        if (!rangesSupported) {
+            return listOf(Segment(0, Long.MAX_VALUE - 1, 0, ranged = false))
+        }
+
+        val count = (remoteFile.size / MIN_SEGMENT_SIZE).coerceIn(1, segments.toLong()).toInt()
+        val segmentSize = remoteFile.size / count
+        return List(count) { index ->
+            val start = index * segmentSize
+            val end = if (index == count - 1) remoteFile.size - 1 else start + segmentSize - 1
+            Segment(start, end, start)
+        }
+    }
+
+    private fun openConnection(url: URL): HttpURLConnection {
+        return (url.openConnection() as HttpURLConnection).apply {
+            connectTimeout = CONNECT_TIMEOUT_MILLIS
+            readTimeout = READ_TIMEOUT_MILLIS
+        }
+    }
+
+    private fun loadManifest(manifestFile: Path, remoteFile: RemoteFile): List<Segment>? {
+        if (!Files.exists(manifestFile)) {
+            return null
+        }
+
+        return try {
+            val properties = Properties()
+            Files.newBufferedReader(manifestFile).use { properties.load(it) }
+            if (properties.getProperty("version") != MANIFEST_VERSION
+                || properties.getProperty("size") != remoteFile.size.toString()
+                || properties.getProperty("fileVersion", "") != (remoteFile.version ?: "")
+            ) {
+                return null
+            }
+
+            List(properties.getProperty("segments").toInt()) { index ->
+                val (start, end, position) = properties.getProperty("segment.$index")
+                    .split(',')
+                    .map { it.toLong() }
+                Segment(start, end, position)
+            }
+        } catch (_: Exception) {
+            null
+        }
+    }
+
+    private fun createManifest(remoteFile: RemoteFile, segments: List<Segment>): Properties {
+        val properties = Properties()
+        properties["version"] = MANIFEST_VERSION
+        properties["size"] = remoteFile.size.toString()
+        properties["fileVersion"] = remoteFile.version ?: ""
+        properties["segments"] = segments.size.toString()
+        segments.forEachIndexed { index, segment ->
+            properties["segment.$index"] = "${segment.start},${segment.end},${segment.position}"
+        }
+        return properties
+    }
+
+    private fun saveManifest(manifestFile: Path, properties: Properties) {
+        val tempFile = manifestFile.resolveSibling("${manifestFile.fileName}.tmp")
+        Files.newBufferedWriter(tempFile).use { properties.store(it, null) }
+        Files.move(tempFile, manifestFile, StandardCopyOption.REPLACE_EXISTING)
+    }
+
+    private fun sha256(file: Path, isCanceled: () -> Boolean): String? {
+        val digest = MessageDigest.getInstance("SHA-256")
+        FileChannel.open(file, StandardOpenOption.READ).use { channel ->
+            val buffer = ByteBuffer.allocateDirect(BUFFER_SIZE)
+            while (channel.read(buffer) != -1) {
+                if (isCanceled()) {
+                    return null
+                }
+                buffer.flip()
+                digest.update(buffer)
+                buffer.clear()
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest())
+    }
+
+    private fun parseSha256(etag: String?): String? =
+        etag?.trim()?.removePrefix("W/")?.trim('"')?.lowercase()?.takeIf { SHA256_PATTERN.matches(it) }
+
+    /**
+     * Limits the combined throughput of all segments by making readers wait until the bytes they
+     * read fit into the allowed rate.
+     */
+    private class BandwidthLimiter(private val bytesPerSecond: Long) {
+
+        private var nextFreeNanos = System.nanoTime()
+
+        fun acquire(bytes: Int) {
+            val waitNanos = synchronized(this) {
+                val now = System.nanoTime()
+                nextFreeNanos = maxOf(nextFreeNanos, now) +
+                        TimeUnit.SECONDS.toNanos(bytes.toLong()) / bytesPerSecond
+                nextFreeNanos - now
+            }
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos)
+            }
+        }
+    }
+}
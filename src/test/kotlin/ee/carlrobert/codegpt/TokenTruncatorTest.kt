@@ -0,0 +1,99 @@
+package ee.carlrobert.codegpt
+
+import com.knuddels.jtokkit.Encodings
+import com.knuddels.jtokkit.api.EncodingType
+import com.knuddels.jtokkit.api.IntArrayList
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import kotlin.random.Random
+
+class TokenTruncatorTest {
+
+    private val encoding =
+        Encodings.newDefaultEncodingRegistry().getEncoding(EncodingType.CL100K_BASE)
+    private val truncator = TokenTruncator(encoding)
+
+    private fun fullEncodeTruncate(text: String, maxTokens: Int, fromStart: Boolean): String {
+        val tokens = encoding.encodeOrdinary(text)
+        val count = minOf(maxTokens, tokens.size())
+        val start = if (fromStart) 0 else tokens.size() - count
+        val kept = IntArrayList(count)
+        for (i in start until start + count) {
+            kept.add(tokens.get(i))
+        }
+        return encoding.decode(kept)
+    }
+
+    private fun assertSameAsFullEncode(text: String, maxTokens: Int) {
+        for (fromStart in listOf(true, false)) {
+            assertThat(truncator.truncate(text, maxTokens, fromStart))
+                .describedAs("fromStart=$fromStart, maxTokens=$maxTokens")
+                .isEqualTo(fullEncodeTruncate(text, maxTokens, fromStart))
+        }
+    }
+
+    private fun codeLines(count: Int) = buildString {
+        repeat(count) {
+            append("    val value$it = compute(\"item-$it\", index = ${it % 17}) // line $it\n")
+        }
+    }
+
+    @Test
+    fun shouldMatchFullEncodeForCode() {
+        val text = codeLines(2_000)
+
+        listOf(1, 7, 64, 256, 1_000, 4_096).forEach { assertSameAsFullEncode(text, it) }
+    }
+
+    @Test
+    fun shouldMatchFullEncodeForMultiByteText() {
+        val text = buildString {
+            repeat(500) {
+                append("// 注释 $it: 计算结果 🚀🔥 naïve café\n")
+                append("fun 関数$it() = \"テスト😀\"\n")
+            }
+        }
+
+        listOf(1, 3, 100, 257, 2_000).forEach { assertSameAsFullEncode(text, it) }
+    }
+
+    @Test
+    fun shouldMatchFullEncodeForLongUnbrokenRuns() {
+        val letters = "a".repeat(4_000)
+        val punctuation = "=-".repeat(2_000)
+        val emoji = "😀".repeat(1_000)
+
+        listOf(letters, punctuation, emoji, "$letters\n$punctuation\n$emoji").forEach { text ->
+            listOf(1, 50, 500).forEach { assertSameAsFullEncode(text, it) }
+        }
+    }
+
+    @Test
+    fun shouldMatchFullEncodeForRandomText() {
+        val pieces = listOf("\n", "\r\n", " ", "  ", "\t", "x", "Word", "42", "'s", "{", "}", "==",
+            "é", "字", "😀", "\n\n", " \n")
+        val random = Random(7)
+
+        repeat(20) {
+            val text = buildString { repeat(3_000) { append(pieces[random.nextInt(pieces.size)]) } }
+            listOf(1, 10, 200).forEach { assertSameAsFullEncode(text, it) }
+        }
+    }
+
+    @Test
+    fun shouldMatchFullEncodeAtExactLimit() {
+        val text = codeLines(300)
+        val tokenCount = encoding.countTokensOrdinary(text)
+
+        assertThat(truncator.truncate(text, tokenCount, true)).isEqualTo(text)
+        assertThat(truncator.truncate(text, tokenCount, false)).isEqualTo(text)
+        assertSameAsFullEncode(text, tokenCount - 1)
+        assertSameAsFullEncode(text, tokenCount + 1)
+    }
+
+    @Test
+    fun shouldReturnEmptyTextForNoTokens() {
+        assertThat(truncator.truncate(codeLines(10), 0, true)).isEmpty()
+        assertThat(truncator.truncate("", 10, false)).isEmpty()
+    }
+}
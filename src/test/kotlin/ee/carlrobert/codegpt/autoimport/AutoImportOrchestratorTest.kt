@@ -1,5 +1,10 @@
 package ee.carlrobert.codegpt.autoimport
 
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.command.CommandEvent
+import com.intellij.openapi.command.CommandListener
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.psi.PsiDocumentManager
 import com.intellij.openapi.util.TextRange
 import org.assertj.core.api.Assertions.assertThat
 import testsupport.IntegrationTest
@@ -526,4 +531,155 @@ class AutoImportOrchestratorTest : IntegrationTest() {
 
         assertThat(result).isEqualTo(original)
     }
+
+    fun testReusesCachedCandidatesOnRepeatedPreview() {
+        myFixture.addFileToProject(
+            "com/a/Cached.java",
+            "package com.a; public class Cached {}"
+        )
+        myFixture.configureByText(
+            "Test.java",
+            """
+            package com.test;
+
+            public class Test {
+                public void test() {
+                    Cached c = new Cached();
+                }
+            }
+            """.trimIndent()
+        )
+        val cache = ImportCandidateCache.getInstance(project)
+        cache.invalidate()
+
+        val first = AutoImportOrchestrator.previewImports(myFixture.editor)
+        val afterFirst = cache.getStats()
+        val second = AutoImportOrchestrator.previewImports(myFixture.editor)
+        val afterSecond = cache.getStats()
+
+        assertThat(second).isEqualTo(first).contains("import com.a.Cached;")
+        assertThat(afterSecond.misses).isEqualTo(afterFirst.misses)
+        assertThat(afterSecond.hits).isGreaterThan(afterFirst.hits)
+    }
+
+    fun testInvalidatesCachedCandidatesWhenClassIsAdded() {
+        myFixture.addFileToProject(
+            "com/z/Widget.java",
+            "package com.z; public class Widget {}"
+        )
+        myFixture.configureByText(
+            "Test.java",
+            """
+            package com.test;
+
+            public class Test {
+                public void test() {
+                    Widget w = new Widget();
+                }
+            }
+            """.trimIndent()
+        )
+        ImportCandidateCache.getInstance(project).invalidate()
+
+        val before = AutoImportOrchestrator.previewImports(myFixture.editor)
+        myFixture.addFileToProject(
+            "com/a/Widget.java",
+            "package com.a; public class Widget {}"
+        )
+        val after = AutoImportOrchestrator.previewImports(myFixture.editor)
+
+        assertThat(before).contains("import com.z.Widget;")
+        assertThat(after).contains("import com.a.Widget;").doesNotContain("com.z.Widget")
+    }
+
+    fun testInvalidatesCachedCandidatesWhenClassIsAddedToExistingFile() {
+        myFixture.addFileToProject(
+            "com/z/Widget.java",
+            "package com.z; public class Widget {}"
+        )
+        val shapes = myFixture.addFileToProject(
+            "com/a/Shapes.java",
+            "package com.a; public class Shapes {}"
+        )
+        myFixture.configureByText(
+            "Test.java",
+            """
+            package com.test;
+
+            public class Test {
+                public void test() {
+                    Widget w = new Widget();
+                }
+            }
+            """.trimIndent()
+        )
+        ImportCandidateCache.getInstance(project).invalidate()
+
+        val before = AutoImportOrchestrator.previewImports(myFixture.editor)
+        WriteCommandAction.runWriteCommandAction(project) {
+            val documentManager = PsiDocumentManager.getInstance(project)
+            documentManager.getDocument(shapes)!!.setText(
+                "package com.a; public class Shapes { public static class Widget {} }"
+            )
+            documentManager.commitAllDocuments()
+        }
+        val after = AutoImportOrchestrator.previewImports(myFixture.editor)
+
+        assertThat(before).contains("import com.z.Widget;")
+        assertThat(after).contains("import com.a.Shapes.Widget;").doesNotContain("com.z.Widget")
+    }
+
+    fun testMergesRepeatedSymbolsIntoSingleImportAndWriteCommand() {
+        myFixture.addFileToProject(
+            "com/a/Helper.java",
+            "package com.a; public class Helper {}"
+        )
+        myFixture.addFileToProject(
+            "com/b/Other.java",
+            "package com.b; public class Other {}"
+        )
+        val file = myFixture.configureByText(
+            "Test.java",
+            """
+            package com.test;
+
+            public class Test {
+                public void test() {
+                    Helper a = new Helper();
+                    Helper b = new Helper();
+                    Other o = new Other();
+                }
+            }
+            """.trimIndent()
+        )
+        val original = file.text
+        var commands = 0
+        ApplicationManager.getApplication().messageBus.connect(testRootDisposable)
+            .subscribe(CommandListener.TOPIC, object : CommandListener {
+                override fun commandStarted(event: CommandEvent) {
+                    commands++
+                }
+            })
+
+        val result = AutoImportOrchestrator.previewImports(myFixture.editor)
+
+        assertThat(file.text).isEqualTo(original)
+        assertThat(commands).isEqualTo(1)
+        assertThat(result).isEqualTo(
+            """
+            package com.test;
+
+            import com.a.Helper;
+            import com.b.Other;
+
+            public class Test {
+                public void test() {
+                    Helper a = new Helper();
+                    Helper b = new Helper();
+                    Other o = new Other();
+                }
+            }
+            """.trimIndent()
+        )
+    }
 }
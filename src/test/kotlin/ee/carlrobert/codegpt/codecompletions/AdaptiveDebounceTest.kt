@@ -0,0 +1,53 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class AdaptiveDebounceTest {
+
+    private fun typeAt(debounce: AdaptiveDebounce, intervalMillis: Long, keystrokes: Int = 50) {
+        repeat(keystrokes) { debounce.onKeystroke(it * intervalMillis) }
+    }
+
+    @Test
+    fun shouldWaitLessForFastTypists() {
+        val fast = AdaptiveDebounce().apply { typeAt(this, 60) }
+        val slow = AdaptiveDebounce().apply { typeAt(this, 250) }
+
+        assertThat(fast.getDelayMillis(false)).isBetween(80L, 100L)
+        assertThat(slow.getDelayMillis(false)).isBetween(350L, AdaptiveDebounce.MAX_DELAY_MILLIS)
+    }
+
+    @Test
+    fun shouldIgnorePausesWhenLearningTypingInterval() {
+        val debounce = AdaptiveDebounce()
+        typeAt(debounce, 60)
+        debounce.onKeystroke(60_000)
+
+        assertThat(debounce.getDelayMillis(false)).isBetween(80L, 100L)
+    }
+
+    @Test
+    fun shouldWaitLessForSlowProviders() {
+        val debounce = AdaptiveDebounce().apply { typeAt(this, 200) }
+        repeat(50) { debounce.onProviderLatency(900) }
+
+        assertThat(debounce.getDelayMillis(false)).isBetween(95L, 110L)
+    }
+
+    @Test
+    fun shouldPrefetchAtPausePointsWithoutDelay() {
+        val debounce = AdaptiveDebounce().apply { typeAt(this, 200) }
+
+        assertThat(debounce.getDelayMillis(true)).isEqualTo(AdaptiveDebounce.MIN_DELAY_MILLIS)
+    }
+
+    @Test
+    fun shouldDetectPausePoints() {
+        assertThat(AdaptiveDebounce.isPausePoint("foo(", 4)).isTrue()
+        assertThat(AdaptiveDebounce.isPausePoint("val a = ", 8)).isTrue()
+        assertThat(AdaptiveDebounce.isPausePoint("foo() {\n    ", 12)).isTrue()
+        assertThat(AdaptiveDebounce.isPausePoint("foo.ba", 6)).isFalse()
+        assertThat(AdaptiveDebounce.isPausePoint("", 0)).isFalse()
+    }
+}
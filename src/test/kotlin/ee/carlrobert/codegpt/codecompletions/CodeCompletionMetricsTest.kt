@@ -0,0 +1,31 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class CodeCompletionMetricsTest {
+
+    @Test
+    fun shouldReportLatencyPercentiles() {
+        val metrics = CodeCompletionMetrics()
+        (1..100L).shuffled().forEach { metrics.recordSuggestionLatency(it) }
+
+        val stats = metrics.getStats()
+
+        assertThat(stats.p50LatencyMillis).isEqualTo(50)
+        assertThat(stats.p95LatencyMillis).isEqualTo(95)
+    }
+
+    @Test
+    fun shouldReportWastedRequestRatio() {
+        val metrics = CodeCompletionMetrics()
+        repeat(3) { metrics.recordRequest(speculative = false) }
+        metrics.recordRequest(speculative = true)
+        metrics.recordShownRequest()
+
+        val stats = metrics.getStats()
+
+        assertThat(stats.speculativeRequests).isEqualTo(1)
+        assertThat(stats.wastedRequestRatio).isEqualTo(0.75)
+    }
+}
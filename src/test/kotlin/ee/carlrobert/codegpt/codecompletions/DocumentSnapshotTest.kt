@@ -0,0 +1,28 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class DocumentSnapshotTest {
+
+    private val text = "fun main() {\n    val a = 1\n    val b = 2\n    println(a + b)\n}\n"
+
+    @Test
+    fun shouldSplitTextAtCaret() {
+        val caretOffset = text.indexOf("val b")
+        val snapshot = DocumentSnapshot.of(text, caretOffset)
+
+        assertThat(snapshot.prefix.toString()).isEqualTo(text.substring(0, caretOffset))
+        assertThat(snapshot.suffix.toString()).isEqualTo(text.substring(caretOffset))
+        assertThat(snapshot.suffix.subSequence(0, 5).toString()).isEqualTo("val b")
+        assertThat(snapshot.content).isEqualTo(text)
+    }
+
+    @Test
+    fun shouldClampCaretToText() {
+        val snapshot = DocumentSnapshot.of(text, text.length + 10)
+
+        assertThat(snapshot.prefix.toString()).isEqualTo(text)
+        assertThat(snapshot.suffix).isEmpty()
+    }
+}
@@ -0,0 +1,86 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class FileCompletionIndexTest {
+
+    private val text = "class Foo {\n    fun bar() {\n        \n    }\n}\n"
+    private val caret = text.indexOf("        \n") + 8
+
+    private fun capture(text: String, caret: Int) =
+        CompletionContext.capture(text, caret, 2, 2_000)
+
+    @Test
+    fun shouldServeCachedCompletionForSameContext() {
+        val index = FileCompletionIndex(4)
+        index.put(capture(text, caret), "println(\"bar\")")
+
+        assertThat(index.find(text, caret)).isEqualTo("println(\"bar\")")
+    }
+
+    @Test
+    fun shouldServeRemainingSuffixWhenTypingThroughCompletion() {
+        val index = FileCompletionIndex(4)
+        index.put(capture(text, caret), "println(\"bar\")")
+        val typed = text.substring(0, caret) + "print" + text.substring(caret)
+
+        assertThat(index.find(typed, caret + 5)).isEqualTo("ln(\"bar\")")
+    }
+
+    @Test
+    fun shouldMissWhenTypedTextDiverges() {
+        val index = FileCompletionIndex(4)
+        index.put(capture(text, caret), "println(\"bar\")")
+        val typed = text.substring(0, caret) + "val" + text.substring(caret)
+
+        assertThat(index.find(typed, caret + 3)).isNull()
+    }
+
+    @Test
+    fun shouldShiftEntriesOnEditsBeforeWindow() {
+        val index = FileCompletionIndex(4)
+        val longText = "import a\n\n\n\n" + text
+        val longCaret = caret + 12
+        index.put(capture(longText, longCaret), "println()")
+        val edited = "import b.c\n" + longText.substring(9)
+
+        index.onDocumentChange(0, 9, 11)
+
+        assertThat(index.find(edited, longCaret + 2)).isEqualTo("println()")
+    }
+
+    @Test
+    fun shouldInvalidateOnEditsBeforeCaretInsideWindow() {
+        val index = FileCompletionIndex(4)
+        index.put(capture(text, caret), "println()")
+
+        index.onDocumentChange(caret - 1, 1, 0)
+
+        assertThat(index.size).isZero()
+    }
+
+    @Test
+    fun shouldEvictOldestEntriesWhenFull() {
+        val index = FileCompletionIndex(2)
+        index.put(capture(text, 1), "a")
+        index.put(capture(text, 2), "b")
+        index.put(capture(text, 3), "c")
+
+        assertThat(index.size).isEqualTo(2)
+        assertThat(index.find(text, 1)).isNull()
+    }
+
+    @Test
+    fun shouldNotifyOnlyFirstTimeEntryIsServed() {
+        val index = FileCompletionIndex(4)
+        var served = 0
+        index.put(capture(text, caret), "println(\"bar\")") { served++ }
+        val typed = text.substring(0, caret) + "print" + text.substring(caret)
+
+        assertThat(served).isZero()
+        index.find(text, caret)
+        index.find(typed, caret + 5)
+        assertThat(served).isEqualTo(1)
+    }
+}
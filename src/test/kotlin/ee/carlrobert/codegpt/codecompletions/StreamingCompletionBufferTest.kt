@@ -0,0 +1,85 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class StreamingCompletionBufferTest {
+
+    private val format: (String) -> String = { completion ->
+        val end = CodeCompletionFormatter.findUnmatchedClosingBracket(completion)
+        (if (end == -1) completion else completion.substring(0, end)).trimEnd()
+    }
+
+    @Test
+    fun shouldReleaseTextOnlyOnLineBoundaries() {
+        val buffer = StreamingCompletionBuffer(format)
+
+        assertThat(buffer.append("if (a) {")).isNull()
+        assertThat(buffer.append("\n    foo(")).isEqualTo("if (a) {")
+        assertThat(buffer.append(")\n")).isEqualTo("\n    foo()")
+        assertThat(buffer.append("}")).isNull()
+        assertThat(buffer.complete()).isEqualTo("\n}")
+        assertThat(buffer.emitted).isEqualTo("if (a) {\n    foo()\n}")
+    }
+
+    @Test
+    fun shouldFinishOnUnmatchedClosingBracket() {
+        val buffer = StreamingCompletionBuffer(format)
+
+        assertThat(buffer.append("foo(bar)\n")).isEqualTo("foo(bar)")
+        assertThat(buffer.append("baz()\n})\n")).isEqualTo("\nbaz()")
+        assertThat(buffer.isFinished).isTrue()
+        assertThat(buffer.append("more\n")).isNull()
+        assertThat(buffer.complete()).isNull()
+    }
+
+    @Test
+    fun shouldStopWhenFormattedTextDiverges() {
+        var calls = 0
+        val buffer = StreamingCompletionBuffer { completion ->
+            calls++
+            if (calls > 1) "" else completion.trimEnd()
+        }
+
+        assertThat(buffer.append("first\n")).isEqualTo("first")
+        assertThat(buffer.append("second\n")).isEqualTo("\nsecond")
+        assertThat(buffer.complete()).isNull()
+        assertThat(buffer.isFinished).isTrue()
+        assertThat(buffer.emitted).isEqualTo("first\nsecond")
+    }
+
+    @Test
+    fun shouldFormatOnlyFirstLinesAndWholeCompletion() {
+        var formattedChars = 0
+        val buffer = StreamingCompletionBuffer { completion ->
+            formattedChars += completion.length
+            format(completion)
+        }
+
+        assertThat(buffer.append("\n")).isNull()
+        assertThat(buffer.append("val a = listOf(\n")).isEqualTo("\nval a = listOf(")
+        repeat(1_000) { assertThat(buffer.append("    $it,\n")).isEqualTo("\n    $it,") }
+        assertThat(buffer.append(")")).isNull()
+        val rawLength = buffer.emitted.length + 2
+
+        assertThat(buffer.complete()).isEqualTo("\n)")
+        assertThat(formattedChars).isLessThan(rawLength + 100)
+    }
+
+    @Test
+    fun shouldTrackBracketsAcrossChunks() {
+        val buffer = StreamingCompletionBuffer(format)
+
+        assertThat(buffer.append("foo(\"}\",\n")).isEqualTo("foo(\"}\",")
+        assertThat(buffer.append("  bar)\n")).isEqualTo("\n  bar)")
+        assertThat(buffer.append("}\nbaz\n")).isNull()
+        assertThat(buffer.isFinished).isTrue()
+        assertThat(buffer.emitted).isEqualTo("foo(\"}\",\n  bar)")
+    }
+
+    @Test
+    fun shouldIgnoreBracketsInsideStrings() {
+        assertThat(CodeCompletionFormatter.findUnmatchedClosingBracket("print(\")\")")).isEqualTo(-1)
+        assertThat(CodeCompletionFormatter.findUnmatchedClosingBracket("a)")).isEqualTo(1)
+    }
+}
@@ -0,0 +1,87 @@
+package ee.carlrobert.codegpt.codecompletions.edit
+
+import ee.carlrobert.codegpt.codecompletions.edit.DocumentDeltaEncoder.Encoding
+import ee.carlrobert.codegpt.codecompletions.edit.DocumentDeltaEncoder.TextEdit
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class DocumentDeltaEncoderTest {
+
+    private val base = (1..200).joinToString("\n") { "val line$it = $it" }
+
+    @Test
+    fun shouldSendFullContentUntilRevisionIsAcknowledged() {
+        val encoder = DocumentDeltaEncoder()
+        val edited = base.replace("line100 = 100", "line100 = 1000")
+
+        val first = encoder.encode("Main.kt", base)
+        val second = encoder.encode("Main.kt", edited)
+
+        assertThat(first).isInstanceOf(Encoding.Full::class.java)
+        assertThat(second).isInstanceOf(Encoding.Full::class.java)
+    }
+
+    @Test
+    fun shouldEncodeEditsToAcknowledgedRevision() {
+        val encoder = DocumentDeltaEncoder()
+        val edited = base.replace("line100 = 100", "line100 = 1000")
+        encoder.acknowledge("Main.kt", encoder.encode("Main.kt", base).revision)
+
+        val encoding = encoder.encode("Main.kt", edited)
+
+        assertThat(encoding).isInstanceOf(Encoding.Delta::class.java)
+        encoding as Encoding.Delta
+        assertThat(encoding.baseRevision).isEqualTo(DocumentDeltaEncoder.revisionOf(base))
+        assertThat(encoding.edits).containsExactly(
+            TextEdit(base.indexOf("line100 = 100") + 13, 0, "0")
+        )
+        assertThat(DocumentDeltaEncoder.apply(base, encoding.edits)).isEqualTo(edited)
+        assertThat(encoding.revision).isEqualTo(DocumentDeltaEncoder.revisionOf(edited))
+    }
+
+    @Test
+    fun shouldReportUnchangedDocument() {
+        val encoder = DocumentDeltaEncoder()
+        encoder.acknowledge("Main.kt", encoder.encode("Main.kt", base).revision)
+
+        assertThat(encoder.encode("Main.kt", base)).isInstanceOf(Encoding.Unchanged::class.java)
+    }
+
+    @Test
+    fun shouldSendFullContentAfterReset() {
+        val encoder = DocumentDeltaEncoder()
+        encoder.acknowledge("Main.kt", encoder.encode("Main.kt", base).revision)
+
+        encoder.reset()
+
+        assertThat(encoder.encode("Main.kt", base + "\n")).isInstanceOf(Encoding.Full::class.java)
+    }
+
+    @Test
+    fun shouldSendFullContentWhenMostOfTheDocumentChanged() {
+        val encoder = DocumentDeltaEncoder()
+        encoder.acknowledge("Main.kt", encoder.encode("Main.kt", base).revision)
+
+        val encoding = encoder.encode("Main.kt", base.reversed())
+
+        assertThat(encoding).isInstanceOf(Encoding.Full::class.java)
+    }
+
+    @Test
+    fun shouldRoundTripEdits() {
+        val cases = listOf(
+            "" to "abc",
+            "abc" to "",
+            "abcabc" to "abc",
+            "abc" to "abcabc",
+            "a😀b" to "a😁b",
+            "fun main() {}" to "fun main() {\n    println()\n}",
+        )
+
+        cases.forEach { (old, new) ->
+            assertThat(DocumentDeltaEncoder.apply(old, DocumentDeltaEncoder.diff(old, new)))
+                .isEqualTo(new)
+        }
+        assertThat(DocumentDeltaEncoder.diff("same", "same")).isEmpty()
+    }
+}
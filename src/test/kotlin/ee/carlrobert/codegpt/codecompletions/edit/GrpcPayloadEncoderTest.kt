@@ -0,0 +1,201 @@
+package ee.carlrobert.codegpt.codecompletions.edit
+
+import com.google.protobuf.Empty
+import ee.carlrobert.service.AcceptEditRequest
+import ee.carlrobert.service.DocumentDelta
+import ee.carlrobert.service.NextEditRequest
+import ee.carlrobert.service.NextEditResponse
+import ee.carlrobert.service.NextEditServiceImplGrpc
+import ee.carlrobert.service.TextEdit
+import io.grpc.ManagedChannel
+import io.grpc.Server
+import io.grpc.Status
+import io.grpc.StatusRuntimeException
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder
+import io.grpc.stub.StreamObserver
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+class GrpcPayloadEncoderTest {
+
+    private val fileContent = (1..5_000).joinToString("\n") { "    val value$it = compute($it)" }
+    private val gitDiff = "--- a/Main.kt\n+++ b/Main.kt\n" + "+ added line\n".repeat(500)
+
+    private lateinit var standInServer: SessionStandInServer
+    private lateinit var server: Server
+    private lateinit var channel: ManagedChannel
+    private lateinit var stub: NextEditServiceImplGrpc.NextEditServiceImplBlockingStub
+
+    @Before
+    fun startServer() {
+        standInServer = SessionStandInServer()
+        server = NettyServerBuilder.forPort(0).addService(standInServer).build().start()
+        channel = NettyChannelBuilder.forAddress("127.0.0.1", server.port).usePlaintext().build()
+        stub = NextEditServiceImplGrpc.newBlockingStub(channel)
+    }
+
+    @After
+    fun stopServer() {
+        channel.shutdownNow()
+        server.shutdownNow()
+    }
+
+    @Test
+    fun shouldSendEditsOnceServerAcceptedSession() {
+        val encoder = GrpcPayloadEncoder()
+        val first = encoder.createRequest(fileContent, 10)
+        encoder.acceptIfConfirmed(stub.nextEdit(first.request).next(), first)
+        val editedContent = fileContent.replace("compute(2500)", "compute(2500) + 1")
+
+        val second = encoder.createRequest(editedContent, 20)
+        val response = stub.nextEdit(second.request).next()
+
+        assertThat(second.request.fileContent).isEmpty()
+        assertThat(second.request.gitDiff).isEmpty()
+        assertThat(second.request.serializedSize).isLessThan(first.request.serializedSize / 100)
+        assertThat(standInServer.lastFileContent).isEqualTo(editedContent)
+        assertThat(standInServer.lastGitDiff).isEqualTo(gitDiff)
+        assertThat(response.withRevisions(editedContent).nextRevision)
+            .isEqualTo("// Edited\n$editedContent")
+        assertThat(encoder.getStats().requests).isEqualTo(2)
+        assertThat(encoder.getStats().bytesSent).isLessThan(encoder.getStats().documentChars)
+    }
+
+    @Test
+    fun shouldKeepSendingFullPayloadsWhenServerDoesNotAcceptSessions() {
+        standInServer.acceptSessions = false
+        val encoder = GrpcPayloadEncoder()
+        val first = encoder.createRequest(fileContent, 10)
+        encoder.acceptIfConfirmed(stub.nextEdit(first.request).next(), first)
+
+        val second = encoder.createRequest(fileContent + "\n", 20)
+
+        assertThat(second.request.fileContent).isEqualTo(fileContent + "\n")
+        assertThat(second.request.gitDiff).isEqualTo(gitDiff)
+    }
+
+    @Test
+    fun shouldSendFullPayloadAfterServerLostSession() {
+        val encoder = GrpcPayloadEncoder()
+        val first = encoder.createRequest(fileContent, 10)
+        encoder.acceptIfConfirmed(stub.nextEdit(first.request).next(), first)
+        standInServer.clearSessions()
+
+        val delta = encoder.createRequest(fileContent + "\n", 20)
+        assertThatThrownBy { stub.nextEdit(delta.request).next() }
+            .isInstanceOf(StatusRuntimeException::class.java)
+            .matches { (it as StatusRuntimeException).status.code == Status.Code.FAILED_PRECONDITION }
+        encoder.reset()
+        val retry = encoder.createRequest(fileContent + "\n", 20)
+        stub.nextEdit(retry.request).next()
+
+        assertThat(retry.request.sessionId).isNotEqualTo(delta.request.sessionId)
+        assertThat(retry.request.fileContent).isEqualTo(fileContent + "\n")
+        assertThat(standInServer.lastFileContent).isEqualTo(fileContent + "\n")
+    }
+
+    private fun GrpcPayloadEncoder.createRequest(content: String, cursorPosition: Int) =
+        createNextEditRequest(
+            fileName = "Main.kt",
+            filePath = "/project/Main.kt",
+            fileContent = content,
+            cursorPosition = cursorPosition,
+            gitDiff = gitDiff,
+            recentlyViewedFiles = mapOf("/project/Utils.kt" to "object Utils"),
+            pluginVersion = "test"
+        )
+
+    private fun GrpcPayloadEncoder.acceptIfConfirmed(
+        response: NextEditResponse,
+        request: GrpcPayloadEncoder.EncodedRequest<*>
+    ) {
+        if (response.sessionAccepted) {
+            onAccepted(request)
+        }
+    }
+
+    /**
+     * Keeps the documents of each session and rebuilds requests from their deltas, the way the
+     * next-edit server does. Responds with a single hunk that prepends a comment to the file.
+     */
+    private class SessionStandInServer : NextEditServiceImplGrpc.NextEditServiceImplImplBase() {
+
+        @Volatile
+        var acceptSessions = true
+
+        @Volatile
+        var lastFileContent: String? = null
+
+        @Volatile
+        var lastGitDiff: String? = null
+
+        private val documents = mutableMapOf<Pair<String, String>, MutableMap<String, String>>()
+
+        @Synchronized
+        fun clearSessions() {
+            documents.clear()
+        }
+
+        @Synchronized
+        override fun nextEdit(
+            request: NextEditRequest,
+            responseObserver: StreamObserver<NextEditResponse>
+        ) {
+            val sessionId = request.sessionId
+            val fileContent = resolve(sessionId, "file", request.fileContent, request.fileDelta)
+            val gitDiff = resolve(sessionId, "git-diff", request.gitDiff, request.gitDiffDelta)
+            if (fileContent == null || gitDiff == null) {
+                responseObserver.onError(Status.FAILED_PRECONDITION.asRuntimeException())
+                return
+            }
+
+            lastFileContent = fileContent
+            lastGitDiff = gitDiff
+            responseObserver.onNext(
+                NextEditResponse.newBuilder()
+                    .setId("response")
+                    .setSessionAccepted(acceptSessions)
+                    .addHunks(TextEdit.newBuilder().setOffset(0).setInsertedText("// Edited\n"))
+                    .build()
+            )
+            responseObserver.onCompleted()
+        }
+
+        override fun acceptEdit(
+            request: AcceptEditRequest,
+            responseObserver: StreamObserver<Empty>
+        ) {
+            responseObserver.onNext(Empty.getDefaultInstance())
+            responseObserver.onCompleted()
+        }
+
+        private fun resolve(
+            sessionId: String,
+            name: String,
+            content: String,
+            delta: DocumentDelta
+        ): String? {
+            val revisions = documents.getOrPut(sessionId to name) { mutableMapOf() }
+            val resolved = if (delta.baseRevision.isEmpty()) {
+                content
+            } else {
+                val base = revisions[delta.baseRevision] ?: return null
+                DocumentDeltaEncoder.apply(base, delta.editsList.map {
+                    DocumentDeltaEncoder.TextEdit(it.offset, it.deletedLength, it.insertedText)
+                })
+            }
+
+            check(DocumentDeltaEncoder.revisionOf(resolved) == delta.revision) {
+                "Revision mismatch for $name"
+            }
+            if (acceptSessions) {
+                revisions[delta.revision] = resolved
+            }
+            return resolved
+        }
+    }
+}
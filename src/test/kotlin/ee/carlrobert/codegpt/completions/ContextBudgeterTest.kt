@@ -0,0 +1,116 @@
+package ee.carlrobert.codegpt.completions
+
+import ee.carlrobert.codegpt.conversations.message.Message
+import ee.carlrobert.llm.client.openai.completion.response.ToolCall
+import ee.carlrobert.llm.client.openai.completion.response.ToolFunctionResponse
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class ContextBudgeterTest {
+
+    private var countedTexts = 0
+
+    private val budgeter = ContextBudgeter { text ->
+        countedTexts++
+        text.split(" ").size
+    }
+
+    @Test
+    fun shouldCountUnchangedMessagesOnce() {
+        val message = Message("How do I read a file?")
+
+        val promptTokens = budgeter.countTokens(message)
+        budgeter.countTokens(message)
+
+        assertThat(promptTokens).isEqualTo(10)
+        assertThat(countedTexts).isEqualTo(1)
+
+        message.response = "Use Files.readString"
+
+        assertThat(budgeter.countTokens(message)).isEqualTo(16)
+        assertThat(countedTexts).isEqualTo(3)
+    }
+
+    @Test
+    fun shouldRecountMessageWhenToolCallOrResultChanges() {
+        val message = Message("Search the docs")
+        message.toolCalls =
+            listOf(ToolCall(null, "tc_1", "function", ToolFunctionResponse("search", "{}")))
+        message.toolCallResults = mapOf("tc_1" to "none")
+        val tokens = budgeter.countTokens(message)
+
+        message.toolCalls = listOf(
+            ToolCall(null, "tc_1", "function", ToolFunctionResponse("search", "{\"query\": \"docs\"}"))
+        )
+        val tokensWithArguments = budgeter.countTokens(message)
+        message.toolCallResults = mapOf("tc_1" to "two results found")
+
+        assertThat(tokensWithArguments).isEqualTo(tokens + 1)
+        assertThat(budgeter.countTokens(message)).isEqualTo(tokensWithArguments + 2)
+    }
+
+    @Test
+    fun shouldKeepWholeHistoryThatFits() {
+        val history = List(3) { Message("Question $it", "Answer $it") }
+
+        val budget = budgeter.fit(history, 100, 200, "")
+
+        assertThat(budget.history).isEqualTo(history)
+        assertThat(budget.historyTokens).isEqualTo(36)
+        assertThat(budget.exceedsWindow).isFalse()
+    }
+
+    @Test
+    fun shouldKeepWholeHistoryWhenContextWindowIsUnknown() {
+        val history = List(3) { Message("Question $it", "Answer $it") }
+
+        val budget = budgeter.fit(history, 100_000, null, "")
+
+        assertThat(budget.history).isEqualTo(history)
+        assertThat(budget.exceedsWindow).isFalse()
+    }
+
+    @Test
+    fun shouldNotExceedWindowWithEmptyHistory() {
+        val budget = budgeter.fit(emptyList(), 5_000, 2048, "")
+
+        assertThat(budget.history).isEmpty()
+        assertThat(budget.exceedsWindow).isFalse()
+    }
+
+    @Test
+    fun shouldReserveAtMostQuarterOfContextWindowForResponse() {
+        assertThat(ContextBudgeter.reservedResponseTokens(8192, 2048)).isEqualTo(512)
+        assertThat(ContextBudgeter.reservedResponseTokens(8192, 200_000)).isEqualTo(8192)
+        assertThat(ContextBudgeter.reservedResponseTokens(8192, null)).isEqualTo(8192)
+    }
+
+    @Test
+    fun shouldKeepMostRecentMessagesThatFit() {
+        val history = List(5) { Message("Question $it", "Answer $it") }
+
+        val budget = budgeter.fit(history, 100, 130, "", ContextBudgeter.RECENCY)
+
+        assertThat(budget.history).containsExactly(history[3], history[4])
+        assertThat(budget.historyTokens).isEqualTo(24)
+        assertThat(budget.exceedsWindow).isTrue()
+    }
+
+    @Test
+    fun shouldKeepMostRecentAndRelevantMessagesThatFit() {
+        val docker = Message("How to write a Dockerfile?", "Start FROM a base image")
+        val unrelated = Message("What is a monad?", "A monoid in the category of endofunctors")
+        val previous = Message("Which JDK should I use?", "The latest LTS release")
+
+        val budget = budgeter.fit(
+            listOf(docker, unrelated, previous),
+            100,
+            140,
+            "Add a JDK to the Dockerfile",
+            ContextBudgeter.RELEVANCE
+        )
+
+        assertThat(budget.history).containsExactly(docker, previous)
+        assertThat(budget.exceedsWindow).isTrue()
+    }
+}
@@ -5,8 +5,13 @@ import ee.carlrobert.codegpt.completions.llama.PromptTemplate.LLAMA
 import ee.carlrobert.codegpt.conversations.ConversationService
 import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettingsState
 import ee.carlrobert.codegpt.settings.prompts.PersonaPromptDetailsState
 import ee.carlrobert.codegpt.settings.prompts.PromptsSettings
+import ee.carlrobert.codegpt.settings.service.llama.LlamaSettings
+import ee.carlrobert.codegpt.settings.service.llama.LlamaSettingsState
+import ee.carlrobert.codegpt.settings.service.ollama.OllamaSettings
+import ee.carlrobert.codegpt.settings.service.ollama.OllamaSettingsState
 import ee.carlrobert.llm.client.http.RequestEntity
 import ee.carlrobert.llm.client.http.exchange.NdJsonStreamHttpExchange
 import ee.carlrobert.llm.client.http.exchange.StreamHttpExchange
@@ -159,6 +164,89 @@ class DefaultToolwindowChatCompletionRequestHandlerTest : IntegrationTest() {
         waitExpecting { "Hello!" == message.response }
     }
 
+    fun testLlamaChatCompletionCallWithDefaultSettings() {
+        useLlamaService()
+        service<ConfigurationSettings>().state.maxTokens = ConfigurationSettingsState().maxTokens
+        LlamaSettings.getCurrentState().contextSize = LlamaSettingsState().contextSize
+        val customPersona = PersonaPromptDetailsState().apply {
+            id = 999L
+            name = "Test Persona"
+            instructions = "TEST_SYSTEM_PROMPT"
+        }
+        service<PromptsSettings>().state.personas.selectedPersona = customPersona
+        val message = Message("TEST_PROMPT")
+        val conversation = ConversationService.getInstance().startConversation(project)
+        conversation.addMessage(Message("Ping", "Pong"))
+        expectLlama(StreamHttpExchange { request: RequestEntity ->
+            assertThat(request.uri.path).isEqualTo("/v1/chat/completions")
+            val guidelines = getResourceContent("/prompts/persona/psi-navigation-guidelines.txt")
+            val expectedSystem = "TEST_SYSTEM_PROMPT\n$guidelines"
+            assertThat(request.body)
+                .extracting(
+                    "model",
+                    "messages"
+                )
+                .containsExactly(
+                    HuggingFaceModel.CODE_LLAMA_7B_Q4.code,
+                    listOf(
+                        mapOf("role" to "system", "content" to expectedSystem),
+                        mapOf("role" to "user", "content" to "Ping"),
+                        mapOf("role" to "assistant", "content" to "Pong"),
+                        mapOf("role" to "user", "content" to "TEST_PROMPT")
+                    )
+                )
+            listOf(
+                jsonMapResponse("choices", jsonArray(jsonMap("delta", jsonMap("content", "Hello!"))))
+            )
+        })
+        val requestHandler =
+            ToolwindowChatCompletionRequestHandler(project, getRequestEventListener(message), null)
+
+        requestHandler.call(ChatCompletionParameters.builder(conversation, message).build())
+
+        waitExpecting { "Hello!" == message.response }
+    }
+
+    fun testOllamaChatCompletionCallWithDefaultSettings() {
+        useOllamaService()
+        service<ConfigurationSettings>().state.maxTokens = ConfigurationSettingsState().maxTokens
+        service<OllamaSettings>().state.contextSize = OllamaSettingsState().contextSize
+        val customPersona = PersonaPromptDetailsState().apply {
+            id = 999L
+            name = "Test Persona"
+            instructions = "TEST_SYSTEM_PROMPT"
+        }
+        service<PromptsSettings>().state.personas.selectedPersona = customPersona
+        val message = Message("TEST_PROMPT")
+        val conversation = ConversationService.getInstance().startConversation(project)
+        expectOllama(NdJsonStreamHttpExchange { request: RequestEntity ->
+            assertThat(request.uri.path).isEqualTo("/v1/chat/completions")
+            val guidelines = getResourceContent("/prompts/persona/psi-navigation-guidelines.txt")
+            val expectedSystem = "TEST_SYSTEM_PROMPT\n$guidelines"
+            assertThat(request.body)
+                .extracting(
+                    "model",
+                    "messages"
+                )
+                .containsExactly(
+                    HuggingFaceModel.LLAMA_3_8B_Q6_K.code,
+                    listOf(
+                        mapOf("role" to "system", "content" to expectedSystem),
+                        mapOf("role" to "user", "content" to "TEST_PROMPT")
+                    )
+                )
+            listOf(
+                jsonMapResponse("choices", jsonArray(jsonMap("delta", jsonMap("content", "Hello!"))))
+            )
+        })
+        val requestHandler =
+            ToolwindowChatCompletionRequestHandler(project, getRequestEventListener(message), null)
+
+        requestHandler.call(ChatCompletionParameters.builder(conversation, message).build())
+
+        waitExpecting { "Hello!" == message.response }
+    }
+
     fun testGoogleChatCompletionCall() {
         useGoogleService()
         service<ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings>().state
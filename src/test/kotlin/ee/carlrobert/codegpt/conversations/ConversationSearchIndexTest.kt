@@ -0,0 +1,101 @@
+package ee.carlrobert.codegpt.conversations
+
+import ee.carlrobert.codegpt.conversations.ConversationSearchIndex.Field
+import ee.carlrobert.codegpt.conversations.message.Message
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.*
+
+class ConversationSearchIndexTest {
+
+    private fun createConversation(projectPath: String? = null) = Conversation().apply {
+        id = UUID.randomUUID()
+        this.projectPath = projectPath
+    }
+
+    @Test
+    fun shouldMatchEveryQueryTermAsPrefix() {
+        val index = ConversationSearchIndex()
+        val java = createConversation()
+        val javaScript = createConversation()
+        index.update(java, listOf(Message("How to write Java code?", "Compile it with javac")))
+        index.update(javaScript, listOf(Message("JavaScript async/await", "Use promises")))
+
+        assertThat(index.search("java").keys).containsExactlyInAnyOrder(java.id, javaScript.id)
+        assertThat(index.search("JAVA COMP").keys).containsExactly(java.id)
+        assertThat(index.search("await promise").keys).containsExactly(javaScript.id)
+        assertThat(index.search("script").keys).isEmpty()
+        assertThat(index.search("  ")).isEmpty()
+    }
+
+    @Test
+    fun shouldRankTitleAndExactMatchesHigher() {
+        val index = ConversationSearchIndex()
+        val inTitle = createConversation()
+        val inResponse = createConversation()
+        val asPrefix = createConversation()
+        index.update(inTitle, listOf(Message("Kotlin coroutines", "Use launch")))
+        index.update(inResponse, listOf(Message("Concurrency", "Kotlin has coroutines")))
+        index.update(asPrefix, listOf(Message("Kotlinx serialization", "Annotate classes")))
+
+        val scores = index.search("kotlin")
+
+        assertThat(scores[inTitle.id]).isGreaterThan(scores[asPrefix.id])
+        assertThat(scores[asPrefix.id]).isGreaterThan(scores[inResponse.id])
+        assertThat(index.search("kotlin", setOf(Field.TITLE)).keys)
+            .containsExactlyInAnyOrder(inTitle.id, asPrefix.id)
+    }
+
+    @Test
+    fun shouldKeepIndexUpToDateWithSavedMessages() {
+        val index = ConversationSearchIndex()
+        val conversation = createConversation("/home/user/petclinic")
+        val first = Message("What is Spring?", "A framework")
+        val second = Message("How do I add Hibernate?")
+        index.update(conversation, listOf(first))
+        index.update(conversation, listOf(first, second))
+        second.response = "Add the Jakarta Persistence starter"
+        index.update(conversation, listOf(first, second), second.id)
+
+        assertThat(index.search("jakarta").keys).containsExactly(conversation.id)
+        assertThat(index.search("petclinic").keys).containsExactly(conversation.id)
+
+        index.update(conversation, listOf(second))
+
+        assertThat(index.search("framework")).isEmpty()
+        assertThat(index.search("spring")).isEmpty()
+        assertThat(index.search("hibernate", setOf(Field.TITLE)).keys)
+            .containsExactly(conversation.id)
+
+        index.remove(conversation.id)
+
+        assertThat(index.search("hibernate")).isEmpty()
+        assertThat(index.contains(conversation.id)).isFalse()
+    }
+
+    @Test
+    fun shouldKeepLanguageSuffixesInTerms() {
+        assertThat(ConversationSearchIndex.tokenize("What is C++ or C#? a+b, snake_case"))
+            .containsExactly("what", "is", "c++", "or", "c#", "a+", "b", "snake_case")
+    }
+
+    @Test
+    fun shouldSearchLargeHistoryQuickly() {
+        val index = ConversationSearchIndex()
+        val topics = listOf("Java", "Python", "JavaScript", "Database", "General")
+        repeat(5_000) { i ->
+            val topic = topics[i % topics.size]
+            index.update(
+                createConversation(),
+                List(10) { Message("Question $i about $topic", "Answer $it about $topic #$i") }
+            )
+        }
+
+        val startTime = System.nanoTime()
+        val results = index.search("java")
+        val elapsedMillis = (System.nanoTime() - startTime) / 1_000_000
+
+        assertThat(results).hasSize(2_000)
+        assertThat(elapsedMillis).isLessThan(100)
+    }
+}
@@ -0,0 +1,151 @@
+package ee.carlrobert.codegpt.conversations
+
+import ee.carlrobert.codegpt.conversations.message.Message
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.groups.Tuple.tuple
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+
+class ConversationStoreTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private fun createConversation(title: String, vararg messages: Message) =
+        Conversation().apply {
+            this.title = title
+            projectPath = "/project"
+            messages.forEach { addMessage(it) }
+        }
+
+    @Test
+    fun shouldLoadMessagesOnlyWhenAccessed() {
+        val directory = folder.root.toPath()
+        val conversation = createConversation(
+            "Refactoring",
+            Message("First prompt", "First response"),
+            Message("Second prompt", "Second response")
+        )
+        ConversationStore(directory).saveConversation(conversation)
+
+        val loaded = ConversationStore(directory).findConversation(conversation.id)!!
+
+        assertThat(loaded.isMessagesLoaded).isFalse()
+        assertThat(loaded.title).isEqualTo("Refactoring")
+        assertThat(loaded.projectPath).isEqualTo("/project")
+        assertThat(loaded.messageCount).isEqualTo(2)
+        assertThat(loaded.firstMessage!!.prompt).isEqualTo("First prompt")
+        assertThat(loaded.lastMessage!!.response).isEqualTo("Second response")
+        assertThat(loaded.messages)
+            .extracting("id", "prompt", "response")
+            .containsExactly(
+                *conversation.messages.map { tuple(it.id, it.prompt, it.response) }.toTypedArray()
+            )
+        assertThat(loaded.isMessagesLoaded).isTrue()
+    }
+
+    @Test
+    fun shouldAppendOnlyNewAndChangedMessages() {
+        val directory = folder.root.toPath()
+        val store = ConversationStore(directory)
+        val first = Message("First prompt", "First response")
+        val conversation = createConversation("Appending", first)
+        store.saveConversation(conversation)
+        val messagesFile = directory.resolve("${conversation.id}.jsonl")
+
+        val second = Message("Second prompt")
+        conversation.addMessage(second)
+        store.saveConversation(conversation)
+        second.response = "Second response"
+        store.saveConversation(conversation, second)
+        store.saveConversation(conversation)
+
+        assertThat(Files.readAllLines(messagesFile)).hasSize(3)
+        assertThat(ConversationStore(directory).findConversation(conversation.id)!!.messages)
+            .extracting("prompt", "response")
+            .containsExactly(
+                tuple("First prompt", "First response"),
+                tuple("Second prompt", "Second response")
+            )
+    }
+
+    @Test
+    fun shouldPersistRemovedMessagesAndDeletedConversations() {
+        val directory = folder.root.toPath()
+        val store = ConversationStore(directory)
+        val removed = Message("Removed prompt", "Removed response")
+        val kept = createConversation("Kept", removed, Message("Kept prompt", "Kept response"))
+        val deleted = createConversation("Deleted", Message("Prompt", "Response"))
+        store.saveConversation(kept)
+        store.saveConversation(deleted)
+
+        kept.removeMessage(removed.id)
+        store.saveConversation(kept)
+        store.deleteConversation(deleted.id)
+
+        val reloaded = ConversationStore(directory)
+        assertThat(reloaded.getConversations()).extracting("title").containsExactly("Kept")
+        assertThat(reloaded.findConversation(kept.id)!!.messages)
+            .extracting("prompt")
+            .containsExactly("Kept prompt")
+        assertThat(directory.resolve("${deleted.id}.jsonl")).doesNotExist()
+    }
+
+    @Test
+    fun shouldImportConversationsOnce() {
+        val directory = folder.root.toPath()
+        val store = ConversationStore(directory)
+        val imported = createConversation("Imported", Message("Prompt", "Response"))
+
+        store.importConversations(listOf(imported))
+        store.importConversations(listOf(imported))
+
+        assertThat(ConversationStore(directory).getConversations())
+            .singleElement()
+            .satisfies({ assertThat(it.messages).extracting("prompt").containsExactly("Prompt") })
+    }
+
+    @Test
+    fun shouldReportImportThatCouldNotBeWritten() {
+        val directory = folder.newFile("conversations").toPath()
+        val store = ConversationStore(directory)
+        val imported = createConversation("Imported", Message("Prompt", "Response"))
+
+        assertThat(store.importConversations(listOf(imported))).isFalse()
+        assertThat(ConversationStore(folder.root.toPath()).importConversations(listOf(imported)))
+            .isTrue()
+    }
+
+    @Test
+    fun shouldKeepRecordAppendedAfterTornLastLine() {
+        val directory = folder.root.toPath()
+        val conversation = createConversation("Torn", Message("First prompt", "First response"))
+        ConversationStore(directory).saveConversation(conversation)
+        val messagesFile = directory.resolve("${conversation.id}.jsonl")
+        Files.writeString(messagesFile, "{\"message\":{\"prom", StandardOpenOption.APPEND)
+
+        val store = ConversationStore(directory)
+        val loaded = store.findConversation(conversation.id)!!
+        loaded.addMessage(Message("Second prompt", "Second response"))
+        store.saveConversation(loaded)
+
+        assertThat(ConversationStore(directory).findConversation(conversation.id)!!.messages)
+            .extracting("prompt")
+            .containsExactly("First prompt", "Second prompt")
+    }
+
+    @Test
+    fun shouldCompactIndexWhenMostRecordsAreSuperseded() {
+        val directory = folder.root.toPath()
+        val store = ConversationStore(directory)
+        val conversation = createConversation("Compacted", Message("Prompt", "Response"))
+
+        repeat(100) { store.saveConversation(conversation) }
+
+        assertThat(Files.readAllLines(directory.resolve("index.jsonl")).size).isLessThan(20)
+        assertThat(ConversationStore(directory).getConversations()).hasSize(1)
+    }
+}
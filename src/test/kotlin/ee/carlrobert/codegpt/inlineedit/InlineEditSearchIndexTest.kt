@@ -0,0 +1,90 @@
+package ee.carlrobert.codegpt.inlineedit
+
+import com.intellij.openapi.util.TextRange
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class InlineEditSearchIndexTest {
+
+    private val content = """
+        class Greeter {
+            fun greet(name: String) {
+                println("Hello, ${'$'}name")
+            }
+
+            fun farewell(name: String) {
+                println("Bye, ${'$'}name")
+            }
+        }
+    """.trimIndent()
+
+    private val index = InlineEditSearchIndex(content)
+
+    @Test
+    fun shouldFindBlockWithDifferentIndentation() {
+        val pattern = """
+            fun farewell(name: String) {
+            println("Bye, ${'$'}name")
+            }
+        """.trimIndent()
+
+        val matches = index.find(pattern)
+
+        assertThat(matches).hasSize(1)
+        assertThat(matches.first().substring(content)).isEqualTo(
+            "fun farewell(name: String) {\n        println(\"Bye, \$name\")\n    }"
+        )
+    }
+
+    @Test
+    fun shouldFindBlockWhileLastLineIsStreaming() {
+        val matches = index.find("fun greet(name: String) {\n    println(\"Hel")
+
+        assertThat(matches).hasSize(1)
+        assertThat(matches.first().substring(content))
+            .isEqualTo("fun greet(name: String) {\n        println(\"Hel")
+    }
+
+    @Test
+    fun shouldFindBlockWithDifferentLineBreaks() {
+        val matches = index.find("println(\"Hello, \$name\") }")
+
+        assertThat(matches).hasSize(1)
+        assertThat(matches.first().substring(content))
+            .isEqualTo("println(\"Hello, \$name\")\n    }")
+    }
+
+    @Test
+    fun shouldFindAllOccurrences() {
+        assertThat(index.find("(name:  String)"))
+            .extracting<Int> { it.startOffset }
+            .containsExactly(content.indexOf("(name"), content.lastIndexOf("(name"))
+    }
+
+    @Test
+    fun shouldNotFindMissingBlock() {
+        assertThat(index.find("fun farewell(name: String) {\n    println(\"Hello")).isEmpty()
+        assertThat(index.find("   ")).isEmpty()
+    }
+
+    @Test
+    fun shouldMapOffsetsToLines() {
+        val offset = content.indexOf("fun farewell")
+
+        assertThat(index.lineCount).isEqualTo(9)
+        assertThat(index.getLineNumber(offset)).isEqualTo(5)
+        assertThat(index.getLine(5)).isEqualTo("    fun farewell(name: String) {")
+        assertThat(index.getLineEndOffset(8)).isEqualTo(content.length)
+    }
+
+    @Test
+    fun shouldIgnoreCarriageReturns() {
+        val windowsIndex = InlineEditSearchIndex(content.replace("\n", "\r\n"))
+
+        val matches = windowsIndex.find("fun greet(name: String) {\n    println")
+
+        assertThat(matches).hasSize(1)
+        assertThat(windowsIndex.getLine(1)).isEqualTo("    fun greet(name: String) {")
+        assertThat(TextRange(0, 5).substring(windowsIndex.content)).isEqualTo("class")
+    }
+}
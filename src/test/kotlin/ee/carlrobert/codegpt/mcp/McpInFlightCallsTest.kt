@@ -0,0 +1,67 @@
+package ee.carlrobert.codegpt.mcp
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.util.concurrent.CompletableFuture
+
+class McpInFlightCallsTest {
+
+    private val calls = McpInFlightCalls<String, String>()
+    private var started = 0
+    private var shared = 0
+
+    private fun run(key: String, call: CompletableFuture<String>): CompletableFuture<String> =
+        calls.run(key, { shared++ }) {
+            started++
+            call
+        }
+
+    @Test
+    fun shouldShareRunningCallWithSameKey() {
+        val call = CompletableFuture<String>()
+
+        val first = run("read_file:a", call)
+        val second = run("read_file:a", CompletableFuture())
+        call.complete("content")
+
+        assertThat(second).isSameAs(first)
+        assertThat(second.join()).isEqualTo("content")
+        assertThat(started).isEqualTo(1)
+        assertThat(shared).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldRunCallsWithDifferentKeysSeparately() {
+        val first = run("read_file:a", CompletableFuture())
+        val second = run("read_file:b", CompletableFuture())
+
+        assertThat(second).isNotSameAs(first)
+        assertThat(started).isEqualTo(2)
+        assertThat(shared).isZero()
+    }
+
+    @Test
+    fun shouldRunCallAgainAfterPreviousCompleted() {
+        val call = CompletableFuture<String>()
+        run("read_file:a", call)
+        call.completeExceptionally(IllegalStateException("failed"))
+
+        val next = run("read_file:a", CompletableFuture.completedFuture("content"))
+
+        assertThat(next.join()).isEqualTo("content")
+        assertThat(started).isEqualTo(2)
+        assertThat(shared).isZero()
+        assertThat(calls.size).isZero()
+    }
+
+    @Test
+    fun shouldCancelRunningCalls() {
+        val call = CompletableFuture<String>()
+        run("read_file:a", call)
+
+        calls.cancelAll()
+
+        assertThat(call.isCancelled).isTrue()
+        assertThat(calls.size).isZero()
+    }
+}
@@ -0,0 +1,74 @@
+package ee.carlrobert.codegpt.mcp
+
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.testFramework.PlatformTestUtil
+import com.intellij.ui.components.JBLabel
+import com.intellij.util.ui.UIUtil
+import ee.carlrobert.codegpt.EncodingManager
+import ee.carlrobert.codegpt.completions.ToolApprovalMode
+import ee.carlrobert.codegpt.mcp.McpToolCallHandler.Companion.MAX_RESULT_TOKENS
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+import java.util.UUID
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.TimeUnit
+import javax.swing.JPanel
+
+class McpToolCallHandlerTest : IntegrationTest() {
+
+    private lateinit var handler: McpToolCallHandler
+
+    public override fun setUp() {
+        super.setUp()
+        handler = McpToolCallHandler()
+    }
+
+    fun `test should share results only between calls of read-only tools`() {
+        listOf("read_file", "list_directory", "searchFiles", "get_file_info", "fetch")
+            .forEach { assertThat(McpToolCallHandler.isReadOnlyTool(it)).describedAs(it).isTrue() }
+        listOf("run_command", "write_file", "edit_file", "move_file", "READ_WRITE", "getter")
+            .forEach { assertThat(McpToolCallHandler.isReadOnlyTool(it)).describedAs(it).isFalse() }
+    }
+
+    fun `test should keep output within the token limit`() {
+        val output = "line of output\n".repeat(100)
+
+        assertThat(handler.limitOutput("read_file", output)).isSameAs(output)
+    }
+
+    fun `test should truncate non-ascii output with fewer characters than the token limit`() {
+        val encodingManager = EncodingManager.getInstance()
+        val output = "龘".repeat(6_000)
+        assertThat(output.length).isLessThan(MAX_RESULT_TOKENS)
+        assertThat(encodingManager.countTokens(output)).isGreaterThan(MAX_RESULT_TOKENS)
+
+        val limited = handler.limitOutput("read_file", output)
+
+        assertThat(limited).contains("tokens of output omitted")
+        assertThat(encodingManager.countTokens(limited)).isLessThanOrEqualTo(MAX_RESULT_TOKENS + 20)
+        assertThat(handler.getToolMetrics()["read_file"]?.truncated).isEqualTo(1L)
+    }
+
+    fun `test should update status panel when call completes before panel is shown`() {
+        val panels = CopyOnWriteArrayList<JPanel>()
+
+        val result = ApplicationManager.getApplication()
+            .executeOnPooledThread<CompletableFuture<String>> {
+                handler.executeToolCall(
+                    McpToolCall("call-1", "read_file", mapOf("path" to "a.txt")),
+                    "missing-server",
+                    UUID.randomUUID(),
+                    ToolApprovalMode.AUTO_APPROVE
+                ) { panels.add(it) }
+            }
+            .get(5, TimeUnit.SECONDS)
+            .get(5, TimeUnit.SECONDS)
+        PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+        assertThat(result).contains("not connected")
+        assertThat(panels).hasSize(1)
+        val labels = UIUtil.findComponentsOfType(panels[0], JBLabel::class.java).map { it.text }
+        assertThat(labels).anyMatch { it.startsWith("Failed") }
+    }
+}
@@ -0,0 +1,61 @@
+package ee.carlrobert.codegpt.psistructure
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class DependentEntryMapTest {
+
+    private data class Entry(val structure: String, val dependencies: List<String> = listOf())
+
+    private val entries = DependentEntryMap<Entry> { it.dependencies }
+
+    @Test
+    fun shouldInvalidateFilesThatDependOnChangedFile() {
+        entries.put("Order.kt", Entry("Order", listOf("Entity.kt", "Money.kt")))
+        entries.put("Invoice.kt", Entry("Invoice", listOf("Order.kt", "Money.kt")))
+        entries.put("Money.kt", Entry("Money"))
+        entries.put("Entity.kt", Entry("Entity"))
+
+        entries.invalidate("Money.kt")
+
+        assertThat(entries.snapshot().keys).containsExactly("Entity.kt")
+    }
+
+    @Test
+    fun shouldInvalidateOnlyDirectDependents() {
+        entries.put("A.kt", Entry("A", listOf("B.kt")))
+        entries.put("B.kt", Entry("B", listOf("C.kt")))
+        entries.put("C.kt", Entry("C"))
+
+        entries.invalidate("C.kt")
+
+        assertThat(entries.snapshot().keys).containsExactly("A.kt")
+    }
+
+    @Test
+    fun shouldForgetDependenciesOfReplacedEntries() {
+        entries.put("Order.kt", Entry("Order", listOf("Money.kt")))
+        entries.put("Order.kt", Entry("Order", listOf("Entity.kt")))
+
+        entries.invalidate("Money.kt")
+
+        assertThat(entries["Order.kt"]).isEqualTo(Entry("Order", listOf("Entity.kt")))
+
+        entries.invalidate("Entity.kt")
+
+        assertThat(entries["Order.kt"]).isNull()
+    }
+
+    @Test
+    fun shouldInvalidateMatchingFilesWithTheirDependents() {
+        entries.put("src/a/Order.kt", Entry("Order"))
+        entries.put("src/a/Status.kt", Entry("Status"))
+        entries.put("src/b/Invoice.kt", Entry("Invoice", listOf("src/a/Order.kt")))
+        entries.put("src/b/Money.kt", Entry("Money"))
+
+        entries.invalidateIf { it.startsWith("src/a/") }
+
+        assertThat(entries.snapshot().keys).containsExactly("src/b/Money.kt")
+        assertThat(entries.size).isEqualTo(1)
+    }
+}
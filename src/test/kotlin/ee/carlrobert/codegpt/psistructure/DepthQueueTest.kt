@@ -0,0 +1,53 @@
+package ee.carlrobert.codegpt.psistructure
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class DepthQueueTest {
+
+    private data class File(val path: String)
+
+    @Test
+    fun shouldKeepDistinctFilesSharingName() {
+        val root = File("src/Main.kt")
+        val queue = DepthQueue(listOf(root)) { file: File -> file.path }
+
+        queue.put(File("src/a/Utils.kt"), root)
+        queue.put(File("src/b/Utils.kt"), root)
+        queue.put(File("src/a/Utils.kt"), root)
+
+        assertThat(queue.visitedCount).isEqualTo(3)
+    }
+
+    @Test
+    fun shouldPopFilesLevelByLevel() {
+        val root = File("Main.kt")
+        val first = File("A.kt")
+        val second = File("B.kt")
+        val queue = DepthQueue(listOf(root)) { file: File -> file.path }
+
+        assertThat(queue.popLevel()).containsExactly(root)
+        queue.put(first, root)
+        queue.put(second, root)
+        assertThat(queue.popLevel()).containsExactly(first, second)
+        queue.put(File("C.kt"), first)
+        assertThat(queue.popLevel()).containsExactly(File("C.kt"))
+        assertThat(queue.popLevel()).isEmpty()
+    }
+
+    @Test
+    fun shouldRespectMaxDepthAndVisitedLimit() {
+        val root = File("Main.kt")
+        val child = File("A.kt")
+        val depthLimited = DepthQueue(listOf(root), maxDepth = 1) { file: File -> file.path }
+        depthLimited.put(child, root)
+        depthLimited.put(File("B.kt"), child)
+
+        val sizeLimited = DepthQueue(listOf(root), maxItems = 2) { file: File -> file.path }
+        sizeLimited.put(child, root)
+        sizeLimited.put(File("B.kt"), root)
+
+        assertThat(depthLimited.visitedCount).isEqualTo(2)
+        assertThat(sizeLimited.visitedCount).isEqualTo(2)
+    }
+}
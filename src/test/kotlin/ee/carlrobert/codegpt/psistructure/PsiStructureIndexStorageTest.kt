@@ -0,0 +1,116 @@
+package ee.carlrobert.codegpt.psistructure
+
+import com.intellij.testFramework.LightVirtualFile
+import ee.carlrobert.codegpt.psistructure.PsiStructureIndexStorage.StoredEntry
+import ee.carlrobert.codegpt.psistructure.models.ClassName
+import ee.carlrobert.codegpt.psistructure.models.ClassStructure
+import ee.carlrobert.codegpt.psistructure.models.ClassType
+import ee.carlrobert.codegpt.psistructure.models.ConstructorStructure
+import ee.carlrobert.codegpt.psistructure.models.EnumEntryName
+import ee.carlrobert.codegpt.psistructure.models.FieldStructure
+import ee.carlrobert.codegpt.psistructure.models.MethodStructure
+import ee.carlrobert.codegpt.psistructure.models.ParameterInfo
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.Test
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.IOException
+
+class PsiStructureIndexStorageTest {
+
+    private val file = LightVirtualFile("Order.kt", "")
+
+    private fun createStructure() = ClassStructure(
+        name = ClassName("com.example.Order"),
+        virtualFile = file,
+        simpleName = ClassName("Order"),
+        classType = ClassType.CLASS,
+        modifierList = listOf("data"),
+        packageName = "com.example",
+        repositoryName = "shop",
+        constructors = mutableListOf(
+            ConstructorStructure(
+                listOf(ParameterInfo("id", ClassName("kotlin.Long"), listOf("val"))),
+                listOf("public")
+            )
+        ),
+        fields = mutableListOf(FieldStructure("total", ClassName("java.math.BigDecimal"), listOf())),
+        methods = mutableListOf(
+            MethodStructure(
+                "cancel",
+                ClassName("kotlin.Unit"),
+                listOf(ParameterInfo("reason", ClassName("kotlin.String"), listOf())),
+                listOf("fun")
+            )
+        ),
+        supertypes = mutableListOf(ClassName("com.example.Entity")),
+        classes = mutableListOf(
+            ClassStructure(
+                name = ClassName("com.example.Order.Status"),
+                virtualFile = file,
+                simpleName = ClassName("Status"),
+                classType = ClassType.ENUM,
+                modifierList = listOf("enum"),
+                packageName = "com.example",
+                repositoryName = "shop",
+                enumEntries = mutableListOf(EnumEntryName("OPEN"), EnumEntryName("CLOSED"))
+            )
+        )
+    )
+
+    private fun write(entries: List<StoredEntry>): ByteArray {
+        val bytes = ByteArrayOutputStream()
+        DataOutputStream(bytes).use { PsiStructureIndexStorage.write(it, entries) }
+        return bytes.toByteArray()
+    }
+
+    private fun read(bytes: ByteArray, findFile: (String) -> LightVirtualFile? = { file }) =
+        DataInputStream(ByteArrayInputStream(bytes)).use {
+            PsiStructureIndexStorage.read(it, "shop", findFile)
+        }
+
+    @Test
+    fun shouldReadWrittenEntries() {
+        val entry = StoredEntry(
+            "file:///shop/Order.kt",
+            42L,
+            setOf(createStructure()),
+            listOf("file:///shop/Entity.kt", "file:///shop/Status.kt")
+        )
+
+        assertThat(read(write(listOf(entry)))).containsExactly(entry)
+    }
+
+    @Test
+    fun shouldSkipEntriesOfMissingFiles() {
+        val missing = StoredEntry("file:///shop/Deleted.kt", 1L, setOf(createStructure()), listOf())
+        val present = StoredEntry("file:///shop/Order.kt", 2L, setOf(createStructure()), listOf())
+
+        val entries = read(write(listOf(missing, present))) { url ->
+            file.takeIf { url == present.url }
+        }
+
+        assertThat(entries).containsExactly(present)
+    }
+
+    @Test
+    fun shouldIgnoreOtherFormatVersions() {
+        val bytes = write(listOf(StoredEntry("file:///shop/Order.kt", 1L, setOf(), listOf())))
+        bytes[7] = (bytes[7] + 1).toByte()
+
+        assertThat(read(bytes)).isEmpty()
+    }
+
+    @Test
+    fun shouldRejectTruncatedOrCorruptedData() {
+        val bytes = write(listOf(StoredEntry("file:///shop/Order.kt", 1L, setOf(createStructure()), listOf())))
+
+        assertThatThrownBy { read(bytes.copyOf(bytes.size / 2)) }.isInstanceOf(IOException::class.java)
+        assertThatThrownBy { read(ByteArray(16) { 0x7f }) }.isInstanceOf(IOException::class.java)
+        assertThatThrownBy { read(bytes.copyOf(8) + byteArrayOf(0x7f, 0, 0, 0)) }
+            .isInstanceOf(IOException::class.java)
+    }
+}
@@ -0,0 +1,128 @@
+package ee.carlrobert.codegpt.toolwindow.chat.editor.apply
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class LocalApplyEngineTest {
+
+    private val fileText = """
+        package com.example
+
+        class Calculator {
+
+            fun add(a: Int, b: Int): Int {
+                return a + b
+            }
+
+            fun subtract(a: Int, b: Int): Int {
+                return a - b
+            }
+
+            fun multiply(a: Int, b: Int): Int {
+                var result = 0
+                repeat(b) { result += a }
+                return result
+            }
+        }
+    """.trimIndent()
+
+    private val engine = LocalApplyEngine()
+
+    @Test
+    fun shouldReplaceRewrittenMethod() {
+        val snippet = """
+            fun multiply(a: Int, b: Int): Int {
+                var result = 0
+                repeat(b) { result += a }
+                return result.also { check(it == a * b) }
+            }
+        """.trimIndent()
+
+        val match = engine.findMatch(fileText, snippet)
+
+        assertThat(match).isNotNull
+        assertThat(match!!.search.trim()).isEqualTo(
+            """
+            fun multiply(a: Int, b: Int): Int {
+                    var result = 0
+                    repeat(b) { result += a }
+                    return result
+                }
+            """.trimIndent()
+        )
+        assertThat(match.replacement).isEqualTo(
+            """
+                fun multiply(a: Int, b: Int): Int {
+                    var result = 0
+                    repeat(b) { result += a }
+                    return result.also { check(it == a * b) }
+                }
+            """.trimIndent().prependIndent("    ")
+        )
+        assertThat(match.confidence).isGreaterThan(LocalApplyEngine.DEFAULT_MIN_CONFIDENCE)
+    }
+
+    @Test
+    fun shouldIgnoreElisionsAroundSnippet() {
+        val snippet = """
+            // ... existing code ...
+                fun subtract(a: Int, b: Int): Int {
+                    return b - a
+                }
+            // ...
+        """.trimIndent()
+
+        val match = engine.findMatch(fileText, snippet)
+
+        assertThat(match).isNotNull
+        assertThat(match!!.search).contains("return a - b").doesNotContain("add", "multiply")
+    }
+
+    @Test
+    fun shouldEndRegionAtDeclarationEnd() {
+        val snippet = """
+            fun add(a: Int, b: Int): Int {
+                val sum = a + b
+                return sum
+            }
+        """.trimIndent()
+
+        val match = engine.findMatch(fileText, snippet, mapOf(4 to 6))
+
+        assertThat(match).isNotNull
+        assertThat(match!!.search.lines()).hasSize(3)
+    }
+
+    @Test
+    fun shouldDeclineSnippetsThatDontMatchAnyRegion() {
+        val snippet = """
+            fun divide(a: Int, b: Int): Int {
+                require(b != 0)
+                return a / b
+            }
+        """.trimIndent()
+
+        assertThat(engine.findMatch(fileText, snippet)).isNull()
+    }
+
+    @Test
+    fun shouldDeclineSnippetsThatElideCodeInBetween() {
+        val snippet = """
+            fun multiply(a: Int, b: Int): Int {
+                // ... existing code ...
+                return result * 1
+            }
+        """.trimIndent()
+
+        assertThat(engine.findMatch(fileText, snippet)).isNull()
+    }
+
+    @Test
+    fun shouldDeclineAmbiguousRegions() {
+        val duplicated = "$fileText\n\nclass Other {\n    fun add(a: Int, b: Int): Int {\n" +
+                "        return a + b\n    }\n}"
+        val snippet = "fun add(a: Int, b: Int): Int {\n    return b + a\n}"
+
+        assertThat(engine.findMatch(duplicated, snippet)).isNull()
+    }
+}
@@ -259,4 +259,98 @@ class SseMessageParserStreamTest {
         val codeEndSegments = segments.filterIsInstance<CodeEnd>()
         assertThat(codeEndSegments).hasSize(1)
     }
+
+    @Test
+    fun shouldStreamLongCodeBlockTokenByToken() {
+        val parser = SseMessageParser()
+        val code = (0 until 5_000).joinToString("\n") { "    val value$it = compute($it)" }
+        val input = "```kotlin:Long.kt\n$code\n```\nDone."
+        val segments = input.chunked(4).flatMap { parser.parse(it) }
+
+        val codeSegments = segments.filterIsInstance<Code>()
+        assertThat(codeSegments.size).isLessThanOrEqualTo(5_001)
+        assertThat(codeSegments.last().content).isEqualTo(code)
+        assertThat(codeSegments.last().filePath).isEqualTo("Long.kt")
+        assertThat(codeSegments.zipWithNext().none { (a, b) -> a == b }).isTrue
+        assertThat(segments.filterIsInstance<CodeEnd>()).hasSize(1)
+        assertThat(segments.last()).isEqualTo(Text("Done."))
+    }
+
+    @Test
+    fun shouldKeepStreamedCodeSegmentAsPrefixOfBlock() {
+        val parser = SseMessageParser()
+        val first = parser.parse("```kotlin\nval a = 1\nval b = 2\n")
+            .filterIsInstance<Code>()
+            .single()
+
+        val rest = parser.parse("val c = 3\n```\n").filterIsInstance<Code>()
+
+        assertThat(first.content).isEqualTo("val a = 1\nval b = 2")
+        assertThat(rest.single().content).isEqualTo("val a = 1\nval b = 2\nval c = 3")
+    }
+
+    @Test
+    fun shouldParseSearchReplaceSplitAtEveryPosition() {
+        val input = """
+            ```kotlin:MyFile.kt
+            <<<<<<< SEARCH
+            fun oldFunction() {
+                return "old"
+            }
+            =======
+            fun newFunction() {
+                return "new"
+            }
+            >>>>>>> REPLACE
+            ```
+        """.trimIndent()
+
+        for (split in 1 until input.length) {
+            val parser = SseMessageParser()
+            val segments =
+                parser.parse(input.substring(0, split)) + parser.parse(input.substring(split))
+
+            val searchReplace = segments.filterIsInstance<SearchReplace>()
+            assertThat(searchReplace).describedAs("split at $split").hasSize(1)
+            assertThat(searchReplace[0].search)
+                .isEqualTo("fun oldFunction() {\n    return \"old\"\n}")
+            assertThat(searchReplace[0].replace)
+                .isEqualTo("fun newFunction() {\n    return \"new\"\n}")
+            segments.filterIsInstance<SearchWaiting>().forEach {
+                assertThat(searchReplace[0].search).startsWith(it.search)
+            }
+            segments.filterIsInstance<ReplaceWaiting>().forEach {
+                assertThat(it.search).isEqualTo(searchReplace[0].search)
+                assertThat(searchReplace[0].replace).startsWith(it.replace)
+            }
+            assertThat(segments.filterIsInstance<CodeEnd>()).hasSize(1)
+        }
+    }
+
+    @Test
+    fun shouldEmitSearchAndReplaceProgressOnlyWhenBlockGrows() {
+        val parser = SseMessageParser()
+        parser.parse("```kotlin\n<<<<<<< SEARCH\n")
+
+        val searchLine = parser.parse("val a = 1\n")
+        val partialLine = parser.parse("val b")
+        val separator = parser.parse(" = 2\n=======\n")
+        val replaceLine = parser.parse("val a = 3\n")
+        val noLine = parser.parse("val")
+        val end = parser.parse(" b = 4\n>>>>>>> REPLACE\n")
+
+        assertThat(searchLine).containsExactly(SearchWaiting("val a = 1", "kotlin", null))
+        assertThat(partialLine).isEmpty()
+        assertThat(separator).containsExactly(
+            SearchWaiting("val a = 1\nval b = 2", "kotlin", null),
+            ReplaceWaiting("val a = 1\nval b = 2", "", "kotlin", null)
+        )
+        assertThat(replaceLine)
+            .containsExactly(ReplaceWaiting("val a = 1\nval b = 2", "val a = 3", "kotlin", null))
+        assertThat(noLine).isEmpty()
+        assertThat(end).containsExactly(
+            ReplaceWaiting("val a = 1\nval b = 2", "val a = 3\nval b = 4", "kotlin", null),
+            SearchReplace("val a = 1\nval b = 2", "val a = 3\nval b = 4", "kotlin", null)
+        )
+    }
 }
@@ -2,7 +2,6 @@ package ee.carlrobert.codegpt.ui.textarea
 
 import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.conversations.ConversationService
-import ee.carlrobert.codegpt.conversations.ConversationsState
 import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.ui.textarea.lookup.action.HistoryActionItem
 import org.assertj.core.api.Assertions.assertThat
@@ -16,7 +15,7 @@ class ConversationTagProcessorTest : IntegrationTest() {
     public override fun setUp() {
         super.setUp()
         conversationService = service<ConversationService>()
-        ConversationsState.getInstance().conversations.clear()
+        ConversationService.getInstance().clearAll()
     }
 
     fun `test should format conversation with single message`() {
@@ -2,7 +2,6 @@ package ee.carlrobert.codegpt.ui.textarea
 
 import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.conversations.ConversationService
-import ee.carlrobert.codegpt.conversations.ConversationsState
 import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.ui.textarea.header.tag.TagManager
 import ee.carlrobert.codegpt.ui.textarea.lookup.action.HistoryActionItem
@@ -20,7 +19,7 @@ class HistorySearchIntegrationTest : IntegrationTest() {
     public override fun setUp() {
         super.setUp()
         conversationService = service<ConversationService>()
-        ConversationsState.getInstance().conversations.clear()
+        ConversationService.getInstance().clearAll()
         
         val tagManager = TagManager()
         searchManager = SearchManager(project, tagManager)
@@ -44,7 +43,7 @@ class HistorySearchIntegrationTest : IntegrationTest() {
     }
 
     fun `test should filter conversations by search terms`() {
-        ConversationsState.getInstance().conversations.clear()
+        ConversationService.getInstance().clearAll()
         createTestConversations()
         val testCases = mapOf(
             "java" to 3,
@@ -2,7 +2,6 @@ package ee.carlrobert.codegpt.ui.textarea
 
 import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.conversations.ConversationService
-import ee.carlrobert.codegpt.conversations.ConversationsState
 import ee.carlrobert.codegpt.conversations.message.Message
 import ee.carlrobert.codegpt.toolwindow.chat.MessageBuilder
 import ee.carlrobert.codegpt.ui.textarea.header.tag.HistoryTagDetails
@@ -22,7 +21,7 @@ class HistoryTagIntegrationTest : IntegrationTest() {
     public override fun setUp() {
         super.setUp()
         conversationService = service<ConversationService>()
-        ConversationsState.getInstance().conversations.clear()
+        ConversationService.getInstance().clearAll()
     }
 
     fun testShouldDisplayCorrectNameForHistoryActionItem() {
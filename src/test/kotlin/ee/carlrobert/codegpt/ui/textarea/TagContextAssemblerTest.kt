@@ -0,0 +1,148 @@
+package ee.carlrobert.codegpt.ui.textarea
+
+import com.intellij.openapi.progress.EmptyProgressIndicator
+import com.intellij.openapi.progress.ProcessCanceledException
+import ee.carlrobert.codegpt.conversations.message.Message
+import ee.carlrobert.codegpt.ui.textarea.TagContextAssembler.Status
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.assertj.core.groups.Tuple.tuple
+import org.junit.After
+import org.junit.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class TagContextAssemblerTest {
+
+    private val executor = Executors.newCachedThreadPool()
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    private class SlowTagProcessor(
+        private val context: String,
+        private val delayMillis: Long,
+        private val onInterrupted: () -> Unit = {},
+    ) : ContextCollectingTagProcessor<String> {
+
+        override fun collect(): String {
+            try {
+                Thread.sleep(delayMillis)
+            } catch (e: InterruptedException) {
+                onInterrupted()
+                throw e
+            }
+            return context
+        }
+
+        override fun apply(context: String, message: Message, promptBuilder: StringBuilder) {
+            promptBuilder.append(context)
+        }
+    }
+
+    @Test
+    fun shouldCollectSlowSourcesConcurrentlyInTagOrder() {
+        val assembler = TagContextAssembler(executor, 5_000)
+        val promptBuilder = StringBuilder()
+        val message = Message("")
+
+        val startTime = System.nanoTime()
+        val timings = assembler.assemble(
+            listOf(
+                SlowTagProcessor("[commit]", 300),
+                TagProcessor { msg, _ -> msg.personaName = "Reviewer" },
+                SlowTagProcessor("[changes]", 300),
+                TagProcessor { _, builder -> builder.append("[selection]") },
+                SlowTagProcessor("[diagnostics]", 50),
+            ),
+            message,
+            promptBuilder
+        )
+        val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+
+        assertThat(promptBuilder.toString()).isEqualTo("[commit][changes][selection][diagnostics]")
+        assertThat(message.personaName).isEqualTo("Reviewer")
+        assertThat(elapsedMillis).isLessThan(600)
+        assertThat(timings).extracting("status").containsOnly(Status.COMPLETED)
+        assertThat(timings.last().latencyMillis).isLessThan(300)
+    }
+
+    @Test
+    fun shouldLeaveOutAndCancelSourcesThatTimeOut() {
+        val interrupted = CountDownLatch(1)
+        val assembler = TagContextAssembler(executor, 200)
+        val promptBuilder = StringBuilder()
+
+        val timings = assembler.assemble(
+            listOf(
+                SlowTagProcessor("[hanging]", 10_000) { interrupted.countDown() },
+                SlowTagProcessor("[fast]", 10),
+            ),
+            Message(""),
+            promptBuilder
+        )
+
+        assertThat(promptBuilder.toString()).isEqualTo("[fast]")
+        assertThat(timings)
+            .extracting("source", "status")
+            .containsExactly(
+                tuple("SlowTagProcessor", Status.TIMED_OUT),
+                tuple("SlowTagProcessor", Status.COMPLETED)
+            )
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+
+    @Test
+    fun shouldLeaveOutSourcesThatFail() {
+        val assembler = TagContextAssembler(executor, 1_000)
+        val promptBuilder = StringBuilder()
+        val failing = object : ContextCollectingTagProcessor<String> {
+            override fun collect(): String = throw IllegalStateException("No repository")
+
+            override fun apply(context: String, message: Message, promptBuilder: StringBuilder) {
+                promptBuilder.append(context)
+            }
+        }
+
+        val timings = assembler.assemble(
+            listOf(failing, SlowTagProcessor("[fast]", 10)),
+            Message(""),
+            promptBuilder
+        )
+
+        assertThat(promptBuilder.toString()).isEqualTo("[fast]")
+        assertThat(timings).extracting("status").containsExactly(Status.FAILED, Status.COMPLETED)
+    }
+
+    @Test
+    fun shouldStopRemainingSourcesWhenIndicatorIsCancelled() {
+        val interrupted = CountDownLatch(2)
+        val assembler = TagContextAssembler(executor, 10_000)
+        val promptBuilder = StringBuilder()
+        val indicator = EmptyProgressIndicator()
+
+        val startTime = System.nanoTime()
+        assertThatThrownBy {
+            assembler.assemble(
+                listOf(
+                    SlowTagProcessor("[fast]", 10),
+                    TagProcessor { _, _ -> indicator.cancel() },
+                    SlowTagProcessor("[commit]", 10_000) { interrupted.countDown() },
+                    SlowTagProcessor("[changes]", 10_000) { interrupted.countDown() },
+                    TagProcessor { _, builder -> builder.append("[selection]") },
+                ),
+                Message(""),
+                promptBuilder,
+                indicator
+            )
+        }.isInstanceOf(ProcessCanceledException::class.java)
+        val elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+
+        assertThat(promptBuilder.toString()).isEqualTo("[fast]")
+        assertThat(elapsedMillis).isLessThan(1_000)
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue()
+    }
+}
@@ -0,0 +1,100 @@
+package ee.carlrobert.codegpt.ui.textarea.lookup
+
+import com.intellij.openapi.application.runWriteAction
+import com.intellij.openapi.components.service
+import com.intellij.openapi.vfs.VirtualFile
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import testsupport.IntegrationTest
+import java.util.concurrent.CancellationException
+
+class FileSearchIndexTest : IntegrationTest() {
+
+    private lateinit var index: FileSearchIndex
+
+    public override fun setUp() {
+        super.setUp()
+        index = project.service<FileSearchIndex>()
+        index.invalidate()
+    }
+
+    private fun addFile(path: String): VirtualFile =
+        myFixture.addFileToProject(path, "").virtualFile
+
+    private fun search(query: String, limit: Int = 10): List<String> =
+        runBlocking { index.search(query, limit) }.map { it.name }
+
+    fun `test should rank names starting with the query first`() {
+        addFile("src/MyFooBar.kt")
+        addFile("src/FooGroupItem.kt")
+        addFile("src/Other.kt")
+
+        assertThat(search("Foo")).containsExactly("FooGroupItem.kt", "MyFooBar.kt")
+    }
+
+    fun `test should match camel humps`() {
+        addFile("src/FileGroupItem.kt")
+        addFile("src/FolderItem.kt")
+
+        assertThat(search("FGI")).containsExactly("FileGroupItem.kt")
+    }
+
+    fun `test should apply limit and filter`() {
+        (1..5).forEach { addFile("src/Service$it.kt") }
+        addFile("test/ServiceTest.kt")
+
+        val limited = search("Service", limit = 3)
+        val filtered = runBlocking {
+            index.search("Service", 10) { it.path.contains("/test/") }
+        }
+
+        assertThat(limited).hasSize(3)
+        assertThat(filtered.map { it.name }).containsExactly("ServiceTest.kt")
+    }
+
+    fun `test should return files for empty query up to limit`() {
+        (1..5).forEach { addFile("src/File$it.kt") }
+
+        assertThat(search("", limit = 2)).hasSize(2)
+    }
+
+    fun `test should track created, renamed and deleted files`() {
+        val file = addFile("src/Original.kt")
+        assertThat(search("Original")).containsExactly("Original.kt")
+
+        addFile("src/Created.kt")
+        assertThat(search("Created")).containsExactly("Created.kt")
+
+        runWriteAction { file.rename(this, "Renamed.kt") }
+        assertThat(search("Original")).isEmpty()
+        assertThat(search("Renamed")).containsExactly("Renamed.kt")
+
+        runWriteAction { file.delete(this) }
+        assertThat(search("Renamed")).isEmpty()
+    }
+
+    fun `test should rebuild after invalidation`() {
+        addFile("src/Before.kt")
+        assertThat(search("Before")).containsExactly("Before.kt")
+
+        index.invalidate()
+        addFile("src/After.kt")
+
+        assertThat(search("Before")).containsExactly("Before.kt")
+        assertThat(search("After")).containsExactly("After.kt")
+    }
+
+    fun `test should stop searching when cancelled`() {
+        addFile("src/Cancelled.kt")
+        search("Cancelled")
+
+        assertThatThrownBy {
+            runBlocking {
+                cancel()
+                index.search("Cancelled", 10)
+            }
+        }.isInstanceOf(CancellationException::class.java)
+    }
+}
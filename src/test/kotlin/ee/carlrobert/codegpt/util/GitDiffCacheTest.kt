@@ -0,0 +1,107 @@
+package ee.carlrobert.codegpt.util
+
+import ee.carlrobert.codegpt.util.GitDiffCache.FilePatch
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class GitDiffCacheTest {
+
+    private val contents = mutableMapOf<String, String>()
+    private val builtPaths = mutableListOf<String>()
+    private var collected = 0
+
+    private val cache = GitDiffCache<String>(
+        buildPatch = { path ->
+            builtPaths.add(path)
+            FilePatch("--- $path: ${contents.getValue(path)}\n", contents.keys.indexOf(path).toLong())
+        }
+    )
+
+    private fun getDiff(): String = cache.getDiff {
+        collected++
+        contents.keys.associateWith { it }
+    }
+
+    @Test
+    fun shouldServeDiffFromCacheUntilSomethingChanges() {
+        contents["a.kt"] = "one"
+        contents["b.kt"] = "two"
+
+        val first = getDiff()
+        val second = getDiff()
+
+        assertThat(second).isSameAs(first)
+        assertThat(first).isEqualTo("--- b.kt: two\n--- a.kt: one\n")
+        assertThat(builtPaths).containsExactly("a.kt", "b.kt")
+        assertThat(collected).isEqualTo(1)
+        assertThat(cache.getStats()).extracting("files", "rebuilds", "cacheHits")
+            .containsExactly(2, 1L, 1L)
+    }
+
+    @Test
+    fun shouldRebuildOnlyChangedFile() {
+        contents["a.kt"] = "one"
+        contents["b.kt"] = "two"
+        getDiff()
+        builtPaths.clear()
+
+        contents["a.kt"] = "uno"
+        cache.markFileChanged("a.kt")
+
+        assertThat(getDiff()).isEqualTo("--- b.kt: two\n--- a.kt: uno\n")
+        assertThat(builtPaths).containsExactly("a.kt")
+    }
+
+    @Test
+    fun shouldIgnoreChangesToFilesWithoutPatch() {
+        contents["a.kt"] = "one"
+        getDiff()
+
+        contents["notes.txt"] = "draft"
+        cache.markFileChanged("notes.txt")
+
+        assertThat(getDiff()).isEqualTo("--- a.kt: one\n")
+        assertThat(collected).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldPickUpAddedAndRevertedFilesWhenChangeSetChanges() {
+        contents["a.kt"] = "one"
+        getDiff()
+        builtPaths.clear()
+
+        contents.remove("a.kt")
+        contents["c.kt"] = "three"
+        cache.markChangeSetChanged()
+
+        assertThat(getDiff()).isEqualTo("--- c.kt: three\n")
+        assertThat(builtPaths).containsExactly("c.kt")
+        assertThat(cache.getStats().files).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldReuseDiffWhenChangeSetUpdateChangesNothing() {
+        contents["a.kt"] = "one"
+        val first = getDiff()
+        builtPaths.clear()
+
+        cache.markChangeSetChanged()
+
+        assertThat(getDiff()).isSameAs(first)
+        assertThat(builtPaths).isEmpty()
+        assertThat(collected).isEqualTo(2)
+    }
+
+    @Test
+    fun shouldRebuildEverythingAfterInvalidation() {
+        contents["a.kt"] = "one"
+        contents["b.kt"] = "two"
+        getDiff()
+        builtPaths.clear()
+
+        cache.invalidate()
+
+        assertThat(getDiff()).isEqualTo("--- b.kt: two\n--- a.kt: one\n")
+        assertThat(builtPaths).containsExactly("a.kt", "b.kt")
+    }
+}
@@ -0,0 +1,49 @@
+package ee.carlrobert.codegpt.util.file
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class LanguageRegistryTest {
+
+    private val registry = LanguageRegistry(
+        listOf(
+            LanguageFileExtensionDetails("Kotlin", "programming", listOf(".kt", ".kts")),
+            LanguageFileExtensionDetails("Kotlin", "programming", listOf(".ktm")),
+            LanguageFileExtensionDetails("Markdown", "prose", listOf("", ".md")),
+            LanguageFileExtensionDetails("Unlisted", "data", null),
+        ),
+        listOf(
+            FileExtensionLanguageDetails("kt", "Kotlin"),
+            FileExtensionLanguageDetails("md", "markdown"),
+            FileExtensionLanguageDetails("ul", "Unlisted"),
+        )
+    )
+
+    @Test
+    fun shouldFindMappingByLanguageIgnoringCase() {
+        val mapping = registry.findMapping("kotlin")
+
+        assertThat(mapping.key).isEqualTo("Kotlin")
+        assertThat(mapping.value).isEqualTo(".kt")
+    }
+
+    @Test
+    fun shouldFindMappingByExtension() {
+        assertThat(registry.findMapping("KT").key).isEqualTo("Kotlin")
+        assertThat(registry.findMapping("md").value).isEqualTo(".md")
+    }
+
+    @Test
+    fun shouldFallBackToTextForUnknownLanguages() {
+        assertThat(registry.findMapping("ul")).isEqualTo(LanguageRegistry.DEFAULT_MAPPING)
+        assertThat(registry.findMapping("cobol")).isEqualTo(LanguageRegistry.DEFAULT_MAPPING)
+        assertThat(registry.findMapping(null)).isEqualTo(LanguageRegistry.DEFAULT_MAPPING)
+    }
+
+    @Test
+    fun shouldReadBundledMappings() {
+        assertThat(LanguageRegistry.instance.findMapping("py").key).isEqualTo("Python")
+        assertThat(FileUtil.getFileExtension("/project/src/Main.kt")).isEqualTo("kt")
+        assertThat(FileUtil.getFileExtension("archive.")).isEmpty()
+    }
+}
@@ -0,0 +1,184 @@
+package ee.carlrobert.codegpt.util.file
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.IOException
+import java.net.InetSocketAddress
+import java.net.URL
+import java.nio.file.Files
+import java.security.MessageDigest
+import java.util.*
+import java.util.concurrent.CopyOnWriteArrayList
+
+class SegmentedDownloaderTest {
+
+    @get:Rule
+    val temporaryFolder = TemporaryFolder()
+
+    private val content = Random(42).let { random ->
+        ByteArray(20 * 1024 * 1024).also { random.nextBytes(it) }
+    }
+    private val requestedRanges = CopyOnWriteArrayList<String>()
+    private var supportsRanges = true
+    private var publishedSha256 = sha256(content)
+    private lateinit var server: HttpServer
+
+    @Before
+    fun startServer() {
+        server = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+        server.createContext("/resolve/model.gguf") { exchange ->
+            exchange.responseHeaders.add("X-Linked-Etag", "\"$publishedSha256\"")
+            exchange.responseHeaders.add("Location", "/cdn/model.gguf")
+            exchange.sendResponseHeaders(302, -1)
+            exchange.close()
+        }
+        server.createContext("/cdn/model.gguf") { exchange -> serveFile(exchange) }
+        server.start()
+    }
+
+    @After
+    fun stopServer() {
+        server.stop(0)
+    }
+
+    @Test
+    fun shouldDownloadInParallelSegmentsAndVerifyChecksum() {
+        val downloader = SegmentedDownloader(segments = 4)
+        val target = temporaryFolder.root.toPath().resolve("model.gguf")
+
+        val remoteFile = downloader.probe(url("/resolve/model.gguf"))
+        val completed = downloader.download(remoteFile, target, SegmentedDownloader.Progress()) {
+            false
+        }
+
+        assertThat(remoteFile.url.path).isEqualTo("/cdn/model.gguf")
+        assertThat(remoteFile.sha256).isEqualTo(publishedSha256)
+        assertThat(completed).isTrue()
+        assertThat(Files.readAllBytes(target)).isEqualTo(content)
+        assertThat(requestedRanges).hasSize(2)
+        assertThat(temporaryFolder.root.list()).containsExactly("model.gguf")
+    }
+
+    @Test
+    fun shouldResumeCanceledDownload() {
+        val downloader = SegmentedDownloader(segments = 2)
+        val target = temporaryFolder.root.toPath().resolve("model.gguf")
+        val remoteFile = downloader.probe(url("/resolve/model.gguf"))
+        val progress = SegmentedDownloader.Progress()
+
+        val canceled = !downloader.download(remoteFile, target, progress) {
+            progress.downloadedBytes.get() >= 4 * 1024 * 1024
+        }
+        requestedRanges.clear()
+        val resumedProgress = SegmentedDownloader.Progress()
+        val completed = downloader.download(remoteFile, target, resumedProgress) { false }
+
+        assertThat(canceled).isTrue()
+        assertThat(completed).isTrue()
+        assertThat(resumedProgress.resumedBytes).isGreaterThan(0)
+        assertThat(resumedProgress.downloadedBytes.get()).isEqualTo(content.size.toLong())
+        assertThat(requestedRanges.sumOf { rangeLength(it) })
+            .isEqualTo(content.size - resumedProgress.resumedBytes)
+        assertThat(Files.readAllBytes(target)).isEqualTo(content)
+    }
+
+    @Test
+    fun shouldStopAndKeepInterruptFlagWhenInterrupted() {
+        val downloader = SegmentedDownloader(segments = 2, maxBytesPerSecond = 4L * 1024 * 1024)
+        val target = temporaryFolder.root.toPath().resolve("model.gguf")
+        val remoteFile = downloader.probe(url("/resolve/model.gguf"))
+        val progress = SegmentedDownloader.Progress()
+        var completed: Boolean? = null
+        var interrupted = false
+
+        val thread = Thread {
+            completed = downloader.download(remoteFile, target, progress) { false }
+            interrupted = Thread.currentThread().isInterrupted
+        }
+        thread.start()
+        while (progress.downloadedBytes.get() < 1024 * 1024) {
+            Thread.sleep(10)
+        }
+        thread.interrupt()
+        thread.join(10_000)
+        val resumedProgress = SegmentedDownloader.Progress()
+        val resumed = SegmentedDownloader(segments = 2)
+            .download(remoteFile, target, resumedProgress) { false }
+
+        assertThat(thread.isAlive).isFalse()
+        assertThat(completed).isFalse()
+        assertThat(interrupted).isTrue()
+        assertThat(resumed).isTrue()
+        assertThat(resumedProgress.resumedBytes).isGreaterThan(0)
+        assertThat(Files.readAllBytes(target)).isEqualTo(content)
+    }
+
+    @Test
+    fun shouldRejectFileWithWrongChecksum() {
+        publishedSha256 = "0".repeat(64)
+        val downloader = SegmentedDownloader()
+        val target = temporaryFolder.root.toPath().resolve("model.gguf")
+        val remoteFile = downloader.probe(url("/resolve/model.gguf"))
+
+        assertThatThrownBy {
+            downloader.download(remoteFile, target, SegmentedDownloader.Progress()) { false }
+        }.isInstanceOf(IOException::class.java).hasMessageContaining("Checksum mismatch")
+        assertThat(temporaryFolder.root.list()).isEmpty()
+    }
+
+    @Test
+    fun shouldStreamWholeFileWhenRangesAreNotSupported() {
+        supportsRanges = false
+        val downloader = SegmentedDownloader(segments = 4)
+        val target = temporaryFolder.root.toPath().resolve("model.gguf")
+
+        val remoteFile = downloader.probe(url("/resolve/model.gguf"))
+        val completed = downloader.download(remoteFile, target, SegmentedDownloader.Progress()) {
+            false
+        }
+
+        assertThat(remoteFile.acceptsRanges).isFalse()
+        assertThat(completed).isTrue()
+        assertThat(requestedRanges).isEmpty()
+        assertThat(Files.readAllBytes(target)).isEqualTo(content)
+    }
+
+    private fun serveFile(exchange: HttpExchange) {
+        exchange.responseHeaders.add("ETag", "\"v1\"")
+        if (supportsRanges) {
+            exchange.responseHeaders.add("Accept-Ranges", "bytes")
+        }
+
+        val range = exchange.requestHeaders.getFirst("Range")
+        if (exchange.requestMethod == "HEAD") {
+            exchange.responseHeaders.add("Content-Length", content.size.toString())
+            exchange.sendResponseHeaders(200, -1)
+        } else if (range != null && supportsRanges) {
+            requestedRanges.add(range)
+            val (start, end) = range.removePrefix("bytes=").split('-').map { it.toInt() }
+            exchange.sendResponseHeaders(206, (end - start + 1).toLong())
+            exchange.responseBody.use { it.write(content, start, end - start + 1) }
+        } else {
+            exchange.sendResponseHeaders(200, content.size.toLong())
+            exchange.responseBody.use { it.write(content) }
+        }
+        exchange.close()
+    }
+
+    private fun rangeLength(range: String): Long {
+        val (start, end) = range.removePrefix("bytes=").split('-').map { it.toLong() }
+        return end - start + 1
+    }
+
+    private fun url(path: String) = URL("http://127.0.0.1:${server.address.port}$path")
+
+    private fun sha256(bytes: ByteArray): String =
+        HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes))
+}